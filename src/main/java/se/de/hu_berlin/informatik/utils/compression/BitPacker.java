@@ -0,0 +1,340 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
+
+/**
+ * Packs fixed-width values into a contiguous stream of bits (most significant bit first).
+ * Values are collected in a 64 bit accumulator and written to the underlying buffer one
+ * whole word at a time. The final byte is padded with zeroes.
+ *
+ * <p> The produced bit stream is identical to the one that was produced by the old
+ * byte-wise packing code in the compressing processors, so existing archives can still
+ * be decoded.
+ *
+ * <p> Can either write to an {@link OutputStream} (using a fixed size buffer) or collect
+ * all bytes in memory (using a {@link GrowableByteArray}).
+ *
+ * @author Simon Heiden
+ */
+public class BitPacker {
+
+	// same buffer that is used in zip utils
+	public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+	// MASKS[n] keeps the last n bits of a value
+	private static final long[] MASKS = new long[65];
+
+	static {
+		for (int i = 0; i < 64; ++i) {
+			MASKS[i] = (1L << i) - 1;
+		}
+		MASKS[64] = -1L;
+	}
+
+	// null if collecting in memory
+	private OutputStream out;
+	// null if writing to a stream
+	private GrowableByteArray memory;
+
+	// only used when writing to a stream
+	private byte[] buffer;
+	private int position = 0;
+	private long streamedBytes = 0;
+
+	// holds the last 'accumulatedBits' bits that were not yet written to the buffer
+	private long accumulator = 0;
+	private int accumulatedBits = 0;
+
+	/**
+	 * Creates a packer that writes the packed bits to the given output stream.
+	 * @param out
+	 * the output stream to write to
+	 * @param bufferSize
+	 * the size of the internal buffer (at least 8 bytes)
+	 */
+	public BitPacker(OutputStream out, int bufferSize) {
+		this.out = out;
+		this.buffer = new byte[Math.max(8, bufferSize)];
+	}
+
+	/**
+	 * Creates a packer that writes the packed bits to the given output stream.
+	 * @param out
+	 * the output stream to write to
+	 */
+	public BitPacker(OutputStream out) {
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a packer that collects all packed bits in memory.
+	 * @param initialCapacity
+	 * the initial capacity of the internal buffer in bytes
+	 */
+	public BitPacker(int initialCapacity) {
+		this(new GrowableByteArray(initialCapacity));
+	}
+
+	/**
+	 * Creates a packer that appends all packed bits to the given array.
+	 * @param memory
+	 * the array to append to
+	 */
+	public BitPacker(GrowableByteArray memory) {
+		this.out = null;
+		this.memory = memory;
+	}
+
+	/**
+	 * Creates a packer that collects all packed bits in memory.
+	 */
+	public BitPacker() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes the last {@code bits} bits of the given value.
+	 * @param value
+	 * the value to write
+	 * @param bits
+	 * the number of bits to use (0 to 64)
+	 */
+	public void write(long value, int bits) {
+		value &= MASKS[bits];
+		int freeBits = 64 - accumulatedBits;
+		if (bits < freeBits) {
+			accumulator = (accumulator << bits) | value;
+			accumulatedBits += bits;
+		} else {
+			int remainingBits = bits - freeBits;
+			// the accumulator is zero if it is empty, so shifting by 64 (= by 0) does no harm
+			writeWord((accumulator << freeBits) | (value >>> remainingBits));
+			accumulator = value & MASKS[remainingBits];
+			accumulatedBits = remainingBits;
+		}
+	}
+
+	/**
+	 * Writes the last {@code bits} bits of each value in the given array.
+	 * @param values
+	 * the values to write
+	 * @param bits
+	 * the number of bits to use for each value (0 to 32)
+	 */
+	public void write(int[] values, int bits) {
+		for (int value : values) {
+			write(value, bits);
+		}
+	}
+
+	/**
+	 * Writes the given bytes. May only be called at byte boundaries, e.g. for writing headers.
+	 * @param bytes
+	 * the bytes to write
+	 */
+	public void writeBytes(byte... bytes) {
+		if (accumulatedBits % 8 != 0) {
+			throw new IllegalStateException("Can only write whole bytes at byte boundaries.");
+		}
+		for (byte b : bytes) {
+			write(b, 8);
+		}
+	}
+
+	/**
+	 * Overwrites already written bytes, starting at the given index. Only available
+	 * when collecting in memory. May be used to replace place holders in headers.
+	 * @param index
+	 * the index of the first byte to overwrite
+	 * @param bytes
+	 * the new bytes
+	 */
+	public void setBytes(int index, byte... bytes) {
+		if (memory == null) {
+			throw new UnsupportedOperationException("Can not overwrite bytes that were written to a stream.");
+		}
+		// afterwards, all complete bytes are stored in the array
+		flushAccumulatedBytes();
+		memory.set(index, bytes);
+	}
+
+	/**
+	 * @return
+	 * the number of bytes that are needed to store all bits written so far
+	 * (including bytes already written to a stream)
+	 */
+	public long getByteCount() {
+		return (memory == null ? streamedBytes + position : memory.size()) + (accumulatedBits + 7) / 8;
+	}
+
+	/**
+	 * @return
+	 * the number of bits written so far (including bits already written to a stream)
+	 */
+	public long getBitCount() {
+		return (memory == null ? streamedBytes + position : memory.size()) * 8L + accumulatedBits;
+	}
+
+	/**
+	 * Writes all complete bytes to the output stream (or array), without padding. The
+	 * remaining bits (less than 8) are kept, so subsequently written values are appended 
+	 * directly after the last written value.
+	 */
+	public void flushCompleteBytes() {
+		flushAccumulatedBytes();
+		if (out != null) {
+			writeBufferToStream();
+		}
+	}
+
+	/**
+	 * Returns the array that collects the packed bytes. Bits that do not yet fill
+	 * a whole byte are not contained in the array until {@link #flush()} is called.
+	 * @return
+	 * the array, or null if writing to a stream
+	 */
+	public GrowableByteArray getMemory() {
+		flushAccumulatedBytes();
+		return memory;
+	}
+
+	/**
+	 * Returns all bytes written so far (including a zero padded last byte). Only available
+	 * when collecting in memory. Does not change the state of the packer, so subsequently
+	 * written values are appended directly after the last written value.
+	 * @return
+	 * a copy of the packed bytes
+	 */
+	public byte[] toByteArray() {
+		if (memory == null) {
+			throw new UnsupportedOperationException("Bytes were written to a stream.");
+		}
+		int size = memory.size();
+		int pendingBytes = (accumulatedBits + 7) / 8;
+		byte[] result = memory.toArray(pendingBytes);
+		if (pendingBytes > 0) {
+			long aligned = accumulator << (64 - accumulatedBits);
+			for (int i = 0; i < pendingBytes; ++i) {
+				result[size + i] = (byte) (aligned >>> (56 - 8 * i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes all remaining bits to the output stream (or array), padding the last byte
+	 * with zeroes, and flushes the stream. Values written afterwards start at the next
+	 * byte boundary.
+	 */
+	public void flush() {
+		int pendingBytes = (accumulatedBits + 7) / 8;
+		if (pendingBytes > 0) {
+			write(0, pendingBytes * 8 - accumulatedBits);
+			flushAccumulatedBytes();
+		}
+		if (out == null) {
+			return;
+		}
+		writeBufferToStream();
+		try {
+			out.flush();
+		} catch (IOException e) {
+			Log.abort(this, e, "Could not flush output stream.");
+		}
+	}
+
+	/**
+	 * Flushes all remaining bits and closes the underlying output stream (if any).
+	 */
+	public void close() {
+		flush();
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				Log.abort(this, e, "Could not close output stream.");
+			} finally {
+				out = null;
+				buffer = null;
+			}
+		}
+	}
+
+	private void writeWord(long word) {
+		if (memory != null) {
+			memory.addLong(word);
+			return;
+		}
+		ensureFreeSpace(8);
+		buffer[position] = (byte) (word >>> 56);
+		buffer[position + 1] = (byte) (word >>> 48);
+		buffer[position + 2] = (byte) (word >>> 40);
+		buffer[position + 3] = (byte) (word >>> 32);
+		buffer[position + 4] = (byte) (word >>> 24);
+		buffer[position + 5] = (byte) (word >>> 16);
+		buffer[position + 6] = (byte) (word >>> 8);
+		buffer[position + 7] = (byte) word;
+		position += 8;
+	}
+
+	// moves all complete bytes from the accumulator to the buffer
+	private void flushAccumulatedBytes() {
+		int completeBytes = accumulatedBits / 8;
+		if (completeBytes == 0) {
+			return;
+		}
+		for (int i = 0; i < completeBytes; ++i) {
+			accumulatedBits -= 8;
+			byte b = (byte) (accumulator >>> accumulatedBits);
+			if (memory != null) {
+				memory.add(b);
+			} else {
+				ensureFreeSpace(1);
+				buffer[position++] = b;
+			}
+		}
+		accumulator &= MASKS[accumulatedBits];
+	}
+
+	private void ensureFreeSpace(int bytes) {
+		if (position + bytes > buffer.length) {
+			writeBufferToStream();
+		}
+	}
+
+	private void writeBufferToStream() {
+		if (position > 0) {
+			try {
+				out.write(buffer, 0, position);
+				streamedBytes += position;
+			} catch (IOException e) {
+				Log.abort(this, e, "Could not write to output stream.");
+			}
+			position = 0;
+		}
+	}
+
+	/**
+	 * Computes the number of bits needed to represent the given (non-negative) number.
+	 * @param n
+	 * the number
+	 * @return
+	 * the number of needed bits; 1 for n = 0
+	 */
+	public static byte ceilLog2(long n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("Can not compute for n = " + n);
+		}
+		if (n == 0) {
+			return 1;
+		}
+		return (byte) (64 - Long.numberOfLeadingZeros(n));
+	}
+
+}
@@ -0,0 +1,257 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
+
+/**
+ * Reads fixed-width values from a contiguous stream of bits (most significant bit first),
+ * as produced by a {@link BitPacker}. Bytes are loaded into a 64 bit accumulator so that
+ * most values can be extracted with a single shift and mask.
+ *
+ * <p> Can either read from a byte array, from a {@link ByteBuffer} (e.g., a memory-mapped
+ * zip file entry; without copying) or from an {@link InputStream} (using a fixed size
+ * buffer).
+ *
+ * @author Simon Heiden
+ */
+public class BitUnpacker {
+
+	// MASKS[n] keeps the last n bits of a value
+	private static final long[] MASKS = new long[65];
+
+	static {
+		for (int i = 0; i < 64; ++i) {
+			MASKS[i] = (1L << i) - 1;
+		}
+		MASKS[64] = -1L;
+	}
+
+	// null if reading from an array or a byte buffer
+	private InputStream in;
+	// only used when reading from a byte buffer without accessible array
+	private ByteBuffer source;
+
+	private byte[] buffer;
+	private int position;
+	private int limit;
+
+	// holds the last 'accumulatedBits' bits that were not yet read
+	private long accumulator = 0;
+	private int accumulatedBits = 0;
+
+	/**
+	 * Creates an unpacker that reads from the given array, starting at the given offset.
+	 * @param array
+	 * the array to read from
+	 * @param offset
+	 * the index of the first byte to read
+	 */
+	public BitUnpacker(byte[] array, int offset) {
+		this.in = null;
+		this.buffer = array;
+		this.position = offset;
+		this.limit = array.length;
+	}
+
+	/**
+	 * Creates an unpacker that reads the remaining bytes of the given buffer. The bytes are
+	 * not copied, and the position of the given buffer is not changed.
+	 * @param byteBuffer
+	 * the buffer to read from
+	 */
+	public BitUnpacker(ByteBuffer byteBuffer) {
+		this.in = null;
+		if (byteBuffer.hasArray()) {
+			this.buffer = byteBuffer.array();
+			this.position = byteBuffer.arrayOffset() + byteBuffer.position();
+			this.limit = byteBuffer.arrayOffset() + byteBuffer.limit();
+		} else {
+			// direct or read-only buffer
+			this.source = byteBuffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+			this.position = byteBuffer.position();
+			this.limit = byteBuffer.limit();
+		}
+	}
+
+	/**
+	 * Creates an unpacker that reads from the given input stream.
+	 * @param in
+	 * the input stream to read from
+	 * @param bufferSize
+	 * the size of the internal buffer
+	 */
+	public BitUnpacker(InputStream in, int bufferSize) {
+		this.in = in;
+		this.buffer = new byte[Math.max(8, bufferSize)];
+		this.position = 0;
+		this.limit = 0;
+	}
+
+	/**
+	 * Creates an unpacker that reads from the given input stream.
+	 * @param in
+	 * the input stream to read from
+	 */
+	public BitUnpacker(InputStream in) {
+		this(in, BitPacker.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Checks whether at least the given number of bits is still available.
+	 * @param bits
+	 * the number of bits
+	 * @return
+	 * true if the given number of bits can be read
+	 */
+	public boolean hasBits(int bits) {
+		if (accumulatedBits >= bits) {
+			return true;
+		}
+		fillAccumulator();
+		if (accumulatedBits >= bits) {
+			return true;
+		}
+		// the accumulator may be too full to take another byte; one more byte suffices, then
+		return accumulatedBits > 56 && (position < limit || fillBuffer());
+	}
+
+	/**
+	 * Reads the next value with the given number of bits.
+	 * @param bits
+	 * the number of bits to read (0 to 64)
+	 * @return
+	 * the value
+	 * @throws IllegalStateException
+	 * if not enough bits are available
+	 */
+	public long read(int bits) {
+		if (accumulatedBits >= bits) {
+			accumulatedBits -= bits;
+			return (accumulator >>> accumulatedBits) & MASKS[bits];
+		}
+		// take all remaining bits from the accumulator and get the rest after refilling it
+		long value = accumulator & MASKS[accumulatedBits];
+		int neededBits = bits - accumulatedBits;
+		accumulator = 0;
+		accumulatedBits = 0;
+		fillAccumulator();
+		if (accumulatedBits < neededBits) {
+			throw new IllegalStateException("Not enough bits left to read " + bits + " bits.");
+		}
+		accumulatedBits -= neededBits;
+		// value is zero if neededBits equals 64, so shifting by 64 (= by 0) does no harm
+		return (value << neededBits) | ((accumulator >>> accumulatedBits) & MASKS[neededBits]);
+	}
+
+	/**
+	 * Reads the next value with the given number of bits as an integer.
+	 * @param bits
+	 * the number of bits to read (0 to 32)
+	 * @return
+	 * the value
+	 */
+	public int readInt(int bits) {
+		return (int) read(bits);
+	}
+
+	/**
+	 * Reads the given number of values with the given number of bits each directly into the
+	 * given array.
+	 * @param dest
+	 * the array to write to
+	 * @param offset
+	 * the index of the first value to write
+	 * @param count
+	 * the number of values to read
+	 * @param bits
+	 * the number of bits of each value (0 to 32)
+	 * @return
+	 * the number of values actually read (less than count if the input is exhausted)
+	 */
+	public int read(int[] dest, int offset, int count, int bits) {
+		final long mask = MASKS[bits];
+		for (int i = 0; i < count; ++i) {
+			if (accumulatedBits < bits) {
+				if (!hasBits(bits)) {
+					return i;
+				}
+				dest[offset + i] = (int) read(bits);
+			} else {
+				accumulatedBits -= bits;
+				dest[offset + i] = (int) ((accumulator >>> accumulatedBits) & mask);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Skips the remaining bits of the current byte. The next value is read from
+	 * the next byte boundary.
+	 */
+	public void alignToByte() {
+		accumulatedBits -= accumulatedBits % 8;
+		accumulator &= MASKS[accumulatedBits];
+	}
+
+	// loads as many bytes as fit into the accumulator
+	private void fillAccumulator() {
+		if (accumulatedBits == 0 && limit - position >= 8) {
+			if (source != null) {
+				accumulator = source.getLong(position);
+				accumulatedBits = 64;
+				position += 8;
+				return;
+			}
+			// load a whole word at once
+			accumulator = ((buffer[position] & 0xFFL) << 56)
+					| ((buffer[position + 1] & 0xFFL) << 48)
+					| ((buffer[position + 2] & 0xFFL) << 40)
+					| ((buffer[position + 3] & 0xFFL) << 32)
+					| ((buffer[position + 4] & 0xFFL) << 24)
+					| ((buffer[position + 5] & 0xFFL) << 16)
+					| ((buffer[position + 6] & 0xFFL) << 8)
+					| (buffer[position + 7] & 0xFFL);
+			accumulatedBits = 64;
+			position += 8;
+			return;
+		}
+		while (accumulatedBits <= 56) {
+			if (position >= limit && !fillBuffer()) {
+				return;
+			}
+			byte next = source == null ? buffer[position++] : source.get(position++);
+			accumulator = (accumulator << 8) | (next & 0xFFL);
+			accumulatedBits += 8;
+		}
+	}
+
+	// returns false if no more bytes are available
+	private boolean fillBuffer() {
+		if (in == null) {
+			return false;
+		}
+		try {
+			int len;
+			do {
+				len = in.read(buffer);
+			} while (len == 0);
+			if (len < 0) {
+				return false;
+			}
+			position = 0;
+			limit = len;
+			return true;
+		} catch (IOException e) {
+			Log.abort(this, e, "Could not read bytes from stream.");
+			return false;
+		}
+	}
+
+}
@@ -6,11 +6,7 @@ package se.de.hu_berlin.informatik.utils.compression;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Queue;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import se.de.hu_berlin.informatik.utils.compression.ziputils.ZipFileWrapper;
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
@@ -23,21 +19,19 @@ import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
  */
 public class BufferedCompressedByteArrayToIntArrayQueueProcessor extends AbstractProcessor<String,Queue<int[]>> {
 	
-	// same buffer that is used in zip utils
-	private static final int BUFER_SIZE = 4096;
-	private byte[] buffer = new byte[BUFER_SIZE];
-		
 	public static final int DELIMITER = 1;
 	public static final int TOTAL_END_MARKER = 0;
 	
 	private byte usedBits;
 	private int sequenceLength;
-	private int arrayPos;
 
 	private boolean containsZero;
 	private ZipFileWrapper zipFileWrapper;
 	private Queue<int[]> result;
 	
+	// reused for collecting sequences in delimiter mode
+	private GrowableIntArray currentSequence = new GrowableIntArray();
+	
 	public BufferedCompressedByteArrayToIntArrayQueueProcessor(ZipFileWrapper zipFileWrapper, 
 			int sequenceLength, boolean containsZero, Queue<int[]> result) {
 		super();
@@ -57,144 +51,181 @@ public class BufferedCompressedByteArrayToIntArrayQueueProcessor extends Abstrac
 	 */
 	@Override
 	public Queue<int[]> processItem(String fileName) {
+		try {
+			if (zipFileWrapper.isStored(fileName)) {
+				// read directly from the memory-mapped entry
+				return decode(new BitUnpacker(zipFileWrapper.getMappedEntry(fileName)));
+			}
+		} catch (IOException e) {
+			Log.abort(this, e, "Could not map file %s.", fileName);
+		}
 		
-		InputStream inputStream = null;
-		try (ZipFile zipFile = new ZipFile(zipFileWrapper.getzipFilePath().toFile())) {
-			ZipEntry entry = zipFile.getEntry(fileName);
-			inputStream = zipFile.getInputStream(entry);
-
-			int len = getNextBytesFromInputStream(inputStream);
-			readHeader(len);
-
-			boolean atTotalEnd = false;
+		// stream the entry through the wrapper's cached index instead of reopening the zip file
+		try (InputStream inputStream = zipFileWrapper.getBlockInputStream(fileName, 0)) {
+			return decode(new BitUnpacker(inputStream));
+		} catch (IOException e) {
+			Log.abort(this, e, "Could not get input stream from file %s.", fileName);
+		}
+		
+		return null;
+	}
 
-			byte currentByte = 0;
-			int currentInt = 0;
-			byte remainingBits = 0;
-			byte bitsLeft = 0;
-			List<Integer> currentSequence = null;
+	private Queue<int[]> decode(BitUnpacker unpacker) {
+		readHeader(unpacker);
 
-			int intCounter = 0;
+		boolean atTotalEnd;
+		if (sequenceLength == 0) {
+			atTotalEnd = readSequencesWithDelimiters(unpacker, 0, Long.MAX_VALUE);
+		} else {
+			atTotalEnd = readSequencesWithFixedLength(unpacker, 0, Long.MAX_VALUE);
+		}
 
-			//get all the encoded integers
-			while (arrayPos < len) {
-				//for each number, the number of bits to get is equal
-				bitsLeft = usedBits;
-				//if no bits remain to get from the current byte, then get the next one from the array
-				if (remainingBits == 0) {
-					currentByte = buffer[arrayPos];
-					remainingBits = 8;
-				}
+		if (!atTotalEnd) {
+			Log.abort(this, "No total end marker was read!");
+		}
 
-				//if intCounter is zero, then we are at the start of a new sequence
-				if (intCounter == 0) {
-					if (currentSequence != null) {
-						result.add(currentSequence.stream().mapToInt(i -> i).toArray());
-					}
-					currentSequence = new ArrayList<>();
-				}
+		return result;
+	}
 
-				//as long as bits are still needed, get them from the array
-				while (bitsLeft > 0) {
-					if (bitsLeft > remainingBits) {
-						currentInt = (currentInt << remainingBits) | (currentByte & 0xFF ) >>> (8 - remainingBits);
-						bitsLeft -= remainingBits;
-						//					remainingBits = 0;
-						++arrayPos;
-						if (arrayPos >= len) {
-							len = getNextBytesFromInputStream(inputStream);
-							arrayPos = 0;
-						}
-						currentByte = buffer[arrayPos];
-						remainingBits = 8;
-					} else { //bitsLeft <= remainingBits
-						currentInt = (currentInt << bitsLeft) | (currentByte & 0xFF ) >>> (8 - bitsLeft);
-						currentByte = (byte) (currentByte << bitsLeft);
-						remainingBits -= bitsLeft;
-						bitsLeft = 0;
-					}
+	/**
+	 * Decodes the sequences with indices from {@code from} (inclusive) to {@code to} (exclusive)
+	 * in the given entry and adds them to the result queue. If the entry was written with
+	 * a chunk index (see {@link BufferedIntArraysToCompressedByteArrayProcessor#writeIndex(int)}),
+	 * decoding starts at the last checkpoint before the first requested sequence, and only the
+	 * needed blocks get inflated. Otherwise, all preceding sequences have to be decoded.
+	 * @param fileName
+	 * the name of the entry
+	 * @param from
+	 * the index of the first sequence to decode
+	 * @param to
+	 * the index after the last sequence to decode
+	 * @return
+	 * the result queue; may contain less sequences if the entry ends early
+	 */
+	public Queue<int[]> readSequences(String fileName, long from, long to) {
+		if (from < 0 || to < from) {
+			throw new IllegalArgumentException("Invalid range: " + from + " to " + to);
+		}
+		long blockOffset = 0;
+		long bitOffset = 0;
+		long firstSequence = 0;
+		
+		byte[] index = zipFileWrapper.get(fileName + BufferedIntArraysToCompressedByteArrayProcessor.INDEX_SUFFIX, false);
+		if (index != null) {
+			// | checkpoint interval (4 bytes) | number of sequences (8 bytes) | checkpoints: (block offset (8 bytes) | bit offset (8 bytes))* |
+			ByteBuffer buffer = ByteBuffer.wrap(index);
+			int checkpointInterval = buffer.getInt();
+			buffer.getLong();
+			int checkpoints = buffer.remaining() / 16;
+			if (checkpoints > 0) {
+				// the header has to be read from the start of the entry
+				try (InputStream in = zipFileWrapper.getBlockInputStream(fileName, 0)) {
+					readHeader(new BitUnpacker(in));
+				} catch (IOException e) {
+					Log.abort(this, e, "Could not read header of file %s.", fileName);
 				}
+				int checkpoint = (int) Math.min(from / checkpointInterval, checkpoints - 1);
+				buffer.position(12 + checkpoint * 16);
+				blockOffset = buffer.getLong();
+				bitOffset = buffer.getLong();
+				firstSequence = (long) checkpoint * checkpointInterval;
+			}
+		}
+		
+		try (InputStream in = zipFileWrapper.getBlockInputStream(fileName, blockOffset)) {
+			BitUnpacker unpacker = new BitUnpacker(in);
+			if (bitOffset == 0) {
+				readHeader(unpacker);
+			} else {
+				// skip the bits of the preceding sequence in the first byte of the block
+				unpacker.read((int) (bitOffset % 8));
+			}
+			if (sequenceLength == 0) {
+				readSequencesWithDelimiters(unpacker, from - firstSequence, to - from);
+			} else {
+				readSequencesWithFixedLength(unpacker, from - firstSequence, to - from);
+			}
+		} catch (IOException e) {
+			Log.abort(this, e, "Could not get input stream from file %s.", fileName);
+		}
+		
+		return result;
+	}
 
-				if (currentInt == TOTAL_END_MARKER) {
-					atTotalEnd = true;
-					break;
+	// skips the given number of sequences and adds at most 'count' sequences to the result;
+	// returns true if the total end marker was read or all requested sequences were added
+	private boolean readSequencesWithDelimiters(BitUnpacker unpacker, long skip, long count) {
+		if (count == 0) {
+			return true;
+		}
+		int offset = containsZero ? 2 : 1;
+		currentSequence.clear();
+		while (unpacker.hasBits(usedBits)) {
+			int currentInt = unpacker.readInt(usedBits);
+			if (currentInt == TOTAL_END_MARKER) {
+				return true;
+			} else if (currentInt == DELIMITER) {
+				//the current sequence ends here
+				if (skip > 0) {
+					--skip;
 				} else {
-					if (sequenceLength == 0) {
-						if (currentInt == DELIMITER) {
-							//reset the counter (start of new sequence)
-							intCounter = 0;
-						} else {
-							//add the next integer to the current sequence
-							currentSequence.add(containsZero ? currentInt-2 : currentInt-1);
-							++intCounter;
-						}
-					} else {
-						//add the next integer to the current sequence
-						currentSequence.add(containsZero ? currentInt-1 : currentInt);
-						++intCounter;
-						//if the sequence ends here, reset the counter
-						if (intCounter >= sequenceLength) {
-							intCounter = 0;
-						}
+					result.add(currentSequence.toArray());
+					if (--count == 0) {
+						return true;
 					}
 				}
-				//reset the current integer to all zeroes
-				currentInt = 0;
+				currentSequence.clear();
+			} else if (skip == 0) {
+				//add the next integer to the current sequence
+				currentSequence.add(currentInt - offset);
+			}
+		}
+		return false;
+	}
 
-				//if no bits remain in the current byte, then update the array position for the next step
-				if (remainingBits == 0) {
-					++arrayPos;
-				}
-				if (arrayPos >= len) {
-					len = getNextBytesFromInputStream(inputStream);
-					arrayPos = 0;
+	// skips the given number of sequences and adds at most 'count' sequences to the result;
+	// returns true if the total end marker was read or all requested sequences were added
+	private boolean readSequencesWithFixedLength(BitUnpacker unpacker, long skip, long count) {
+		int offset = containsZero ? 1 : 0;
+		while (count > 0 && unpacker.hasBits(usedBits)) {
+			int firstInt = unpacker.readInt(usedBits);
+			if (firstInt == TOTAL_END_MARKER) {
+				return true;
+			}
+			if (skip > 0) {
+				// the end marker may only appear at the start of a sequence
+				for (int i = 1; i < sequenceLength; ++i) {
+					unpacker.read(usedBits);
 				}
+				--skip;
+				continue;
 			}
-
-			if (!atTotalEnd) {
-				Log.abort(this, "No total end marker was read!");
+			int[] sequence = new int[sequenceLength];
+			sequence[0] = firstInt;
+			if (unpacker.read(sequence, 1, sequenceLength - 1, usedBits) < sequenceLength - 1) {
+				// incomplete sequence
+				return false;
 			}
-
-			return result;
-		} catch (IOException e) {
-			Log.abort(this, e, "Could not get input stream from file %s.", fileName);
-		} finally {
-			if (inputStream != null) {
-				try {
-					inputStream.close();
-				} catch (IOException e) {
-					// ignore
+			for (int i = 0; i < sequenceLength; ++i) {
+				if (sequence[i] == TOTAL_END_MARKER) {
+					return true;
 				}
+				sequence[i] -= offset;
 			}
+			result.add(sequence);
+			--count;
 		}
-		
-		return null;
+		return count == 0;
 	}
 
-	private void readHeader(int len) {
+	private void readHeader(BitUnpacker unpacker) {
 		// header should be 5 bytes:
 		// | number of bits used for one element (1 byte) | sequence length (4 bytes) - 0 for delimiter mode |
-		if (len < 5) {
+		if (!unpacker.hasBits(40)) {
 			Log.abort(this, "Could not read header from input stream.");
 		}
-		usedBits = buffer[0];
-		
-		byte[] smallArray = { buffer[1], buffer[2], buffer[3], buffer[4] };
-		ByteBuffer b = ByteBuffer.wrap(smallArray);
-		//b.order(ByteOrder.BIG_ENDIAN); // optional, the initial order of a byte buffer is always BIG_ENDIAN.
-		sequenceLength = b.getInt();
-		
-		arrayPos = 5;
-	}
-	
-	// returns the length of available bytes
-	private int getNextBytesFromInputStream(InputStream is) {
-		try {
-			return is.read(buffer);
-		} catch (IOException e) {
-			Log.abort(this, e, "Could not read bytes from stream.");
-			return -1;
-		}
+		usedBits = (byte) unpacker.read(8);
+		sequenceLength = unpacker.readInt(32);
 	}
 	
 }
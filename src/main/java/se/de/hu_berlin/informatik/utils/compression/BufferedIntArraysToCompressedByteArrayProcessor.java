@@ -4,8 +4,6 @@
 package se.de.hu_berlin.informatik.utils.compression;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import se.de.hu_berlin.informatik.utils.compression.ziputils.ZipFileWrapper;
@@ -21,33 +19,63 @@ import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
  */
 public class BufferedIntArraysToCompressedByteArrayProcessor extends AbstractProcessor<int[],byte[] > {
 
-	// same buffer that is used in zip utils
-	private static final int BUFFER_SIZE = 4096;
-
-	PipedOutputStream out;
+	private ZipFileWrapper.ZipEntryOutputStream out;
+	
+	private BitPacker packer;
 	
 	private ZipFileWrapper zipFile;
 	
 	public static final int DELIMITER = 1;
+	
+	/**
+	 * suffix of the entry that holds the chunk index of an entry (see {@link #writeIndex(int)})
+	 */
+	public static final String INDEX_SUFFIX = ".idx";
 
 	private static final byte TOTAL_END_MARKER = 0;
 	
-	private byte[] result;
-	
 	private byte neededBits;
 	private int sequenceLength;
-	private int lastByteIndex = -1;
-	private byte remainingFreeBits = 0;
 
 	private int maxValue;
 
 	private boolean containsZero;
-
-	private Thread zipFileListener;
+	
+	private String fileName;
+	private long sequenceCounter = 0;
+	// checkpoints (pairs of block offset and bit offset); null if no index is written
+	private GrowableByteArray index;
+	private int checkpointInterval;
 	
 	public BufferedIntArraysToCompressedByteArrayProcessor(
 			Path zipFilePath, String fileName, boolean deleteExisting, 
 			int maxValue, int sequenceLength, boolean containsZero) throws IOException {
+		this(zipFilePath, fileName, deleteExisting, maxValue, sequenceLength, containsZero, true);
+	}
+	
+	/**
+	 * Creates a new entry in the given zip file that is added when the processor gets closed.
+	 * @param zipFilePath
+	 * the zip file
+	 * @param fileName
+	 * the name of the new entry
+	 * @param deleteExisting
+	 * whether to delete an existing zip file first
+	 * @param maxValue
+	 * the maximum value to store
+	 * @param sequenceLength
+	 * the length of the sequences, or 0 for sequences of arbitrary length
+	 * @param containsZero
+	 * whether the input may contain zeroes
+	 * @param compress
+	 * whether to compress the entry; uncompressed entries may be read from a memory-mapped
+	 * buffer (see {@link ZipFileWrapper#getMappedEntry(String)})
+	 * @throws IOException
+	 * if the entry can not be created
+	 */
+	public BufferedIntArraysToCompressedByteArrayProcessor(
+			Path zipFilePath, String fileName, boolean deleteExisting, 
+			int maxValue, int sequenceLength, boolean containsZero, boolean compress) throws IOException {
 		super();
 		if (deleteExisting) {
 			FileUtils.delete(zipFilePath);
@@ -58,68 +86,27 @@ public class BufferedIntArraysToCompressedByteArrayProcessor extends AbstractPro
 		}
 		
 		zipFile = ZipFileWrapper.getZipFileWrapper(zipFilePath);
+		this.fileName = fileName;
 		
-		PipedInputStream in = new PipedInputStream();
-		out = new PipedOutputStream(in);
-		
-		zipFileListener = startZipFileListener(fileName, in);
-		zipFileListener.start();
+		// the packed bits are (compressed and) spilled to a temporary file and appended to the zip file on closing
+		out = zipFile.openEntryOutputStream(fileName, compress);
+		packer = new BitPacker(out);
 		
 		this.containsZero = containsZero;
 		this.maxValue = containsZero ? maxValue+1 : maxValue;
 		if (sequenceLength == 0) {
 			++this.maxValue;
 		}
-		result = new byte[BUFFER_SIZE];
 		
 		//compute the number of bits needed to represent integers with the given maximum value
-		neededBits = ceilLog2(this.maxValue);
+		neededBits = BitPacker.ceilLog2(this.maxValue);
 
 		this.sequenceLength = sequenceLength;
 		//add a header that contains information needed for decoding
 		addHeader(neededBits, sequenceLength);
 	}
 
-	private Thread startZipFileListener(String fileName, PipedInputStream in) {
-		return new Thread(new Runnable() {
-			
-			@Override
-			public void run() {
-				try {
-					int tries = 0;
-					boolean worked = false;
-					while (!worked) {
-						++tries;
-						try {
-							// Creates a new entry in the zip file and adds the content to the zip file
-							zipFile.addStream(in, fileName);
-							worked = true;
-						} catch (IOException e) {
-							if (tries < 5) {
-								Log.warn(this, "Attempt %d - Error adding stream to zip file '%s'.", tries, zipFile.getzipFilePath());
-								try {
-									Thread.sleep(5000);
-								} catch (InterruptedException e1) {
-									// do nothing
-								}
-							} else {
-								Log.abort(this, e, "Zip file '%s' does not exist or could not add stream.", zipFile.getzipFilePath());
-							}
-						}
-					}
-				} finally {
-					if (in != null) {
-						try {
-							in.close();
-						} catch (IOException e) {
-							// ignore
-						}
-					}
-				}
-			}
-		});
-	}
-	
+
 	public BufferedIntArraysToCompressedByteArrayProcessor(
 			Path zipFilePath, String fileName, boolean deleteExisting, 
 			int maxValue, boolean containsZero) throws IOException {
@@ -135,7 +122,31 @@ public class BufferedIntArraysToCompressedByteArrayProcessor extends AbstractPro
 		//b.order(ByteOrder.BIG_ENDIAN); // optional, the initial order of a byte buffer is always BIG_ENDIAN.
 		b.putInt(sequenceLength);
 		
-		out.write(new byte[] {neededBits, b.array()[0], b.array()[1], b.array()[2], b.array()[3]});
+		packer.writeBytes(neededBits, b.array()[0], b.array()[1], b.array()[2], b.array()[3]);
+	}
+
+	/**
+	 * Additionally writes a chunk index to the entry with the suffix {@link #INDEX_SUFFIX}.
+	 * Every {@code checkpointInterval} sequences, a new deflate block is started in the
+	 * entry, and the block offset and the bit offset of the next sequence get stored in the
+	 * index. This allows to decode a range of sequences without inflating the preceding
+	 * blocks (see {@link BufferedCompressedByteArrayToIntArrayQueueProcessor#readSequences(String, long, long)}).
+	 * Has to be called before the first sequence is submitted.
+	 * @param checkpointInterval
+	 * the number of sequences per chunk
+	 * @return
+	 * this processor
+	 */
+	public BufferedIntArraysToCompressedByteArrayProcessor writeIndex(int checkpointInterval) {
+		if (checkpointInterval <= 0) {
+			throw new IllegalArgumentException("Checkpoint interval has to be positive: " + checkpointInterval);
+		}
+		if (sequenceCounter > 0) {
+			throw new IllegalStateException("Sequences have already been written.");
+		}
+		this.checkpointInterval = checkpointInterval;
+		this.index = new GrowableByteArray();
+		return this;
 	}
 
 	/* (non-Javadoc)
@@ -143,6 +154,10 @@ public class BufferedIntArraysToCompressedByteArrayProcessor extends AbstractPro
 	 */
 	@Override
 	public byte[] processItem(int[] intArray) {
+		if (index != null && sequenceCounter % checkpointInterval == 0) {
+			addCheckpoint();
+		}
+		++sequenceCounter;
 		if (sequenceLength == 0) {
 			for (int element : intArray) {
 				int i = containsZero ? element+2 : element+1;
@@ -183,62 +198,54 @@ public class BufferedIntArraysToCompressedByteArrayProcessor extends AbstractPro
 		return null;
 	}
 
+	private void addCheckpoint() {
+		// all complete bytes have to be in the current block
+		packer.flushCompleteBytes();
+		try {
+			index.addLong(out.startNewBlock());
+		} catch (IOException e) {
+			closeOutputStream();
+			Log.abort(this, e, "Could not start new block in zip file entry.");
+		}
+		// the new block starts with the byte that contains this bit
+		index.addLong(packer.getBitCount());
+	}
+
+	private void writeIndexEntry() {
+		// | checkpoint interval (4 bytes) | number of sequences (8 bytes) | checkpoints: (block offset (8 bytes) | bit offset (8 bytes))* |
+		ByteBuffer header = ByteBuffer.allocate(12);
+		header.putInt(checkpointInterval);
+		header.putLong(sequenceCounter);
+		GrowableByteArray bytes = new GrowableByteArray(header.capacity() + index.size());
+		bytes.add(header.array(), 0, header.capacity());
+		bytes.add(index.toArray(), 0, index.size());
+		zipFile.addArray(bytes.toArray(), fileName + INDEX_SUFFIX);
+		index = null;
+	}
+
 	private void storeNextInteger(int element) {
 		if (element > maxValue) {
 			Log.warn(this, "Trying to store '%d', but max value set to '%d'.", element, maxValue);
-			if (ceilLog2(element) > neededBits) {
+			if (BitPacker.ceilLog2(element) > neededBits) {
 				closeOutputStream();
 				Log.abort(this, "Can not store '%d' in %d bits.", element, neededBits);
 			}
 		}
-		//reset the bits left to write
-		byte bitsLeft = neededBits;
-		//keep only relevant bits as defined by the given maximum value
-		element = keepLastNBits(element, bitsLeft);
-		//add bits until all bits of the given number are processed
-		while (bitsLeft > 0) {
-			//add a new byte if no space is left
-			if (remainingFreeBits == 0) {
-				addNewByteToList();
-				//remainingFreeBits > 0 holds now!
-			}
-			//need to shift the bits differently if more bits are left to write than free bits are remaining in the last byte of the list
-			if (bitsLeft > remainingFreeBits) {
-				bitsLeft -= remainingFreeBits;
-				result[lastByteIndex] = (byte) (result[lastByteIndex] | (element >>> bitsLeft));
-				remainingFreeBits = 0;
-				//set the first bits that are processed already to 0 and keep only the last n bits
-				element = keepLastNBits(element, bitsLeft);
-			} else { //bitsLeft <= remainingFreeBits
-				result[lastByteIndex] = (byte) (result[lastByteIndex] | (element << (remainingFreeBits - bitsLeft)));
-				remainingFreeBits -= bitsLeft;
-				bitsLeft = 0;
-			}
-		}
+		packer.write(element, neededBits);
 	}
 
 	private void closeOutputStream() {
 		if (out != null) {
 			storeNextInteger(TOTAL_END_MARKER);
 			try {
-				if (lastByteIndex >= 0) {
-					out.write(result, 0, lastByteIndex+1);
-					lastByteIndex = -1;
-				}
-				result = null;
-
-				out.flush();
-				out.close();
-			} catch (IOException e) {
-				Log.abort(this, e, "Could not write to or close output stream.");
+				// writes the remaining bits and closes the stream
+				packer.close();
 			} finally {
-				while (zipFileListener.isAlive()) {
-					try {
-						zipFileListener.join();
-					} catch (InterruptedException e) {
-					}
-				}
 				out = null;
+				packer = null;
+			}
+			if (index != null) {
+				writeIndexEntry();
 			}
 		}
 		
@@ -251,40 +258,6 @@ public class BufferedIntArraysToCompressedByteArrayProcessor extends AbstractPro
 		closeOutputStream();
 		return null;
 	}
-
-	private void addNewByteToList() {
-		++lastByteIndex;
-		remainingFreeBits = 8;
-		writeBufferToStreamIfFull();
-	}
-
-	private void writeBufferToStreamIfFull() {
-		if (lastByteIndex >= BUFFER_SIZE) {
-			try {
-				out.write(result);
-			} catch (IOException e) {
-				Log.abort(this, e, "Could not write to output stream.");
-			}
-			lastByteIndex = 0;
-			result = new byte[BUFFER_SIZE];
-		}
-	}
-	
-	private int keepLastNBits(int element, byte n) {
-		return element & (int)Math.pow(2, n)-1;
-	}
-
-	private static byte ceilLog2(int n) {
-	    if (n < 0) {
-	    	throw new IllegalArgumentException("Can not compute for n = " + n);
-	    }
-	    if (n == 0) {
-	    	Log.warn(BufferedIntArraysToCompressedByteArrayProcessor.class, "Maximum input number is zero.");
-	    	return 1;
-	    } else {
-	    	return (byte) (32 - Integer.numberOfLeadingZeros(n));
-	    }
-	}
 	
 	@Override
 	public boolean finalShutdown() {
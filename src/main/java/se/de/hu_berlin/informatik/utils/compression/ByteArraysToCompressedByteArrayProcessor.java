@@ -4,8 +4,6 @@
 package se.de.hu_berlin.informatik.utils.compression;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
 
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
 import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
@@ -18,12 +16,10 @@ import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
  */
 public class ByteArraysToCompressedByteArrayProcessor extends AbstractProcessor<byte[],byte[] > {
 
-	private List<Byte> result;
+	private BitPacker packer;
 	
 	private byte neededBits;
 	private int sequenceLength;
-	private int lastByteIndex = 0;
-	private byte remainingFreeBits = 0;
 	private int totalSequences = 0;
 
 	private int maxValue;
@@ -31,10 +27,10 @@ public class ByteArraysToCompressedByteArrayProcessor extends AbstractProcessor<
 	public ByteArraysToCompressedByteArrayProcessor(int maxValue, int sequenceLength) {
 		super();
 		this.maxValue = maxValue;
-		result = new ArrayList<>();
+		packer = new BitPacker();
 		
 		//compute the number of bits needed to represent integers with the given maximum value
-		neededBits = ceilLog2(this.maxValue);
+		neededBits = BitPacker.ceilLog2(this.maxValue);
 
 		this.sequenceLength = sequenceLength;
 		//add a header that contains information needed for decoding
@@ -46,21 +42,14 @@ public class ByteArraysToCompressedByteArrayProcessor extends AbstractProcessor<
 		// header should be 9 bytes:
 		// | number of bits used for one element (1 byte) | sequence length (4 bytes) | total number of sequences (4 bytes) |
 		
-		result.add(neededBits);
-		
 		ByteBuffer b = ByteBuffer.allocate(4);
 		//b.order(ByteOrder.BIG_ENDIAN); // optional, the initial order of a byte buffer is always BIG_ENDIAN.
 		b.putInt(sequenceLength);
 
-		for (int i = 0; i < 4; ++i) {
-			result.add(b.array()[i]);
-		}
+		packer.writeBytes(neededBits, b.array()[0], b.array()[1], b.array()[2], b.array()[3]);
 		
 		//stores the number of sequences in the end (gets replaced)
-		for (int i = 0; i < 4; ++i) {
-			result.add((byte) 0);
-		}
-		lastByteIndex = 8;
+		packer.writeBytes((byte) 0, (byte) 0, (byte) 0, (byte) 0);
 	}
 
 	/* (non-Javadoc)
@@ -75,34 +64,11 @@ public class ByteArraysToCompressedByteArrayProcessor extends AbstractProcessor<
 		for (int element : array) {
 			if (element > maxValue) {
 				Log.warn(this, "Trying to store '%d', but max value set to '%d'.", element, maxValue);
-				if (ceilLog2(element) > neededBits) {
+				if (BitPacker.ceilLog2(element) > neededBits) {
 					Log.abort(this, "Can not store '%d' in %d bits.", element, neededBits);
 				}
 			}
-			//reset the bits left to write
-			byte bitsLeft = neededBits;
-			//keep only relevant bits as defined by the given maximum value
-			element = keepLastNBits(element, bitsLeft);
-			//add bits until all bits of the given number are processed
-			while (bitsLeft > 0) {
-				//add a new byte if no space is left
-				if (remainingFreeBits == 0) {
-					addNewByteToList();
-					//remainingFreeBits > 0 holds now!
-				}
-				//need to shift the bits differently if more bits are left to write than free bits are remaining in the last byte of the list
-				if (bitsLeft > remainingFreeBits) {
-					bitsLeft -= remainingFreeBits;
-					result.set(lastByteIndex, (byte) (result.get(lastByteIndex) | (element >>> bitsLeft)));
-					remainingFreeBits = 0;
-					//set the first bits that are processed already to 0 and keep only the last n bits
-					element = keepLastNBits(element, bitsLeft);
-				} else { //bitsLeft <= remainingFreeBits
-					result.set(lastByteIndex, (byte) (result.get(lastByteIndex) | (element << (remainingFreeBits - bitsLeft))));
-					remainingFreeBits -= bitsLeft;
-					bitsLeft = 0;
-				}
-			}
+			packer.write(element, neededBits);
 		}
 
 		return null;
@@ -115,29 +81,8 @@ public class ByteArraysToCompressedByteArrayProcessor extends AbstractProcessor<
 		b.putInt(totalSequences);
 
 		//set the total number of sequences stored
-		for (int i = 0; i < 4; ++i) {
-			result.set(i+5, b.array()[i]);
-		}
+		packer.setBytes(5, b.array());
 		
-		byte[] temp = new byte[result.size()];
-		for (int i = 0; i < temp.length; ++i) {
-			temp[i] = result.get(i);
-		}
-		return temp;
-	}
-
-	private void addNewByteToList() {
-		result.add((byte) 0);
-		++lastByteIndex;
-		remainingFreeBits = 8;
-	}
-	
-	private int keepLastNBits(int element, byte n) {
-		return element & (int)Math.pow(2, n)-1;
-	}
-
-	private static byte ceilLog2(int n) {
-	    if(n <= 0) throw new IllegalArgumentException();
-	    return (byte) (32 - Integer.numberOfLeadingZeros(n));
+		return packer.toByteArray();
 	}
 }
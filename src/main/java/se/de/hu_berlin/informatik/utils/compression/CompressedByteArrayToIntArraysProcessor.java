@@ -4,8 +4,8 @@
 package se.de.hu_berlin.informatik.utils.compression;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+
 
 import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
 
@@ -21,10 +21,12 @@ public class CompressedByteArrayToIntArraysProcessor extends AbstractProcessor<b
 	private byte usedBits;
 	private int sequenceLength;
 	private int totalSequences;
-	private int arrayPos;
 
 	private boolean containsZero;
 	
+	// reused for collecting sequences in delimiter mode
+	private GrowableIntArray currentSequence = new GrowableIntArray();
+	
 	public CompressedByteArrayToIntArraysProcessor(boolean containsZero) {
 		super();
 		this.containsZero = containsZero;
@@ -35,105 +37,67 @@ public class CompressedByteArrayToIntArraysProcessor extends AbstractProcessor<b
 	 */
 	@Override
 	public int[][] processItem(byte[] array) {
-		readHeader(array);
-		byte currentByte = 0;
-		int currentInt = 0;
-		byte remainingBits = 0;
-		byte bitsLeft = 0;
-		List<Integer> currentSequence = null;
+		return decode(ByteBuffer.wrap(array));
+	}
+	
+	/**
+	 * Decodes the remaining bytes of the given buffer without copying them. May be used with
+	 * a memory-mapped (stored) zip file entry (see
+	 * {@link se.de.hu_berlin.informatik.utils.compression.ziputils.ZipFileWrapper#getMappedEntry(String)}).
+	 * @param buffer
+	 * the encoded bytes
+	 * @return
+	 * the decoded sequences
+	 */
+	public int[][] decode(ByteBuffer buffer) {
+		BitUnpacker unpacker = new BitUnpacker(buffer);
+		readHeader(unpacker);
 		
 		int[][] result = new int[totalSequences][];
-		int intCounter = 0;
-		int sequenceCounter = 0;
 		
-		//get all the encoded integers
-		while (arrayPos < array.length) {
-			//for each number, the number of bits to get is equal
-			bitsLeft = usedBits;
-			//if no bits remain to get from the current byte, then get the next one from the array
-			if (remainingBits == 0) {
-				currentByte = array[arrayPos];
-				remainingBits = 8;
-			}
-			
-			//if intCounter is zero, then we are at the start of a new sequence
-			if (intCounter == 0) {
-				if (currentSequence != null) {
-					result[sequenceCounter++] = currentSequence.stream().mapToInt(i -> i).toArray();
-				}
-				if (sequenceCounter >= totalSequences) {
-					break;
-				}
-				currentSequence = new ArrayList<>();
-			}
-			
-			//as long as bits are still needed, get them from the array
-			while (bitsLeft > 0) {
-				if (bitsLeft > remainingBits) {
-					currentInt = (currentInt << remainingBits) | (currentByte & 0xFF ) >>> (8 - remainingBits);
-					bitsLeft -= remainingBits;
-//					remainingBits = 0;
-					currentByte = array[++arrayPos];
-					remainingBits = 8;
-				} else { //bitsLeft <= remainingBits
-					currentInt = (currentInt << bitsLeft) | (currentByte & 0xFF ) >>> (8 - bitsLeft);
-					currentByte = (byte) (currentByte << bitsLeft);
-					remainingBits -= bitsLeft;
-					bitsLeft = 0;
-				}
-			}
-			
-			if (sequenceLength == 0) {
+		if (sequenceLength == 0) {
+			int offset = containsZero ? 1 : 0;
+			currentSequence.clear();
+			int sequenceCounter = 0;
+			//get all the encoded integers
+			while (sequenceCounter < totalSequences && unpacker.hasBits(usedBits)) {
+				int currentInt = unpacker.readInt(usedBits);
 				if (currentInt == DELIMITER) {
-					//reset the counter (start of new sequence)
-					intCounter = 0;
+					//the current sequence ends here
+					result[sequenceCounter++] = currentSequence.toArray();
+					currentSequence.clear();
 				} else {
 					//add the next integer to the current sequence
-					currentSequence.add(containsZero ? currentInt-1 : currentInt);
-					++intCounter;
-				}
-			} else {
-				//add the next integer to the current sequence
-				currentSequence.add(currentInt);
-				++intCounter;
-				//if the sequence ends here, reset the counter
-				if (intCounter >= sequenceLength) {
-					intCounter = 0;
+					currentSequence.add(currentInt - offset);
 				}
 			}
-			//reset the current integer to all zeroes
-			currentInt = 0;
-			
-			//if no bits remain in the current byte, then update the array position for the next step
-			if (remainingBits == 0) {
-				++arrayPos;
+			if (sequenceCounter < totalSequences) {
+				// input ended early; keep what was read
+				result[sequenceCounter] = currentSequence.toArray();
+			}
+		} else {
+			for (int sequenceCounter = 0; sequenceCounter < totalSequences; ++sequenceCounter) {
+				int[] sequence = new int[sequenceLength];
+				int read = unpacker.read(sequence, 0, sequenceLength, usedBits);
+				if (read < sequenceLength) {
+					// input ended early; keep what was read
+					result[sequenceCounter] = Arrays.copyOf(sequence, read);
+					break;
+				}
+				result[sequenceCounter] = sequence;
 			}
-		}
-		
-		if (currentSequence != null && sequenceCounter < totalSequences) {
-			result[sequenceCounter] = currentSequence.stream().mapToInt(i -> i).toArray();
 		}
 		
 		return result;
 	}
 
-	private void readHeader(byte[] array) {
+	private void readHeader(BitUnpacker unpacker) {
 		// header should be 9 bytes:
 		// | number of bits used for one element (1 byte) | sequence length (4 bytes) - 0 for delimiter mode | total number of sequences (4 bytes) |
 		
-		usedBits = array[0];
-		
-		byte[] smallArray = { array[1], array[2], array[3], array[4] };
-		ByteBuffer b = ByteBuffer.wrap(smallArray);
-		//b.order(ByteOrder.BIG_ENDIAN); // optional, the initial order of a byte buffer is always BIG_ENDIAN.
-		sequenceLength = b.getInt();
-		
-		byte[] smallArray2 = { array[5], array[6], array[7], array[8] };
-		b = ByteBuffer.wrap(smallArray2);
-		//b.order(ByteOrder.BIG_ENDIAN); // optional, the initial order of a byte buffer is always BIG_ENDIAN.
-		totalSequences = b.getInt();
-		
-		arrayPos = 9;
+		usedBits = (byte) unpacker.read(8);
+		sequenceLength = unpacker.readInt(32);
+		totalSequences = unpacker.readInt(32);
 	}
 	
 	
@@ -0,0 +1,144 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.compression;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive bytes that is used by the in-memory compressors to
+ * collect their output. Compared to a {@code List<Byte>}, this needs one byte of heap
+ * per stored byte (plus unused capacity) instead of a reference per byte.
+ *
+ * @author Simon Heiden
+ */
+public class GrowableByteArray {
+
+	// arrays may not be larger than this (some VMs reserve header words in arrays)
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private byte[] elements;
+	private int size = 0;
+
+	public GrowableByteArray(int initialCapacity) {
+		this.elements = new byte[Math.max(8, initialCapacity)];
+	}
+
+	public GrowableByteArray() {
+		this(4096);
+	}
+
+	/**
+	 * Ensures that at least the given number of bytes can be stored without growing.
+	 * @param minCapacity
+	 * the minimal capacity
+	 */
+	public void ensureCapacity(int minCapacity) {
+		if (minCapacity > elements.length) {
+			grow(minCapacity);
+		}
+	}
+
+	private void grow(int minCapacity) {
+		if (minCapacity < 0 || minCapacity > MAX_ARRAY_SIZE) {
+			throw new OutOfMemoryError("Required array size too large.");
+		}
+		// grow by 50%, at least to the required size
+		long newCapacity = Math.max((long) elements.length + (elements.length >> 1), minCapacity);
+		elements = Arrays.copyOf(elements, (int) Math.min(newCapacity, MAX_ARRAY_SIZE));
+	}
+
+	public void add(byte element) {
+		if (size == elements.length) {
+			grow(size + 1);
+		}
+		elements[size++] = element;
+	}
+
+	public void add(byte[] bytes, int offset, int length) {
+		ensureCapacity(size + length);
+		System.arraycopy(bytes, offset, elements, size, length);
+		size += length;
+	}
+
+	/**
+	 * Appends the 8 bytes of the given word (big endian).
+	 * @param word
+	 * the word to add
+	 */
+	public void addLong(long word) {
+		if (size + 8 > elements.length) {
+			grow(size + 8);
+		}
+		elements[size] = (byte) (word >>> 56);
+		elements[size + 1] = (byte) (word >>> 48);
+		elements[size + 2] = (byte) (word >>> 40);
+		elements[size + 3] = (byte) (word >>> 32);
+		elements[size + 4] = (byte) (word >>> 24);
+		elements[size + 5] = (byte) (word >>> 16);
+		elements[size + 6] = (byte) (word >>> 8);
+		elements[size + 7] = (byte) word;
+		size += 8;
+	}
+
+	public byte get(int index) {
+		checkIndex(index);
+		return elements[index];
+	}
+
+	public void set(int index, byte element) {
+		checkIndex(index);
+		elements[index] = element;
+	}
+
+	/**
+	 * Overwrites the bytes starting at the given index.
+	 * @param index
+	 * the index of the first byte to overwrite
+	 * @param bytes
+	 * the new bytes
+	 */
+	public void set(int index, byte[] bytes) {
+		if (index < 0 || index + bytes.length > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + bytes.length + ", Size: " + size);
+		}
+		System.arraycopy(bytes, 0, elements, index, bytes.length);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all elements. The allocated capacity is kept for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return
+	 * a copy of the contained bytes with exactly fitting length
+	 */
+	public byte[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	/**
+	 * Returns a copy of the contained bytes with some additional (zeroed) bytes at the end.
+	 * @param additionalBytes
+	 * the number of bytes to append
+	 * @return
+	 * the new array
+	 */
+	public byte[] toArray(int additionalBytes) {
+		return Arrays.copyOf(elements, size + additionalBytes);
+	}
+
+}
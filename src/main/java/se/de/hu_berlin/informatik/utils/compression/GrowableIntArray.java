@@ -0,0 +1,65 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.compression;
+
+import java.util.Arrays;
+
+/**
+ * Simple growable array of primitive integers. Meant to be reused for collecting
+ * sequences of unknown length without boxing.
+ *
+ * @author Simon Heiden
+ */
+public class GrowableIntArray {
+
+	private int[] elements;
+	private int size = 0;
+
+	public GrowableIntArray(int initialCapacity) {
+		this.elements = new int[Math.max(1, initialCapacity)];
+	}
+
+	public GrowableIntArray() {
+		this(16);
+	}
+
+	/**
+	 * Appends the given element.
+	 * @param element
+	 * the element to add
+	 */
+	public void add(int element) {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, elements.length * 2);
+		}
+		elements[size++] = element;
+	}
+
+	public int get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return elements[index];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all elements. The allocated capacity is kept for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return
+	 * a copy of the contained elements with exactly fitting length
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+}
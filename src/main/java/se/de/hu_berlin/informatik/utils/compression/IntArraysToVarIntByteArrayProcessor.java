@@ -0,0 +1,123 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.compression;
+
+import java.nio.ByteBuffer;
+
+import se.de.hu_berlin.informatik.utils.compression.VarIntCodec.Encoding;
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+
+/**
+ * Encodes arrays of integers into a byte array, using variable length integers
+ * (see {@link VarIntCodec}). Optionally, each value is stored as the difference to the 
+ * previous value in the same sequence (delta encoding), which results in small values
+ * for sorted sequences. In contrast to {@link IntArraysToCompressedByteArrayProcessor},
+ * no maximum value has to be known, and arbitrary int values (including negative ones)
+ * may be stored.
+ * 
+ * <p> Can be decoded with {@link VarIntByteArrayToIntArraysProcessor}.
+ * 
+ * @author Simon Heiden
+ */
+public class IntArraysToVarIntByteArrayProcessor extends AbstractProcessor<int[],byte[] > {
+
+	static final int HEADER_SIZE = 6;
+	static final int FLAG_DELTA = 1;
+	static final int FLAG_ZIGZAG = 2;
+	
+	private final GrowableByteArray result = new GrowableByteArray();
+	
+	private final Encoding encoding;
+	private final boolean delta;
+	private final boolean zigzag;
+	private int totalSequences = 0;
+	
+	// reused for transformed values
+	private int[] buffer = new int[16];
+	
+	/**
+	 * @param encoding
+	 * the variable length encoding to use
+	 * @param delta
+	 * whether to store the differences of consecutive values instead of the values
+	 * @param signed
+	 * whether the stored values (i.e., the differences, if delta encoding is used) may be 
+	 * negative; if true, the values are zigzag encoded, which makes small negative 
+	 * values small, but needs an additional bit for positive values
+	 */
+	public IntArraysToVarIntByteArrayProcessor(Encoding encoding, boolean delta, boolean signed) {
+		super();
+		this.encoding = encoding;
+		this.delta = delta;
+		this.zigzag = signed;
+		addHeader();
+	}
+	
+	/**
+	 * Uses LEB128 encoding.
+	 * @param delta
+	 * whether to store the differences of consecutive values instead of the values
+	 * @param signed
+	 * whether the stored values (i.e., the differences, if delta encoding is used) may be negative
+	 */
+	public IntArraysToVarIntByteArrayProcessor(boolean delta, boolean signed) {
+		this(Encoding.LEB128, delta, signed);
+	}
+	
+	private void addHeader() {
+		// header should be 6 bytes:
+		// | encoding (1 byte) | flags (1 byte) | total number of sequences (4 bytes) |
+		result.add((byte) encoding.ordinal());
+		result.add((byte) ((delta ? FLAG_DELTA : 0) | (zigzag ? FLAG_ZIGZAG : 0)));
+		//stores the number of sequences in the end (gets replaced later)
+		result.add(new byte[4], 0, 4);
+	}
+
+	/* (non-Javadoc)
+	 * @see se.de.hu_berlin.informatik.utils.tm.ITransmitter#processItem(java.lang.Object)
+	 */
+	@Override
+	public byte[] processItem(int[] intArray) {
+		++totalSequences;
+		int length = intArray.length;
+		if (buffer.length < length) {
+			buffer = new int[Math.max(length, buffer.length * 2)];
+		}
+		
+		int previous = 0;
+		for (int i = 0; i < length; ++i) {
+			int value = intArray[i];
+			if (delta) {
+				// overflows cancel out when decoding
+				int difference = value - previous;
+				previous = value;
+				value = difference;
+			}
+			buffer[i] = zigzag ? VarIntCodec.zigzagEncode(value) : value;
+		}
+		
+		VarIntCodec.writeLEB128(result, length);
+		if (encoding == Encoding.GROUP_VARINT) {
+			VarIntCodec.writeGroupVarInt(result, buffer, 0, length);
+		} else {
+			for (int i = 0; i < length; ++i) {
+				VarIntCodec.writeLEB128(result, buffer[i]);
+			}
+		}
+		
+		return null;
+	}
+
+	@Override
+	public byte[] getResultFromCollectedItems() {
+		ByteBuffer b = ByteBuffer.allocate(4);
+		b.putInt(totalSequences);
+
+		//set the total number of sequences stored
+		result.set(2, b.array());
+		
+		return result.toArray();
+	}
+	
+}
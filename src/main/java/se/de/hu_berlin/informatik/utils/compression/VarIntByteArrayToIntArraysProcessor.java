@@ -0,0 +1,100 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.compression;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import se.de.hu_berlin.informatik.utils.compression.VarIntCodec.Encoding;
+import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+
+/**
+ * Decodes byte arrays that were produced by {@link IntArraysToVarIntByteArrayProcessor}.
+ * 
+ * @author Simon Heiden
+ */
+public class VarIntByteArrayToIntArraysProcessor extends AbstractProcessor<byte[],int[][]> {
+	
+	public VarIntByteArrayToIntArraysProcessor() {
+		super();
+	}
+	
+	/* (non-Javadoc)
+	 * @see se.de.hu_berlin.informatik.utils.tm.ITransmitter#processItem(java.lang.Object)
+	 */
+	@Override
+	public int[][] processItem(byte[] array) {
+		return decode(ByteBuffer.wrap(array));
+	}
+	
+	/**
+	 * Decodes the remaining bytes of the given buffer without copying them.
+	 * @param buffer
+	 * the encoded bytes
+	 * @return
+	 * the decoded sequences
+	 */
+	public int[][] decode(ByteBuffer buffer) {
+		ByteBuffer in = buffer.duplicate();
+		if (in.remaining() < IntArraysToVarIntByteArrayProcessor.HEADER_SIZE) {
+			Log.abort(this, "Could not read header.");
+		}
+		// header should be 6 bytes:
+		// | encoding (1 byte) | flags (1 byte) | total number of sequences (4 bytes) |
+		int encodingIndex = in.get();
+		if (encodingIndex < 0 || encodingIndex >= Encoding.values().length) {
+			Log.abort(this, "Unknown encoding: %d.", encodingIndex);
+		}
+		Encoding encoding = Encoding.values()[encodingIndex];
+		int flags = in.get();
+		boolean delta = (flags & IntArraysToVarIntByteArrayProcessor.FLAG_DELTA) != 0;
+		boolean zigzag = (flags & IntArraysToVarIntByteArrayProcessor.FLAG_ZIGZAG) != 0;
+		int totalSequences = in.getInt();
+		// each sequence needs at least one byte for its length
+		if (totalSequences < 0 || totalSequences > in.remaining()) {
+			Log.abort(this, "Invalid number of sequences: %d (%d bytes left).", totalSequences, in.remaining());
+		}
+		
+		int[][] result = new int[totalSequences][];
+		int sequenceCounter = 0;
+		try {
+			for (; sequenceCounter < totalSequences; ++sequenceCounter) {
+				int length = VarIntCodec.readLEB128(in);
+				// each element needs at least one byte
+				if (length < 0 || length > in.remaining()) {
+					Log.err(this, "Invalid length %d of sequence %d (%d bytes left).", length, sequenceCounter, in.remaining());
+					return Arrays.copyOf(result, sequenceCounter);
+				}
+				int[] sequence = new int[length];
+				if (encoding == Encoding.GROUP_VARINT) {
+					VarIntCodec.readGroupVarInt(in, sequence, 0, length);
+				} else {
+					for (int i = 0; i < length; ++i) {
+						sequence[i] = VarIntCodec.readLEB128(in);
+					}
+				}
+				
+				int previous = 0;
+				for (int i = 0; i < length; ++i) {
+					int value = zigzag ? VarIntCodec.zigzagDecode(sequence[i]) : sequence[i];
+					if (delta) {
+						value += previous;
+						previous = value;
+					}
+					sequence[i] = value;
+				}
+				result[sequenceCounter] = sequence;
+			}
+		} catch (BufferUnderflowException e) {
+			// input ended early; keep what was read
+			Log.err(this, "Input ended after %d of %d sequences.", sequenceCounter, totalSequences);
+			return Arrays.copyOf(result, sequenceCounter);
+		}
+		
+		return result;
+	}
+	
+}
@@ -0,0 +1,195 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.compression;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Variable length encodings for integers. Small values need less bytes than
+ * large ones, so (in contrast to the fixed-width packing of {@link BitPacker}) a single
+ * large value does not inflate the size of all other values, and no maximum value has 
+ * to be known in advance. Negative values should be zigzag encoded first.
+ * 
+ * <p> Supported encodings are LEB128 (7 bits per byte, the highest bit marks whether
+ * more bytes follow) and group varint (groups of 4 values, preceded by a tag byte that
+ * holds the byte lengths of the 4 values; faster to decode since each value is read
+ * as a single masked word, without checking a continuation bit per byte).
+ * 
+ * @author Simon Heiden
+ */
+public final class VarIntCodec {
+	
+	// a tag byte and 4 values with 4 bytes each
+	private static final int MAX_GROUP_SIZE = 17;
+	private static final int[] LENGTH_MASKS = { 0xFF, 0xFFFF, 0xFFFFFF, 0xFFFFFFFF };
+	
+	public enum Encoding {
+		LEB128,
+		GROUP_VARINT
+	}
+	
+	private VarIntCodec() {
+		// static helper methods only
+	}
+	
+	/**
+	 * Maps signed integers to unsigned integers, such that values with a small
+	 * absolute value get mapped to small values (0 -> 0, -1 -> 1, 1 -> 2, -2 -> 3, ...).
+	 * @param n
+	 * the value
+	 * @return
+	 * the zigzag encoded value
+	 */
+	public static int zigzagEncode(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+	
+	/**
+	 * Reverses {@link #zigzagEncode(int)}.
+	 * @param n
+	 * the zigzag encoded value
+	 * @return
+	 * the value
+	 */
+	public static int zigzagDecode(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+	
+	/**
+	 * Appends the given value in LEB128 encoding (1 to 5 bytes). The value is treated as unsigned.
+	 * @param out
+	 * the array to append to
+	 * @param value
+	 * the value
+	 */
+	public static void writeLEB128(GrowableByteArray out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.add((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.add((byte) value);
+	}
+	
+	/**
+	 * Reads a LEB128 encoded value, starting at the current position of the given buffer.
+	 * @param in
+	 * the buffer to read from
+	 * @return
+	 * the value
+	 * @throws BufferUnderflowException
+	 * if the buffer ends in the middle of the value
+	 */
+	public static int readLEB128(ByteBuffer in) {
+		int b = in.get();
+		if (b >= 0) {
+			// the common case: a single byte
+			return b;
+		}
+		int value = b & 0x7F;
+		int shift = 7;
+		do {
+			b = in.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0 && shift < 35);
+		return value;
+	}
+	
+	/**
+	 * Appends the given values in group varint encoding. Each group of (up to) 4 values 
+	 * starts with a tag byte that holds the byte lengths (minus 1) of the 4 values, 
+	 * followed by the little endian bytes of the values. Missing values in the last
+	 * group are encoded as zeroes. The values are treated as unsigned.
+	 * @param out
+	 * the array to append to
+	 * @param values
+	 * the values
+	 * @param offset
+	 * the index of the first value to write
+	 * @param count
+	 * the number of values to write
+	 */
+	public static void writeGroupVarInt(GrowableByteArray out, int[] values, int offset, int count) {
+		out.ensureCapacity(out.size() + (count + 3) / 4 * 17);
+		for (int i = 0; i < count; i += 4) {
+			int tagIndex = out.size();
+			out.add((byte) 0);
+			int tag = 0;
+			for (int j = 0; j < 4; ++j) {
+				int value = i + j < count ? values[offset + i + j] : 0;
+				int length = byteLength(value);
+				tag |= (length - 1) << (j * 2);
+				for (int k = 0; k < length; ++k) {
+					out.add((byte) (value >>> (k * 8)));
+				}
+			}
+			out.set(tagIndex, (byte) tag);
+		}
+	}
+	
+	/**
+	 * Reads values in group varint encoding (see {@link #writeGroupVarInt(GrowableByteArray, int[], int, int)}),
+	 * starting at the current position of the given buffer.
+	 * @param in
+	 * the buffer to read from
+	 * @param values
+	 * the array to write the values to
+	 * @param offset
+	 * the index of the first value to write
+	 * @param count
+	 * the number of values to read
+	 * @throws BufferUnderflowException
+	 * if the buffer ends early
+	 */
+	public static void readGroupVarInt(ByteBuffer in, int[] values, int offset, int count) {
+		boolean bigEndian = in.order() == ByteOrder.BIG_ENDIAN;
+		for (int i = 0; i < count; i += 4) {
+			if (in.remaining() >= MAX_GROUP_SIZE) {
+				// each value is read as a whole (little endian) word and masked to its length
+				int position = in.position();
+				int tag = in.get(position++) & 0xFF;
+				for (int j = 0; j < 4; ++j) {
+					int length = ((tag >>> (j * 2)) & 0x3) + 1;
+					int word = in.getInt(position);
+					if (bigEndian) {
+						word = Integer.reverseBytes(word);
+					}
+					if (i + j < count) {
+						values[offset + i + j] = word & LENGTH_MASKS[length - 1];
+					}
+					position += length;
+				}
+				in.position(position);
+				continue;
+			}
+			// near the end of the buffer, whole words can not be read
+			int tag = in.get() & 0xFF;
+			for (int j = 0; j < 4; ++j) {
+				int length = ((tag >>> (j * 2)) & 0x3) + 1;
+				int value = 0;
+				for (int k = 0; k < length; ++k) {
+					value |= (in.get() & 0xFF) << (k * 8);
+				}
+				if (i + j < count) {
+					values[offset + i + j] = value;
+				}
+			}
+		}
+	}
+	
+	private static int byteLength(int value) {
+		if ((value & 0xFFFFFF00) == 0) {
+			return 1;
+		} else if ((value & 0xFFFF0000) == 0) {
+			return 2;
+		} else if ((value & 0xFF000000) == 0) {
+			return 3;
+		} else {
+			return 4;
+		}
+	}
+	
+}
@@ -4,10 +4,10 @@
 package se.de.hu_berlin.informatik.utils.compression.single;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
 
+import se.de.hu_berlin.informatik.utils.compression.BitPacker;
 import se.de.hu_berlin.informatik.utils.compression.ziputils.ZipFileWrapper;
 import se.de.hu_berlin.informatik.utils.files.FileUtils;
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
@@ -21,30 +21,47 @@ import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
  */
 public class BufferedLongsToCompressedByteArrayProcessor extends AbstractProcessor<Long,byte[] > {
 
-	// same buffer that is used in zip utils
-	private static final int BUFFER_SIZE = 4096;
-
-	PipedOutputStream out;
+	private OutputStream out;
+	
+	private BitPacker packer;
 	
 	private ZipFileWrapper zipFile;
 	
 	private static final byte TOTAL_END_MARKER = 0;
 	
-	private byte[] result;
-	
 	private byte neededBits;
-	private int lastByteIndex = -1;
-	private byte remainingFreeBits = 0;
 
 	private long maxValue;
 
 	private boolean containsZero;
-
-	private Thread zipFileListener;
 	
 	public BufferedLongsToCompressedByteArrayProcessor(
 			Path zipFilePath, String fileName, boolean deleteExisting, 
 			long maxValue, boolean containsZero) throws IOException {
+		this(zipFilePath, fileName, deleteExisting, maxValue, containsZero, true);
+	}
+	
+	/**
+	 * Creates a new entry in the given zip file that is added when the processor gets closed.
+	 * @param zipFilePath
+	 * the zip file
+	 * @param fileName
+	 * the name of the new entry
+	 * @param deleteExisting
+	 * whether to delete an existing zip file first
+	 * @param maxValue
+	 * the maximum value to store
+	 * @param containsZero
+	 * whether the input may contain zeroes
+	 * @param compress
+	 * whether to compress the entry; uncompressed entries may be read from a memory-mapped
+	 * buffer (see {@link ZipFileWrapper#getMappedEntry(String)})
+	 * @throws IOException
+	 * if the entry can not be created
+	 */
+	public BufferedLongsToCompressedByteArrayProcessor(
+			Path zipFilePath, String fileName, boolean deleteExisting, 
+			long maxValue, boolean containsZero, boolean compress) throws IOException {
 		super();
 		if (deleteExisting) {
 			FileUtils.delete(zipFilePath);
@@ -56,68 +73,26 @@ public class BufferedLongsToCompressedByteArrayProcessor extends AbstractProcess
 		
 		zipFile = ZipFileWrapper.getZipFileWrapper(zipFilePath);
 
-		PipedInputStream in = new PipedInputStream();
-		out = new PipedOutputStream(in);
-		
-		zipFileListener = startZipFileListener(fileName, in);
-		zipFileListener.start();
+		// the packed bits are (compressed and) spilled to a temporary file and appended to the zip file on closing
+		out = zipFile.openEntryOutputStream(fileName, compress);
+		packer = new BitPacker(out);
 		
 		this.containsZero = containsZero;
 		this.maxValue = containsZero ? maxValue+1 : maxValue;
-		result = new byte[BUFFER_SIZE];
 		
 		//compute the number of bits needed to represent integers with the given maximum value
-		neededBits = ceilLog2(this.maxValue);
+		neededBits = BitPacker.ceilLog2(this.maxValue);
 
 		//add a header that contains information needed for decoding
 		addHeader(neededBits);
 	}
 
-	private Thread startZipFileListener(String fileName, PipedInputStream in) {
-		return new Thread(new Runnable() {
 
-			@Override
-			public void run() {
-				try {
-					int tries = 0;
-					boolean worked = false;
-					while (!worked) {
-						++tries;
-						try {
-							// Creates a new entry in the zip file and adds the content to the zip file
-							zipFile.addStream(in, fileName);
-							worked = true;
-						} catch (IOException e) {
-							if (tries < 5) {
-								Log.warn(this, "Attempt %d - Error adding stream to zip file '%s'.", tries, zipFile.getzipFilePath());
-								try {
-									Thread.sleep(5000);
-								} catch (InterruptedException e1) {
-									// do nothing
-								}
-							} else {
-								Log.abort(this, e, "Zip file '%s' does not exist.", zipFile.getzipFilePath());
-							}
-						}
-					}
-				} finally {
-					if (in != null) {
-						try {
-							in.close();
-						} catch (IOException e) {
-							// ignore
-						}
-					}
-				}
-			}
-		});
-	}
-	
 	
 	private void addHeader(byte neededBits) throws IOException {
 		// header should be 1 byte:
 		// | number of bits used for one element (1 byte) |
-		out.write(new byte[] {neededBits});
+		packer.writeBytes(neededBits);
 	}
 
 	/* (non-Javadoc)
@@ -139,59 +114,23 @@ public class BufferedLongsToCompressedByteArrayProcessor extends AbstractProcess
 	private void storeNextLong(long element) {
 		if (element > maxValue) {
 			Log.warn(this, "Trying to store '%d', but max value set to '%d'.", element, maxValue);
-			if (ceilLog2(element) > neededBits) {
+			if (BitPacker.ceilLog2(element) > neededBits) {
 				closeOutputStream();
 				Log.abort(this, "Can not store '%d' in %d bits.", element, neededBits);
 			}
 		}
-		//reset the bits left to write
-		byte bitsLeft = neededBits;
-		//keep only relevant bits as defined by the given maximum value
-		element = keepLastNBits(element, bitsLeft);
-		//add bits until all bits of the given number are processed
-		while (bitsLeft > 0) {
-			//add a new byte if no space is left
-			if (remainingFreeBits == 0) {
-				addNewByteToList();
-				//remainingFreeBits > 0 holds now!
-			}
-			//need to shift the bits differently if more bits are left to write than free bits are remaining in the last byte of the list
-			if (bitsLeft > remainingFreeBits) {
-				bitsLeft -= remainingFreeBits;
-				result[lastByteIndex] = (byte) (result[lastByteIndex] | (element >>> bitsLeft));
-				remainingFreeBits = 0;
-				//set the first bits that are processed already to 0 and keep only the last n bits
-				element = keepLastNBits(element, bitsLeft);
-			} else { //bitsLeft <= remainingFreeBits
-				result[lastByteIndex] = (byte) (result[lastByteIndex] | (element << (remainingFreeBits - bitsLeft)));
-				remainingFreeBits -= bitsLeft;
-				bitsLeft = 0;
-			}
-		}
+		packer.write(element, neededBits);
 	}
 
 	private void closeOutputStream() {
 		if (out != null) {
 			storeNextLong(TOTAL_END_MARKER);
 			try {
-				if (lastByteIndex >= 0) {
-					out.write(result, 0, lastByteIndex+1);
-					lastByteIndex = -1;
-				}
-				result = null;
-
-				out.flush();
-				out.close();
-			} catch (IOException e) {
-				Log.abort(this, e, "Could not write to or close output stream.");
+				// writes the remaining bits and closes the stream
+				packer.close();
 			} finally {
-				while (zipFileListener.isAlive()) {
-					try {
-						zipFileListener.join();
-					} catch (InterruptedException e) {
-					}
-				}
 				out = null;
+				packer = null;
 			}
 		}
 		
@@ -204,40 +143,6 @@ public class BufferedLongsToCompressedByteArrayProcessor extends AbstractProcess
 		closeOutputStream();
 		return null;
 	}
-
-	private void addNewByteToList() {
-		++lastByteIndex;
-		remainingFreeBits = 8;
-		writeBuferToStreamIfFull();
-	}
-
-	private void writeBuferToStreamIfFull() {
-		if (lastByteIndex >= BUFFER_SIZE) {
-			try {
-				out.write(result);
-			} catch (IOException e) {
-				Log.abort(this, e, "Could not write to output stream.");
-			}
-			lastByteIndex = 0;
-			result = new byte[BUFFER_SIZE];
-		}
-	}
-	
-	private long keepLastNBits(long element, byte n) {
-		return element & (int)Math.pow(2, n)-1;
-	}
-
-	private static byte ceilLog2(long n) {
-	    if (n < 0) {
-	    	throw new IllegalArgumentException("Can not compute for n = " + n);
-	    }
-	    if (n == 0) {
-	    	Log.warn(BufferedLongsToCompressedByteArrayProcessor.class, "Maximum input number is zero.");
-	    	return 1;
-	    } else {
-	    	return (byte) (64 - Long.numberOfLeadingZeros(n));
-	    }
-	}
 	
 	@Override
 	public boolean finalShutdown() {
@@ -0,0 +1,695 @@
+package se.de.hu_berlin.informatik.utils.compression.ziputils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Appends entries to a (possibly existing) zip archive without rewriting the
+ * existing entries. New local file headers and entry data are written in place of the
+ * old central directory, and only the central directory is rewritten when the appender
+ * gets closed.
+ *
+ * <p> Removing or replacing entries only removes their records from the central
+ * directory (tombstoning). The data of removed entries stays in the archive until it
+ * gets compacted (see {@link ZipFileWrapper#compact()}). Since readers like
+ * {@link java.util.zip.ZipFile} only use the central directory, removed entries are
+ * not visible to them.
+ *
+ * <p> Entry sizes and checksums are patched into the local file headers after each entry
+ * is written, so no data descriptors are needed. Since the sizes are not known in advance,
+ * every local file header reserves a zip64 extended information extra field. Entries that
+ * reach 4 GB (or start at an offset of 4 GB or more) use it in the local header and get a
+ * zip64 extra field in the central directory record, too.
+ *
+ * @author Simon Heiden
+ */
+class ZipAppender implements Closeable {
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_END_SIZE = 56;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	// id, size, original size and compressed size
+	private static final int LOCAL_ZIP64_EXTRA_SIZE = 20;
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+	// names are encoded in UTF-8
+	private static final int FLAG_UTF8 = 0x0800;
+
+	private final FileChannel channel;
+	// maps entry names to their (raw) central directory records
+	private final Map<String, byte[]> centralDirectory;
+
+	private final byte[] buffer = new byte[8192];
+	private int bufferPosition = 0;
+	// position in the file where the buffer starts
+	private long flushedPosition;
+
+	private boolean modified = false;
+
+	// state of the entry that is currently written
+	private EntryOutputStream currentEntry;
+
+	private ZipAppender(FileChannel channel, Map<String, byte[]> centralDirectory, long appendPosition) {
+		this.channel = channel;
+		this.centralDirectory = centralDirectory;
+		this.flushedPosition = appendPosition;
+	}
+
+	/**
+	 * Opens the zip archive at the given path for appending. Creates a new archive if
+	 * the file does not exist or is empty.
+	 * @param zipFilePath
+	 * the path to the archive
+	 * @return
+	 * the appender
+	 * @throws IOException
+	 * if the file can not be opened or is no valid zip archive
+	 */
+	static ZipAppender open(Path zipFilePath) throws IOException {
+		FileChannel channel = FileChannel.open(zipFilePath,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			Map<String, byte[]> centralDirectory = new LinkedHashMap<>();
+			if (channel.size() == 0) {
+				return new ZipAppender(channel, centralDirectory, 0);
+			}
+			long[] directoryLocation = findCentralDirectory(channel);
+			readCentralDirectory(channel, directoryLocation[0], directoryLocation[1], centralDirectory);
+			return new ZipAppender(channel, centralDirectory, directoryLocation[0]);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	// returns the offset and the size of the central directory
+	private static long[] findCentralDirectory(FileChannel channel) throws IOException {
+		long fileSize = channel.size();
+		int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT_SIZE);
+		ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+
+		// search backwards for the end of central directory record
+		for (int pos = tailSize - END_SIZE; pos >= 0; --pos) {
+			if (tail.getInt(pos) != END_SIGNATURE) {
+				continue;
+			}
+			int commentLength = tail.getShort(pos + 20) & 0xFFFF;
+			if (pos + END_SIZE + commentLength != tailSize) {
+				continue;
+			}
+			int entryCount = tail.getShort(pos + 10) & 0xFFFF;
+			long directorySize = tail.getInt(pos + 12) & 0xFFFFFFFFL;
+			long directoryOffset = tail.getInt(pos + 16) & 0xFFFFFFFFL;
+
+			long endPosition = fileSize - tailSize + pos;
+			if ((entryCount == ZIP64_MAGIC_COUNT || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC)
+					&& endPosition >= ZIP64_LOCATOR_SIZE) {
+				ByteBuffer locator = readFully(channel, endPosition - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+				if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+					ByteBuffer zip64End = readFully(channel, locator.getLong(8), ZIP64_END_SIZE);
+					if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+						throw new ZipException("Invalid zip64 end of central directory record.");
+					}
+					directorySize = zip64End.getLong(40);
+					directoryOffset = zip64End.getLong(48);
+				}
+			}
+			return new long[] { directoryOffset, directorySize };
+		}
+		throw new ZipException("No end of central directory record found. No valid zip file?");
+	}
+
+	private static void readCentralDirectory(FileChannel channel, long offset, long size,
+			Map<String, byte[]> centralDirectory) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new ZipException("Central directory too large.");
+		}
+		ByteBuffer directory = readFully(channel, offset, (int) size);
+		int pos = 0;
+		while (pos + CENTRAL_HEADER_SIZE <= size) {
+			if (directory.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory record at offset " + (offset + pos) + ".");
+			}
+			int nameLength = directory.getShort(pos + 28) & 0xFFFF;
+			int extraLength = directory.getShort(pos + 30) & 0xFFFF;
+			int commentLength = directory.getShort(pos + 32) & 0xFFFF;
+			int recordLength = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+			byte[] record = new byte[recordLength];
+			directory.position(pos);
+			directory.get(record);
+			String name = new String(record, CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+			centralDirectory.put(name, record);
+
+			pos += recordLength;
+		}
+	}
+
+	/**
+	 * Reads the central directory of the given archive and computes the offsets
+	 * of the data of all entries (directly after the local file headers).
+	 * @param channel
+	 * a channel of the archive
+	 * @return
+	 * a map from entry names to data offsets
+	 * @throws IOException
+	 * if the archive can not be read or is no valid zip archive
+	 */
+	static Map<String, Long> readDataOffsets(FileChannel channel) throws IOException {
+		Map<String, byte[]> centralDirectory = new LinkedHashMap<>();
+		if (channel.size() > 0) {
+			long[] directoryLocation = findCentralDirectory(channel);
+			readCentralDirectory(channel, directoryLocation[0], directoryLocation[1], centralDirectory);
+		}
+		Map<String, Long> offsets = new HashMap<>();
+		ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		for (Entry<String, byte[]> entry : centralDirectory.entrySet()) {
+			long headerOffset = getLocalHeaderOffset(entry.getValue());
+			localHeader.clear();
+			while (localHeader.hasRemaining()) {
+				if (channel.read(localHeader, headerOffset + localHeader.position()) < 0) {
+					throw new ZipException("Unexpected end of zip file.");
+				}
+			}
+			if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid local file header for entry '" + entry.getKey() + "'.");
+			}
+			// the extra field of the local header may differ from the one in the central directory
+			int nameLength = localHeader.getShort(26) & 0xFFFF;
+			int extraLength = localHeader.getShort(28) & 0xFFFF;
+			offsets.put(entry.getKey(), headerOffset + LOCAL_HEADER_SIZE + nameLength + extraLength);
+		}
+		return offsets;
+	}
+
+	static long getLocalHeaderOffset(byte[] record) {
+		ByteBuffer buffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+		long offset = buffer.getInt(42) & 0xFFFFFFFFL;
+		if (offset != ZIP64_MAGIC) {
+			return offset;
+		}
+		// look up the offset in the zip64 extended information extra field
+		int nameLength = buffer.getShort(28) & 0xFFFF;
+		int extraLength = buffer.getShort(30) & 0xFFFF;
+		int pos = CENTRAL_HEADER_SIZE + nameLength;
+		int end = pos + extraLength;
+		while (pos + 4 <= end) {
+			int id = buffer.getShort(pos) & 0xFFFF;
+			int size = buffer.getShort(pos + 2) & 0xFFFF;
+			if (id == ZIP64_EXTRA_ID) {
+				// fields are only present if the respective value in the record is set to the magic value
+				int fieldPos = pos + 4;
+				if ((buffer.getInt(24) & 0xFFFFFFFFL) == ZIP64_MAGIC) {
+					fieldPos += 8;
+				}
+				if ((buffer.getInt(20) & 0xFFFFFFFFL) == ZIP64_MAGIC) {
+					fieldPos += 8;
+				}
+				return buffer.getLong(fieldPos);
+			}
+			pos += 4 + size;
+		}
+		return offset;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new ZipException("Unexpected end of zip file.");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * @param name
+	 * the name of an entry
+	 * @return
+	 * whether the archive contains a (non-removed) entry with the given name
+	 */
+	boolean contains(String name) {
+		return centralDirectory.containsKey(name);
+	}
+
+	/**
+	 * Starts a new entry. An existing entry with the same name gets replaced. Closes
+	 * the current entry, if any.
+	 * @param name
+	 * the name of the new entry
+	 * @param method
+	 * the compression method ({@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED})
+	 * @return
+	 * an output stream for the content of the entry; closing it closes the entry
+	 * @throws IOException
+	 * if writing fails
+	 */
+	EntryOutputStream putNextEntry(String name, int method) throws IOException {
+		return startEntry(name, method, false);
+	}
+
+	/**
+	 * Adds a new entry with already compressed (or stored) content. An existing entry
+	 * with the same name gets replaced. Closes the current entry, if any.
+	 * @param name
+	 * the name of the new entry
+	 * @param method
+	 * the compression method that was used for the content
+	 * ({@link ZipEntry#DEFLATED} for raw deflate data or {@link ZipEntry#STORED})
+	 * @param data
+	 * the (compressed) content; is read until its end, but not closed
+	 * @param size
+	 * the uncompressed size of the content
+	 * @param crc
+	 * the CRC-32 checksum of the uncompressed content
+	 * @throws IOException
+	 * if reading or writing fails
+	 */
+	void putRawEntry(String name, int method, InputStream data, long size, long crc) throws IOException {
+		EntryOutputStream entry = startEntry(name, method, true);
+		byte[] copyBuffer = new byte[8192];
+		int read;
+		try {
+			while ((read = data.read(copyBuffer)) > 0) {
+				write(copyBuffer, 0, read);
+			}
+		} catch (IOException e) {
+			// drop the incomplete entry; its data is never added to the central directory
+			currentEntry = null;
+			entry.finished = true;
+			throw e;
+		}
+		entry.size = size;
+		entry.rawCrc = crc;
+		closeEntry();
+	}
+
+	private EntryOutputStream startEntry(String name, int method, boolean raw) throws IOException {
+		if (method != ZipEntry.DEFLATED && method != ZipEntry.STORED) {
+			throw new ZipException("Unsupported compression method: " + method);
+		}
+		closeEntry();
+		modified = true;
+		// tombstone an existing entry with the same name
+		centralDirectory.remove(name);
+
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		long headerOffset = position();
+		int dosTime = toDosTime(LocalDateTime.now());
+
+		// crc and sizes get patched when the entry is closed
+		byte[] header = createLocalHeader(nameBytes, method, dosTime, 0, 0, 0);
+		write(header, 0, header.length);
+
+		currentEntry = new EntryOutputStream(name, nameBytes, method, headerOffset, dosTime, raw);
+		return currentEntry;
+	}
+
+	/**
+	 * Closes the current entry, if any.
+	 * @throws IOException
+	 * if writing fails
+	 */
+	void closeEntry() throws IOException {
+		if (currentEntry != null) {
+			EntryOutputStream entry = currentEntry;
+			currentEntry = null;
+			entry.finish();
+		}
+	}
+
+	/**
+	 * Removes the entries with the given names (tombstoning). The data stays in the
+	 * archive until it gets compacted.
+	 * @param names
+	 * the names of the entries to remove
+	 * @throws IOException
+	 * if writing fails
+	 */
+	void removeEntries(Collection<String> names) throws IOException {
+		closeEntry();
+		for (String name : names) {
+			if (centralDirectory.remove(name) != null) {
+				modified = true;
+			}
+		}
+	}
+
+	/**
+	 * Writes the central directory and closes the archive.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			closeEntry();
+			if (modified) {
+				writeCentralDirectory();
+				flushBuffer();
+				channel.truncate(flushedPosition);
+				channel.force(false);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void writeCentralDirectory() throws IOException {
+		long directoryOffset = position();
+		for (byte[] record : centralDirectory.values()) {
+			write(record, 0, record.length);
+		}
+		long directorySize = position() - directoryOffset;
+		long entryCount = centralDirectory.size();
+
+		boolean zip64 = entryCount >= ZIP64_MAGIC_COUNT
+				|| directorySize >= ZIP64_MAGIC || directoryOffset >= ZIP64_MAGIC;
+		if (zip64) {
+			long zip64EndOffset = position();
+			ByteBuffer zip64End = ByteBuffer.allocate(ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			zip64End.putInt(ZIP64_END_SIGNATURE);
+			// size of the remaining record
+			zip64End.putLong(ZIP64_END_SIZE - 12);
+			zip64End.putShort((short) 45);
+			zip64End.putShort((short) 45);
+			zip64End.putInt(0);
+			zip64End.putInt(0);
+			zip64End.putLong(entryCount);
+			zip64End.putLong(entryCount);
+			zip64End.putLong(directorySize);
+			zip64End.putLong(directoryOffset);
+			// locator
+			zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+			zip64End.putInt(0);
+			zip64End.putLong(zip64EndOffset);
+			zip64End.putInt(1);
+			write(zip64End.array(), 0, zip64End.capacity());
+		}
+
+		ByteBuffer end = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		end.putInt(END_SIGNATURE);
+		end.putShort((short) 0);
+		end.putShort((short) 0);
+		end.putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT));
+		end.putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT));
+		end.putInt((int) Math.min(directorySize, ZIP64_MAGIC));
+		end.putInt((int) Math.min(directoryOffset, ZIP64_MAGIC));
+		end.putShort((short) 0);
+		write(end.array(), 0, END_SIZE);
+	}
+
+	private long position() {
+		return flushedPosition + bufferPosition;
+	}
+
+	private void write(byte[] bytes, int offset, int length) throws IOException {
+		if (length > buffer.length - bufferPosition) {
+			flushBuffer();
+			if (length >= buffer.length) {
+				writeFully(ByteBuffer.wrap(bytes, offset, length), flushedPosition);
+				flushedPosition += length;
+				return;
+			}
+		}
+		System.arraycopy(bytes, offset, buffer, bufferPosition, length);
+		bufferPosition += length;
+	}
+
+	private void flushBuffer() throws IOException {
+		if (bufferPosition > 0) {
+			writeFully(ByteBuffer.wrap(buffer, 0, bufferPosition), flushedPosition);
+			flushedPosition += bufferPosition;
+			bufferPosition = 0;
+		}
+	}
+
+	private void writeFully(ByteBuffer bytes, long position) throws IOException {
+		while (bytes.hasRemaining()) {
+			position += channel.write(bytes, position);
+		}
+	}
+
+	private static int versionNeeded(int method, boolean zip64) {
+		if (zip64) {
+			return 45;
+		}
+		return method == ZipEntry.STORED ? 10 : 20;
+	}
+
+	/**
+	 * Creates a local file header, including the name and a zip64 extended information
+	 * extra field that holds both sizes. The sizes in the header itself are set to the
+	 * magic value if one of them does not fit into 32 bits.
+	 * @param nameBytes
+	 * the UTF-8 encoded name of the entry
+	 * @param method
+	 * the compression method
+	 * @param dosTime
+	 * the modification time
+	 * @param crc
+	 * the CRC-32 checksum of the content
+	 * @param compressedSize
+	 * the size of the (compressed) data
+	 * @param size
+	 * the size of the content
+	 * @return
+	 * the header
+	 */
+	static byte[] createLocalHeader(byte[] nameBytes, int method, int dosTime,
+			long crc, long compressedSize, long size) {
+		boolean zip64 = compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+		ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length + LOCAL_ZIP64_EXTRA_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(LOCAL_HEADER_SIGNATURE);
+		header.putShort((short) versionNeeded(method, zip64));
+		header.putShort((short) FLAG_UTF8);
+		header.putShort((short) method);
+		header.putInt(dosTime);
+		header.putInt((int) crc);
+		header.putInt((int) (zip64 ? ZIP64_MAGIC : compressedSize));
+		header.putInt((int) (zip64 ? ZIP64_MAGIC : size));
+		header.putShort((short) nameBytes.length);
+		header.putShort((short) LOCAL_ZIP64_EXTRA_SIZE);
+		header.put(nameBytes);
+		// the local zip64 field always holds both sizes
+		header.putShort((short) ZIP64_EXTRA_ID);
+		header.putShort((short) (LOCAL_ZIP64_EXTRA_SIZE - 4));
+		header.putLong(size);
+		header.putLong(compressedSize);
+		return header.array();
+	}
+
+	/**
+	 * Creates a central directory record. Values that do not fit into 32 bits are set
+	 * to the magic value and stored in a zip64 extended information extra field instead
+	 * (in the order original size, compressed size, local header offset).
+	 * @param nameBytes
+	 * the UTF-8 encoded name of the entry
+	 * @param method
+	 * the compression method
+	 * @param dosTime
+	 * the modification time
+	 * @param crc
+	 * the CRC-32 checksum of the content
+	 * @param compressedSize
+	 * the size of the (compressed) data
+	 * @param size
+	 * the size of the content
+	 * @param headerOffset
+	 * the offset of the local file header
+	 * @return
+	 * the record
+	 */
+	static byte[] createCentralDirectoryRecord(byte[] nameBytes, int method, int dosTime,
+			long crc, long compressedSize, long size, long headerOffset) {
+		boolean zip64Size = size >= ZIP64_MAGIC;
+		boolean zip64CompressedSize = compressedSize >= ZIP64_MAGIC;
+		boolean zip64Offset = headerOffset >= ZIP64_MAGIC;
+		int zip64Fields = (zip64Size ? 1 : 0) + (zip64CompressedSize ? 1 : 0) + (zip64Offset ? 1 : 0);
+		int extraLength = zip64Fields > 0 ? 4 + 8 * zip64Fields : 0;
+		ByteBuffer record = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + nameBytes.length + extraLength)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		record.putInt(CENTRAL_HEADER_SIGNATURE);
+		// version made by / version needed
+		record.putShort((short) 45);
+		record.putShort((short) versionNeeded(method, zip64Fields > 0));
+		record.putShort((short) FLAG_UTF8);
+		record.putShort((short) method);
+		record.putInt(dosTime);
+		record.putInt((int) crc);
+		record.putInt((int) (zip64CompressedSize ? ZIP64_MAGIC : compressedSize));
+		record.putInt((int) (zip64Size ? ZIP64_MAGIC : size));
+		record.putShort((short) nameBytes.length);
+		record.putShort((short) extraLength);
+		// comment length, disk number, internal and external attributes
+		record.putShort((short) 0);
+		record.putShort((short) 0);
+		record.putShort((short) 0);
+		record.putInt(0);
+		record.putInt((int) (zip64Offset ? ZIP64_MAGIC : headerOffset));
+		record.put(nameBytes);
+		if (zip64Fields > 0) {
+			record.putShort((short) ZIP64_EXTRA_ID);
+			record.putShort((short) (8 * zip64Fields));
+			if (zip64Size) {
+				record.putLong(size);
+			}
+			if (zip64CompressedSize) {
+				record.putLong(compressedSize);
+			}
+			if (zip64Offset) {
+				record.putLong(headerOffset);
+			}
+		}
+		return record.array();
+	}
+
+	private static int toDosTime(LocalDateTime time) {
+		if (time.getYear() < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+				| time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+	}
+
+	/**
+	 * Output stream for the content of a single entry. Compresses the content
+	 * if necessary and keeps track of sizes and the checksum.
+	 */
+	class EntryOutputStream extends OutputStream {
+
+		private final String name;
+		private final byte[] nameBytes;
+		private final int method;
+		private final long headerOffset;
+		private final int dosTime;
+		private final long dataOffset;
+
+		private final CRC32 crc = new CRC32();
+		private final Deflater deflater;
+		private final byte[] deflaterBuffer;
+		private long size = 0;
+		// checksum of raw (already compressed) content; negative otherwise
+		private long rawCrc = -1;
+		private boolean finished = false;
+
+		private EntryOutputStream(String name, byte[] nameBytes, int method, long headerOffset, int dosTime, boolean raw) {
+			this.name = name;
+			this.nameBytes = nameBytes;
+			this.method = method;
+			this.headerOffset = headerOffset;
+			this.dosTime = dosTime;
+			this.dataOffset = position();
+			if (method == ZipEntry.DEFLATED && !raw) {
+				this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+				this.deflaterBuffer = new byte[4096];
+			} else {
+				this.deflater = null;
+				this.deflaterBuffer = null;
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			if (finished || rawCrc >= 0) {
+				throw new IOException("Entry '" + name + "' is already closed.");
+			}
+			if (length == 0) {
+				return;
+			}
+			crc.update(bytes, offset, length);
+			size += length;
+			if (deflater == null) {
+				ZipAppender.this.write(bytes, offset, length);
+			} else {
+				deflater.setInput(bytes, offset, length);
+				while (!deflater.needsInput()) {
+					deflate();
+				}
+			}
+		}
+
+		private void deflate() throws IOException {
+			int len = deflater.deflate(deflaterBuffer, 0, deflaterBuffer.length);
+			if (len > 0) {
+				ZipAppender.this.write(deflaterBuffer, 0, len);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (currentEntry == this) {
+				closeEntry();
+			} else {
+				finish();
+			}
+		}
+
+		private void finish() throws IOException {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			if (deflater != null) {
+				try {
+					deflater.finish();
+					while (!deflater.finished()) {
+						deflate();
+					}
+				} finally {
+					deflater.end();
+				}
+			}
+			long compressedSize = position() - dataOffset;
+
+			// patch the local file header (which keeps its length)
+			flushBuffer();
+			writeFully(ByteBuffer.wrap(createLocalHeader(nameBytes, method, dosTime, getCrc(), compressedSize, size)),
+					headerOffset);
+
+			centralDirectory.put(name, createCentralDirectoryRecord(
+					nameBytes, method, dosTime, getCrc(), compressedSize, size, headerOffset));
+		}
+
+		private long getCrc() {
+			return rawCrc >= 0 ? rawCrc : crc.getValue();
+		}
+	}
+
+}
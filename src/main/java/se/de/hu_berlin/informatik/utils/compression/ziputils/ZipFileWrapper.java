@@ -1,28 +1,41 @@
 package se.de.hu_berlin.informatik.utils.compression.ziputils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
@@ -31,11 +44,32 @@ import se.de.hu_berlin.informatik.utils.miscellaneous.Misc;
 public class ZipFileWrapper {
 	
 	final private Path zipFilePath;
-	private ZipOutputStream outputStream;
-	private ReentrantLock readWriteLock = new ReentrantLock();
+	private ZipAppender outputStream;
+	// readers share the cached read handle; writes and (re)opening the read handle are exclusive
+	private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+	
+	// entries that are currently written through output streams (see openEntryOutputStream)
+	private final Set<ZipEntryOutputStream> openEntries = ConcurrentHashMap.newKeySet();
+	
+	// cached read-only handle and index of all entries; invalidated on writes
+	private ZipFile readHandle;
+	private Map<String, ZipEntry> entryIndex;
+	private BasicFileAttributes readHandleAttributes;
+	private IOException readHandleError;
+	
+	// checking for external modifications needs a stat call, so it is only done once per interval
+	private volatile long externalCheckIntervalMillis = 1000;
+	private volatile long lastExternalCheck;
+	
+	// lazily opened channel and data offsets for memory-mapping stored entries; invalidated on writes
+	private final Object mappingLock = new Object();
+	private FileChannel mappingChannel;
+	private Map<String, Long> dataOffsets;
 	
 //	Map<String, String> env;
 	
+	private static final long SHUTDOWN_LOCK_TIMEOUT_SECONDS = 10;
+	
 	final private static Map<String,ZipFileWrapper> zipFileCache = new ConcurrentHashMap<>();
 	
 	private ZipFileWrapper(final Path zipFilePath) {
@@ -56,7 +90,31 @@ public class ZipFileWrapper {
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			@Override
 			public void run() {
-				closeOpenOutputStream();
+				// finish entries that are still being written, so their content is not lost
+				for (ZipEntryOutputStream entry : openEntries) {
+					try {
+						entry.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+				// do not interfere with a write that is still in progress
+				boolean locked = false;
+				try {
+					locked = readWriteLock.writeLock().tryLock(SHUTDOWN_LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// give up
+				}
+				if (!locked) {
+					System.err.println("Could not close zip file '" + zipFilePath + "' in time.");
+					return;
+				}
+				try {
+					closeOpenOutputStream();
+					invalidateReadHandle();
+				} finally {
+					readWriteLock.writeLock().unlock();
+				}
 //				for (Entry<String, ZipOutputStream> entry : openOutputStreams.entrySet()) {
 //					if (entry.getValue() != null) {
 //						try {
@@ -71,11 +129,12 @@ public class ZipFileWrapper {
 	}
 
 	public byte[] get(String fileName, boolean logError) {
-		readWriteLock.lock();
+		lockForReading();
 		try {
-			closeOpenOutputStream();
-			try (ZipFile zipFile = new ZipFile(zipFilePath.toString())) {
-				if (zipFile.getEntry(fileName) == null) {
+			ZipEntry entry;
+			try {
+				entry = getEntry(fileName);
+				if (entry == null) {
 					if (logError) {
 						Log.err(this, "Unable to get zipped file '%s'.", fileName);
 					}
@@ -89,45 +148,43 @@ public class ZipFileWrapper {
 			}
 
 			try {
-				return uncheckedGet(fileName);
-			} catch (ZipException e) {
+				return getBytesFromInputStream(getReadHandle().getInputStream(entry));
+			} catch (IOException e) {
 				if (logError) {
 					Log.err(this, e, "Error in zipped file '%s'", fileName);
 				}
 				return null;
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.readLock().unlock();
 		}
 	}
 	
 	public boolean exists(String fileName) throws ZipException {
-		readWriteLock.lock();
+		lockForReading();
 		try {
-			closeOpenOutputStream();
-			try (ZipFile zipFile = new ZipFile(zipFilePath.toString()) ){
-				ZipEntry entry = zipFile.getEntry(fileName);
+			try {
+				ZipEntry entry = getEntry(fileName);
 				return entry != null;
 			} catch (IOException e) {
 				throw new ZipException("Reading file '" + fileName + "' failed!");
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.readLock().unlock();
 		}
 	}
 	
 	public long getEntrySize(String fileName) throws ZipException {
-		readWriteLock.lock();
+		lockForReading();
 		try {
-			closeOpenOutputStream();
-			try (ZipFile zipFile = new ZipFile(zipFilePath.toString()) ){
-				ZipEntry entry = zipFile.getEntry(fileName);
+			try {
+				ZipEntry entry = getEntry(fileName);
 				return entry.getSize();
 			} catch (IOException e) {
 				throw new ZipException("Reading file '" + fileName + "' failed!");
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.readLock().unlock();
 		}
 	}
 	
@@ -136,11 +193,11 @@ public class ZipFileWrapper {
 	}
 	
 	public byte[] uncheckedGet(String fileName) throws ZipException {
-		readWriteLock.lock();
+		lockForReading();
 		try {
-			closeOpenOutputStream();
-			try (ZipFile zipFile = new ZipFile(zipFilePath.toString()) ){
-				ZipEntry entry = zipFile.getEntry(fileName);
+			try {
+				ZipFile zipFile = getReadHandle();
+				ZipEntry entry = getEntry(fileName);
 				if (entry == null) {
 					throw new ZipException("File '" + fileName + "' does not exist in zip file'" + zipFilePath.toString() + "'!");
 				}
@@ -149,30 +206,30 @@ public class ZipFileWrapper {
 				throw new ZipException("Reading input stream from file '" + fileName + "' failed!");
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.readLock().unlock();
 		}
 	}
 
 	public byte[] uncheckedGet(ZipEntry fileHeader) throws ZipException {
-		readWriteLock.lock();
+		lockForReading();
 		try {
-			closeOpenOutputStream();
-			try (ZipFile zipFile = new ZipFile(zipFilePath.toString()) ){
+			try {
+				ZipFile zipFile = getReadHandle();
 				return getBytesFromInputStream(zipFile.getInputStream(fileHeader));
 			} catch (IOException e) {
 				throw new ZipException("Reading input stream from file '" + fileHeader.getName() + "' failed!");
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.readLock().unlock();
 		}
 	}
 	
 	public byte[] uncheckedGet(String fileName, long start, int byteCount) throws ZipException {
-		readWriteLock.lock();
+		lockForReading();
 		try {
-			closeOpenOutputStream();
-			try (ZipFile zipFile = new ZipFile(zipFilePath.toString()) ){
-				ZipEntry entry = zipFile.getEntry(fileName);
+			try {
+				ZipFile zipFile = getReadHandle();
+				ZipEntry entry = getEntry(fileName);
 				if (entry == null) {
 					throw new ZipException("File '" + fileName + "' does not exist in zip file'" + zipFilePath.toString() + "'!");
 				}
@@ -182,30 +239,30 @@ public class ZipFileWrapper {
 				throw new ZipException("Reading input stream from file '" + this.zipFilePath + "/" + fileName + "' failed!");
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.readLock().unlock();
 		}
 	}
 
 	public byte[] uncheckedGet(ZipEntry fileHeader, long start, int byteCount) throws ZipException {
-		readWriteLock.lock();
+		lockForReading();
 		try {
-			closeOpenOutputStream();
-			try (ZipFile zipFile = new ZipFile(zipFilePath.toString()) ){
+			try {
+				ZipFile zipFile = getReadHandle();
 				return getBytesFromInputStream(zipFile.getInputStream(fileHeader), start, byteCount);
 			} catch (IOException e) {
 				throw new ZipException("Reading input stream from file '" + fileHeader.getName() + "' failed!");
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.readLock().unlock();
 		}
 	}
 	
 	public List<byte[]> uncheckedGet(String fileName, List<Integer> chunkLengths) throws ZipException {
-		readWriteLock.lock();
+		lockForReading();
 		try {
-			closeOpenOutputStream();
-			try (ZipFile zipFile = new ZipFile(zipFilePath.toString()) ){
-				ZipEntry entry = zipFile.getEntry(fileName);
+			try {
+				ZipFile zipFile = getReadHandle();
+				ZipEntry entry = getEntry(fileName);
 				if (entry == null) {
 					throw new ZipException("File '" + fileName + "' does not exist in zip file'" + zipFilePath.toString() + "'!");
 				}
@@ -214,7 +271,219 @@ public class ZipFileWrapper {
 				throw new ZipException("Reading input stream from file '" + fileName + "' failed!");
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Checks whether the entry with the given name is stored without compression
+	 * (and thus can be accessed with {@link #getMappedEntry(String)}).
+	 * @param fileName
+	 * the name of the entry
+	 * @return
+	 * true if the entry exists and is stored
+	 * @throws ZipException
+	 * if the zip file can not be read
+	 */
+	public boolean isStored(String fileName) throws ZipException {
+		lockForReading();
+		try {
+			try {
+				ZipEntry entry = getEntry(fileName);
+				return entry != null && entry.getMethod() == ZipEntry.STORED;
+			} catch (IOException e) {
+				throw new ZipException("Reading file '" + fileName + "' failed!");
+			}
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Maps the content of a stored (uncompressed) entry directly from the zip file
+	 * into memory, without copying it (see {@link #addArray(byte[], String, boolean)}).
+	 * The returned buffer is read-only and stays valid after the zip file is closed
+	 * or modified through this wrapper, since existing entry data is never overwritten
+	 * (see {@link #compact()}, though, which replaces the file).
+	 * @param fileName
+	 * the name of the entry
+	 * @return
+	 * a read-only buffer holding exactly the content of the entry
+	 * @throws ZipException
+	 * if the entry does not exist, is compressed or can not be mapped
+	 */
+	public MappedByteBuffer getMappedEntry(String fileName) throws ZipException {
+		lockForReading();
+		try {
+			try {
+				ZipEntry entry = getEntry(fileName);
+				if (entry == null) {
+					throw new ZipException("File '" + fileName + "' does not exist in zip file'" + zipFilePath.toString() + "'!");
+				}
+				if (entry.getMethod() != ZipEntry.STORED) {
+					throw new ZipException("File '" + fileName + "' is compressed and can not be mapped.");
+				}
+				FileChannel channel = getMappingChannel();
+				long offset = getDataOffset(fileName);
+				return channel.map(FileChannel.MapMode.READ_ONLY, offset, entry.getCompressedSize());
+			} catch (ZipException e) {
+				throw e;
+			} catch (IOException e) {
+				throw new ZipException("Mapping file '" + fileName + "' failed!");
+			}
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns an input stream for the (uncompressed) content of the given entry, starting
+	 * at the block with the given offset. Only the blocks that are actually read get inflated.
+	 * Blocks are started with {@link ZipEntryOutputStream#startNewBlock()}, and
+	 * the offset 0 denotes the start of the entry. 
+	 * 
+	 * <p> The stream reads directly from the zip file and stays valid after the zip file 
+	 * is modified through this wrapper (but not after {@link #compact()}).
+	 * @param fileName
+	 * the name of the entry
+	 * @param blockOffset
+	 * the offset of the block, as returned by {@link ZipEntryOutputStream#startNewBlock()}
+	 * @return
+	 * the input stream
+	 * @throws ZipException
+	 * if the entry does not exist or can not be read
+	 */
+	public InputStream getBlockInputStream(String fileName, long blockOffset) throws ZipException {
+		lockForReading();
+		try {
+			try {
+				ZipEntry entry = getEntry(fileName);
+				if (entry == null) {
+					throw new ZipException("File '" + fileName + "' does not exist in zip file'" + zipFilePath.toString() + "'!");
+				}
+				long length = entry.getCompressedSize() - blockOffset;
+				if (blockOffset < 0 || length < 0) {
+					throw new ZipException("Invalid block offset " + blockOffset + " for file '" + fileName + "'.");
+				}
+				long offset = getDataOffset(fileName);
+				// use an own channel to not interfere with other readers
+				FileChannel channel = FileChannel.open(zipFilePath, StandardOpenOption.READ);
+				channel.position(offset + blockOffset);
+				InputStream in = new BufferedInputStream(
+						new LimitedInputStream(Channels.newInputStream(channel), length));
+				if (entry.getMethod() == ZipEntry.STORED) {
+					return in;
+				}
+				Inflater inflater = new Inflater(true);
+				return new InflaterInputStream(in, inflater, 4096) {
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							inflater.end();
+						}
+					}
+				};
+			} catch (ZipException e) {
+				throw e;
+			} catch (IOException e) {
+				throw new ZipException("Reading file '" + fileName + "' failed!");
+			}
+		} finally {
+			readWriteLock.readLock().unlock();
+		}
+	}
+	
+	private FileChannel getMappingChannel() throws IOException {
+		synchronized (mappingLock) {
+			if (mappingChannel == null) {
+				FileChannel newChannel = FileChannel.open(zipFilePath, StandardOpenOption.READ);
+				try {
+					dataOffsets = ZipAppender.readDataOffsets(newChannel);
+				} catch (IOException e) {
+					newChannel.close();
+					throw e;
+				}
+				mappingChannel = newChannel;
+			}
+			return mappingChannel;
+		}
+	}
+	
+	/**
+	 * Returns the offset of the data of the given entry in the zip file.
+	 * Must be called while holding the read lock.
+	 * @param fileName
+	 * the name of the entry
+	 * @return
+	 * the offset
+	 * @throws IOException
+	 * if the entry does not exist or the zip file can not be read
+	 */
+	private long getDataOffset(String fileName) throws IOException {
+		Long offset;
+		synchronized (mappingLock) {
+			getMappingChannel();
+			offset = dataOffsets.get(fileName);
+		}
+		if (offset == null) {
+			throw new ZipException("File '" + fileName + "' not found in central directory of zip file '" + zipFilePath.toString() + "'!");
+		}
+		return offset;
+	}
+	
+	/**
+	 * Input stream that reads at most a given number of bytes from another stream.
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+		
+		private long remaining;
+
+		private LimitedInputStream(InputStream in, long limit) {
+			super(in);
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b >= 0) {
+				--remaining;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = super.read(b, off, (int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
 		}
 	}
 
@@ -233,11 +502,12 @@ public class ZipFileWrapper {
 	
 
 	public void close() {
-		readWriteLock.lock();
+		readWriteLock.writeLock().lock();
 		try {
 			closeOpenOutputStream();
+			invalidateReadHandle();
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.writeLock().unlock();
 		}
 	}
 	
@@ -253,113 +523,495 @@ public class ZipFileWrapper {
 		}
 	}
 	
-	private ZipOutputStream getOutputStream(Collection<String> excludeFiles) {
-		if (excludeFiles != null) {
-			closeOpenOutputStream();
+	/**
+	 * Acquires the read lock and makes sure that the cached read handle is up to date.
+	 * If the read handle has to be (re)opened (or an output stream has to be closed first),
+	 * the write lock is acquired temporarily and downgraded to the read lock afterwards.
+	 * Always returns holding the read lock, even if the zip file could not be opened
+	 * (in which case {@link #getReadHandle()} throws an exception).
+	 * 
+	 * <p> Must not be called while already holding the read lock, since the lock can not
+	 * be upgraded.
+	 */
+	private void lockForReading() {
+		readWriteLock.readLock().lock();
+		if (isReadHandleValid()) {
+			// the common case: many readers share the open handle
+			return;
 		}
-		if (outputStream == null) {
-			// new file or previously closed
+		readWriteLock.readLock().unlock();
+		readWriteLock.writeLock().lock();
+		try {
+			openReadHandle();
+		} catch (IOException e) {
+			readHandleError = e;
+		} finally {
+			// downgrade to the read lock
+			readWriteLock.readLock().lock();
+			readWriteLock.writeLock().unlock();
+		}
+	}
+	
+	private boolean isReadHandleValid() {
+		if (outputStream != null || readHandle == null) {
+			return false;
+		}
+		long interval = externalCheckIntervalMillis;
+		if (interval < 0) {
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		if (now - lastExternalCheck < interval) {
+			return true;
+		}
+		lastExternalCheck = now;
+		return !isModifiedExternally();
+	}
+	
+	// safety net for modifications that did not go through this wrapper
+	private boolean isModifiedExternally() {
+		BasicFileAttributes attributes = readAttributes();
+		return attributes == null 
+				|| !attributes.lastModifiedTime().equals(readHandleAttributes.lastModifiedTime())
+				|| attributes.size() != readHandleAttributes.size()
+				|| (attributes.fileKey() != null && !attributes.fileKey().equals(readHandleAttributes.fileKey()));
+	}
+	
+	/**
+	 * Sets how often the cached read handle is checked for modifications of the zip file 
+	 * that did not go through this wrapper. Each check needs to read the file attributes, 
+	 * so reads in between rely on the cached handle. Modifications through this wrapper 
+	 * are always detected.
+	 * @param interval
+	 * the minimal time between two checks (0 to check on every read, 
+	 * a negative value to never check; default: 1 second)
+	 * @param unit
+	 * the time unit of the interval
+	 * @return
+	 * this
+	 */
+	public ZipFileWrapper setExternalModificationCheckInterval(long interval, TimeUnit unit) {
+		this.externalCheckIntervalMillis = interval < 0 ? -1 : unit.toMillis(interval);
+		return this;
+	}
+	
+	/**
+	 * (Re)opens the read-only handle of the zip file and rebuilds the entry index
+	 * if necessary. Closes any open output stream first. Must be called while 
+	 * holding the write lock.
+	 * @throws IOException
+	 * if the zip file can not be opened
+	 */
+	private void openReadHandle() throws IOException {
+		closeOpenOutputStream();
+		if (readHandle != null && externalCheckIntervalMillis >= 0 && isModifiedExternally()) {
+			invalidateReadHandle();
+		}
+		if (readHandle == null) {
+			readHandleError = null;
+			BasicFileAttributes attributes = readAttributes();
+			ZipFile zipFile = new ZipFile(zipFilePath.toString());
+			Map<String, ZipEntry> index = new LinkedHashMap<>();
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				index.put(entry.getName(), entry);
+			}
+			readHandle = zipFile;
+			entryIndex = index;
+			readHandleAttributes = attributes;
+			lastExternalCheck = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * Returns the cached read-only handle of the zip file. Must be called while 
+	 * holding the read lock (see {@link #lockForReading()}).
+	 * @return
+	 * the read handle
+	 * @throws IOException
+	 * if the zip file could not be opened
+	 */
+	private ZipFile getReadHandle() throws IOException {
+		if (readHandle == null) {
+			throw new IOException("Could not open zip file '" + zipFilePath + "'.", readHandleError);
+		}
+		return readHandle;
+	}
+	
+	private BasicFileAttributes readAttributes() {
+		try {
+			return Files.readAttributes(zipFilePath, BasicFileAttributes.class);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Looks up the entry with the given name in the cached entry index.
+	 * Must be called while holding the read lock.
+	 * @param fileName
+	 * the name of the entry
+	 * @return
+	 * the entry, or null if it does not exist
+	 * @throws IOException
+	 * if the zip file can not be opened
+	 */
+	private ZipEntry getEntry(String fileName) throws IOException {
+		getReadHandle();
+		return entryIndex.get(fileName);
+	}
+	
+	/**
+	 * Closes the cached read handle. Has to be called before the zip file gets modified.
+	 */
+	private void invalidateReadHandle() {
+		if (readHandle != null) {
 			try {
-				if (zipFilePath.toAbsolutePath().toFile().exists()) {
-					// the zip file already exists... need to rewrite zip archive...
-					try {
-						File source = zipFilePath.toFile();
-						File tmpZip = File.createTempFile(source.getName(), null);
-						tmpZip.delete();
-						Files.move(zipFilePath, tmpZip.toPath());
-						byte[] buffer = new byte[4096];
-						ZipInputStream zin = new ZipInputStream(new FileInputStream(tmpZip));
-						ZipOutputStream out = new ZipOutputStream(new FileOutputStream(source));
-
-						if (excludeFiles == null) {
-							for (ZipEntry ze = zin.getNextEntry(); ze != null; ze = zin.getNextEntry()) {
-								out.putNextEntry(ze);
-								int read;
-								while ((read = zin.read(buffer)) > 0) {
-									out.write(buffer, 0, read);
-								}
-								out.closeEntry();
-							}
-						} else {
-							for (ZipEntry ze = zin.getNextEntry(); ze != null; ze = zin.getNextEntry()) {
-								if (excludeFiles.contains(ze.getName())) {
-									// skip entries to exclude
-//									System.err.println("removing " + ze.getName());
-									continue;
-								}
-								out.putNextEntry(ze);
-								int read;
-								while ((read = zin.read(buffer)) > 0) {
-									out.write(buffer, 0, read);
-								}
-								out.closeEntry();
-							}
-						}
-
-						zin.close();
-						tmpZip.delete();
-						outputStream = out;
-					} catch(Exception e) {
-						e.printStackTrace();
-					}
-				} else {
-					// new zip file!
-					zipFilePath.getParent().toFile().mkdirs();
-					outputStream = new ZipOutputStream(new FileOutputStream(zipFilePath.toFile()));
+				readHandle.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			readHandle = null;
+			entryIndex = null;
+			readHandleAttributes = null;
+		}
+		synchronized (mappingLock) {
+			if (mappingChannel != null) {
+				try {
+					// already mapped buffers stay valid
+					mappingChannel.close();
+				} catch (IOException e) {
+					// ignore
 				}
-			} catch (FileNotFoundException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				mappingChannel = null;
+				dataOffsets = null;
 			}
 		}
-
+	}
+	
+	/**
+	 * Returns the appender for the zip file, opening it if necessary. New entries
+	 * are appended to the existing archive; only the central directory gets rewritten
+	 * when the appender is closed. Must be called while holding the lock.
+	 * @return
+	 * the appender
+	 * @throws IOException
+	 * if the zip file can not be opened
+	 */
+	private ZipAppender getOutputStream() throws IOException {
+		// about to write to the zip file
+		invalidateReadHandle();
+		if (outputStream == null) {
+			// new file or previously closed
+			Path parent = zipFilePath.toAbsolutePath().getParent();
+			if (parent != null) {
+				parent.toFile().mkdirs();
+			}
+			outputStream = ZipAppender.open(zipFilePath);
+		}
 		return outputStream;
 	}
 	
+	/**
+	 * Removes the given entries from the zip file. The entries are only removed from
+	 * the central directory; their data stays in the file until {@link #compact()} is called.
+	 * @param files
+	 * the names of the entries to remove
+	 */
 	public void removeEntries(Collection<String> files) {
-		getOutputStream(files);
+		readWriteLock.writeLock().lock();
+		try {
+			getOutputStream().removeEntries(files);
+		} catch (IOException e) {
+			Log.err(this, e, "Could not remove entries from zip file '%s'.", zipFilePath);
+		} finally {
+			readWriteLock.writeLock().unlock();
+		}
 	}
 	
 	public void addArray(byte[] array, String fileName) {
+		addArray(array, fileName, true);
+	}
+	
+	/**
+	 * Adds the given array as a new entry. An existing entry with the same name gets replaced.
+	 * @param array
+	 * the content of the entry
+	 * @param fileName
+	 * the name of the entry
+	 * @param compress
+	 * whether to compress the entry; stored (uncompressed) entries may be
+	 * accessed with {@link #getMappedEntry(String)}
+	 */
+	public void addArray(byte[] array, String fileName, boolean compress) {
 		try (InputStream in = new ByteArrayInputStream(array)) {
-			addStream(in, fileName);
+			addStream(in, fileName, compress);
 		} catch (IOException e) {
 			Log.abort(this, e, "Could not create input stream from byte array.");
 		}
 	}
 	
 	public void addStream(InputStream in, String fileName) throws IOException {
-		readWriteLock.lock();
+		addStream(in, fileName, true);
+	}
+	
+	/**
+	 * Appends the content of the given stream as a new entry. An existing entry
+	 * with the same name gets replaced.
+	 * @param in
+	 * the input stream; will be closed
+	 * @param fileName
+	 * the name of the entry
+	 * @param compress
+	 * whether to compress the entry; stored (uncompressed) entries may be
+	 * accessed with {@link #getMappedEntry(String)}
+	 * @throws IOException
+	 * if reading or writing fails
+	 */
+	public void addStream(InputStream in, String fileName, boolean compress) throws IOException {
+		readWriteLock.writeLock().lock();
 		try {
-			ZipOutputStream zos = getOutputStream(null);
+			ZipAppender appender = getOutputStream();
 			try {
-				ZipEntry entry = new ZipEntry(fileName);
-				zos.putNextEntry(entry);
+				OutputStream out = appender.putNextEntry(fileName, compress ? ZipEntry.DEFLATED : ZipEntry.STORED);
 				int n;
 				byte[] buffer = new byte[4096];
 				while ((n = in.read(buffer)) > 0) {
-//					System.err.print(Arrays.toString(buffer));
-					zos.write(buffer, 0, n);		        	
+					out.write(buffer, 0, n);
 				}
-				zos.flush();
-			} catch (ZipException e) {
-				// trying to add duplicate entry? -> remove the existing one
-				zos = getOutputStream(Collections.singletonList(fileName));
-				ZipEntry entry = new ZipEntry(fileName);
-				zos.putNextEntry(entry);
-				int n;
-				byte[] buffer = new byte[4096];
-				while ((n = in.read(buffer)) > 0) {
-//					System.err.print(Arrays.toString(buffer));
-					zos.write(buffer, 0, n);		        	
-				}
-				zos.flush();
 			} finally {
 				in.close();
-				zos.closeEntry();
+				appender.closeEntry();
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Creates a new entry and returns an output stream for its content. The content is
+	 * (compressed and) written to a temporary spill file next to the zip file first, and 
+	 * gets appended to the zip file as a new entry when the stream is closed. An existing 
+	 * entry with the same name gets replaced at that point. 
+	 * 
+	 * <p> Writing to the stream does not lock the zip file, so other operations on this
+	 * zip file (including the writing thread's own) are not blocked in the meantime, and
+	 * multiple entries may be written at the same time. The entry is only visible after 
+	 * the stream has been closed. The stream may be closed by another thread than the 
+	 * one that opened it. Streams that are still open at shutdown get closed (and appended)
+	 * by the shutdown hook.
+	 * @param fileName
+	 * the name of the entry
+	 * @param compress
+	 * whether to compress the entry; stored (uncompressed) entries may be
+	 * accessed with {@link #getMappedEntry(String)}
+	 * @return
+	 * the output stream; closing it adds the entry to the zip file
+	 * @throws IOException
+	 * if the spill file can not be created
+	 */
+	public ZipEntryOutputStream openEntryOutputStream(String fileName, boolean compress) throws IOException {
+		ZipEntryOutputStream entry = new ZipEntryOutputStream(fileName, compress ? ZipEntry.DEFLATED : ZipEntry.STORED);
+		openEntries.add(entry);
+		return entry;
+	}
+	
+	/**
+	 * Output stream for an entry that is spilled to a temporary file and appended
+	 * to the zip file on closing (see {@link ZipFileWrapper#openEntryOutputStream(String, boolean)}).
+	 */
+	public class ZipEntryOutputStream extends OutputStream {
+		
+		private final String fileName;
+		private final int method;
+		private final Path spillFile;
+		private OutputStream spill;
+		
+		private final CRC32 crc = new CRC32();
+		private final Deflater deflater;
+		private final byte[] deflaterBuffer;
+		private long size = 0;
+		private long compressedSize = 0;
+		
+		private ZipEntryOutputStream(String fileName, int method) throws IOException {
+			this.fileName = fileName;
+			this.method = method;
+			Path absolutePath = zipFilePath.toAbsolutePath();
+			Path parent = absolutePath.getParent();
+			if (parent != null) {
+				parent.toFile().mkdirs();
+			}
+			// use the same directory as the zip file, which is expected to have enough space
+			this.spillFile = Files.createTempFile(parent, absolutePath.getFileName().toString(), ".entry.tmp");
+			try {
+				this.spill = new BufferedOutputStream(Files.newOutputStream(spillFile));
+			} catch (IOException e) {
+				Files.deleteIfExists(spillFile);
+				throw e;
+			}
+			if (method == ZipEntry.DEFLATED) {
+				this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+				this.deflaterBuffer = new byte[4096];
+			} else {
+				this.deflater = null;
+				this.deflaterBuffer = null;
+			}
+		}
+		
+		/**
+		 * Starts a new independently readable block in the entry: the content written
+		 * afterwards can be read with {@link ZipFileWrapper#getBlockInputStream(String, long)}
+		 * without inflating the preceding content. Starting a block makes compression
+		 * slightly worse, so blocks should not be too small.
+		 * @return
+		 * the offset of the new block (to be passed to
+		 * {@link ZipFileWrapper#getBlockInputStream(String, long)})
+		 * @throws IOException
+		 * if writing fails
+		 */
+		public synchronized long startNewBlock() throws IOException {
+			ensureOpen();
+			if (deflater != null) {
+				int len;
+				do {
+					len = deflater.deflate(deflaterBuffer, 0, deflaterBuffer.length, Deflater.FULL_FLUSH);
+					writeToSpill(deflaterBuffer, 0, len);
+				} while (len == deflaterBuffer.length);
+			}
+			return compressedSize;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			ensureOpen();
+			if (len == 0) {
+				return;
+			}
+			crc.update(b, off, len);
+			size += len;
+			if (deflater == null) {
+				writeToSpill(b, off, len);
+			} else {
+				deflater.setInput(b, off, len);
+				while (!deflater.needsInput()) {
+					deflate();
+				}
+			}
+		}
+		
+		private void deflate() throws IOException {
+			writeToSpill(deflaterBuffer, 0, deflater.deflate(deflaterBuffer, 0, deflaterBuffer.length));
+		}
+		
+		private void writeToSpill(byte[] b, int off, int len) throws IOException {
+			if (len > 0) {
+				spill.write(b, off, len);
+				compressedSize += len;
+			}
+		}
+		
+		private void ensureOpen() throws IOException {
+			if (spill == null) {
+				throw new IOException("Stream is already closed.");
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (spill == null) {
+				return;
+			}
+			try {
+				if (deflater != null) {
+					deflater.finish();
+					while (!deflater.finished()) {
+						deflate();
+					}
+				}
+				spill.close();
+				spill = null;
+				// only appending the finished entry needs exclusive access
+				readWriteLock.writeLock().lock();
+				try (InputStream in = new BufferedInputStream(Files.newInputStream(spillFile))) {
+					getOutputStream().putRawEntry(fileName, method, in, size, crc.getValue());
+				} finally {
+					readWriteLock.writeLock().unlock();
+				}
+			} finally {
+				if (spill != null) {
+					try {
+						spill.close();
+					} catch (IOException e) {
+						// ignore
+					}
+					spill = null;
+				}
+				if (deflater != null) {
+					deflater.end();
+				}
+				openEntries.remove(this);
+				Files.deleteIfExists(spillFile);
+			}
+		}
+	}
+	
+	/**
+	 * Rewrites the zip file, dropping the data of all removed or replaced entries.
+	 * Removing or replacing entries does not free any space in the file by itself,
+	 * so this should be called after many entries have been removed or replaced.
+	 * @throws IOException
+	 * if rewriting the zip file fails
+	 */
+	public void compact() throws IOException {
+		readWriteLock.writeLock().lock();
+		try {
+			closeOpenOutputStream();
+			invalidateReadHandle();
+			if (!Files.exists(zipFilePath)) {
+				return;
+			}
+			Path absolutePath = zipFilePath.toAbsolutePath();
+			// create the temporary file in the same directory to be able to simply move it afterwards
+			Path tmpZip = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+			try {
+				// only entries in the central directory are copied (in contrast to a ZipInputStream)
+				try (ZipFile zipFile = new ZipFile(zipFilePath.toFile());
+						ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpZip)))) {
+					byte[] buffer = new byte[4096];
+					Enumeration<? extends ZipEntry> entries = zipFile.entries();
+					while (entries.hasMoreElements()) {
+						ZipEntry entry = entries.nextElement();
+						ZipEntry copy = new ZipEntry(entry.getName());
+						copy.setTime(entry.getTime());
+						if (entry.getMethod() == ZipEntry.STORED) {
+							// keep stored entries mappable
+							copy.setMethod(ZipEntry.STORED);
+							copy.setSize(entry.getSize());
+							copy.setCompressedSize(entry.getSize());
+							copy.setCrc(entry.getCrc());
+						}
+						out.putNextEntry(copy);
+						try (InputStream in = zipFile.getInputStream(entry)) {
+							int read;
+							while ((read = in.read(buffer)) > 0) {
+								out.write(buffer, 0, read);
+							}
+						}
+						out.closeEntry();
+					}
+				}
+				Files.move(tmpZip, zipFilePath, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(tmpZip);
+			}
+		} finally {
+			readWriteLock.writeLock().unlock();
 		}
 	}
 	
@@ -372,44 +1024,23 @@ public class ZipFileWrapper {
 	}
 	
 	public List<String> getFileHeadersSatisfyingCheck(Predicate<String> check) throws IOException {
-		readWriteLock.lock();
+		lockForReading();
 		try {
-			closeOpenOutputStream();
-			ZipFile zipFile = null;
 			try {
-				zipFile = new ZipFile(zipFilePath.toString());
+				getReadHandle();
 				List<String> matchingHeaders = new ArrayList<>();
-				ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile.getName()));
-				ZipEntry zipEntry;
-				while ((zipEntry = zis.getNextEntry()) != null) {
-//					System.err.println(zipEntry.getName());
-					if (check.test(zipEntry.getName())) {
-						matchingHeaders.add(zipEntry.getName());
+				for (String entryName : entryIndex.keySet()) {
+					if (check.test(entryName)) {
+						matchingHeaders.add(entryName);
 					}
-					zis.closeEntry();
 				}
-				zis.close();
-
-//				// sort the files alphabetically
-//				Collections.sort(matchingHeaders, new Comparator<String>() {
-//
-//					@Override
-//					public int compare(String o1, String o2) {
-//						return o1.compareTo(o2);
-//					}
-//				});
-
 				return matchingHeaders;
 			} catch (IOException e) {
 				e.printStackTrace();
 				throw new ZipException("Getting zip file contents failed: " + zipFilePath);
-			} finally {
-				if (zipFile != null) {
-					zipFile.close();
-				}
 			}
 		} finally {
-			readWriteLock.unlock();
+			readWriteLock.readLock().unlock();
 		}
 	}
 
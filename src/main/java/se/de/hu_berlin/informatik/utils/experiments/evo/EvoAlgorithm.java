@@ -168,6 +168,15 @@ public class EvoAlgorithm<T,L,F extends Comparable<F>,K extends Comparable<K>> {
 			}
 		}
 		
+		try {
+			return evolve(currentPopulation);
+		} finally {
+			//the evaluation pipe is reused in each generation and may now be shut down
+			evaluationPipe.shutdown();
+		}
+	}
+	
+	private EvoItem<T,F,K> evolve(List<EvoItem<T,F,K>> currentPopulation) {
 		EvoItem<T, F, K> allTimeBestEvoItem;
 		
 		int generationCounter= 1;
@@ -731,7 +740,8 @@ public class EvoAlgorithm<T,L,F extends Comparable<F>,K extends Comparable<K>> {
 	private EvoItem<T, F, K> calculateFitness(List<EvoItem<T,F,K>> population, Statistics<EvoStatistics> statistics) {
 		Log.out(EvoAlgorithm.class, "Checking fitness for %d elements.", population.size());
 		//check all elements in the population for their fitness values
-		evaluationPipe.submitAndShutdown(population);
+		//the pipe keeps running for the next generation
+		evaluationPipe.submitAndWait(population);
 		
 		EvoItem<T, F, K> bestItem = selectBestItem(population, false);
 		
@@ -6,13 +6,24 @@ package se.de.hu_berlin.informatik.utils.files;
 import static java.nio.file.FileVisitResult.CONTINUE;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import se.de.hu_berlin.informatik.utils.miscellaneous.IBuilder;
 import se.de.hu_berlin.informatik.utils.tracking.Trackable;
@@ -22,6 +33,12 @@ import se.de.hu_berlin.informatik.utils.tracking.TrackerDummy;
 /**
  * Extendable {@link FileVisitor} implementation.
  * 
+ * <p> Use {@link #walk(Path)} to traverse a file tree. If a parallelism greater
+ * than 1 is set via {@link Builder#traverseInParallel(int)}, directories are 
+ * listed concurrently by a fork/join pool, and {@link #processMatchedFileOrDir(Path)}
+ * has to be thread-safe. Matched paths are not processed in a deterministic
+ * order in that case.
+ * 
  * @author Simon Heiden
  * 
  * @see FileVisitor
@@ -36,7 +53,10 @@ public abstract class AFileWalker implements FileVisitor<Path>, Trackable {
 	final private boolean relative;
 	private Path relativeStartingPath;
 	
-	private int matchCount = 0;
+	final private int parallelism;
+	private volatile boolean terminated = false;
+	
+	final private AtomicInteger matchCount = new AtomicInteger();
 	
 	private boolean isFirst;
 	private TrackingStrategy tracker = TrackerDummy.getInstance();
@@ -49,6 +69,7 @@ public abstract class AFileWalker implements FileVisitor<Path>, Trackable {
 		skipAfterFind = builder.skipAfterFind;
 		isFirst = builder.isFirst;
 		relative = builder.relative;
+		parallelism = builder.parallelism;
 		
 		if (searchDirectories == false && searchFiles == false) {
 			throw new IllegalStateException("Define whether files or directories shall be searched.");
@@ -67,7 +88,64 @@ public abstract class AFileWalker implements FileVisitor<Path>, Trackable {
 	}
 	
 	public int getNumberOfMatches() {
-		return matchCount;
+		return matchCount.get();
+	}
+	
+	/**
+	 * Walks the file tree rooted at the given path, visiting it with this walker.
+	 * Symbolic links are not followed.
+	 * @param start
+	 * the starting file or directory
+	 * @throws IOException
+	 * if an I/O error is thrown by a visitor method
+	 */
+	public void walk(Path start) throws IOException {
+		if (parallelism <= 1) {
+			Files.walkFileTree(start, Collections.emptySet(), Integer.MAX_VALUE, this);
+			return;
+		}
+		
+		terminated = false;
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(start, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException e) {
+			visitFileFailed(start, e);
+			return;
+		}
+		if (!attrs.isDirectory()) {
+			visitFile(start, attrs);
+			return;
+		}
+		// the root directory is visited first, such that the starting path is set
+		// before any other thread visits a path
+		if (preVisitDirectory(start, attrs) != CONTINUE) {
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new DirectoryTask(start));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	private void matched(Path fileOrDir) {
+		if (parallelism > 1) {
+			// trackers are not thread-safe
+			synchronized (this) {
+				track();
+			}
+		} else {
+			track();
+		}
+		if (relative) {
+			fileOrDir = relativeStartingPath.relativize(fileOrDir);
+		}
+		processMatchedFileOrDir(fileOrDir);
+		matchCount.incrementAndGet();
 	}
 	
 	abstract public void processMatchedFileOrDir(Path fileOrDir);
@@ -83,19 +161,9 @@ public abstract class AFileWalker implements FileVisitor<Path>, Trackable {
 		if (attrs.isDirectory()) {
 			if (searchDirectories) {
 				if (matcher == null) {
-					track();
-					if (relative) {
-						file = relativeStartingPath.relativize(file);
-					}
-					processMatchedFileOrDir(file);
-					++matchCount;
+					matched(file);
 				} else if (match(file.toAbsolutePath())) {
-					track();
-					if (relative) {
-						file = relativeStartingPath.relativize(file);
-					}
-					processMatchedFileOrDir(file);
-					++matchCount;
+					matched(file);
 //					Misc.out(file.toString());
 					if (skipAfterFind) {
 						return FileVisitResult.SKIP_SUBTREE;
@@ -105,19 +173,9 @@ public abstract class AFileWalker implements FileVisitor<Path>, Trackable {
 		} else {
 			if (searchFiles) {
 				if (matcher == null) {
-					track();
-					if (relative) {
-						file = relativeStartingPath.relativize(file);
-					}
-					processMatchedFileOrDir(file);
-					++matchCount;
+					matched(file);
 				} else if (match(file.toAbsolutePath())) {
-					track();
-					if (relative) {
-						file = relativeStartingPath.relativize(file);
-					}
-					processMatchedFileOrDir(file);
-					++matchCount;
+					matched(file);
 //					Misc.out(file.toString());
 				}
 			}
@@ -136,19 +194,9 @@ public abstract class AFileWalker implements FileVisitor<Path>, Trackable {
 		if (!isFirst) {
 			if (searchDirectories) {
 				if (matcher == null) {
-					track();
-					if (relative) {
-						dir = relativeStartingPath.relativize(dir);
-					}
-					processMatchedFileOrDir(dir);
-					++matchCount;
+					matched(dir);
 				} else if (match(dir.toAbsolutePath())) {
-					track();
-					if (relative) {
-						dir = relativeStartingPath.relativize(dir);
-					}
-					processMatchedFileOrDir(dir);
-					++matchCount;
+					matched(dir);
 //					Misc.out(dir.toString());
 					if (skipAfterFind) {
 						return FileVisitResult.SKIP_SUBTREE;
@@ -195,6 +243,72 @@ public abstract class AFileWalker implements FileVisitor<Path>, Trackable {
         return CONTINUE;
     }
     
+	/**
+	 * Lists a directory, visits its entries and forks a new task for 
+	 * each subdirectory that shall be entered.
+	 */
+	private class DirectoryTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		private final Path dir;
+
+		private DirectoryTask(Path dir) {
+			this.dir = dir;
+		}
+
+		@Override
+		protected void compute() {
+			List<DirectoryTask> subTasks = new ArrayList<>();
+			try {
+				IOException exc = null;
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+					for (Path entry : stream) {
+						if (terminated) {
+							break;
+						}
+						FileVisitResult result = visitEntry(entry, subTasks);
+						if (result == FileVisitResult.TERMINATE) {
+							terminated = true;
+						}
+						if (result != CONTINUE) {
+							break;
+						}
+					}
+				} catch (DirectoryIteratorException e) {
+					exc = e.getCause();
+				} catch (IOException e) {
+					// the directory could not be opened
+					visitFileFailed(dir, e);
+					return;
+				}
+				invokeAll(subTasks);
+				if (!terminated && postVisitDirectory(dir, exc) == FileVisitResult.TERMINATE) {
+					terminated = true;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private FileVisitResult visitEntry(Path entry, List<DirectoryTask> subTasks) throws IOException {
+			BasicFileAttributes attrs;
+			try {
+				attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (IOException e) {
+				return visitFileFailed(entry, e);
+			}
+			if (attrs.isDirectory()) {
+				FileVisitResult result = preVisitDirectory(entry, attrs);
+				if (result == CONTINUE) {
+					subTasks.add(new DirectoryTask(entry));
+				}
+				return result == FileVisitResult.SKIP_SUBTREE ? CONTINUE : result;
+			}
+			return visitFile(entry, attrs);
+		}
+	}
+	
     @Override
 	public TrackingStrategy getTracker() {
 		return tracker;
@@ -226,6 +340,7 @@ public abstract class AFileWalker implements FileVisitor<Path>, Trackable {
 		private boolean isFirst = true;
 		
 		private boolean relative = false;
+		private int parallelism = 1;
 		
 		/**
 		 * Creates an {@link Builder} object with the given parameters.
@@ -282,6 +397,22 @@ public abstract class AFileWalker implements FileVisitor<Path>, Trackable {
 			return this;
 		}
 		
+		/**
+		 * Lists directories concurrently when walking a file tree with 
+		 * {@link AFileWalker#walk(Path)}. Speeds up the traversal of large trees, 
+		 * especially on network storage, where listing directories is slow.
+		 * Processing matched files or directories has to be thread-safe.
+		 * @param parallelism
+		 * the number of threads that list directories; values less than 2
+		 * lead to a sequential traversal (default)
+		 * @return
+		 * this
+		 */
+		public Builder traverseInParallel(int parallelism) {
+			this.parallelism = parallelism;
+			return this;
+		}
+		
 		/**
 		 * Includes the root directory in the search.
 		 * @return
@@ -19,6 +19,11 @@ public class PathToFileConverter extends AbstractProcessor<Path,File> {
 		super();
 	}
 
+	@Override
+	public boolean isLightweight() {
+		return true;
+	}
+
 	/* (non-Javadoc)
 	 * @see se.de.hu_berlin.informatik.utils.tm.ITransmitter#processItem(java.lang.Object)
 	 */
@@ -4,9 +4,9 @@
 package se.de.hu_berlin.informatik.utils.files.processors;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
+
+import se.de.hu_berlin.informatik.utils.files.AFileWalker;
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
 import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ConsumingProcessorSocketGenerator;
@@ -31,6 +31,7 @@ public class ThreadedFileWalkerProcessor extends AbstractProcessor<Path,Boolean>
 	private boolean includeRootDir = false;
 	
 	private boolean skipAfterFind = false;
+	private int traversalParallelism = 1;
 	private ConsumingProcessorSocketGenerator<Path> processorGenerator;
 	
 	/**
@@ -94,7 +95,21 @@ public class ThreadedFileWalkerProcessor extends AbstractProcessor<Path,Boolean>
 	 * this
 	 */
 	public ThreadedFileWalkerProcessor includeRootDir() {
-		this.includeRootDir = false;
+		this.includeRootDir = true;
+		return this;
+	}
+
+	/**
+	 * Lists directories concurrently while walking the file tree.
+	 * @param parallelism
+	 * the number of threads that list directories (in addition to
+	 * the threads that process the matched paths)
+	 * @return
+	 * this
+	 * @see AFileWalker.Builder#traverseInParallel(int)
+	 */
+	public ThreadedFileWalkerProcessor traverseInParallel(int parallelism) {
+		this.traversalParallelism = parallelism;
 		return this;
 	}
 
@@ -117,6 +132,7 @@ public class ThreadedFileWalkerProcessor extends AbstractProcessor<Path,Boolean>
 		if (skipAfterFind) {
 			builder.skipSubTreeAfterMatch();
 		}
+		builder.traverseInParallel(traversalParallelism);
 		builder.call(processorGenerator);
 		
 		ThreadedFileWalker walker = builder.build();
@@ -124,7 +140,7 @@ public class ThreadedFileWalkerProcessor extends AbstractProcessor<Path,Boolean>
 		
 		//traverse the file tree
 		try {
-			Files.walkFileTree(input, Collections.emptySet(), Integer.MAX_VALUE, walker);
+			walker.walk(input);
 		} catch (IOException e) {
 			Log.abort(this, e, "IOException thrown.");
 		}
@@ -25,6 +25,8 @@ import se.de.hu_berlin.informatik.utils.files.FileUtils;
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
 import se.de.hu_berlin.informatik.utils.miscellaneous.Misc;
 import se.de.hu_berlin.informatik.utils.miscellaneous.OutputStreamManipulationUtilities;
+import se.de.hu_berlin.informatik.utils.threaded.ThreadBackend;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.DisruptorWaitStrategy;
 
 /**
  * Provides an easy interface to the commons cli {@link CommandLine} parser
@@ -54,6 +56,17 @@ final public class OptionParser {
 						+ "'AGGRESSIVE' will try to use up to 90% of available processors. "
 						+ "'NICE' (default) will try to use up to 50% of available processors. "
 						+ "'DEFENSIVE' will only try to use up to 20% of available processors.",
+				false),
+		WAIT_STRATEGY("ws", "waitStrategy", true,
+				"Sets the strategy that threads use to wait for new items in pipes. "
+						+ "'BLOCKING' (default) uses the least CPU time and is best suited for batch jobs. "
+						+ "'SLEEPING', 'YIELDING', 'PHASED_BACKOFF' and 'BUSY_SPIN' reduce the latency "
+						+ "at the cost of (increasingly) more CPU time.",
+				false),
+		THREAD_BACKEND("tb", "threadBackend", true,
+				"Sets the kind of threads that process items in parallel. "
+						+ "'PLATFORM' (default) uses normal threads. 'VIRTUAL' uses virtual threads "
+						+ "(Java 21+, falls back to 'PLATFORM' otherwise), which suit tasks that mostly wait for I/O.",
 				false);
 
 		/* the following code blocks should not need to be changed */
@@ -189,6 +202,8 @@ final public class OptionParser {
 		this.isThreaded = isThreaded;
 		if (isThreaded) {
 			this.addGroup(false, DefaultCmdOptions.THREAD_COUNT, DefaultCmdOptions.THREAD_STRATEGY);
+			this.add(DefaultCmdOptions.WAIT_STRATEGY.option());
+			this.add(DefaultCmdOptions.THREAD_BACKEND.option());
 		}
 	}
 
@@ -294,6 +309,38 @@ final public class OptionParser {
 		}
 	}
 
+	/**
+	 * @return the wait strategy according to the given options
+	 * ({@link DisruptorWaitStrategy#BLOCKING} if not set)
+	 */
+	public DisruptorWaitStrategy getWaitStrategy() {
+		if (!isThreaded || !this.hasOption(DefaultCmdOptions.WAIT_STRATEGY)) {
+			return DisruptorWaitStrategy.BLOCKING;
+		}
+		try {
+			return DisruptorWaitStrategy.parse(this.getOptionValue(DefaultCmdOptions.WAIT_STRATEGY));
+		} catch (IllegalArgumentException e) {
+			Log.abort(this, "Unknown wait strategy: '%s'", this.getOptionValue(DefaultCmdOptions.WAIT_STRATEGY));
+			return null;
+		}
+	}
+
+	/**
+	 * @return the thread backend according to the given options
+	 * ({@link ThreadBackend#PLATFORM} if not set)
+	 */
+	public ThreadBackend getThreadBackend() {
+		if (!isThreaded || !this.hasOption(DefaultCmdOptions.THREAD_BACKEND)) {
+			return ThreadBackend.PLATFORM;
+		}
+		try {
+			return ThreadBackend.parse(this.getOptionValue(DefaultCmdOptions.THREAD_BACKEND));
+		} catch (IllegalArgumentException e) {
+			Log.abort(this, "Unknown thread backend: '%s'", this.getOptionValue(DefaultCmdOptions.THREAD_BACKEND));
+			return null;
+		}
+	}
+
 	/**
 	 * Adds all options declared in the given Enum.
 	 * @param options
@@ -0,0 +1,79 @@
+package se.de.hu_berlin.informatik.utils.processors;
+
+import java.util.Collections;
+import java.util.List;
+
+import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocket;
+import se.de.hu_berlin.informatik.utils.processors.sockets.pipe.Pipe;
+
+/**
+ * A {@link Processor} that processes batches of items at once. Implementing 
+ * classes should implement {@link #processBatch(List)} or 
+ * {@link #processBatch(List, ProcessorSocket)}.
+ * 
+ * <p> If used in a {@link Pipe} with enabled batching (see 
+ * {@link Pipe#enableBatching(int, long)}), each batch of coalesced items is 
+ * processed with a single call (and a single track). Otherwise, each item is 
+ * processed as a batch of size one.
+ * 
+ * @author Simon Heiden
+ *
+ * @param <A>
+ * the type of input objects
+ * @param <B>
+ * the type of output objects
+ */
+public abstract class AbstractBatchProcessor<A,B> extends AbstractProcessor<A,B> {
+
+	public AbstractBatchProcessor(ClassLoader classLoader) {
+		super(classLoader);
+	}
+
+	public AbstractBatchProcessor() {
+		super();
+	}
+
+	@Override
+	public void resetTrackAndConsumeBatch(List<A> items) {
+		resetAndInit();
+		getSocket().track();
+		ProcessorSocket<A, B> socket = getSocket();
+		socket.produce(processBatch(items, socket));
+	}
+
+	@Override
+	public B processItem(A item, ProcessorSocket<A, B> socket) {
+		return processBatch(Collections.singletonList(item), socket);
+	}
+
+	/**
+	 * Processes a batch of items. In the default case, this method simply calls
+	 * {@link #processBatch(List)}. Further output items may be produced 
+	 * manually with {@link ProcessorSocket#produce(Object)}.
+	 * @param items
+	 * the items to be processed (may not be modified or stored)
+	 * @param socket
+	 * the executing socket instance
+	 * @return 
+	 * an output item, or null if none
+	 */
+	public B processBatch(List<A> items, ProcessorSocket<A, B> socket) {
+		return processBatch(items);
+	}
+
+	/**
+	 * Processes a batch of items. In the default case, this method gets called 
+	 * by {@link #processBatch(List, ProcessorSocket)}.
+	 * @param items
+	 * the items to be processed (may not be modified or stored)
+	 * @return 
+	 * an output item, or null if none
+	 * @throws UnsupportedOperationException
+	 * if not implemented
+	 */
+	public B processBatch(List<A> items) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException(
+				"No batch processing method set for " + this.getClass().getSimpleName() + ".");
+	}
+
+}
@@ -135,6 +135,10 @@ public interface ConsumingProcessor<A> extends Processor<A,Object>, ConsumingPro
 			public boolean finalShutdown() {
 				return ConsumingProcessor.this.finalShutdown();
 			}
+			@Override
+			public void waitForCompletion() {
+				ConsumingProcessor.this.waitForCompletion();
+			}
 		};
 	}
 	
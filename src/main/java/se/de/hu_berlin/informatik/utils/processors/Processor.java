@@ -3,6 +3,8 @@
  */
 package se.de.hu_berlin.informatik.utils.processors;
 
+import java.util.List;
+
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocket;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocketGenerator;
 import se.de.hu_berlin.informatik.utils.processors.sockets.eh.EHWithInputAndReturn;
@@ -50,6 +52,21 @@ public interface Processor<A, B> extends ProcessorSocketGenerator<A, B> {
 		_consume_(item);
 	}
 
+	/**
+	 * Consumes a batch of items, e.g., if the executing {@link Pipe} coalesces
+	 * submitted items into batches. Per default, this method calls
+	 * {@link #resetTrackAndConsume(Object)} on each item, such that processors
+	 * that don't process batches themselves behave as usual. 
+	 * @param items
+	 * the items to consume
+	 * @see AbstractBatchProcessor
+	 */
+	default void resetTrackAndConsumeBatch(List<A> items) {
+		for (int i = 0; i < items.size(); ++i) {
+			resetTrackAndConsume(items.get(i));
+		}
+	}
+
 	/**
 	 * Per default, calls {@link #processItem(Object, ProcessorSocket)} on the
 	 * given item and the result of {@link #getSocket()}. Then,
@@ -154,6 +171,43 @@ public interface Processor<A, B> extends ProcessorSocketGenerator<A, B> {
 		return true;
 	}
 
+	/**
+	 * Hints that processing an item is cheap compared to handing the item over
+	 * to another thread (e.g., simple conversions or printing). A 
+	 * {@link se.de.hu_berlin.informatik.utils.processors.sockets.pipe.PipeLinker}
+	 * with enabled stage fusion executes such Processors in the thread of an
+	 * adjacent Pipe. Per default, returns false.
+	 * @return
+	 * whether this Processor is lightweight
+	 */
+	default public boolean isLightweight() {
+		return false;
+	}
+
+	/**
+	 * Estimates the heap memory that processing the given item requires,
+	 * e.g., based on the size of the item. Memory-aware thread limits use the
+	 * estimate to only admit items if enough memory is available. Per default,
+	 * returns 0 (unknown).
+	 * @param item
+	 * the item to be processed
+	 * @return
+	 * the estimated memory usage in bytes
+	 */
+	default public long estimateMemoryUsage(A item) {
+		return 0;
+	}
+
+	/**
+	 * Waits until all items that were submitted to this Processor so far have
+	 * been completely processed, without shutting anything down. Only needed
+	 * for Processors that process items asynchronously. Per default, does 
+	 * nothing.
+	 */
+	default public void waitForCompletion() {
+		// items are processed synchronously
+	}
+
 	/**
 	 * Creates a new {@link Pipe} from this Processor that inherits this
 	 * Processor's functionality.
@@ -203,9 +257,9 @@ public interface Processor<A, B> extends ProcessorSocketGenerator<A, B> {
 	 * <p>
 	 * Per default, this creates a new {@link AbstractProcessor} that inherits
 	 * the methods {@link #processItem(Object, ProcessorSocket)},
-	 * {@link #getResultFromCollectedItems()} and {@link #finalShutdown()} from
-	 * this Processor. It will, however, NOT generate separate instances of any
-	 * declared global fields, for example. Note that
+	 * {@link #getResultFromCollectedItems()}, {@link #finalShutdown()} and
+	 * {@link #estimateMemoryUsage(Object)} from this Processor. It will, however,
+	 * NOT generate separate instances of any declared global fields, for example. Note that
 	 * {@link #processItem(Object)} gets called by
 	 * {@link #processItem(Object, ProcessorSocket)}, such that it will get called even
 	 * if it is not directly inherited.
@@ -237,6 +291,16 @@ public interface Processor<A, B> extends ProcessorSocketGenerator<A, B> {
 			public boolean finalShutdown() {
 				return Processor.this.finalShutdown();
 			}
+
+			@Override
+			public void waitForCompletion() {
+				Processor.this.waitForCompletion();
+			}
+
+			@Override
+			public long estimateMemoryUsage(A item) {
+				return Processor.this.estimateMemoryUsage(item);
+			}
 		};
 	}
 
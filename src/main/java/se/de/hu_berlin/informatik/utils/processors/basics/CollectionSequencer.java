@@ -15,6 +15,11 @@ import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocket;
  */
 public class CollectionSequencer<B> extends AbstractProcessor<Collection<B>,B> {
 
+	@Override
+	public boolean isLightweight() {
+		return true;
+	}
+
 	@Override
 	public B processItem(Collection<B> list, ProcessorSocket<Collection<B>, B> socket) {
 		if (list.size() == 0) {
@@ -0,0 +1,435 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.processors.basics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import se.de.hu_berlin.informatik.utils.miscellaneous.ClassPathParser;
+import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
+import se.de.hu_berlin.informatik.utils.miscellaneous.Misc;
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+
+/**
+ * Executes the main method of the given Java Class in a pool of long-lived
+ * worker JVMs, saving the JVM startup, class loading and JIT warm-up for each
+ * execution. May be used in place of an {@link ExecuteMainClassInNewJVM} object.
+ * Workers are started lazily and are shared by all threads that use this processor,
+ * with at most pool size executions running in parallel.
+ *
+ * <p> A worker gets replaced after a given number of executions, if the main method
+ * throws an exception (result 1), if it terminates the JVM via {@link System#exit(int)}
+ * (result: the exit code) or if an execution exceeds the timeout (result
+ * {@value #TIMEOUT_RESULT}).
+ *
+ * <p> In contrast to a fresh JVM, static state of the executed class persists between
+ * executions in the same worker, and an execution is finished as soon as the main
+ * method returns, even if it started other (non-daemon) threads.
+ *
+ * @author Simon Heiden
+ *
+ * @see JVMPoolWorker
+ */
+public class ExecuteMainClassInJVMPool extends AbstractProcessor<String[],Integer> {
+
+	/** the result of an execution that exceeded the timeout */
+	public static final int TIMEOUT_RESULT = 124;
+
+	private static final long STARTUP_TIMEOUT_MILLIS = 60_000;
+	private static final long EXIT_TIMEOUT_MILLIS = 5_000;
+
+	private final File executionDir;
+	private final Class<?> clazz;
+	private final String cp;
+	private final String[] properties;
+	private final Map<String,String> environmentVariables = new HashMap<>();
+	private final String javaHome;
+
+	private final int poolSize;
+	private final Semaphore slots;
+	private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+	// all workers that have been started and not been closed yet (busy or idle)
+	private final Set<Worker> liveWorkers = ConcurrentHashMap.newKeySet();
+	private final SecureRandom random = new SecureRandom();
+
+	private int maxRunsPerWorker = 100;
+	private long timeoutMillis = 0;
+
+	/**
+	 * Executes the given class in a pool of JVMs with the standard Java installation
+	 * and the current class path.
+	 * @param poolSize
+	 * the maximal number of worker JVMs
+	 * @param clazz
+	 * the Java class to execute. Must contain a main method
+	 * @param executionDir
+	 * the directory to execute the worker processes in (or null if the current directory should be used)
+	 * @param properties
+	 * other properties to give to the JVMs
+	 */
+	public ExecuteMainClassInJVMPool(int poolSize, Class<?> clazz, File executionDir, String... properties) {
+		this(poolSize, null, clazz, null, executionDir, (String[])properties);
+	}
+
+	/**
+	 * Executes the given class in a pool of JVMs with the standard Java installation.
+	 * @param poolSize
+	 * the maximal number of worker JVMs
+	 * @param clazz
+	 * the Java class to execute. Must contain a main method
+	 * @param cp
+	 * the class path to use
+	 * @param executionDir
+	 * the directory to execute the worker processes in (or null if the current directory should be used)
+	 * @param properties
+	 * other properties to give to the JVMs
+	 */
+	public ExecuteMainClassInJVMPool(int poolSize, Class<?> clazz, String cp, File executionDir, String... properties) {
+		this(poolSize, null, clazz, cp, executionDir, (String[])properties);
+	}
+
+	/**
+	 * Executes the given class in a pool of JVMs.
+	 * @param poolSize
+	 * the maximal number of worker JVMs
+	 * @param javaHome
+	 * a path to a Java installation directory (or null if the standard Java installation should be used)
+	 * @param clazz
+	 * the Java class to execute. Must contain a main method
+	 * @param cp
+	 * the class path to use
+	 * @param executionDir
+	 * the directory to execute the worker processes in (or null if the current directory should be used)
+	 * @param properties
+	 * other properties to give to the JVMs
+	 */
+	public ExecuteMainClassInJVMPool(int poolSize, String javaHome,
+			Class<?> clazz, String cp, File executionDir, String... properties) {
+		super();
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Pool size has to be at least 1.");
+		}
+		this.poolSize = poolSize;
+		this.slots = new Semaphore(poolSize, true);
+		this.executionDir = executionDir;
+		this.clazz = clazz;
+		if (cp == null) {
+			cp = new ClassPathParser()
+					.parseSystemClasspath()
+					.getClasspath();
+			if (cp.isEmpty()) {
+				// the system class loader is no URL class loader on Java 9+
+				cp = System.getProperty("java.class.path");
+			}
+		}
+		// the workers need to be able to load the worker class
+		this.cp = cp + File.pathSeparator + getWorkerClassPath();
+		this.properties = properties;
+		this.javaHome = javaHome;
+	}
+
+	private static String getWorkerClassPath() {
+		try {
+			return new File(JVMPoolWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+					.getAbsolutePath();
+		} catch (URISyntaxException | SecurityException | NullPointerException e) {
+			Log.abort(ExecuteMainClassInJVMPool.class, e, "Could not determine location of worker class.");
+			return null;
+		}
+	}
+
+	/**
+	 * @param maxRunsPerWorker
+	 * the number of executions after which a worker JVM gets replaced (default: 100)
+	 * @return
+	 * this
+	 */
+	public ExecuteMainClassInJVMPool setMaxRunsPerWorker(int maxRunsPerWorker) {
+		this.maxRunsPerWorker = Math.max(1, maxRunsPerWorker);
+		return this;
+	}
+
+	/**
+	 * @param timeout
+	 * the maximal duration of a single execution (0 for no timeout, the default);
+	 * the worker JVM gets killed if the timeout is exceeded
+	 * @param unit
+	 * the time unit of the timeout
+	 * @return
+	 * this
+	 */
+	public ExecuteMainClassInJVMPool setTimeout(long timeout, TimeUnit unit) {
+		this.timeoutMillis = unit.toMillis(timeout);
+		return this;
+	}
+
+	/**
+	 * Sets an environment variable for worker JVMs that are started afterwards.
+	 * @param variable
+	 * the environment variable to be set
+	 * @param value
+	 * the desired value of the environment variable
+	 * @return
+	 * this processor for method chaining
+	 */
+	public ExecuteMainClassInJVMPool setEnvVariable(String variable, String value) {
+		synchronized (environmentVariables) {
+			environmentVariables.put(variable, value);
+		}
+		return this;
+	}
+
+	/**
+	 * @return
+	 * the maximal number of worker JVMs
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * @return
+	 * the number of worker JVMs that are currently running (busy or idle)
+	 */
+	public int getNumberOfRunningWorkers() {
+		int count = 0;
+		for (Worker worker : liveWorkers) {
+			if (worker.process.isAlive()) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public Integer processItem(String[] args) {
+		return run(args == null ? new String[0] : args);
+	}
+
+	private int run(String... args) {
+		slots.acquireUninterruptibly();
+		try {
+			Worker worker = idleWorkers.poll();
+			if (worker == null || !worker.process.isAlive()) {
+				if (worker != null) {
+					worker.kill();
+				}
+				try {
+					worker = startWorker();
+				} catch (IOException e) {
+					Log.err(this, e, "Could not start worker JVM for %s.", clazz);
+					return 1;
+				}
+			}
+			return execute(worker, args);
+		} finally {
+			slots.release();
+		}
+	}
+
+	private int execute(Worker worker, String[] args) {
+		int result;
+		try {
+			result = worker.call(args, timeoutMillis);
+		} catch (SocketTimeoutException e) {
+			Log.err(this, "Timeout reached while executing %s. Killing worker JVM.", clazz);
+			worker.kill();
+			return TIMEOUT_RESULT;
+		} catch (EOFException e) {
+			// the main method terminated the JVM
+			return worker.waitForExit();
+		} catch (IOException e) {
+			Log.err(this, e, "Lost connection to worker JVM.");
+			worker.kill();
+			return 1;
+		}
+
+		if (result != 0) {
+			// the worker terminates itself after a failure
+			worker.waitForExit();
+		} else if (worker.runs >= maxRunsPerWorker) {
+			worker.retire();
+		} else {
+			returnWorker(worker);
+		}
+		return result;
+	}
+
+	private void returnWorker(Worker worker) {
+		synchronized (idleWorkers) {
+			// a shutdown may have happened while the worker was busy
+			if (!worker.retiring) {
+				idleWorkers.add(worker);
+				return;
+			}
+		}
+		worker.retire();
+	}
+
+	private Worker startWorker() throws IOException {
+		try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			long token = random.nextLong();
+			String[] fullArgs = {ExecuteMainClassInNewJVM.getJavaExecutable(javaHome), "-server", "-cp", cp};
+			String[] workerArgs = { JVMPoolWorker.class.getName(),
+					String.valueOf(server.getLocalPort()), String.valueOf(token),
+					ExecuteMainClassInNewJVM.getMainClassName(clazz) };
+			fullArgs = Misc.joinArrays(fullArgs, properties);
+			fullArgs = Misc.joinArrays(fullArgs, workerArgs);
+
+			ProcessBuilder pb = new ProcessBuilder(fullArgs);
+			pb.directory(executionDir);
+			pb.inheritIO();
+
+			if (javaHome != null) {
+				pb.environment().put("JAVA_HOME", javaHome);
+				pb.environment().put("JRE_HOME", javaHome + File.separator + "jre");
+			}
+
+			synchronized (environmentVariables) {
+				for (Entry<String,String> entry : environmentVariables.entrySet()) {
+					pb.environment().put(entry.getKey(), entry.getValue());
+				}
+			}
+
+			Process process = pb.start();
+			// wait for the worker to connect, but stop waiting if it dies
+			server.setSoTimeout(500);
+			long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+			while (true) {
+				try {
+					Socket socket = server.accept();
+					socket.setSoTimeout((int) STARTUP_TIMEOUT_MILLIS);
+					Worker worker = new Worker(process, socket);
+					liveWorkers.add(worker);
+					if (worker.in.readLong() != token) {
+						worker.kill();
+						throw new IOException("Unexpected connection to worker pool.");
+					}
+					return worker;
+				} catch (SocketTimeoutException e) {
+					if (!process.isAlive()) {
+						throw new IOException("Worker JVM terminated with exit code " + process.exitValue() + ".");
+					}
+					if (System.currentTimeMillis() > deadline) {
+						process.destroyForcibly();
+						throw new IOException("Worker JVM did not connect in time.");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Terminates all idle worker JVMs. Busy worker JVMs get terminated as soon
+	 * as their current execution has finished. The pool may still be used afterwards,
+	 * in which case new worker JVMs get started.
+	 */
+	@Override
+	public boolean finalShutdown() {
+		List<Worker> idle = new ArrayList<>();
+		synchronized (idleWorkers) {
+			for (Worker worker : liveWorkers) {
+				worker.retiring = true;
+			}
+			idleWorkers.drainTo(idle);
+		}
+		for (Worker worker : idle) {
+			worker.retire();
+		}
+		return super.finalShutdown();
+	}
+
+	private class Worker {
+
+		private final Process process;
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+		private int runs = 0;
+		// guarded by idleWorkers
+		private boolean retiring = false;
+
+		private Worker(Process process, Socket socket) throws IOException {
+			this.process = process;
+			this.socket = socket;
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		private int call(String[] args, long timeoutMillis) throws IOException {
+			++runs;
+			socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, timeoutMillis));
+			out.writeInt(args.length);
+			for (String arg : args) {
+				// writeUTF is limited to 64 KB per string
+				byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.flush();
+			return in.readInt();
+		}
+
+		private int waitForExit() {
+			try {
+				if (process.waitFor(EXIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+					close();
+					return process.exitValue();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			kill();
+			return 1;
+		}
+
+		private void retire() {
+			try {
+				out.writeInt(-1);
+				out.flush();
+			} catch (IOException e) {
+				// the worker is gone already
+			}
+			waitForExit();
+		}
+
+		private void kill() {
+			close();
+			process.destroyForcibly();
+		}
+
+		private void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+			liveWorkers.remove(this);
+		}
+	}
+
+}
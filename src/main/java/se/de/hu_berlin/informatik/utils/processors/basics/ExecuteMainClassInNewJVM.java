@@ -98,30 +98,8 @@ public class ExecuteMainClassInNewJVM extends AbstractProcessor<String[],Integer
 	}
 
 	private int run(String... args) {
-		String tool = "java";
-		if (javaHome != null) {
-			tool = javaHome + File.separator + "bin" + File.separator + "java";
-		}
-		String[] fullArgs = {tool, "-server", "-cp", cp};
-		String[] clazzWrapper = new String[1];
-		if (clazz.getEnclosingClass() == null) {
-			clazzWrapper[0] = clazz.getCanonicalName();
-		} else {
-			String[] clazzItems = clazz.getCanonicalName().split("\\.");
-			StringBuilder builder = new StringBuilder();
-			boolean isFirst = true;
-			for (int i = 0; i < clazzItems.length - 1; ++i) {
-				if (isFirst) {
-					isFirst = false;
-				} else {
-					builder.append('.');
-				}
-				builder.append(clazzItems[i]);
-			}
-			builder.append('$');
-			builder.append(clazzItems[clazzItems.length-1]);
-			clazzWrapper[0] = builder.toString();
-		}
+		String[] fullArgs = {getJavaExecutable(javaHome), "-server", "-cp", cp};
+		String[] clazzWrapper = { getMainClassName(clazz) };
 		fullArgs = Misc.joinArrays(fullArgs, properties);
 		fullArgs = Misc.joinArrays(fullArgs, clazzWrapper);
 		fullArgs = Misc.joinArrays(fullArgs, args);
@@ -180,6 +158,45 @@ public class ExecuteMainClassInNewJVM extends AbstractProcessor<String[],Integer
         return result;
     }
 	
+	/**
+	 * @param javaHome
+	 * a path to a Java installation directory (or null if the standard Java installation should be used)
+	 * @return
+	 * the path to the java executable
+	 */
+	static String getJavaExecutable(String javaHome) {
+		if (javaHome == null) {
+			return "java";
+		}
+		return javaHome + File.separator + "bin" + File.separator + "java";
+	}
+	
+	/**
+	 * @param clazz
+	 * a class
+	 * @return
+	 * the name of the class as expected by the java executable
+	 */
+	static String getMainClassName(Class<?> clazz) {
+		if (clazz.getEnclosingClass() == null) {
+			return clazz.getCanonicalName();
+		}
+		String[] clazzItems = clazz.getCanonicalName().split("\\.");
+		StringBuilder builder = new StringBuilder();
+		boolean isFirst = true;
+		for (int i = 0; i < clazzItems.length - 1; ++i) {
+			if (isFirst) {
+				isFirst = false;
+			} else {
+				builder.append('.');
+			}
+			builder.append(clazzItems[i]);
+		}
+		builder.append('$');
+		builder.append(clazzItems[clazzItems.length-1]);
+		return builder.toString();
+	}
+	
 	/**
 	 * Sets an environment variable,
 	 * @param variable
@@ -0,0 +1,152 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.processors.basics;
+
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+import se.de.hu_berlin.informatik.utils.processors.Processor;
+import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocket;
+import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocketGenerator;
+import se.de.hu_berlin.informatik.utils.processors.sockets.module.Module;
+
+/**
+ * Processor that executes a chain of stages synchronously in the calling thread,
+ * in the same way as linked {@link Module}s. Items that are produced by the last
+ * stage are produced by this processor. Used to fuse cheap consecutive stages
+ * into a single pipe, saving a thread hop per stage and item.
+ *
+ * <p> On shutdown of the executing pipe, the stages are shut down one after another,
+ * in order: each stage first completes all pending items, then its collected items 
+ * are processed by the following stages and finally the stage itself gets shut down.
+ * This way, stages that process items asynchronously (e.g., a {@link ThreadedProcessor})
+ * may be fused, too.
+ *
+ * @author Simon Heiden
+ *
+ * @param <A>
+ * the input type of the first stage
+ * @param <B>
+ * the output type of the last stage
+ */
+public class FusedProcessor<A,B> extends AbstractProcessor<A,B> {
+
+	// the last module forwards produced items to the socket of this processor
+	private final Module<?,?>[] modules;
+	private boolean optionsSet = false;
+	private boolean stagesShutDown = false;
+	private boolean shutdownResult = true;
+
+	/**
+	 * Creates a new processor that executes the given stages in the given order.
+	 * @param generators
+	 * the stages (given as processors, possibly) with matching types
+	 * @throws IllegalArgumentException
+	 * if no stages are given
+	 * @throws UnsupportedOperationException
+	 * if a stage can not be used as a module
+	 */
+	public FusedProcessor(ProcessorSocketGenerator<?,?>... generators)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		super();
+		if (generators.length == 0) {
+			throw new IllegalArgumentException("No stages given.");
+		}
+		modules = new Module<?,?>[generators.length + 1];
+		for (int i = 0; i < generators.length; ++i) {
+			modules[i] = generators[i].asModule();
+		}
+		modules[generators.length] = new Module<>(new AbstractProcessor<Object, Object>() {
+			@Override
+			public Object processItem(Object item) {
+				forward(item);
+				return null;
+			}
+		});
+		for (int i = 0; i < generators.length; ++i) {
+			modules[i].linkTo(modules[i+1]);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void forward(Object item) {
+		getSocket().produce((B) item);
+	}
+
+	@Override
+	public B processItem(A item, ProcessorSocket<A, B> socket) {
+		if (!optionsSet) {
+			// distribute the options of the executing socket to all stages
+			if (socket.hasOptions()) {
+				for (Module<?,?> module : modules) {
+					module.setOptions(socket.getOptions());
+				}
+			}
+			optionsSet = true;
+		}
+		modules[0].submit(item);
+		return null;
+	}
+
+	@Override
+	public B getResultFromCollectedItems() {
+		shutDownStages();
+		return null;
+	}
+
+	@Override
+	public boolean finalShutdown() {
+		// the stages may not have been shut down if no collected items were requested
+		shutDownStages();
+		// the stages may be used again afterwards
+		stagesShutDown = false;
+		return shutdownResult;
+	}
+
+	private void shutDownStages() {
+		if (stagesShutDown) {
+			return;
+		}
+		stagesShutDown = true;
+		shutdownResult = true;
+		for (int i = 0; i < modules.length - 1; ++i) {
+			// all output of this stage has to reach the following stages first
+			modules[i].getProcessor().waitForCompletion();
+			Object result = modules[i].getResultFromCollectedItems();
+			if (result != null) {
+				// the result is processed by all following stages
+				modules[i+1].submit(result);
+			}
+			shutdownResult &= modules[i].finalShutdown();
+		}
+	}
+
+	@Override
+	public void waitForCompletion() {
+		for (int i = 0; i < modules.length - 1; ++i) {
+			modules[i].getProcessor().waitForCompletion();
+		}
+	}
+
+	@Override
+	public boolean isLightweight() {
+		for (int i = 0; i < modules.length - 1; ++i) {
+			if (!modules[i].getProcessor().isLightweight()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return
+	 * the processors of the fused stages, in order
+	 */
+	public Processor<?,?>[] getStages() {
+		Processor<?,?>[] stages = new Processor<?,?>[modules.length - 1];
+		for (int i = 0; i < stages.length; ++i) {
+			stages[i] = modules[i].getProcessor();
+		}
+		return stages;
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.processors.basics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Worker process of an {@link ExecuteMainClassInJVMPool}. Connects to the pool
+ * via a local socket, identifies itself with the given token and then invokes
+ * the main method of the given class for each received list of arguments.
+ *
+ * <p> Protocol: the pool sends the number of arguments followed by the arguments
+ * (each as the length of its UTF-8 encoding, followed by the encoded bytes); the
+ * worker answers with the result code (0 if the main method returned normally, 1
+ * if it threw an exception). A negative number of arguments requests the worker
+ * to terminate. The worker also terminates after a failed invocation, since the
+ * state of the JVM may be corrupted. If the main method calls
+ * {@link System#exit(int)}, the pool gets the exit code of the process.
+ *
+ * @author Simon Heiden
+ */
+public final class JVMPoolWorker {
+
+	//suppress default constructor (class should not be instantiated)
+	private JVMPoolWorker() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * @param args
+	 * the port of the pool, the token to identify with and the name of the main class
+	 * @throws Exception
+	 * if connecting to the pool or loading the main class fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = Integer.parseInt(args[0]);
+		long token = Long.parseLong(args[1]);
+		Method main = Class.forName(args[2]).getMethod("main", String[].class);
+
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeLong(token);
+			out.flush();
+
+			while (true) {
+				int argCount;
+				try {
+					argCount = in.readInt();
+				} catch (EOFException e) {
+					// the pool is gone
+					break;
+				}
+				if (argCount < 0) {
+					break;
+				}
+				String[] mainArgs = new String[argCount];
+				for (int i = 0; i < argCount; ++i) {
+					byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					mainArgs[i] = new String(bytes, StandardCharsets.UTF_8);
+				}
+
+				int result = 0;
+				try {
+					main.invoke(null, (Object) mainArgs);
+				} catch (InvocationTargetException e) {
+					// same output as for an uncaught exception in a new JVM
+					e.getCause().printStackTrace();
+					result = 1;
+				}
+				System.out.flush();
+				System.err.flush();
+
+				out.writeInt(result);
+				out.flush();
+				if (result != 0) {
+					break;
+				}
+			}
+		}
+		// terminate possibly remaining threads of the main class
+		System.exit(0);
+	}
+
+}
@@ -20,6 +20,11 @@ public class Printer<A> extends AbstractProcessor<A, A> {
 		super();
 	}
 
+	@Override
+	public boolean isLightweight() {
+		return true;
+	}
+
 	/* (non-Javadoc)
 	 * @see se.de.hu_berlin.informatik.utils.tm.ITransmitter#processItem(java.lang.Object)
 	 */
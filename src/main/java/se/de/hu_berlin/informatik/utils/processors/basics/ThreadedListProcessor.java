@@ -42,9 +42,7 @@ public class ThreadedListProcessor<A> extends AbstractConsumingProcessor<List<A>
 				}
 			}
 		}
-		for (A element : input) {
-			disruptorProvider.submit(element);
-		}
+		disruptorProvider.submitAll(input);
 		disruptorProvider.shutdown();
 	}
 	
@@ -3,13 +3,16 @@
  */
 package se.de.hu_berlin.informatik.utils.processors.basics;
 
+import se.de.hu_berlin.informatik.utils.optionparser.OptionParser.DefaultCmdOptions;
 import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocket;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocketGenerator;
 import se.de.hu_berlin.informatik.utils.processors.sockets.eh.EHWithInputAndReturn;
+import se.de.hu_berlin.informatik.utils.threaded.ThreadBackend;
 import se.de.hu_berlin.informatik.utils.threaded.ThreadLimit;
 import se.de.hu_berlin.informatik.utils.threaded.ThreadLimitDummy;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.AbstractDisruptorMultiplexer;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.AbstractMultiplexer;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.DisruptorProvider;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.AbstractDisruptorEventHandler;
 
@@ -19,6 +22,10 @@ import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.Abstract
  * is collected with a multiplexer thread which returns it to the linked 
  * output pipe. {@code null} objects are ignored by the multiplexer.
  * 
+ * <p> Per default, output items are returned in the order in which the 
+ * threads finish. Use {@link #preserveOrder(int)} to return them in the
+ * order of the corresponding input items instead.
+ * 
  * @author Simon Heiden
  */
 public class ThreadedProcessor<A,B> extends AbstractProcessor<A,B> {
@@ -72,6 +79,49 @@ public class ThreadedProcessor<A,B> extends AbstractProcessor<A,B> {
 		this(threadCount, ThreadLimitDummy.getInstance(), transmitter, null);
 	}
 	
+	/**
+	 * Returns output items in the order of the corresponding input items.
+	 * Has to be called before any items are submitted. Output of inputs
+	 * that finish early is buffered until all preceding inputs are done.
+	 * @param windowSize
+	 * the maximum number of input items that may be processed in parallel,
+	 * counting from the oldest unfinished input item; bounds the number of
+	 * buffered items and the time that threads wait for a slow item
+	 * @return
+	 * this
+	 */
+	public ThreadedProcessor<A,B> preserveOrder(int windowSize) {
+		multiplexer.enableOrdering(windowSize);
+		return this;
+	}
+	
+	/**
+	 * Returns output items in the order of the corresponding input items, using
+	 * a window size of {@value AbstractMultiplexer#DEFAULT_WINDOW_SIZE}.
+	 * @return
+	 * this
+	 * @see #preserveOrder(int)
+	 */
+	public ThreadedProcessor<A,B> preserveOrder() {
+		return preserveOrder(AbstractMultiplexer.DEFAULT_WINDOW_SIZE);
+	}
+	
+	/**
+	 * Sets the kind of threads that process the input items. Virtual threads
+	 * allow large numbers of threads for tasks that mostly wait (e.g., for external
+	 * processes or I/O). Has to be called before any items are submitted.
+	 * @param threadBackend
+	 * the thread backend; falls back to platform threads if the running JVM
+	 * does not support virtual threads
+	 * @return
+	 * this
+	 * @see DisruptorProvider#setThreadBackend(ThreadBackend)
+	 */
+	public ThreadedProcessor<A,B> setThreadBackend(ThreadBackend threadBackend) {
+		disruptorProvider.setThreadBackend(threadBackend);
+		return this;
+	}
+	
 	private void initMultiplexer() {
 		//now that the handlers are instantiated, we can connect them to the multiplexer
 		//by starting the multiplexer thread (which will park itself until notified
@@ -88,6 +138,13 @@ public class ThreadedProcessor<A,B> extends AbstractProcessor<A,B> {
 				for (AbstractDisruptorEventHandler<A> handler : disruptorProvider.getHandlers()) {
 					handler.setOptions(this.socket.getOptions());
 				}
+				if (this.socket.getOptions().hasOption(DefaultCmdOptions.WAIT_STRATEGY)) {
+					//the disruptor has not been started, yet
+					disruptorProvider.setWaitStrategy(this.socket.getOptions().getWaitStrategy());
+				}
+				if (this.socket.getOptions().hasOption(DefaultCmdOptions.THREAD_BACKEND)) {
+					disruptorProvider.setThreadBackend(this.socket.getOptions().getThreadBackend());
+				}
 			}
 		}
 		//restart the multiplexer if it has been shut down
@@ -98,6 +155,13 @@ public class ThreadedProcessor<A,B> extends AbstractProcessor<A,B> {
 		return null;
 	}
 	
+	@Override
+	public void waitForCompletion() {
+		disruptorProvider.waitForPendingEvents();
+		//all output of the processed items has been submitted to the multiplexer by now
+		multiplexer.waitForPendingOutput();
+	}
+	
 	@Override
 	public boolean finalShutdown() {
 		disruptorProvider.shutdown();
@@ -1,5 +1,7 @@
 package se.de.hu_berlin.informatik.utils.processors.sockets;
 
+import java.util.List;
+
 import se.de.hu_berlin.informatik.utils.processors.BasicComponent;
 import se.de.hu_berlin.informatik.utils.processors.Processor;
 import se.de.hu_berlin.informatik.utils.tracking.TrackingStrategy;
@@ -17,6 +19,8 @@ import se.de.hu_berlin.informatik.utils.tracking.TrackingStrategy;
 public abstract class AbstractProcessorSocket<A, B> extends BasicComponent implements ProcessorSocket<A, B>, ProcessorSocketGenerator<A, B> {
 
 	private Processor<A, B> processor;
+	// null if metrics are disabled
+	private volatile SocketMetrics metrics = null;
 	
 	public AbstractProcessorSocket(Processor<A, B> processor) {
 		super();
@@ -37,6 +41,96 @@ public abstract class AbstractProcessorSocket<A, B> extends BasicComponent imple
 		this.processor = consumer;
 	}
 	
+	@Override
+	public void initAndConsume(A item) {
+		SocketMetrics metrics = this.metrics;
+		if (metrics == null) {
+			getProcessor().resetTrackAndConsume(item);
+		} else {
+			long token = metrics.startProcessing();
+			try {
+				getProcessor().resetTrackAndConsume(item);
+			} finally {
+				metrics.endProcessing(token);
+			}
+		}
+	}
+	
+	@Override
+	public void initAndConsumeBatch(List<A> items) {
+		SocketMetrics metrics = this.metrics;
+		if (metrics == null) {
+			getProcessor().resetTrackAndConsumeBatch(items);
+		} else {
+			long token = metrics.startProcessing(items.size());
+			try {
+				getProcessor().resetTrackAndConsumeBatch(items);
+			} finally {
+				metrics.endProcessing(token, items.size());
+			}
+		}
+	}
+	
+	/**
+	 * Enables the collection of metrics (counters, processing times, etc.)
+	 * for this socket. Does nothing if metrics are already enabled.
+	 * @return
+	 * this
+	 */
+	public AbstractProcessorSocket<A, B> enableMetrics() {
+		if (metrics == null) {
+			metrics = new SocketMetrics();
+		}
+		return this;
+	}
+	
+	/**
+	 * Disables the collection of metrics and discards collected values.
+	 * @return
+	 * this
+	 */
+	public AbstractProcessorSocket<A, B> disableMetrics() {
+		metrics = null;
+		return this;
+	}
+	
+	/**
+	 * @return
+	 * the metrics of this socket, or null if metrics are disabled
+	 */
+	public SocketMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * @return
+	 * a snapshot of the metrics of this socket, or null if metrics are disabled
+	 */
+	public SocketMetrics.Snapshot getMetricsSnapshot() {
+		SocketMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return null;
+		}
+		return metrics.snapshot(getMetricsName(), getBufferCapacity());
+	}
+	
+	/**
+	 * @return
+	 * the name of this socket that is used in metrics snapshots
+	 */
+	public String getMetricsName() {
+		Class<?> clazz = getProcessor().getClass();
+		return clazz.getSimpleName().isEmpty() ? clazz.getName() : clazz.getSimpleName();
+	}
+	
+	/**
+	 * @return
+	 * the capacity of the input buffer of this socket, or 0 if it has none
+	 */
+	protected int getBufferCapacity() {
+		return 0;
+	}
+	
 	@Override
 	public AbstractProcessorSocket<A, B> enableTracking() {
 		super.enableTracking();
@@ -3,6 +3,8 @@
  */
 package se.de.hu_berlin.informatik.utils.processors.sockets;
 
+import java.util.List;
+
 import se.de.hu_berlin.informatik.utils.optionparser.OptionCarrier;
 import se.de.hu_berlin.informatik.utils.processors.Processor;
 import se.de.hu_berlin.informatik.utils.processors.Producer;
@@ -65,6 +67,16 @@ public interface ProcessorSocket<A,B> extends Producer<B>, ProcessorSocketGenera
 		getProcessor().resetTrackAndConsume(item);
 	}
 	
+	/**
+	 * Calls {@link Processor#resetTrackAndConsumeBatch(List)} on the given items,
+	 * using the registered Processor.
+	 * @param items
+	 * the items to process
+	 */
+	default void initAndConsumeBatch(List<A> items) {
+		getProcessor().resetTrackAndConsumeBatch(items);
+	}
+	
 	/**
 	 * Calls {@link Processor#getResultFromCollectedItems()}, using the
 	 * registered Processor.
@@ -0,0 +1,380 @@
+package se.de.hu_berlin.informatik.utils.processors.sockets;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.de.hu_berlin.informatik.utils.statistics.Statistics;
+
+/**
+ * Collects counters and a latency histogram for a single processor socket.
+ * All methods may be called from multiple threads.
+ *
+ * <p> Processing times are measured around the call of the processor and
+ * do not include the time that is spent on handing produced items over to
+ * linked sockets (on the same thread), such that the processing time of
+ * a module does not contain the processing times of all following modules.
+ *
+ * <p> Percentiles are computed from a histogram with 8 buckets per power of
+ * two, i.e. they are reported with a relative error of at most 12.5%.
+ *
+ * @author Simon Heiden
+ *
+ */
+public class SocketMetrics {
+
+	// values below 8 get their own bucket, larger values get 8 buckets per power of two
+	private static final int SUB_BUCKETS = 8;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final LongAdder itemsIn = new LongAdder();
+	private final LongAdder itemsOut = new LongAdder();
+	private final LongAdder processedItems = new LongAdder();
+	private final LongAdder processingNanos = new LongAdder();
+	private final LongAccumulator maxProcessingNanos = new LongAccumulator(Math::max, 0);
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+
+	private final LongAdder blockedSubmissions = new LongAdder();
+	private final LongAdder blockedNanos = new LongAdder();
+
+	private final LongAdder occupancySamples = new LongAdder();
+	private final LongAdder occupancySum = new LongAdder();
+	private final LongAccumulator maxOccupancy = new LongAccumulator(Math::max, 0);
+
+	// time spent on handing over produced items, per thread
+	private final ThreadLocal<long[]> forwardingNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+	private volatile long startTime = System.nanoTime();
+
+	/**
+	 * Has to be called before an item is processed.
+	 * @return
+	 * a token that has to be given to {@link #endProcessing(long)}
+	 * after the item has been processed
+	 */
+	public long startProcessing() {
+		itemsIn.increment();
+		return System.nanoTime() - forwardingNanos.get()[0];
+	}
+
+	/**
+	 * Has to be called before a batch of items is processed.
+	 * @param itemCount
+	 * the number of items in the batch
+	 * @return
+	 * a token that has to be given to {@link #endProcessing(long, int)}
+	 * after the batch has been processed
+	 */
+	public long startProcessing(int itemCount) {
+		itemsIn.add(itemCount);
+		return System.nanoTime() - forwardingNanos.get()[0];
+	}
+
+	/**
+	 * Has to be called after an item has been processed (on the same thread).
+	 * @param token
+	 * the token returned by {@link #startProcessing()}
+	 */
+	public void endProcessing(long token) {
+		endProcessing(token, 1);
+	}
+
+	/**
+	 * Has to be called after a batch of items has been processed (on the same 
+	 * thread). Each item of the batch is recorded with the mean processing time
+	 * of the batch.
+	 * @param token
+	 * the token returned by {@link #startProcessing(int)}
+	 * @param itemCount
+	 * the number of items in the batch
+	 */
+	public void endProcessing(long token, int itemCount) {
+		if (itemCount <= 0) {
+			return;
+		}
+		long nanos = System.nanoTime() - forwardingNanos.get()[0] - token;
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		long nanosPerItem = nanos / itemCount;
+		processedItems.add(itemCount);
+		processingNanos.add(nanos);
+		maxProcessingNanos.accumulate(nanosPerItem);
+		histogram.addAndGet(getBucket(nanosPerItem), itemCount);
+	}
+
+	/**
+	 * Records that an item was produced.
+	 * @param nanos
+	 * the time that was spent on handing the item over to linked sockets
+	 */
+	public void itemProduced(long nanos) {
+		itemsOut.increment();
+		forwardingNanos.get()[0] += nanos;
+	}
+
+	/**
+	 * Records the number of items that are waiting in the input buffer.
+	 * @param occupancy
+	 * the number of waiting items
+	 */
+	public void sampleOccupancy(long occupancy) {
+		occupancySamples.increment();
+		occupancySum.add(occupancy);
+		maxOccupancy.accumulate(occupancy);
+	}
+
+	/**
+	 * Records that a producer had to wait for free space in the input buffer.
+	 * @param nanos
+	 * the time the producer was blocked
+	 */
+	public void producerBlocked(long nanos) {
+		blockedSubmissions.increment();
+		blockedNanos.add(nanos);
+	}
+
+	/**
+	 * Resets all counters. Concurrently recorded values may or may not be
+	 * contained in subsequent snapshots.
+	 */
+	public void reset() {
+		itemsIn.reset();
+		itemsOut.reset();
+		processedItems.reset();
+		processingNanos.reset();
+		maxProcessingNanos.reset();
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			histogram.set(i, 0);
+		}
+		blockedSubmissions.reset();
+		blockedNanos.reset();
+		occupancySamples.reset();
+		occupancySum.reset();
+		maxOccupancy.reset();
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * Creates an immutable snapshot of the current values.
+	 * @param name
+	 * the name of the socket
+	 * @param capacity
+	 * the capacity of the input buffer of the socket (0 if none)
+	 * @return
+	 * the snapshot
+	 */
+	public Snapshot snapshot(String name, int capacity) {
+		long[] buckets = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			buckets[i] = histogram.get(i);
+			count += buckets[i];
+		}
+		long max = maxProcessingNanos.get();
+		long samples = occupancySamples.sum();
+		return new Snapshot(name, System.nanoTime() - startTime,
+				itemsIn.sum(), itemsOut.sum(), count,
+				count == 0 ? 0 : (double) processingNanos.sum() / count,
+				getPercentile(buckets, count, 0.5, max),
+				getPercentile(buckets, count, 0.9, max),
+				getPercentile(buckets, count, 0.99, max), max,
+				samples == 0 ? 0 : (double) occupancySum.sum() / samples,
+				maxOccupancy.get(), capacity,
+				blockedSubmissions.sum(), blockedNanos.sum());
+	}
+
+	private static int getBucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long getUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+
+	private static long getPercentile(long[] buckets, long count, double percentile, long max) {
+		if (count == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(percentile * count);
+		long cumulated = 0;
+		for (int i = 0; i < buckets.length; ++i) {
+			cumulated += buckets[i];
+			if (cumulated >= target) {
+				return Math.min(getUpperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Immutable view of the metrics of a socket at some point in time.
+	 * Times are given in nanoseconds.
+	 */
+	public static final class Snapshot {
+
+		private final String name;
+		private final long elapsedNanos;
+		private final long itemsIn;
+		private final long itemsOut;
+		private final long processedItems;
+		private final double meanProcessingNanos;
+		private final long p50ProcessingNanos;
+		private final long p90ProcessingNanos;
+		private final long p99ProcessingNanos;
+		private final long maxProcessingNanos;
+		private final double meanOccupancy;
+		private final long maxOccupancy;
+		private final int capacity;
+		private final long blockedSubmissions;
+		private final long blockedNanos;
+
+		private Snapshot(String name, long elapsedNanos, long itemsIn, long itemsOut, long processedItems,
+				double meanProcessingNanos, long p50ProcessingNanos, long p90ProcessingNanos,
+				long p99ProcessingNanos, long maxProcessingNanos, double meanOccupancy, long maxOccupancy,
+				int capacity, long blockedSubmissions, long blockedNanos) {
+			this.name = name;
+			this.elapsedNanos = elapsedNanos;
+			this.itemsIn = itemsIn;
+			this.itemsOut = itemsOut;
+			this.processedItems = processedItems;
+			this.meanProcessingNanos = meanProcessingNanos;
+			this.p50ProcessingNanos = p50ProcessingNanos;
+			this.p90ProcessingNanos = p90ProcessingNanos;
+			this.p99ProcessingNanos = p99ProcessingNanos;
+			this.maxProcessingNanos = maxProcessingNanos;
+			this.meanOccupancy = meanOccupancy;
+			this.maxOccupancy = maxOccupancy;
+			this.capacity = capacity;
+			this.blockedSubmissions = blockedSubmissions;
+			this.blockedNanos = blockedNanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return
+		 * the time since metrics were enabled or reset
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		public long getItemsIn() {
+			return itemsIn;
+		}
+
+		public long getItemsOut() {
+			return itemsOut;
+		}
+
+		/**
+		 * @return
+		 * the number of items whose processing has been completed
+		 */
+		public long getProcessedItems() {
+			return processedItems;
+		}
+
+		public double getMeanProcessingNanos() {
+			return meanProcessingNanos;
+		}
+
+		public long getP50ProcessingNanos() {
+			return p50ProcessingNanos;
+		}
+
+		public long getP90ProcessingNanos() {
+			return p90ProcessingNanos;
+		}
+
+		public long getP99ProcessingNanos() {
+			return p99ProcessingNanos;
+		}
+
+		public long getMaxProcessingNanos() {
+			return maxProcessingNanos;
+		}
+
+		/**
+		 * @return
+		 * the mean number of items that were waiting in the input buffer
+		 * when a new item was submitted
+		 */
+		public double getMeanOccupancy() {
+			return meanOccupancy;
+		}
+
+		public long getMaxOccupancy() {
+			return maxOccupancy;
+		}
+
+		/**
+		 * @return
+		 * the capacity of the input buffer (0 if the socket has no buffer)
+		 */
+		public int getCapacity() {
+			return capacity;
+		}
+
+		/**
+		 * @return
+		 * the number of submissions that had to wait for free space in the input buffer
+		 */
+		public long getBlockedSubmissions() {
+			return blockedSubmissions;
+		}
+
+		/**
+		 * @return
+		 * the total time producers spent waiting for free space in the input buffer
+		 */
+		public long getBlockedNanos() {
+			return blockedNanos;
+		}
+
+		/**
+		 * @return
+		 * a statistics object containing the values of this snapshot
+		 */
+		public Statistics<SocketStatistics> toStatistics() {
+			Statistics<SocketStatistics> statistics = new Statistics<>();
+			statistics.addStatisticsElement(SocketStatistics.ITEMS_IN, (double) itemsIn);
+			statistics.addStatisticsElement(SocketStatistics.ITEMS_OUT, (double) itemsOut);
+			statistics.addStatisticsElement(SocketStatistics.MEAN_PROCESSING_TIME, meanProcessingNanos);
+			statistics.addStatisticsElement(SocketStatistics.P50_PROCESSING_TIME, (double) p50ProcessingNanos);
+			statistics.addStatisticsElement(SocketStatistics.P90_PROCESSING_TIME, (double) p90ProcessingNanos);
+			statistics.addStatisticsElement(SocketStatistics.P99_PROCESSING_TIME, (double) p99ProcessingNanos);
+			statistics.addStatisticsElement(SocketStatistics.MAX_PROCESSING_TIME, (double) maxProcessingNanos);
+			statistics.addStatisticsElement(SocketStatistics.MEAN_OCCUPANCY, meanOccupancy);
+			statistics.addStatisticsElement(SocketStatistics.MAX_OCCUPANCY, (double) maxOccupancy);
+			statistics.addStatisticsElement(SocketStatistics.BLOCKED_SUBMISSIONS, (double) blockedSubmissions);
+			statistics.addStatisticsElement(SocketStatistics.BLOCKED_TIME, (double) blockedNanos);
+			return statistics;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: in: %d, out: %d, processing time (ns) mean: %.0f, p50: %d, p90: %d, p99: %d, max: %d, "
+					+ "occupancy mean: %.2f, max: %d/%d, blocked: %d (%d ns)",
+					name, itemsIn, itemsOut, meanProcessingNanos, p50ProcessingNanos, p90ProcessingNanos,
+					p99ProcessingNanos, maxProcessingNanos, meanOccupancy, maxOccupancy, capacity,
+					blockedSubmissions, blockedNanos);
+		}
+
+	}
+
+}
@@ -0,0 +1,128 @@
+package se.de.hu_berlin.informatik.utils.processors.sockets;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
+import se.de.hu_berlin.informatik.utils.statistics.StatisticsCollector;
+
+/**
+ * Periodically takes snapshots of the metrics of some sockets and adds them
+ * to one {@link StatisticsCollector} per socket. If an output directory is
+ * given, the collected statistics of each socket are written to a CSV file
+ * in that directory after each snapshot, such that each line of the file
+ * contains the history of a single statistics entry.
+ *
+ * @author Simon Heiden
+ *
+ */
+public class SocketMetricsReporter {
+
+	private final Supplier<List<SocketMetrics.Snapshot>> snapshotSupplier;
+	private final Path outputDir;
+	private final Map<String, StatisticsCollector<SocketStatistics>> collectors = new LinkedHashMap<>();
+	private ScheduledExecutorService executor = null;
+
+	/**
+	 * Creates a new reporter.
+	 * @param snapshotSupplier
+	 * supplies the current snapshots of all sockets to report on (in a stable order)
+	 * @param outputDir
+	 * the directory to write the CSV files to, or null if no files should be written
+	 */
+	public SocketMetricsReporter(Supplier<List<SocketMetrics.Snapshot>> snapshotSupplier, Path outputDir) {
+		this.snapshotSupplier = snapshotSupplier;
+		this.outputDir = outputDir;
+	}
+
+	/**
+	 * Starts taking snapshots periodically in a daemon thread.
+	 * @param period
+	 * the period between two snapshots
+	 * @param unit
+	 * the time unit of the period
+	 * @return
+	 * this
+	 */
+	public synchronized SocketMetricsReporter start(long period, TimeUnit unit) {
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "socket metrics reporter");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.scheduleAtFixedRate(this::report, period, period, unit);
+		}
+		return this;
+	}
+
+	/**
+	 * Stops taking snapshots periodically and takes a final snapshot.
+	 */
+	public void stop() {
+		ScheduledExecutorService executor;
+		synchronized (this) {
+			executor = this.executor;
+			this.executor = null;
+		}
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Log.err(this, e, "Interrupted while waiting for the reporter to finish.");
+				Thread.currentThread().interrupt();
+			}
+			report();
+		}
+	}
+
+	/**
+	 * Takes a snapshot of all sockets, adds the snapshots to the respective
+	 * collectors and writes the CSV files (if an output directory was given).
+	 */
+	public synchronized void report() {
+		List<SocketMetrics.Snapshot> snapshots = snapshotSupplier.get();
+		for (int i = 0; i < snapshots.size(); ++i) {
+			SocketMetrics.Snapshot snapshot = snapshots.get(i);
+			if (snapshot == null) {
+				continue;
+			}
+			// sockets with the same name are distinguished by their position
+			String key = i + "_" + snapshot.getName();
+			StatisticsCollector<SocketStatistics> collector = collectors
+					.computeIfAbsent(key, k -> new StatisticsCollector<>(SocketStatistics.class));
+			collector.addStatistics(snapshot.toStatistics());
+			if (outputDir != null) {
+				collector.saveToCSV(outputDir.resolve(key + ".csv"));
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * the names of all sockets that were reported on so far, consisting of
+	 * the position of each socket and its name (e.g., "0_MyProcessor")
+	 */
+	public synchronized List<String> getSocketNames() {
+		return new ArrayList<>(collectors.keySet());
+	}
+
+	/**
+	 * @param socketName
+	 * the name of a socket, as given by {@link #getSocketNames()}
+	 * @return
+	 * the collected statistics of the socket, or null if none exist
+	 */
+	public synchronized StatisticsCollector<SocketStatistics> getStatisticsCollector(String socketName) {
+		return collectors.get(socketName);
+	}
+
+}
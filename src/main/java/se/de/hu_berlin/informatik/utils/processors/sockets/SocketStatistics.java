@@ -0,0 +1,51 @@
+package se.de.hu_berlin.informatik.utils.processors.sockets;
+
+import se.de.hu_berlin.informatik.utils.statistics.StatisticsAPI;
+import se.de.hu_berlin.informatik.utils.statistics.StatisticsOptions;
+
+/**
+ * Statistics that are collected for a single processor socket (e.g., a pipe
+ * or a module) if metrics are enabled.
+ *
+ * @author Simon Heiden
+ *
+ * @see SocketMetrics
+ */
+public enum SocketStatistics implements StatisticsAPI {
+	ITEMS_IN("items in", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	ITEMS_OUT("items out", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	MEAN_PROCESSING_TIME("mean processing time per item (ns)", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	P50_PROCESSING_TIME("median processing time per item (ns)", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	P90_PROCESSING_TIME("90th percentile of processing time per item (ns)", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	P99_PROCESSING_TIME("99th percentile of processing time per item (ns)", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	MAX_PROCESSING_TIME("maximum processing time per item (ns)", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	MEAN_OCCUPANCY("mean ring buffer occupancy", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	MAX_OCCUPANCY("maximum ring buffer occupancy", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	BLOCKED_SUBMISSIONS("blocked submissions", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW),
+	BLOCKED_TIME("time producers spent blocked (ns)", StatisticType.DOUBLE_VALUE, StatisticsOptions.PREF_NEW);
+
+	final private String label;
+	final private StatisticType type;
+	final private StatisticsOptions[] options;
+	private SocketStatistics(String label, StatisticType type, StatisticsOptions... options) {
+		this.label = label;
+		this.type = type;
+		this.options = options;
+	}
+
+	@Override
+	public String getLabel() {
+		return label;
+	}
+
+	@Override
+	public StatisticType getType() {
+		return type;
+	}
+
+	@Override
+	public StatisticsOptions[] getOptions() {
+		return options;
+	}
+
+}
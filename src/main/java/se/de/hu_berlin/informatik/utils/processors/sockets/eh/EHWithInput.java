@@ -41,6 +41,11 @@ public class EHWithInput<A> extends DisruptorFCFSEventHandler<A> implements Cons
 		initAndConsume(input);
 	}
 
+	@Override
+	protected long estimateMemoryUsage(A input) {
+		return processor.estimateMemoryUsage(input);
+	}
+	
 	@Override
 	public Processor<A,Object> getProcessor() {
 		return processor;
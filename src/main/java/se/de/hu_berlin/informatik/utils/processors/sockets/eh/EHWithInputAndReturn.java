@@ -3,8 +3,6 @@
  */
 package se.de.hu_berlin.informatik.utils.processors.sockets.eh;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-
 import se.de.hu_berlin.informatik.utils.processors.Processor;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocket;
 import se.de.hu_berlin.informatik.utils.processors.sockets.module.Module;
@@ -28,13 +26,6 @@ import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.Disrupto
  */
 public class EHWithInputAndReturn<A,B> extends DisruptorFCFSEventHandler<A> implements ProcessorSocket<A,B>, MultiplexerInput<B> {
 
-	/**
-	 * The output object.
-	 */
-	private B output = null;
-	
-	private AtomicBoolean hasNewOutput = new AtomicBoolean(false);
-	private final Object lock = new Object();
 	private Multiplexer<B> multiplexer = null;
 	
 	private Processor<A, B> processor;
@@ -53,6 +44,26 @@ public class EHWithInputAndReturn<A,B> extends DisruptorFCFSEventHandler<A> impl
 	public void processEvent(A input) throws Exception {
 		initAndConsume(input);
 	}
+	
+	@Override
+	protected void eventDone(long sequence) {
+		if (multiplexer != null && multiplexer.isOrdered()) {
+			//the multiplexer may only release subsequent output if this input is done
+			multiplexer.complete(sequence);
+		}
+	}
+	
+	@Override
+	protected long estimateMemoryUsage(A input) {
+		return processor.estimateMemoryUsage(input);
+	}
+	
+	@Override
+	protected void waitForTurn(long sequence) throws InterruptedException {
+		if (multiplexer != null) {
+			multiplexer.awaitWindow(sequence);
+		}
+	}
 
 	@Override
 	public Processor<A, B> getProcessor() {
@@ -66,7 +77,7 @@ public class EHWithInputAndReturn<A,B> extends DisruptorFCFSEventHandler<A> impl
 	
 	@Override
 	public void produce(B item) {
-		trySettingNewOutputAndValidate(item);
+		submitOutput(item);
 	}
 	
 	/* (non-Javadoc)
@@ -80,55 +91,6 @@ public class EHWithInputAndReturn<A,B> extends DisruptorFCFSEventHandler<A> impl
 		this.multiplexer = multiplexer;
 	}
 
-	/* (non-Javadoc)
-	 * @see se.de.hu_berlin.informatik.utils.threaded.IMultiplexerInput#getLock()
-	 */
-	@Override
-	public Object getLock() {
-		return lock;
-	}
-	
-	/* (non-Javadoc)
-	 * @see se.de.hu_berlin.informatik.utils.threaded.IMultiplexerInput#getOutput()
-	 */
-	@Override
-	public B getOutput() {
-		return output;
-	}
-	
-	/* (non-Javadoc)
-	 * @see se.de.hu_berlin.informatik.utils.threaded.IMultiplexerInput#setOutput(java.lang.Object)
-	 */
-	@Override
-	public boolean setOutput(B item) {
-		output = item;
-		return true;
-	}
-	
-	/* (non-Javadoc)
-	 * @see se.de.hu_berlin.informatik.utils.threaded.IMultiplexerInput#outputItemIsValid()
-	 */
-	@Override
-	public boolean outputItemIsValid() {
-		return hasNewOutput.get();
-	}
-
-	/* (non-Javadoc)
-	 * @see se.de.hu_berlin.informatik.utils.threaded.IMultiplexerInput#setOutputItemValid()
-	 */
-	@Override
-	public void setOutputItemValid() {
-		hasNewOutput.set(true);
-	}
-
-	/* (non-Javadoc)
-	 * @see se.de.hu_berlin.informatik.utils.threaded.IMultiplexerInput#setOutputItemInvalid()
-	 */
-	@Override
-	public void setOutputItemInvalid() {
-		hasNewOutput.set(false);
-	}
-
 	/* (non-Javadoc)
 	 * @see se.de.hu_berlin.informatik.utils.threaded.IMultiplexerInput#getMultiplexer()
 	 */
@@ -7,6 +7,7 @@ import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
 import se.de.hu_berlin.informatik.utils.processors.Processor;
 import se.de.hu_berlin.informatik.utils.processors.sockets.AbstractProcessorSocket;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocket;
+import se.de.hu_berlin.informatik.utils.processors.sockets.SocketMetrics;
 import se.de.hu_berlin.informatik.utils.processors.sockets.module.ModuleLinker;
 import se.de.hu_berlin.informatik.utils.processors.sockets.pipe.Pipe;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.AbstractDisruptorEventHandler;
@@ -115,8 +116,18 @@ public class Module<A,B> extends AbstractProcessorSocket<A,B> {
 	@Override
 	public void produce(B item) {
 		output = item;
-		if (linkedModule != null) {
-			linkedModule.submit(item);
+		SocketMetrics metrics = getMetrics();
+		// null items are not passed on
+		if (metrics == null || item == null) {
+			if (linkedModule != null) {
+				linkedModule.submit(item);
+			}
+		} else {
+			long start = System.nanoTime();
+			if (linkedModule != null) {
+				linkedModule.submit(item);
+			}
+			metrics.itemProduced(System.nanoTime() - start);
 		}
 	}
 
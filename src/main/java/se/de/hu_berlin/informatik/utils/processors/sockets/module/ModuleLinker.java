@@ -3,10 +3,17 @@
  */
 package se.de.hu_berlin.informatik.utils.processors.sockets.module;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
 import se.de.hu_berlin.informatik.utils.optionparser.OptionCarrier;
 import se.de.hu_berlin.informatik.utils.optionparser.OptionParser;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocketGenerator;
+import se.de.hu_berlin.informatik.utils.processors.sockets.SocketMetrics;
+import se.de.hu_berlin.informatik.utils.processors.sockets.SocketMetricsReporter;
 import se.de.hu_berlin.informatik.utils.tracking.Trackable;
 import se.de.hu_berlin.informatik.utils.tracking.TrackingStrategy;
 import se.de.hu_berlin.informatik.utils.tracking.TrackerDummy;
@@ -25,6 +32,8 @@ public class ModuleLinker implements Trackable, OptionCarrier {
 	private Module<?,?> startModule = null;
 	private Module<?,?> endModule = null;
 	private OptionParser options = null;
+	private boolean metricsEnabled = false;
+	private SocketMetricsReporter metricsReporter = null;
 	
 	public ModuleLinker() {
 		super();
@@ -69,6 +78,9 @@ public class ModuleLinker implements Trackable, OptionCarrier {
 			} catch(UnsupportedOperationException e) {
 				Log.abort(this, e, "Unable to get module from a given transmitter.");
 			}
+			if (metricsEnabled) {
+				enableMetrics();
+			}
 		}
 		return this;
 	}
@@ -95,6 +107,88 @@ public class ModuleLinker implements Trackable, OptionCarrier {
 		return endModule;
 	}
 
+	/**
+	 * @return
+	 * all modules in this linker, from the start module to the end module
+	 */
+	private List<Module<?, ?>> getAllModules() {
+		List<Module<?, ?>> modules = new ArrayList<>();
+		if (startModule == null) {
+			return modules;
+		}
+		Module<?, ?> module = startModule;
+		modules.add(module);
+		while (module != endModule) {
+			module = module.getLinkedModule();
+			modules.add(module);
+		}
+		return modules;
+	}
+	
+	/**
+	 * Enables the collection of metrics for all modules in this linker,
+	 * including modules that are appended afterwards.
+	 * @return
+	 * this ModuleLinker
+	 * @see Module#enableMetrics()
+	 */
+	public ModuleLinker enableMetrics() {
+		metricsEnabled = true;
+		for (Module<?, ?> module : getAllModules()) {
+			module.enableMetrics();
+		}
+		return this;
+	}
+	
+	/**
+	 * Disables the collection of metrics for all modules in this linker.
+	 * @return
+	 * this ModuleLinker
+	 */
+	public ModuleLinker disableMetrics() {
+		metricsEnabled = false;
+		for (Module<?, ?> module : getAllModules()) {
+			module.disableMetrics();
+		}
+		return this;
+	}
+	
+	/**
+	 * @return
+	 * snapshots of the metrics of all modules in this linker, in the order 
+	 * of the modules; contains null for modules with disabled metrics
+	 */
+	public List<SocketMetrics.Snapshot> getMetricsSnapshots() {
+		List<SocketMetrics.Snapshot> snapshots = new ArrayList<>();
+		for (Module<?, ?> module : getAllModules()) {
+			snapshots.add(module.getMetricsSnapshot());
+		}
+		return snapshots;
+	}
+	
+	/**
+	 * Enables metrics and periodically collects snapshots of the metrics of all 
+	 * modules in this linker. Since module chains are never shut down, the 
+	 * returned reporter has to be stopped when the collection is done. Calling 
+	 * this method again stops the previous reporter.
+	 * @param outputDir
+	 * a directory to write one CSV file per module to after each snapshot, or null
+	 * @param period
+	 * the period between two snapshots
+	 * @param unit
+	 * the time unit of the period
+	 * @return
+	 * the reporter that collects the statistics
+	 */
+	public SocketMetricsReporter reportMetricsPeriodically(Path outputDir, long period, TimeUnit unit) {
+		enableMetrics();
+		if (metricsReporter != null) {
+			metricsReporter.stop();
+		}
+		metricsReporter = new SocketMetricsReporter(this::getMetricsSnapshots, outputDir).start(period, unit);
+		return metricsReporter;
+	}
+
 	/**
 	 * Submits a single or multiple items to the underlying chain
 	 * of modules.
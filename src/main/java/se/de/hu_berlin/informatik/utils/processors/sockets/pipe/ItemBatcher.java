@@ -0,0 +1,190 @@
+package se.de.hu_berlin.informatik.utils.processors.sockets.pipe;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Coalesces submitted items into batches. A batch is handed over to the
+ * given sink if it contains the maximal number of items or if the maximal
+ * delay has passed since its first item was added, whichever comes first.
+ * Delayed batches are handed over by a single daemon thread that is shared
+ * by all batchers.
+ *
+ * <p> Batches are handed over in the order in which they were completed, and
+ * never while holding the lock that guards adding items. The shared timer thread
+ * must not block, so it only tries to hand over batches with the non-blocking sink.
+ * If that fails (e.g., since the ring buffer is full), the batch stays queued and is
+ * handed over by the next producer call ({@link #add(Object)} or {@link #flush()})
+ * or by a later retry of the timer thread.
+ *
+ * @author Simon Heiden
+ *
+ * @param <A>
+ * the type of the items
+ */
+class ItemBatcher<A> {
+
+	private static final long MIN_RETRY_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static ScheduledExecutorService timer = null;
+
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final Consumer<List<A>> sink;
+	private final Predicate<List<A>> trySink;
+
+	// guarded by this
+	private List<A> batch = null;
+	private ScheduledFuture<?> flushTask = null;
+	// completed batches that still have to be handed over, in order
+	private final Queue<List<A>> completedBatches = new ArrayDeque<>();
+	private boolean retryScheduled = false;
+
+	// only one thread hands over batches at a time to keep their order
+	private final ReentrantLock handOverLock = new ReentrantLock();
+
+	/**
+	 * Creates a new batcher.
+	 * @param maxBatchSize
+	 * the maximal number of items in a batch
+	 * @param maxDelayNanos
+	 * the maximal time that an item waits for further items
+	 * @param sink
+	 * receives the batches; may block
+	 * @param trySink
+	 * receives the batches without blocking; returns false if
+	 * a batch could not be taken
+	 */
+	ItemBatcher(int maxBatchSize, long maxDelayNanos, Consumer<List<A>> sink, Predicate<List<A>> trySink) {
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = maxDelayNanos;
+		this.sink = sink;
+		this.trySink = trySink;
+	}
+
+	private static synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "pipe batch timer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return timer;
+	}
+
+	/**
+	 * Adds an item to the current batch. Hands over completed batches,
+	 * which may block.
+	 * @param item
+	 * the item to add
+	 */
+	void add(A item) {
+		boolean handOver;
+		synchronized (this) {
+			if (batch == null) {
+				final List<A> newBatch = new ArrayList<>(maxBatchSize);
+				batch = newBatch;
+				flushTask = getTimer().schedule(() -> flushIfCurrent(newBatch), maxDelayNanos, TimeUnit.NANOSECONDS);
+			}
+			batch.add(item);
+			if (batch.size() >= maxBatchSize) {
+				completeBatch();
+			}
+			handOver = !completedBatches.isEmpty();
+		}
+		if (handOver) {
+			handOverBatches();
+		}
+	}
+
+	/**
+	 * Hands the current batch and all other pending batches over to the sink. May block.
+	 */
+	void flush() {
+		synchronized (this) {
+			completeBatch();
+		}
+		handOverBatches();
+	}
+
+	// has to be called while holding the monitor
+	private void completeBatch() {
+		if (batch != null) {
+			flushTask.cancel(false);
+			completedBatches.add(batch);
+			batch = null;
+			flushTask = null;
+		}
+	}
+
+	// called by the timer thread; must not block
+	private void flushIfCurrent(List<A> expectedBatch) {
+		synchronized (this) {
+			// the batch may have been handed over already
+			if (batch == expectedBatch) {
+				completeBatch();
+			}
+		}
+		tryHandOverBatches();
+	}
+
+	// called by the timer thread; must not block
+	private void tryHandOverBatches() {
+		synchronized (this) {
+			retryScheduled = false;
+		}
+		if (handOverLock.tryLock()) {
+			try {
+				List<A> items;
+				while ((items = peekCompletedBatch()) != null) {
+					if (!trySink.test(items)) {
+						break;
+					}
+					pollCompletedBatch();
+				}
+			} finally {
+				handOverLock.unlock();
+			}
+		}
+		synchronized (this) {
+			// a producer hands the batches over if it comes first
+			if (!completedBatches.isEmpty() && !retryScheduled) {
+				retryScheduled = true;
+				getTimer().schedule(this::tryHandOverBatches,
+						Math.max(maxDelayNanos, MIN_RETRY_DELAY_NANOS), TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	private void handOverBatches() {
+		handOverLock.lock();
+		try {
+			List<A> items;
+			while ((items = peekCompletedBatch()) != null) {
+				sink.accept(items);
+				pollCompletedBatch();
+			}
+		} finally {
+			handOverLock.unlock();
+		}
+	}
+
+	private synchronized List<A> peekCompletedBatch() {
+		return completedBatches.peek();
+	}
+
+	private synchronized void pollCompletedBatch() {
+		completedBatches.poll();
+	}
+
+}
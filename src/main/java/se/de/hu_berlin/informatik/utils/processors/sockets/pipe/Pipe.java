@@ -3,12 +3,22 @@
  */
 package se.de.hu_berlin.informatik.utils.processors.sockets.pipe;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
+import se.de.hu_berlin.informatik.utils.processors.AbstractBatchProcessor;
 import se.de.hu_berlin.informatik.utils.processors.Processor;
 import se.de.hu_berlin.informatik.utils.processors.sockets.AbstractProcessorSocket;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocket;
+import se.de.hu_berlin.informatik.utils.processors.sockets.SocketMetrics;
 import se.de.hu_berlin.informatik.utils.processors.sockets.module.Module;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.DisruptorProvider;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.DisruptorWaitStrategy;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.AbstractDisruptorEventHandler;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.DisruptorFCFSEventHandler;
 
@@ -44,6 +54,13 @@ import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.Disrupto
  * 
  * <br>
  * <br>
+ * A Pipe may also pass its output to multiple Pipes (see
+ * {@link #fanOutTo(ToIntFunction, Pipe...)}), and multiple Pipes may pass
+ * their output to a single Pipe (see {@link #mergeInto(Pipe)}). A Pipe with
+ * multiple input Pipes is shut down after the last of its input Pipes.
+ * 
+ * <br>
+ * <br>
  * In general, Pipes should not be linked manually and should preferably be
  * linked together with a {@link PipeLinker} which provides more general and
  * easier access methods.
@@ -62,11 +79,17 @@ public class Pipe<A, B> extends AbstractProcessorSocket<A, B> {
 	private DisruptorProvider<A> disruptorProvider;
 	private int bufferSize;
 
-	private boolean hasInput = false;
-	private Pipe<B, ?> output = null;
+	private int inputCount = 0;
+	private int shutdownInputCount = 0;
+	private final List<Pipe<B, ?>> outputs = new ArrayList<>(1);
+	// null if items are broadcast to all outputs
+	private ToIntFunction<? super B> partitioner = null;
 
 	private final boolean singleWriter;
 	private ClassLoader classLoader;
+	private DisruptorWaitStrategy waitStrategy = DisruptorWaitStrategy.BLOCKING;
+	// null if batching is disabled
+	private ItemBatcher<A> batcher = null;
 
 	/**
 	 * Creates a pipe object with a buffer size of 8.
@@ -130,6 +153,7 @@ public class Pipe<A, B> extends AbstractProcessorSocket<A, B> {
 		this.bufferSize = bufferSize;
 		this.classLoader = cl;
 		disruptorProvider = new DisruptorProvider<>(bufferSize, cl);
+		disruptorProvider.setWaitStrategy(waitStrategy);
 		// event handler used for transmitting items from one pipe to another
 		disruptorProvider.connectHandlers(new DisruptorFCFSEventHandler<A>() {
 
@@ -137,17 +161,44 @@ public class Pipe<A, B> extends AbstractProcessorSocket<A, B> {
 			public void resetAndInit() {
 				/* not needed */ }
 
+			@SuppressWarnings("unchecked")
 			@Override
 			public void processEvent(A item) {
-				Pipe.this.initAndConsume(item);
+				if (item instanceof ItemBatch) {
+					Pipe.this.initAndConsumeBatch(((ItemBatch<A>) item).items);
+				} else {
+					Pipe.this.initAndConsume(item);
+				}
 			}
 		});
 	}
 
 	@Override
 	public void produce(B item) {
-		if (output != null) {
-			output.submit(item);
+		SocketMetrics metrics = getMetrics();
+		// null items are not passed on
+		if (metrics == null || item == null) {
+			passOn(item);
+		} else {
+			long start = System.nanoTime();
+			passOn(item);
+			metrics.itemProduced(System.nanoTime() - start);
+		}
+	}
+
+	private void passOn(B item) {
+		int size = outputs.size();
+		if (size == 1) {
+			outputs.get(0).submit(item);
+		} else if (size > 1 && item != null) {
+			if (partitioner == null) {
+				// broadcast the (same) item to all outputs
+				for (int i = 0; i < size; ++i) {
+					outputs.get(i).submit(item);
+				}
+			} else {
+				outputs.get(Math.floorMod(partitioner.applyAsInt(item), size)).submit(item);
+			}
 		}
 	}
 
@@ -170,8 +221,9 @@ public class Pipe<A, B> extends AbstractProcessorSocket<A, B> {
 	 * whether the input pipe writes to this pipe with only a single thread
 	 */
 	protected void setInput(boolean singleWriter) {
-		setProducerType(singleWriter);
-		hasInput = true;
+		++inputCount;
+		// multiple input pipes write with multiple threads
+		setProducerType(singleWriter && inputCount == 1);
 	}
 
 	/**
@@ -183,19 +235,79 @@ public class Pipe<A, B> extends AbstractProcessorSocket<A, B> {
 		disruptorProvider.setProducerType(singleWriter);
 	}
 
+	/**
+	 * Sets the strategy that this pipe uses to wait for new items. Blocking
+	 * (default) is suited for batch jobs, while the other strategies lower
+	 * the latency of short pipelines at the cost of CPU time.
+	 * @param waitStrategy
+	 * the wait strategy
+	 * @return
+	 * this pipe
+	 */
+	public Pipe<A, B> setWaitStrategy(DisruptorWaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+		disruptorProvider.setWaitStrategy(waitStrategy);
+		return this;
+	}
+
+	/**
+	 * Enables coalescing submitted items into batches. Each batch is transmitted
+	 * as a single event and processed with {@link #initAndConsumeBatch(List)}, 
+	 * which processes all items with a single call if the processor is an 
+	 * {@link AbstractBatchProcessor} and processes all items one by one, otherwise.
+	 * A batch is transmitted as soon as it contains the given number of items
+	 * or as soon as the given delay has passed since its first item was submitted.
+	 * @param maxBatchSize
+	 * the maximal number of items in a batch (a value of 1 disables batching)
+	 * @param maxDelayMicros
+	 * the maximal time in microseconds that submitted items wait for further items
+	 * @return
+	 * this pipe
+	 */
+	public Pipe<A, B> enableBatching(int maxBatchSize, long maxDelayMicros) {
+		if (maxBatchSize < 1 || maxDelayMicros < 0) {
+			throw new IllegalArgumentException("Batch size must be positive and delay may not be negative.");
+		}
+		disableBatching();
+		if (maxBatchSize > 1) {
+			batcher = new ItemBatcher<>(maxBatchSize, 
+					TimeUnit.MICROSECONDS.toNanos(maxDelayMicros), this::submitItemBatch, this::trySubmitItemBatch);
+		}
+		return this;
+	}
+
+	/**
+	 * Disables coalescing submitted items into batches. Submits a pending batch.
+	 * @return
+	 * this pipe
+	 */
+	public Pipe<A, B> disableBatching() {
+		ItemBatcher<A> batcher = this.batcher;
+		this.batcher = null;
+		if (batcher != null) {
+			batcher.flush();
+		}
+		return this;
+	}
+
 	/**
 	 * @return whether an input pipe exists
 	 */
 	private boolean hasInput() {
-		return hasInput;
+		return inputCount > 0;
 	}
 
 	/**
-	 * @param pipe
-	 * the output pipe
+	 * @return
+	 * the pipes linked to the output of this pipe
 	 */
-	private void setOutput(Pipe<B, ?> pipe) {
-		output = pipe;
+	List<Pipe<B, ?>> getOutputs() {
+		return outputs;
+	}
+
+	@Override
+	protected int getBufferCapacity() {
+		return disruptorProvider.getBufferSize();
 	}
 
 	protected DisruptorProvider<A> getDisruptorProvider() {
@@ -229,28 +341,115 @@ public class Pipe<A, B> extends AbstractProcessorSocket<A, B> {
 	 * @throws IllegalStateException
 	 * if the pipes can't be linked due to other reasons
 	 */
-	@SuppressWarnings("unchecked")
 	private <C, D> Pipe<C, D> linkPipeTo(Pipe<C, D> pipe, boolean singleWriter)
 			throws IllegalArgumentException, IllegalStateException {
-		if (!pipe.hasInput()) {
-			// output pipe has no input yet
-			try {
-				setOutput((Pipe<B, ?>) pipe);
-				pipe.setInput(singleWriter);
-			} catch (ClassCastException e) {
-				throw new IllegalArgumentException("Type mismatch while linking to other pipe.", e);
-			}
-		} else {
+		if (pipe.hasInput()) {
 			throw new IllegalStateException("No linking to already used pipes allowed!");
 		}
+		if (!outputs.isEmpty()) {
+			throw new IllegalStateException("Pipe is already linked to an output. Use fanOutTo(...) instead.");
+		}
+		return addOutput(pipe, singleWriter);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <C, D> Pipe<C, D> addOutput(Pipe<C, D> pipe, boolean singleWriter) 
+			throws IllegalArgumentException, IllegalStateException {
+		if (pipe == this || outputs.contains(pipe)) {
+			throw new IllegalStateException("Pipe is already linked to the given pipe.");
+		}
+		try {
+			outputs.add((Pipe<B, ?>) pipe);
+			pipe.setInput(singleWriter);
+		} catch (ClassCastException e) {
+			throw new IllegalArgumentException("Type mismatch while linking to other pipe.", e);
+		}
 		return pipe;
 	}
 
+	/**
+	 * Links the given pipes to the output of this pipe. Each produced item is
+	 * submitted to all given pipes (broadcast). The pipes have to process the
+	 * shared items without modifying them. Pipes may be added to existing outputs.
+	 * @param pipes
+	 * the pipes to be linked to (with input type B)
+	 * @return
+	 * this pipe
+	 * @throws IllegalArgumentException
+	 * if the input type of a given pipe does not match the output type B of
+	 * this pipe
+	 * @throws IllegalStateException
+	 * if the pipes can't be linked due to other reasons
+	 */
+	public Pipe<A, B> fanOutTo(Pipe<?, ?>... pipes) throws IllegalArgumentException, IllegalStateException {
+		return fanOutTo(null, pipes);
+	}
+
+	/**
+	 * Links the given pipes to the output of this pipe. Each produced item is
+	 * submitted to exactly one of the output pipes, chosen by the given 
+	 * partitioner (modulo the number of output pipes), or to all output pipes
+	 * if no partitioner is given.
+	 * @param partitioner
+	 * computes the index of the output pipe for each item; broadcasts all
+	 * items if null
+	 * @param pipes
+	 * the pipes to be linked to (with input type B)
+	 * @return
+	 * this pipe
+	 * @throws IllegalArgumentException
+	 * if the input type of a given pipe does not match the output type B of
+	 * this pipe
+	 * @throws IllegalStateException
+	 * if the pipes can't be linked due to other reasons
+	 */
+	public Pipe<A, B> fanOutTo(ToIntFunction<? super B> partitioner, Pipe<?, ?>... pipes) 
+			throws IllegalArgumentException, IllegalStateException {
+		for (Pipe<?, ?> pipe : pipes) {
+			addOutput(pipe, singleWriter);
+		}
+		this.partitioner = partitioner;
+		return this;
+	}
+
+	/**
+	 * Links a matching pipe to the output of this pipe, even if the given
+	 * pipe has other input pipes already. The given pipe merges the outputs
+	 * of all its input pipes and is shut down after all of its input pipes 
+	 * have been shut down.
+	 * @param <C>
+	 * the input type of the pipe to be linked to
+	 * @param <D>
+	 * the output type of the pipe to be linked to
+	 * @param pipe
+	 * the pipe to be linked to
+	 * @return the pipe to be linked to
+	 * @throws IllegalArgumentException
+	 * if the input type C of the given pipe does not match the output type B of
+	 * this pipe
+	 * @throws IllegalStateException
+	 * if the pipes can't be linked due to other reasons
+	 */
+	public <C, D> Pipe<C, D> mergeInto(Pipe<C, D> pipe) throws IllegalArgumentException, IllegalStateException {
+		if (!outputs.isEmpty()) {
+			throw new IllegalStateException("Pipe is already linked to an output.");
+		}
+		return addOutput(pipe, singleWriter);
+	}
+
 	/**
 	 * Shuts down the pipe. Waits for all executions to terminate.
 	 */
 	public void shutdown() {
+		synchronized (this) {
+			// with multiple input pipes, wait for the shutdown of the last one
+			if (inputCount > 1 && ++shutdownInputCount < inputCount) {
+				return;
+			}
+			shutdownInputCount = 0;
+		}
 		// Log.out(this, "Shutting down..., %s", Thread.currentThread());
+		flushPendingBatch();
 		// shut down the disruptor
 		disruptorProvider.shutdown();
 
@@ -263,12 +462,29 @@ public class Pipe<A, B> extends AbstractProcessorSocket<A, B> {
 
 		finalShutdown();
 
-		// initiate shut down of the pipe linked to this pipe's output (if any)
-		if (output != null) {
+		// initiate shut down of the pipes linked to this pipe's output (if any)
+		for (Pipe<B, ?> output : outputs) {
 			output.shutdown();
 		}
 	}
 
+	/**
+	 * Waits until all items that were submitted to this pipe so far have been
+	 * processed by this pipe and by all pipes linked to its output. In contrast 
+	 * to {@link #shutdown()}, all pipes keep running and may be used again.
+	 * Collected items are not submitted (this only happens on shutdown).
+	 */
+	public void waitForCompletion() {
+		flushPendingBatch();
+		disruptorProvider.waitForPendingEvents();
+		getProcessor().waitForCompletion();
+
+		// pipes with multiple inputs are checked again after each input
+		for (Pipe<B, ?> output : outputs) {
+			output.waitForCompletion();
+		}
+	}
+
 	/**
 	 * Submits an item to this pipe.
 	 * @param item
@@ -276,7 +492,122 @@ public class Pipe<A, B> extends AbstractProcessorSocket<A, B> {
 	 */
 	public void submit(A item) {
 		if (item != null) {
+			ItemBatcher<A> batcher = this.batcher;
+			if (batcher == null) {
+				submitEvent(item);
+			} else {
+				batcher.add(item);
+			}
+		}
+	}
+
+	private void flushPendingBatch() {
+		ItemBatcher<A> batcher = this.batcher;
+		if (batcher != null) {
+			batcher.flush();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void submitItemBatch(List<A> items) {
+		// the ring buffer holds objects of any type at runtime
+		submitEvent((A) new ItemBatch<>(items));
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean trySubmitItemBatch(List<A> items) {
+		return disruptorProvider.trySubmit((A) new ItemBatch<>(items));
+	}
+
+	private void submitEvent(A item) {
+		SocketMetrics metrics = getMetrics();
+		if (metrics == null) {
+			disruptorProvider.submit(item);
+		} else {
+			submitAndMeasure(item, metrics);
+		}
+	}
+
+	private void submitAndMeasure(A item, SocketMetrics metrics) {
+		metrics.sampleOccupancy(disruptorProvider.getOccupancy());
+		if (!disruptorProvider.trySubmit(item)) {
+			// the buffer is full, so the producer has to wait
+			long start = System.nanoTime();
 			disruptorProvider.submit(item);
+			metrics.producerBlocked(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Submits the given items to this pipe in batches. {@code null} items
+	 * are ignored.
+	 * @param items
+	 * the items to be submitted
+	 */
+	public void submitBatch(A[] items) {
+		ItemBatcher<A> batcher = this.batcher;
+		SocketMetrics metrics = getMetrics();
+		if (batcher != null) {
+			for (A item : items) {
+				if (item != null) {
+					batcher.add(item);
+				}
+			}
+		} else if (metrics == null) {
+			disruptorProvider.submitBatch(withoutNullItems(items));
+		} else {
+			// submit items one by one to measure occupancy and blocking
+			for (A item : items) {
+				if (item != null) {
+					submitAndMeasure(item, metrics);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Submits the given items to this pipe in batches. {@code null} items
+	 * are ignored.
+	 * @param items
+	 * the items to be submitted
+	 */
+	@SuppressWarnings("unchecked")
+	public void submitAll(Collection<? extends A> items) {
+		submitBatch((A[]) items.toArray());
+	}
+
+	private A[] withoutNullItems(A[] items) {
+		int nullItems = 0;
+		for (A item : items) {
+			if (item == null) {
+				++nullItems;
+			}
+		}
+		if (nullItems == 0) {
+			return items;
+		}
+		A[] result = Arrays.copyOf(items, items.length - nullItems);
+		int i = 0;
+		for (A item : items) {
+			if (item != null) {
+				result[i++] = item;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Submits items of some kind to this pipe in batches. Will abort the 
+	 * application if the type does not match the pipe's input type.
+	 * @param items
+	 * the items to be submitted
+	 */
+	@SuppressWarnings("unchecked")
+	public void submitObjects(Object... items) {
+		try {
+			submitBatch((A[]) items);
+		} catch (ClassCastException e) {
+			Log.abort(this, e, "Type mismatch while submitting items.");
 		}
 	}
 
@@ -325,4 +656,16 @@ public class Pipe<A, B> extends AbstractProcessorSocket<A, B> {
 		throw new UnsupportedOperationException("not supported");
 	}
 
+	/**
+	 * Wraps a batch of items that is transmitted as a single event.
+	 */
+	private static final class ItemBatch<A> {
+
+		private final List<A> items;
+
+		private ItemBatch(List<A> items) {
+			this.items = items;
+		}
+	}
+
 }
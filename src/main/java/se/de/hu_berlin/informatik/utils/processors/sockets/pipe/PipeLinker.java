@@ -3,17 +3,35 @@
  */
 package se.de.hu_berlin.informatik.utils.processors.sockets.pipe;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
 import se.de.hu_berlin.informatik.utils.optionparser.OptionCarrier;
 import se.de.hu_berlin.informatik.utils.optionparser.OptionParser;
+import se.de.hu_berlin.informatik.utils.processors.Processor;
+import se.de.hu_berlin.informatik.utils.processors.basics.FusedProcessor;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocketGenerator;
+import se.de.hu_berlin.informatik.utils.processors.sockets.SocketMetrics;
+import se.de.hu_berlin.informatik.utils.processors.sockets.SocketMetricsReporter;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.DisruptorWaitStrategy;
 import se.de.hu_berlin.informatik.utils.tracking.Trackable;
 import se.de.hu_berlin.informatik.utils.tracking.TrackingStrategy;
 import se.de.hu_berlin.informatik.utils.tracking.TrackerDummy;
 
 /**
  * Provides more general and easy access methods for the linking of Pipes
- * and for the submission of items to a chain of Pipes.
+ * and for the submission of items to a chain of Pipes. Chains may be split
+ * into parallel branches (see {@link #fanOut(PipeLinker...)} and 
+ * {@link #partition(PipeLinker...)}) that are merged again by the next
+ * appended Pipe.
  * 
  * @author Simon Heiden
  *
@@ -66,8 +84,142 @@ public class PipeLinker implements Trackable, OptionCarrier {
 
 	private boolean singleWriter = true;
 	private Pipe<?,?> startPipe = null;
-	private Pipe<?,?> endPipe = null;
+	// multiple end pipes exist after fanning out (until the branches are merged)
+	private List<Pipe<?,?>> endPipes = new ArrayList<>(1);
 	private OptionParser options;
+	private DisruptorWaitStrategy waitStrategy = null;
+	private boolean metricsEnabled = false;
+	private boolean fuseLightweightStages = false;
+	private int maxBatchSize = 1;
+	private long maxBatchDelayMicros = 0;
+	private SocketMetricsReporter metricsReporter = null;
+
+	/**
+	 * Sets the strategy that the pipes appended afterwards use to wait for
+	 * new items. Overrides a wait strategy given in the options.
+	 * @param waitStrategy
+	 * the wait strategy
+	 * @return
+	 * this PipeLinker
+	 */
+	public PipeLinker setWaitStrategy(DisruptorWaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+		return this;
+	}
+
+	/**
+	 * Enables coalescing items into batches for the pipes appended afterwards.
+	 * @param maxBatchSize
+	 * the maximal number of items in a batch (a value of 1 disables batching)
+	 * @param maxDelayMicros
+	 * the maximal time in microseconds that submitted items wait for further items
+	 * @return
+	 * this PipeLinker
+	 * @see Pipe#enableBatching(int, long)
+	 */
+	public PipeLinker setBatching(int maxBatchSize, long maxDelayMicros) {
+		this.maxBatchSize = maxBatchSize;
+		this.maxBatchDelayMicros = maxDelayMicros;
+		return this;
+	}
+
+	/**
+	 * Sets whether lightweight stages (see {@link Processor#isLightweight()}) that
+	 * are appended afterwards are fused with adjacent stages of the same call of
+	 * {@link #append(ProcessorSocketGenerator...)}, such that they are executed
+	 * in the thread of a single Pipe without handing items over to other threads.
+	 * Two stages that are not lightweight are never fused.
+	 * @param fuseLightweightStages
+	 * whether to fuse lightweight stages
+	 * @return
+	 * this PipeLinker
+	 * @see FusedProcessor
+	 */
+	public PipeLinker setStageFusion(boolean fuseLightweightStages) {
+		this.fuseLightweightStages = fuseLightweightStages;
+		return this;
+	}
+
+	/**
+	 * Fuses the given stages into a single Pipe that executes all stages
+	 * synchronously in one thread (like linked Modules) and appends it to 
+	 * former appended Pipes, if any. If the stages don't match, then execution 
+	 * stops and the application aborts.
+	 * @param generators
+	 * stages to be fused (given as processors, possibly)
+	 * @return
+	 * this PipeLinker
+	 * @see FusedProcessor
+	 */
+	public PipeLinker appendFused(ProcessorSocketGenerator<?,?>... generators) {
+		return appendFused(8, generators);
+	}
+
+	/**
+	 * Fuses the given stages into a single Pipe that executes all stages
+	 * synchronously in one thread (like linked Modules) and appends it to 
+	 * former appended Pipes, if any. If the stages don't match, then execution 
+	 * stops and the application aborts.
+	 * @param bufferSize
+	 * size of the buffer in front of the fused pipe
+	 * @param generators
+	 * stages to be fused (given as processors, possibly)
+	 * @return
+	 * this PipeLinker
+	 * @see FusedProcessor
+	 */
+	public PipeLinker appendFused(int bufferSize, ProcessorSocketGenerator<?,?>... generators) {
+		if (generators.length == 0) {
+			return this;
+		}
+		try {
+			return append(bufferSize, new FusedProcessor<>(generators));
+		} catch(UnsupportedOperationException | IllegalArgumentException | IllegalStateException e) {
+			Log.abort(this, e, "Unable to fuse the given stages.");
+			return this;
+		}
+	}
+
+	/**
+	 * Groups consecutive stages, such that each group contains at most one stage
+	 * that is not lightweight. Groups with more than one stage are fused.
+	 * Stages that are already sockets (e.g., pipes) are not fused.
+	 */
+	private ProcessorSocketGenerator<?,?>[] fuseLightweightStages(ProcessorSocketGenerator<?,?>[] generators) {
+		List<ProcessorSocketGenerator<?,?>> result = new ArrayList<>(generators.length);
+		List<ProcessorSocketGenerator<?,?>> group = new ArrayList<>();
+		boolean groupIsLightweight = true;
+		for (ProcessorSocketGenerator<?,?> generator : generators) {
+			if (!(generator instanceof Processor)) {
+				addGroup(result, group);
+				result.add(generator);
+				groupIsLightweight = true;
+				continue;
+			}
+			boolean isLightweight = ((Processor<?,?>) generator).isLightweight();
+			if (!isLightweight && !groupIsLightweight) {
+				addGroup(result, group);
+				groupIsLightweight = true;
+			}
+			group.add(generator);
+			groupIsLightweight &= isLightweight;
+		}
+		addGroup(result, group);
+		return result.toArray(new ProcessorSocketGenerator<?,?>[result.size()]);
+	}
+
+	private void addGroup(List<ProcessorSocketGenerator<?,?>> result, List<ProcessorSocketGenerator<?,?>> group) {
+		if (group.size() == 1) {
+			result.add(group.get(0));
+		} else if (group.size() > 1) {
+			try {
+				result.add(new FusedProcessor<>(group.toArray(new ProcessorSocketGenerator<?,?>[group.size()])));
+			} catch(UnsupportedOperationException | IllegalStateException e) {
+				Log.abort(this, e, "Unable to fuse stages.");
+			}
+		}
+		group.clear();
+	}
 
 	/**
 	 * Links the given Pipes (provided by socket generators, possibly) 
@@ -94,9 +246,12 @@ public class PipeLinker implements Trackable, OptionCarrier {
 	 * this PipeLinker
 	 */
 	public PipeLinker append(int bufferSize, ProcessorSocketGenerator<?,?>... generators) {	
+		if (fuseLightweightStages) {
+			generators = fuseLightweightStages(generators);
+		}
 		if (generators.length != 0) {
 			try {
-				generators[0].asPipe(bufferSize).setOptions(options);
+				initPipe(generators[0].asPipe(bufferSize));
 				if (startPipe == null) {
 					startPipe = generators[0].asPipe(bufferSize);
 					//set whether input items are submitted with a single thread
@@ -104,16 +259,22 @@ public class PipeLinker implements Trackable, OptionCarrier {
 					if (isTracking()) {
 						startPipe.enableTracking(getTracker());
 					}
+				} else if (endPipes.size() == 1) {
+					endPipes.get(0).linkTo(generators[0].asPipe(bufferSize));
 				} else {
-					endPipe.linkTo(generators[0].asPipe(bufferSize));
+					// merge all branches
+					for (Pipe<?, ?> endPipe : endPipes) {
+						endPipe.mergeInto(generators[0].asPipe(bufferSize));
+					}
 				}
 
 				for (int i = 0; i < generators.length-1; ++i) {
 					generators[i].asPipe(bufferSize).linkTo(generators[i+1].asPipe(bufferSize));
-					generators[i+1].asPipe(bufferSize).setOptions(options);
+					initPipe(generators[i+1].asPipe(bufferSize));
 				}
 
-				endPipe = generators[generators.length-1].asPipe(bufferSize);
+				endPipes.clear();
+				endPipes.add(generators[generators.length-1].asPipe(bufferSize));
 			} catch(UnsupportedOperationException e) {
 				Log.abort(this, e, "Unable to get pipe from a given transmitter.");
 			}
@@ -121,6 +282,187 @@ public class PipeLinker implements Trackable, OptionCarrier {
 		return this;
 	}
 	
+	/**
+	 * Links the end of this linker to the start of each of the given branches.
+	 * Each item produced by the current end pipe is submitted to all branches 
+	 * (broadcast), which have to process the shared items without modifying them.
+	 * Pipes that are appended afterwards merge the outputs of all branches.
+	 * (Branches that end with consuming processors don't produce any output.)
+	 * The given linkers may not be used on their own, afterwards.
+	 * @param branches
+	 * linkers that contain the pipes of each branch
+	 * @return
+	 * this PipeLinker
+	 */
+	public PipeLinker fanOut(PipeLinker... branches) {
+		return fanOut(null, branches);
+	}
+	
+	/**
+	 * Links the end of this linker to the start of each of the given branches.
+	 * Each item produced by the current end pipe is submitted to exactly one 
+	 * branch, chosen in a round robin fashion. Pipes that are appended afterwards 
+	 * merge the outputs of all branches. The given linkers may not be used on
+	 * their own, afterwards.
+	 * @param branches
+	 * linkers that contain the pipes of each branch
+	 * @return
+	 * this PipeLinker
+	 */
+	public PipeLinker partition(PipeLinker... branches) {
+		return fanOut(new RoundRobinPartitioner(), branches);
+	}
+	
+	/**
+	 * Links the end of this linker to the start of each of the given branches.
+	 * Each item produced by the current end pipe is submitted to exactly one 
+	 * branch, chosen by the given partitioner. Pipes that are appended afterwards 
+	 * merge the outputs of all branches. The given linkers may not be used on
+	 * their own, afterwards.
+	 * @param partitioner
+	 * computes the index of the branch for each item (modulo the number of branches)
+	 * @param branches
+	 * linkers that contain the pipes of each branch
+	 * @return
+	 * this PipeLinker
+	 */
+	public PipeLinker partition(ToIntFunction<Object> partitioner, PipeLinker... branches) {
+		return fanOut(partitioner, branches);
+	}
+	
+	private PipeLinker fanOut(ToIntFunction<Object> partitioner, PipeLinker... branches) {
+		if (endPipes.size() != 1) {
+			Log.abort(this, "Can only fan out from a single pipe. Append a pipe to merge existing branches first.");
+		}
+		Pipe<?, ?>[] branchStartPipes = new Pipe<?, ?>[branches.length];
+		List<Pipe<?, ?>> branchEndPipes = new ArrayList<>(branches.length);
+		for (int i = 0; i < branches.length; ++i) {
+			branchStartPipes[i] = branches[i].getStartPipe();
+			branchEndPipes.addAll(branches[i].endPipes);
+		}
+		try {
+			endPipes.get(0).fanOutTo(partitioner, branchStartPipes);
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			Log.abort(this, e, "Unable to link branches.");
+		}
+		endPipes = branchEndPipes;
+		if (metricsEnabled) {
+			enableMetrics();
+		}
+		return this;
+	}
+	
+	private static class RoundRobinPartitioner implements ToIntFunction<Object> {
+		
+		// races only affect the distribution of items
+		private int counter = 0;
+
+		@Override
+		public int applyAsInt(Object value) {
+			return counter++;
+		}
+	}
+	
+	/**
+	 * @return
+	 * all pipes that are reachable from the start pipe, in breadth-first order
+	 */
+	private List<Pipe<?, ?>> getAllPipes() {
+		List<Pipe<?, ?>> pipes = new ArrayList<>();
+		if (startPipe == null) {
+			return pipes;
+		}
+		Set<Pipe<?, ?>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		pipes.add(startPipe);
+		visited.add(startPipe);
+		for (int i = 0; i < pipes.size(); ++i) {
+			for (Pipe<?, ?> output : pipes.get(i).getOutputs()) {
+				if (visited.add(output)) {
+					pipes.add(output);
+				}
+			}
+		}
+		return pipes;
+	}
+	
+	private void initPipe(Pipe<?, ?> pipe) {
+		pipe.setOptions(options);
+		if (metricsEnabled) {
+			pipe.enableMetrics();
+		}
+		if (maxBatchSize > 1) {
+			pipe.enableBatching(maxBatchSize, maxBatchDelayMicros);
+		}
+		if (waitStrategy != null) {
+			pipe.setWaitStrategy(waitStrategy);
+		} else if (options != null && options.hasOption(OptionParser.DefaultCmdOptions.WAIT_STRATEGY)) {
+			pipe.setWaitStrategy(options.getWaitStrategy());
+		}
+	}
+	
+	/**
+	 * Enables the collection of metrics for all pipes in this linker,
+	 * including pipes that are appended afterwards.
+	 * @return
+	 * this PipeLinker
+	 * @see Pipe#enableMetrics()
+	 */
+	public PipeLinker enableMetrics() {
+		metricsEnabled = true;
+		for (Pipe<?, ?> pipe : getAllPipes()) {
+			pipe.enableMetrics();
+		}
+		return this;
+	}
+	
+	/**
+	 * Disables the collection of metrics for all pipes in this linker.
+	 * @return
+	 * this PipeLinker
+	 */
+	public PipeLinker disableMetrics() {
+		metricsEnabled = false;
+		for (Pipe<?, ?> pipe : getAllPipes()) {
+			pipe.disableMetrics();
+		}
+		return this;
+	}
+	
+	/**
+	 * @return
+	 * snapshots of the metrics of all pipes in this linker, in the order 
+	 * of the pipes (breadth-first for branches); contains null for pipes 
+	 * with disabled metrics
+	 */
+	public List<SocketMetrics.Snapshot> getMetricsSnapshots() {
+		List<SocketMetrics.Snapshot> snapshots = new ArrayList<>();
+		for (Pipe<?, ?> pipe : getAllPipes()) {
+			snapshots.add(pipe.getMetricsSnapshot());
+		}
+		return snapshots;
+	}
+	
+	/**
+	 * Enables metrics and periodically collects snapshots of the metrics of all 
+	 * pipes in this linker until the linker is shut down. 
+	 * @param outputDir
+	 * a directory to write one CSV file per pipe to after each snapshot, or null
+	 * @param period
+	 * the period between two snapshots
+	 * @param unit
+	 * the time unit of the period
+	 * @return
+	 * the reporter that collects the statistics
+	 */
+	public SocketMetricsReporter reportMetricsPeriodically(Path outputDir, long period, TimeUnit unit) {
+		enableMetrics();
+		if (metricsReporter != null) {
+			metricsReporter.stop();
+		}
+		metricsReporter = new SocketMetricsReporter(this::getMetricsSnapshots, outputDir).start(period, unit);
+		return metricsReporter;
+	}
+	
 	/**
 	 * Retrieves the start pipe or aborts the application if none set.
 	 * @return
@@ -142,9 +484,20 @@ public class PipeLinker implements Trackable, OptionCarrier {
 	 * this pipe linker
 	 */
 	public PipeLinker submit(Object... items) {
-		for (int i = 0; i < items.length; ++i) {
-			getStartPipe().submitObject(items[i]);
-		}
+		getStartPipe().submitObjects(items);
+		return this;
+	}
+	
+	/**
+	 * Submits all items of the given collection to the underlying 
+	 * chain of pipes.
+	 * @param items
+	 * items to be submitted
+	 * @return
+	 * this pipe linker
+	 */
+	public PipeLinker submitAll(Collection<?> items) {
+		getStartPipe().submitObjects(items.toArray());
 		return this;
 	}
 	
@@ -155,6 +508,36 @@ public class PipeLinker implements Trackable, OptionCarrier {
 	 */
 	public void shutdown() {
 		getStartPipe().shutdown();
+		if (metricsReporter != null) {
+			metricsReporter.stop();
+			metricsReporter = null;
+		}
+	}
+	
+	/**
+	 * Waits until all submitted items have been processed by the pipe chain.
+	 * In contrast to {@link #shutdown()}, the pipes keep running, such that the
+	 * pipe chain may be used again without recreating any threads. 
+	 * {@link #shutdown()} still has to be called eventually.
+	 */
+	public void waitForCompletion() {
+		getStartPipe().waitForCompletion();
+	}
+	
+	/**
+	 * Submits a single or multiple items to the underlying chain
+	 * of pipes and waits until they have been processed. The pipe chain 
+	 * keeps running and may be used again.
+	 * @param items
+	 * items to be submitted
+	 * @return
+	 * this pipe linker
+	 * @see #waitForCompletion()
+	 */
+	public PipeLinker submitAndWait(Object... items) {
+		submit(items);
+		waitForCompletion();
+		return this;
 	}
 	
 	/**
@@ -164,9 +547,7 @@ public class PipeLinker implements Trackable, OptionCarrier {
 	 * items to be submitted
 	 */
 	public void submitAndShutdown(Object... items) {
-		for (int i = 0; i < items.length; ++i) {
-			getStartPipe().submitObject(items[i]);
-		}
+		submit(items);
 		shutdown();
 	}
 	
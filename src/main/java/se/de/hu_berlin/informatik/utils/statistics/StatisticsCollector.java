@@ -1,11 +1,16 @@
 package se.de.hu_berlin.informatik.utils.statistics;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import se.de.hu_berlin.informatik.utils.files.csv.CSVUtils;
+
 public class StatisticsCollector<T extends Enum<T> & StatisticsAPI> {
 	
 	final private Map<T, StatisticsElementCollector> statisticsElements;
@@ -236,6 +241,46 @@ public class StatisticsCollector<T extends Enum<T> & StatisticsAPI> {
 		return builder.toString();
 	}
 
+	/**
+	 * Saves the collected elements to a CSV file. Each line starts with the
+	 * name of a statistics entry, followed by all collected elements in the 
+	 * order of addition (or by the count for counting entries).
+	 * @param output
+	 * the output path
+	 */
+	public void saveToCSV(Path output) {
+		List<Object[]> list = new ArrayList<>();
+		for (T statisticsEntry : EnumSet.allOf(statisticsClazz)) {
+			StatisticsElementCollector collector = statisticsElements.get(statisticsEntry);
+			if (collector == null) {
+				continue;
+			}
+			List<Object> line = new ArrayList<>();
+			line.add(statisticsEntry.name());
+			switch (collector.getType()) {
+			case STRING:
+				line.addAll(((StringStatisticsElementCollector) collector).getElements());
+				break;
+			case BOOLEAN:
+				line.addAll(((BooleanStatisticsElementCollector) collector).getElements());
+				break;
+			case DOUBLE_VALUE:
+				line.addAll(((DoubleValueStatisticsElementCollector) collector).getElements());
+				break;
+			case INTEGER_VALUE:
+				line.addAll(((IntegerValueStatisticsElementCollector) collector).getElements());
+				break;
+			case COUNT:
+				line.add(((CountingStatisticsElementCollector) collector).getElementCount());
+				break;
+			default:
+				break;
+			}
+			list.add(line.toArray());
+		}
+		CSVUtils.toCsvFile(list, output);
+	}
+
 	private void printStatisticsForSingleEntry(StringBuilder builder, T statisticsEntry) {
 		StatisticsElementCollector list = statisticsElements.get(statisticsEntry);
 		builder.append("\t").append(getStatistics(statisticsEntry, list));
@@ -0,0 +1,278 @@
+package se.de.hu_berlin.informatik.utils.threaded;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread limit that adapts the number of available slots to the observed
+ * throughput and latency, using additive increase and multiplicative decrease.
+ * The time between acquiring and releasing a slot (i.e., the time that an
+ * event handler needs to process an event) is measured for each slot. After
+ * each measurement window, the limit is
+ * <ul>
+ * <li> decreased multiplicatively if the average latency exceeds the baseline
+ * latency (the lowest average latency observed so far, slowly adapting to
+ * changing work loads) by more than the latency tolerance,
+ * <li> decreased by one if the last increase reduced the throughput (completed
+ * slots per second), or
+ * <li> increased by one if all slots were in use during the window.
+ * </ul>
+ * The limit is kept within the given minimum and maximum. If the limit gets
+ * decreased, threads that hold a slot keep it until they release it.
+ *
+ * @author Simon Heiden
+ */
+public class AdaptiveThreadLimit implements ThreadLimit {
+
+	// the baseline latency adapts to higher latencies by this fraction per window
+	private static final double BASELINE_DRIFT = 0.01;
+
+	final private int minLimit;
+	final private int maxLimit;
+
+	final private ReentrantLock lock = new ReentrantLock();
+	final private Condition slotAvailable = lock.newCondition();
+	final private ThreadLocal<Long> startTime = new ThreadLocal<>();
+
+	private long windowNanos = TimeUnit.MILLISECONDS.toNanos(500);
+	private double latencyTolerance = 2.0;
+	private double decreaseFactor = 0.75;
+	private double throughputTolerance = 0.1;
+
+	private volatile int limit;
+	private volatile int inFlight = 0;
+
+	// statistics of the current window
+	private long windowStart = System.nanoTime();
+	private int windowSamples = 0;
+	private long windowLatencySum = 0;
+	private boolean windowSaturated = false;
+
+	// results of the last window
+	private volatile double throughput = 0;
+	private volatile double averageLatency = 0;
+	private double baselineLatency = Double.MAX_VALUE;
+	private boolean lastWasIncrease = false;
+	private double lastThroughput = 0;
+
+	/**
+	 * Creates a new adaptive thread limit.
+	 * @param minLimit
+	 * the minimal number of slots (at least 1)
+	 * @param maxLimit
+	 * the maximal number of slots
+	 * @param initialLimit
+	 * the initial number of slots
+	 * @throws IllegalArgumentException
+	 * if the bounds are invalid
+	 */
+	public AdaptiveThreadLimit(int minLimit, int maxLimit, int initialLimit) throws IllegalArgumentException {
+		if (minLimit < 1 || maxLimit < minLimit) {
+			throw new IllegalArgumentException("Invalid bounds: [" + minLimit + ", " + maxLimit + "]");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	/**
+	 * Creates a new adaptive thread limit that starts with the minimal number of slots.
+	 * @param minLimit
+	 * the minimal number of slots (at least 1)
+	 * @param maxLimit
+	 * the maximal number of slots
+	 * @throws IllegalArgumentException
+	 * if the bounds are invalid
+	 */
+	public AdaptiveThreadLimit(int minLimit, int maxLimit) throws IllegalArgumentException {
+		this(minLimit, maxLimit, minLimit);
+	}
+
+	/**
+	 * Sets the minimal duration of a measurement window. A window also lasts
+	 * until at least as many slots were released as the current limit.
+	 * @param duration
+	 * the duration (default: 500 ms)
+	 * @param unit
+	 * the time unit of the duration
+	 * @return
+	 * this
+	 */
+	public AdaptiveThreadLimit setWindow(long duration, TimeUnit unit) {
+		lock.lock();
+		try {
+			this.windowNanos = unit.toNanos(duration);
+		} finally {
+			lock.unlock();
+		}
+		return this;
+	}
+
+	/**
+	 * @param latencyTolerance
+	 * the factor by which the average latency may exceed the baseline latency
+	 * before the limit gets decreased (default: 2.0)
+	 * @return
+	 * this
+	 */
+	public AdaptiveThreadLimit setLatencyTolerance(double latencyTolerance) {
+		if (latencyTolerance < 1.0) {
+			throw new IllegalArgumentException("Latency tolerance has to be at least 1.0.");
+		}
+		lock.lock();
+		try {
+			this.latencyTolerance = latencyTolerance;
+		} finally {
+			lock.unlock();
+		}
+		return this;
+	}
+
+	/**
+	 * @param decreaseFactor
+	 * the factor that the limit gets multiplied with if the latency is too high,
+	 * in the range (0,1) (default: 0.75)
+	 * @return
+	 * this
+	 */
+	public AdaptiveThreadLimit setDecreaseFactor(double decreaseFactor) {
+		if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+			throw new IllegalArgumentException("Decrease factor has to be in the range (0,1).");
+		}
+		lock.lock();
+		try {
+			this.decreaseFactor = decreaseFactor;
+		} finally {
+			lock.unlock();
+		}
+		return this;
+	}
+
+	@Override
+	public void acquireSlot() {
+		lock.lock();
+		try {
+			while (inFlight >= limit) {
+				windowSaturated = true;
+				slotAvailable.awaitUninterruptibly();
+			}
+			++inFlight;
+			if (inFlight >= limit) {
+				windowSaturated = true;
+			}
+		} finally {
+			lock.unlock();
+		}
+		startTime.set(System.nanoTime());
+	}
+
+	@Override
+	public void releaseSlot() {
+		long now = System.nanoTime();
+		Long start = startTime.get();
+		startTime.remove();
+		lock.lock();
+		try {
+			--inFlight;
+			if (start != null) {
+				++windowSamples;
+				windowLatencySum += now - start;
+			}
+			if (now - windowStart >= windowNanos && windowSamples >= limit) {
+				adapt(now);
+			}
+			slotAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// has to be called while holding the lock
+	private void adapt(long now) {
+		averageLatency = (double) windowLatencySum / windowSamples;
+		throughput = windowSamples * 1E9 / (now - windowStart);
+
+		if (averageLatency < baselineLatency) {
+			baselineLatency = averageLatency;
+		} else {
+			baselineLatency += (averageLatency - baselineLatency) * BASELINE_DRIFT;
+		}
+
+		int newLimit = limit;
+		boolean increase = false;
+		if (averageLatency > latencyTolerance * baselineLatency) {
+			newLimit = Math.min(limit - 1, (int) (limit * decreaseFactor));
+		} else if (lastWasIncrease && throughput < lastThroughput * (1 - throughputTolerance)) {
+			// the last increase did not pay off
+			newLimit = limit - 1;
+		} else if (windowSaturated) {
+			newLimit = limit + 1;
+			increase = true;
+		}
+		newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+		lastWasIncrease = increase && newLimit > limit;
+		lastThroughput = throughput;
+		limit = newLimit;
+
+		windowStart = now;
+		windowSamples = 0;
+		windowLatencySum = 0;
+		windowSaturated = inFlight >= limit;
+	}
+
+	/**
+	 * @return
+	 * the current number of slots
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return
+	 * the number of currently acquired slots
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return
+	 * the minimal number of slots
+	 */
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	/**
+	 * @return
+	 * the maximal number of slots
+	 */
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * @return
+	 * the number of released slots per second in the last window
+	 */
+	public double getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * @return
+	 * the average time (in nanoseconds) that a slot was held in the last window
+	 */
+	public double getAverageLatencyNanos() {
+		return averageLatency;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("limit: %d [%d, %d], in flight: %d, throughput: %.1f/s, latency: %.3f ms",
+				limit, minLimit, maxLimit, inFlight, throughput, averageLatency / 1E6);
+	}
+
+}
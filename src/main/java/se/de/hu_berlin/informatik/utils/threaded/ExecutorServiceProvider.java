@@ -6,9 +6,7 @@ package se.de.hu_berlin.informatik.utils.threaded;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -52,27 +50,36 @@ public class ExecutorServiceProvider {
 	 */
 	public ExecutorServiceProvider(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
 			ClassLoader cl) {
+		this(corePoolSize, maximumPoolSize, keepAliveTime, unit, cl, ThreadBackend.PLATFORM);
+	}
+
+	/**
+	 * Creates an {@link ExecutorServiceProvider} object with the given
+	 * parameters. The number of concurrently running tasks is bounded by 
+	 * the maximum pool size, independent of the used kind of threads.
+	 * @param corePoolSize
+	 * the number of threads to keep in the pool, even if they are idle, unless
+	 * allowCoreThreadTimeOut is set
+	 * @param maximumPoolSize
+	 * the maximum number of threads to allow in the pool
+	 * @param keepAliveTime
+	 * when the number of threads is greater than the core, this is the maximum
+	 * time that excess idle threads will wait for new tasks before terminating.
+	 * @param unit
+	 * the time unit for the keepAliveTime argument
+	 * @param cl
+	 * a class loader to set as the context class loader for created threads
+	 * @param backend
+	 * the kind of threads to create (falls back to platform threads if 
+	 * virtual threads are not supported)
+	 */
+	public ExecutorServiceProvider(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+			ClassLoader cl, ThreadBackend backend) {
 		super();
 		// create an executor service
 		 ThreadPoolExecutor poolExecutor = new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTime, unit, 
 				new LimitedQueue<>(2 * maximumPoolSize),
-				new ThreadFactory() {
-
-					ThreadFactory factory = Executors.defaultThreadFactory();
-
-					// int counter = 0;
-					@Override
-					public Thread newThread(Runnable r) {
-						// ++counter;
-						// Log.out(this, "Creating Thread no. %d for %s.",
-						// counter, r);
-						Thread thread = factory.newThread(r);
-						if (cl != null) {
-							thread.setContextClassLoader(cl);
-						}
-						return thread;
-					}
-				}) {
+				backend.newThreadFactory(cl)) {
 			 
 			 @Override
 			 protected void afterExecute(Runnable r, Throwable t) {
@@ -129,6 +136,22 @@ public class ExecutorServiceProvider {
 		this(poolSize, poolSize, 10L, TimeUnit.SECONDS, cl);
 	}
 
+	/**
+	 * Creates an {@link ExecutorServiceProvider} object with the given fixed
+	 * number of threads of the given kind, {@code keepAliveTime=10L} and
+	 * {@code unit=TimeUnit.SECONDS}.
+	 * @param poolSize
+	 * the number of threads to run in the pool
+	 * @param cl
+	 * a class loader to set as the context class loader for created threads
+	 * @param backend
+	 * the kind of threads to create (falls back to platform threads if 
+	 * virtual threads are not supported)
+	 */
+	public ExecutorServiceProvider(int poolSize, ClassLoader cl, ThreadBackend backend) {
+		this(poolSize, poolSize, 10L, TimeUnit.SECONDS, cl, backend);
+	}
+
 	/**
 	 * Creates an {@link ExecutorServiceProvider} object with the given
 	 * parameters.
@@ -0,0 +1,210 @@
+package se.de.hu_berlin.informatik.utils.threaded;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import se.de.hu_berlin.informatik.utils.miscellaneous.SystemUtils;
+import se.de.hu_berlin.informatik.utils.processors.Processor;
+
+/**
+ * Thread limit that only admits new items if enough heap memory is available
+ * to process them. The memory that an item needs is estimated with
+ * {@link Processor#estimateMemoryUsage(Object)}. An item gets a slot if the
+ * free heap memory, minus the estimates of all items that are currently
+ * processed, minus its own estimate, stays above a given headroom. Otherwise,
+ * the acquiring thread blocks and re-checks the free memory periodically and
+ * whenever a slot gets released. Since blocked handlers stop taking items from
+ * the ring buffer, producers get blocked when the buffer is full.
+ *
+ * <p> The free memory already includes memory that items in flight have
+ * allocated so far, so the check is conservative. To guarantee progress, an
+ * item is always admitted if no other item is being processed.
+ *
+ * @author Simon Heiden
+ */
+public class MemoryAwareThreadLimit implements ThreadLimit {
+
+	final private long minFreeBytes;
+	final private int maxSlots;
+	final private LongSupplier freeMemoryProbe;
+
+	final private ReentrantLock lock = new ReentrantLock();
+	final private Condition slotReleased = lock.newCondition();
+
+	private long defaultItemBytes = 0;
+	private long probeIntervalMillis = 20;
+
+	private volatile int inFlight = 0;
+	private volatile long reservedBytes = 0;
+	private volatile long blockedAcquisitions = 0;
+
+	/**
+	 * Creates a new memory-aware thread limit.
+	 * @param minFreeBytes
+	 * the heap memory (in bytes) that shall remain free after admitting an item
+	 * @param maxSlots
+	 * the maximal number of items that are processed in parallel
+	 * @param freeMemoryProbe
+	 * returns the currently available heap memory in bytes
+	 */
+	public MemoryAwareThreadLimit(long minFreeBytes, int maxSlots, LongSupplier freeMemoryProbe) {
+		if (maxSlots < 1) {
+			throw new IllegalArgumentException("At least one slot is required.");
+		}
+		this.minFreeBytes = minFreeBytes;
+		this.maxSlots = maxSlots;
+		this.freeMemoryProbe = freeMemoryProbe;
+	}
+
+	/**
+	 * Creates a new memory-aware thread limit that uses {@link SystemUtils#getTotalFreeMem()}
+	 * to determine the available heap memory.
+	 * @param minFreeBytes
+	 * the heap memory (in bytes) that shall remain free after admitting an item
+	 * @param maxSlots
+	 * the maximal number of items that are processed in parallel
+	 */
+	public MemoryAwareThreadLimit(long minFreeBytes, int maxSlots) {
+		this(minFreeBytes, maxSlots, SystemUtils::getTotalFreeMem);
+	}
+
+	/**
+	 * Creates a new memory-aware thread limit that keeps 10% of the maximal heap
+	 * size free and does not limit the number of parallel items otherwise.
+	 */
+	public MemoryAwareThreadLimit() {
+		this(SystemUtils.getMaxMem() / 10, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param defaultItemBytes
+	 * the estimate to use for items without a memory estimate (default: 0)
+	 * @return
+	 * this
+	 */
+	public MemoryAwareThreadLimit setDefaultItemSize(long defaultItemBytes) {
+		this.defaultItemBytes = defaultItemBytes;
+		return this;
+	}
+
+	/**
+	 * @param probeInterval
+	 * the time after which blocked threads check the free memory again (default: 20 ms)
+	 * @param unit
+	 * the time unit of the interval
+	 * @return
+	 * this
+	 */
+	public MemoryAwareThreadLimit setProbeInterval(long probeInterval, TimeUnit unit) {
+		this.probeIntervalMillis = Math.max(1, unit.toMillis(probeInterval));
+		return this;
+	}
+
+	@Override
+	public void acquireSlot() {
+		acquireSlot(0);
+	}
+
+	@Override
+	public void releaseSlot() {
+		releaseSlot(0);
+	}
+
+	@Override
+	public void acquireSlot(long estimatedBytes) {
+		long bytes = estimate(estimatedBytes);
+		boolean interrupted = false;
+		lock.lock();
+		try {
+			boolean blocked = false;
+			while (!isAdmissible(bytes)) {
+				if (!blocked) {
+					blocked = true;
+					++blockedAcquisitions;
+				}
+				try {
+					// the free memory may grow without notification (garbage collection)
+					slotReleased.await(probeIntervalMillis, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			++inFlight;
+			reservedBytes += bytes;
+		} finally {
+			lock.unlock();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public void releaseSlot(long estimatedBytes) {
+		long bytes = estimate(estimatedBytes);
+		lock.lock();
+		try {
+			--inFlight;
+			reservedBytes -= bytes;
+			slotReleased.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private long estimate(long estimatedBytes) {
+		return estimatedBytes > 0 ? estimatedBytes : defaultItemBytes;
+	}
+
+	// has to be called while holding the lock
+	private boolean isAdmissible(long bytes) {
+		if (inFlight == 0) {
+			return true;
+		}
+		if (inFlight >= maxSlots) {
+			return false;
+		}
+		return getHeadroom() - bytes >= minFreeBytes;
+	}
+
+	/**
+	 * @return
+	 * the free heap memory minus the estimates of the items in flight
+	 */
+	public long getHeadroom() {
+		return freeMemoryProbe.getAsLong() - reservedBytes;
+	}
+
+	/**
+	 * @return
+	 * the number of items that are currently processed
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return
+	 * the sum of the memory estimates of the items that are currently processed
+	 */
+	public long getReservedBytes() {
+		return reservedBytes;
+	}
+
+	/**
+	 * @return
+	 * the number of times that a thread had to wait for memory or a free slot
+	 */
+	public long getBlockedAcquisitions() {
+		return blockedAcquisitions;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("in flight: %d, reserved: %d MB, headroom: %d MB, blocked: %d",
+				inFlight, reservedBytes >> 20, getHeadroom() >> 20, blockedAcquisitions);
+	}
+
+}
@@ -0,0 +1,147 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.threaded;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
+
+/**
+ * The kinds of threads that executor services and disruptors may use to run
+ * their tasks and event handlers. Virtual threads are cheap to create and to
+ * block, which suits I/O heavy tasks that mostly wait for external processes
+ * or the file system. They are only available on Java 21 and later and are
+ * accessed via reflection, such that the framework still runs on older JVMs.
+ * On those, {@link #VIRTUAL} falls back to platform threads.
+ *
+ * <p> Note that virtual threads are always daemon threads and that CPU bound
+ * work or spinning wait strategies gain nothing from them.
+ *
+ * @author Simon Heiden
+ */
+public enum ThreadBackend {
+	/** uses (non-daemon) platform threads (default) */
+	PLATFORM,
+	/** uses virtual threads, if supported by the running JVM */
+	VIRTUAL;
+
+	/**
+	 * @return
+	 * whether the running JVM supports this backend
+	 */
+	public boolean isSupported() {
+		return this == PLATFORM || VirtualThreadSupport.FACTORY_METHOD != null;
+	}
+
+	/**
+	 * @return
+	 * the backend that is actually used when selecting this backend,
+	 * i.e. {@link #PLATFORM} if this backend is not supported
+	 */
+	public ThreadBackend resolve() {
+		return isSupported() ? this : PLATFORM;
+	}
+
+	/**
+	 * Creates a new thread factory that creates threads of this kind.
+	 * @param cl
+	 * a class loader to set as the context class loader for created threads
+	 * (may be null)
+	 * @return
+	 * the thread factory
+	 */
+	public ThreadFactory newThreadFactory(ClassLoader cl) {
+		final ThreadFactory factory;
+		if (resolve() == VIRTUAL) {
+			factory = VirtualThreadSupport.newFactory();
+		} else {
+			if (this != PLATFORM) {
+				VirtualThreadSupport.warnUnsupported();
+			}
+			factory = Executors.defaultThreadFactory();
+		}
+		if (cl == null) {
+			return factory;
+		}
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = factory.newThread(r);
+				thread.setContextClassLoader(cl);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Parses the given name of a backend (case insensitive).
+	 * @param name
+	 * the name of a backend, e.g. "VIRTUAL"
+	 * @return
+	 * the backend
+	 * @throws IllegalArgumentException
+	 * if no backend with the given name exists
+	 */
+	public static ThreadBackend parse(String name) throws IllegalArgumentException {
+		return valueOf(name.trim().toUpperCase());
+	}
+
+	// lazily looks up (and probes) the virtual thread API of Java 21+
+	private static class VirtualThreadSupport {
+
+		private static final Method OF_VIRTUAL;
+		private static final Method NAME_METHOD;
+		private static final Method FACTORY_METHOD;
+		private static boolean warned = false;
+
+		static {
+			Method ofVirtual = null;
+			Method name = null;
+			Method factory = null;
+			try {
+				ofVirtual = Thread.class.getMethod("ofVirtual");
+				// the builder implementations are not public, so use the public interface
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				name = builderClass.getMethod("name", String.class, long.class);
+				factory = builderClass.getMethod("factory");
+				// the methods exist as a preview API on Java 19 and 20, but fail if previews are disabled
+				createFactory(ofVirtual, name, factory).newThread(() -> {});
+			} catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+				ofVirtual = null;
+				name = null;
+				factory = null;
+			}
+			OF_VIRTUAL = ofVirtual;
+			NAME_METHOD = name;
+			FACTORY_METHOD = factory;
+		}
+
+		private static ThreadFactory createFactory(Method ofVirtual, Method name, Method factory) 
+				throws ReflectiveOperationException {
+			Object builder = ofVirtual.invoke(null);
+			builder = name.invoke(builder, "virtual-", 0L);
+			return (ThreadFactory) factory.invoke(builder);
+		}
+
+		private static ThreadFactory newFactory() {
+			try {
+				return createFactory(OF_VIRTUAL, NAME_METHOD, FACTORY_METHOD);
+			} catch (ReflectiveOperationException e) {
+				// should not happen, since creating a factory succeeded before
+				throw new IllegalStateException("Could not create virtual thread factory.", e);
+			}
+		}
+
+		private static synchronized void warnUnsupported() {
+			if (!warned) {
+				warned = true;
+				Log.warn(ThreadBackend.class, "Virtual threads are not supported by this JVM (%s). Using platform threads.",
+						System.getProperty("java.version"));
+			}
+		}
+	}
+
+}
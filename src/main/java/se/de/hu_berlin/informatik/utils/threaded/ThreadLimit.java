@@ -6,4 +6,24 @@ public interface ThreadLimit {
 	
 	public void releaseSlot();
 	
+	/**
+	 * Acquires a slot for processing an item that is estimated to need the
+	 * given amount of heap memory. Per default, ignores the estimate.
+	 * @param estimatedBytes
+	 * the estimated memory usage of the item in bytes (0 if unknown)
+	 */
+	default public void acquireSlot(long estimatedBytes) {
+		acquireSlot();
+	}
+	
+	/**
+	 * Releases a slot that was acquired with {@link #acquireSlot(long)}.
+	 * Per default, ignores the estimate.
+	 * @param estimatedBytes
+	 * the estimate that was given when acquiring the slot
+	 */
+	default public void releaseSlot(long estimatedBytes) {
+		releaseSlot();
+	}
+	
 }
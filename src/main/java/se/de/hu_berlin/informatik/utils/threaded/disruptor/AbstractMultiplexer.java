@@ -1,24 +1,94 @@
 package se.de.hu_berlin.informatik.utils.threaded.disruptor;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
 /**
  * Abstract multiplexer that collects output generated by multiple
  * threads and processes it.
  * 
+ * <p> Output items are handed over through a bounded queue. The multiplexer
+ * thread parks while the queue is empty and takes all available items
+ * (up to a maximum batch size) at once. Producers block while the queue is full.
+ * 
+ * <p> In ordered mode, output items are processed in the order of the sequence 
+ * numbers of the corresponding inputs. Output of inputs that finish early is buffered
+ * until all preceding inputs are completed. Inputs may only be processed if their
+ * sequence number lies within a window of fixed size, starting at the oldest
+ * unfinished input. This bounds the number of buffered inputs and the time that
+ * a single slow input may block the others.
+ * 
  * @author Simon Heiden
  * @param <B>
  * the type of objects that are processed
  */
 public abstract class AbstractMultiplexer<B> implements Multiplexer<B> {
 
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final int DEFAULT_WINDOW_SIZE = 1024;
+	
+	// maximum number of items that are taken from the queue at once
+	private static final int MAX_BATCH_SIZE = 256;
+	// gets put into the queue on shutdown, after all other items
+	private static final Object END_MARKER = new Object();
+	
 	private MultiplexerInput<B>[] handlers;
 	
+	private final BlockingQueue<Object> queue;
+	
 	private Thread thread = null;
-	private boolean shouldStop;
 
-	private boolean isRunning = false;
+	private volatile boolean isRunning = false;
 	
+	// ordered mode is disabled if <= 0
+	private volatile int windowSize = 0;
+	// sequence number of the oldest unfinished input; only written by the multiplexer thread
+	private volatile long nextSequence = 0;
+	private final Object windowLock = new Object();
+	// buffered output of inputs that are not yet next in line
+	private final Map<Long, PendingOutput> pendingOutput = new HashMap<>();
+	
+	/**
+	 * Creates a multiplexer with a queue capacity of {@value #DEFAULT_CAPACITY} items.
+	 */
 	public AbstractMultiplexer() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a multiplexer.
+	 * @param capacity
+	 * the maximum number of output items that may wait to be processed
+	 */
+	public AbstractMultiplexer(int capacity) {
 		super();
+		queue = new ArrayBlockingQueue<>(capacity);
+	}
+	
+	/**
+	 * Enables the ordered mode. Has to be called before any output is submitted.
+	 * @param windowSize
+	 * the maximum number of inputs that may be processed in parallel, starting
+	 * with the oldest unfinished input
+	 * @return
+	 * this
+	 */
+	public AbstractMultiplexer<B> enableOrdering(int windowSize) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("Window size has to be at least 1.");
+		}
+		this.windowSize = windowSize;
+		return this;
+	}
+	
+	@Override
+	public boolean isOrdered() {
+		return windowSize > 0;
 	}
 	
 	/* (non-Javadoc)
@@ -48,39 +118,127 @@ public abstract class AbstractMultiplexer<B> implements Multiplexer<B> {
 		}
 	}
 	
+	@Override
+	public void submit(B item) {
+		if (item != null) {
+			put(item);
+		}
+	}
+	
+	@Override
+	public void submit(long sequence, B item) {
+		if (item != null) {
+			put(isOrdered() ? new SequencedItem(sequence, item) : item);
+		}
+	}
+	
+	@Override
+	public void complete(long sequence) {
+		if (isOrdered()) {
+			put(new SequencedItem(sequence, null));
+		}
+	}
+	
+	@Override
+	public void awaitWindow(long sequence) throws InterruptedException {
+		//only acquire lock if it's necessary
+		if (!isOrdered() || sequence < nextSequence + windowSize) {
+			return;
+		}
+		synchronized (windowLock) {
+			while (sequence >= nextSequence + windowSize) {
+				windowLock.wait();
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
 	@Override
 	public void run() {
-		shouldStop = false;
-		boolean shouldDefinitivelyStop = false;
 		if (handlers == null || handlers.length == 0) {
 			throw new IllegalStateException("No handlers given to multiplexer.");
 		}
-		//collect available output in an infinite loop
-		while (true) {
-			//iterate over all input threads (all handlers)
-			processPendingItems(handlers);
-			
-			//test if shutdown condition is fulfilled 
-			if (shouldStop) {
-				//test if we already checked for any pending outputs
-				if (shouldDefinitivelyStop) {
-					//then we may return now...
-					return;
+		//sequence numbers start at 0 again after a restart
+		nextSequence = 0;
+		pendingOutput.clear();
+		List<Object> batch = new ArrayList<>(MAX_BATCH_SIZE);
+		boolean shouldStop = false;
+		while (!shouldStop) {
+			//parks while no output is available
+			batch.add(take());
+			queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+			long oldNextSequence = nextSequence;
+			for (Object item : batch) {
+				if (item == END_MARKER) {
+					//all producers are done
+					shouldStop = true;
+				} else if (item instanceof SequencedItem) {
+					processInOrder((SequencedItem) item);
+				} else if (item instanceof WaitMarker) {
+					//all items that were submitted before the marker are processed
+					((WaitMarker) item).latch.countDown();
+				} else {
+					processNewOutputItem((B) item);
 				}
-
-				//there might still be pending output items, so better check once more...
-				//but next time around, we can definitively stop!
-				shouldDefinitivelyStop = true;
+			}
+			batch.clear();
+			if (nextSequence != oldNextSequence) {
+				//wake up handlers that wait for the window to move
+				synchronized (windowLock) {
+					windowLock.notifyAll();
+				}
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void processInOrder(SequencedItem sequencedItem) {
+		if (sequencedItem.sequence == nextSequence) {
+			//output of the oldest unfinished input can be processed directly
+			if (sequencedItem.item == null) {
+				pendingOutput.remove(nextSequence);
+				++nextSequence;
+				releasePendingOutput();
+			} else {
+				processNewOutputItem((B) sequencedItem.item);
+			}
+		} else {
+			PendingOutput pending = pendingOutput.computeIfAbsent(sequencedItem.sequence, k -> new PendingOutput());
+			if (sequencedItem.item == null) {
+				pending.isComplete = true;
+			} else {
+				pending.items.add(sequencedItem.item);
 			}
 		}
 	}
+	
+	@SuppressWarnings("unchecked")
+	private void releasePendingOutput() {
+		PendingOutput pending;
+		while ((pending = pendingOutput.get(nextSequence)) != null) {
+			for (Object item : pending.items) {
+				processNewOutputItem((B) item);
+			}
+			pending.items.clear();
+			if (!pending.isComplete) {
+				//further output of this input will be processed directly
+				return;
+			}
+			pendingOutput.remove(nextSequence);
+			++nextSequence;
+		}
+	}
 
 	/* (non-Javadoc)
 	 * @see se.de.hu_berlin.informatik.utils.threaded.IMultiplexer#shutdown()
 	 */
 	@Override
 	public void shutdown() {
-		shouldStop = true;
+		if (!isRunning) {
+			return;
+		}
+		//pending output items get processed before the marker
+		put(END_MARKER);
 		while (thread.isAlive()) {
 			try {
 				thread.join();
@@ -91,4 +249,65 @@ public abstract class AbstractMultiplexer<B> implements Multiplexer<B> {
 		isRunning = false;
 	}
 	
+	/**
+	 * Waits until all output items that were submitted so far have been
+	 * processed. Does not shut down the multiplexer.
+	 */
+	public void waitForPendingOutput() {
+		if (!isRunning) {
+			return;
+		}
+		WaitMarker marker = new WaitMarker();
+		put(marker);
+		while (true) {
+			try {
+				marker.latch.await();
+				return;
+			} catch (InterruptedException e) {
+				// do nothing
+			}
+		}
+	}
+	
+	private void put(Object item) {
+		while (true) {
+			try {
+				queue.put(item);
+				return;
+			} catch (InterruptedException e) {
+				// do nothing
+			}
+		}
+	}
+	
+	private Object take() {
+		while (true) {
+			try {
+				return queue.take();
+			} catch (InterruptedException e) {
+				// do nothing
+			}
+		}
+	}
+	
+	private static class SequencedItem {
+		private final long sequence;
+		// null marks the completion of the input
+		private final Object item;
+		
+		private SequencedItem(long sequence, Object item) {
+			this.sequence = sequence;
+			this.item = item;
+		}
+	}
+	
+	private static class WaitMarker {
+		private final CountDownLatch latch = new CountDownLatch(1);
+	}
+	
+	private static class PendingOutput {
+		private final List<Object> items = new ArrayList<>(1);
+		private boolean isComplete = false;
+	}
+	
 }
@@ -1,8 +1,8 @@
 package se.de.hu_berlin.informatik.utils.threaded.disruptor;
 
-import java.util.concurrent.Executors;
+import java.util.Collection;
 import java.util.concurrent.ThreadFactory;
-import com.lmax.disruptor.BlockingWaitStrategy;
+import java.util.concurrent.locks.LockSupport;
 import com.lmax.disruptor.ExceptionHandler;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.dsl.Disruptor;
@@ -13,10 +13,12 @@ import se.de.hu_berlin.informatik.utils.miscellaneous.Misc;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ConsumingProcessorSocketGenerator;
 import se.de.hu_berlin.informatik.utils.processors.sockets.ProcessorSocketGenerator;
 import se.de.hu_berlin.informatik.utils.processors.sockets.eh.EHWithInputAndReturn;
+import se.de.hu_berlin.informatik.utils.threaded.ThreadBackend;
 import se.de.hu_berlin.informatik.utils.threaded.ThreadLimit;
 import se.de.hu_berlin.informatik.utils.threaded.ThreadLimitDummy;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.AbstractDisruptorEventHandler;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.DisruptorFCFSEventHandler;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.DisruptorRREventHandler;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.Event;
 import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.SingleUseEvent;
 import se.de.hu_berlin.informatik.utils.tracking.Trackable;
@@ -26,6 +28,11 @@ import se.de.hu_berlin.informatik.utils.tracking.TrackerDummy;
 /**
  * Provides convenient creation and access tools for a disruptor.
  * 
+ * <p> By default, multiple FCFS handlers are connected as a worker pool, such
+ * that each published event is claimed by exactly one idle handler. Otherwise 
+ * (or if {@link #useWorkerPool(boolean)} is set to false), every handler sees
+ * every event and decides on its own whether to process it.
+ * 
  * @author Simon Heiden
  * @param <A>
  * the type of items that may be submitted and processed by the disruptor
@@ -33,6 +40,8 @@ import se.de.hu_berlin.informatik.utils.tracking.TrackerDummy;
 public class DisruptorProvider<A> implements Trackable {
 
 	private ThreadFactory threadFactory;
+	private final ClassLoader classLoader;
+	private ThreadBackend threadBackend = ThreadBackend.PLATFORM;
 //	private Thread mainThread;
 	
 //	static {
@@ -53,7 +62,7 @@ public class DisruptorProvider<A> implements Trackable {
 //	}
 	
 	private Disruptor<SingleUseEvent<A>> disruptor = null;
-	private RingBuffer<SingleUseEvent<A>> ringBuffer = null;
+	private volatile RingBuffer<SingleUseEvent<A>> ringBuffer = null;
 	private AbstractDisruptorEventHandler<A>[] handlers = null;
 	private int bufferSize = 0;
 	
@@ -63,9 +72,16 @@ public class DisruptorProvider<A> implements Trackable {
 	private boolean abortOnStartupError = false;
 	private boolean abortOnShutdownError = false;
 	
+	private boolean useWorkerPool = true;
+	private DisruptorWaitStrategy waitStrategy = DisruptorWaitStrategy.BLOCKING;
+	
 	private int exceptions;
 	
-	private boolean isRunning = false;
+	// bounds for the back off while waiting for pending events
+	private static final long MIN_PARK_NANOS = 1_000;
+	private static final long MAX_PARK_NANOS = 1_000_000;
+	
+	private volatile boolean isRunning = false;
 	private boolean isConnectedToHandlers = false;
 	private int minimalBufferSize = 0;
 	
@@ -88,21 +104,8 @@ public class DisruptorProvider<A> implements Trackable {
 		super();
 		this.minimalBufferSize  = minimalBufferSize;
 		
-		threadFactory = //Executors.defaultThreadFactory();
-				new ThreadFactory() {
-			ThreadFactory factory = Executors.defaultThreadFactory();
-//			int counter = 0;
-			@Override
-			public Thread newThread(Runnable r) {
-//				++counter;
-//				Log.out(this, "Creating Thread no. %d for %s.", counter, r);
-				Thread thread = factory.newThread(r);
-				if (cl != null) {
-					thread.setContextClassLoader(cl);
-				}
-				return thread;
-			}
-		};
+		this.classLoader = cl;
+		threadFactory = threadBackend.newThreadFactory(cl);
 		
 //		mainThread = Thread.currentThread();
 	}
@@ -153,7 +156,7 @@ public class DisruptorProvider<A> implements Trackable {
 	private void createNewDisruptorInstance() {
 		// Construct the Disruptor
 		disruptor = new Disruptor<>(SingleUseEvent<A>::new, bufferSize, threadFactory,
-				producerType, new BlockingWaitStrategy());
+				producerType, waitStrategy.newInstance());
 
 		disruptor.setDefaultExceptionHandler(new ExceptionHandler<Event<A>>() {
 			@Override
@@ -204,6 +207,79 @@ public class DisruptorProvider<A> implements Trackable {
 		return this;
 	}
 	
+	/**
+	 * Sets whether multiple FCFS handlers shall be connected as a worker pool. 
+	 * In a worker pool, each event is claimed by exactly one handler. Otherwise,
+	 * all handlers are woken up for every event and compete for processing it.
+	 * Round robin handlers are always connected to every event, since they rely
+	 * on the sequence number of the events. Has to be set before the handlers are 
+	 * connected to take effect.
+	 * @param useWorkerPool
+	 * whether to use a worker pool (default: true)
+	 * @return
+	 * this
+	 */
+	public DisruptorProvider<A> useWorkerPool(boolean useWorkerPool) {
+		this.useWorkerPool = useWorkerPool;
+		return this;
+	}
+	
+	/**
+	 * Sets the strategy that the handlers use to wait for new events. If the 
+	 * disruptor is not running, the new strategy is used on the next start.
+	 * Otherwise, it takes effect after the disruptor has been shut down and
+	 * started again.
+	 * @param waitStrategy
+	 * the wait strategy (default: {@link DisruptorWaitStrategy#BLOCKING})
+	 * @return
+	 * this
+	 */
+	public DisruptorProvider<A> setWaitStrategy(DisruptorWaitStrategy waitStrategy) {
+		if (waitStrategy == null) {
+			throw new IllegalArgumentException("No wait strategy given.");
+		}
+		this.waitStrategy = waitStrategy;
+		// a disruptor that was not started yet gets recreated with the new strategy
+		return cleanup();
+	}
+	
+	/**
+	 * Sets the kind of threads that run the handlers. Virtual threads suit handlers
+	 * that mostly block (e.g., on I/O), since thousands of them are cheap. The context
+	 * class loader and the thread limits of the handlers are applied as usual. If the
+	 * disruptor is running, the new backend takes effect after the disruptor has been
+	 * shut down and started again.
+	 * @param threadBackend
+	 * the thread backend (default: {@link ThreadBackend#PLATFORM}); falls back to
+	 * platform threads if the running JVM does not support virtual threads
+	 * @return
+	 * this
+	 */
+	public DisruptorProvider<A> setThreadBackend(ThreadBackend threadBackend) {
+		if (threadBackend == null) {
+			throw new IllegalArgumentException("No thread backend given.");
+		}
+		this.threadBackend = threadBackend;
+		threadFactory = threadBackend.newThreadFactory(classLoader);
+		return cleanup();
+	}
+	
+	/**
+	 * @return
+	 * the kind of threads that run the handlers
+	 */
+	public ThreadBackend getThreadBackend() {
+		return threadBackend;
+	}
+	
+	/**
+	 * @return
+	 * the strategy that the handlers use to wait for new events
+	 */
+	public DisruptorWaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+	
 	/**
 	 * @return
 	 * the associated handlers (may be null if not yet specified)
@@ -286,7 +362,12 @@ public class DisruptorProvider<A> implements Trackable {
 			handler.setSingleConsumer(isSingle);
 		}
 		// Connect the handlers
-		disruptor.handleEventsWith(handlers);
+		if (!isSingle && useWorkerPool && canBeUsedInWorkerPool(handlers)) {
+			// each event is claimed by exactly one handler
+			disruptor.handleEventsWithWorkerPool(handlers);
+		} else {
+			disruptor.handleEventsWith(handlers);
+		}
 		this.handlers = handlers;
 		
 		isConnectedToHandlers = true;
@@ -294,6 +375,15 @@ public class DisruptorProvider<A> implements Trackable {
 		return this;
 	}
 	
+	private boolean canBeUsedInWorkerPool(AbstractDisruptorEventHandler<A>[] handlers) {
+		for (AbstractDisruptorEventHandler<A> handler : handlers) {
+			if (handler instanceof DisruptorRREventHandler) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * Connects the given event handlers to the disruptor. The handlers process submitted events
 	 * in parallel. If no disruptor instance is available, a new one is created beforehand.
@@ -423,19 +513,34 @@ public class DisruptorProvider<A> implements Trackable {
 	}
 	
 	/**
-	 * Shuts down the disruptor.
+	 * Waits until all events that were published so far have been processed 
+	 * by the handlers, i.e. until the sequences of all handlers have reached 
+	 * the current cursor of the ring buffer. Does not shut down the disruptor, 
+	 * so further items may be submitted afterwards.
+	 */
+	public void waitForPendingEvents() {
+		RingBuffer<SingleUseEvent<A>> ringBuffer = this.ringBuffer;
+		if (ringBuffer == null || !isRunning) {
+			return;
+		}
+		long cursor = ringBuffer.getCursor();
+		long parkNanos = MIN_PARK_NANOS;
+		while (ringBuffer.getMinimumGatingSequence() < cursor) {
+			LockSupport.parkNanos(parkNanos);
+			parkNanos = Math.min(2 * parkNanos, MAX_PARK_NANOS);
+		}
+	}
+	
+	/**
+	 * Shuts down the disruptor after all published events have been processed.
 	 * @return
 	 * this
 	 */
 	public DisruptorProvider<A> shutdown() {
 		if (disruptor != null && isRunning) {
-			try {
-				Thread.sleep(250);
-			} catch (InterruptedException e) {
-				// do nothing
-			}
+			waitForPendingEvents();
 //			Log.out(this, "shutting down disruptor..., %s", Thread.currentThread());
-			// Shuts down the disruptor
+			// Shuts down the disruptor (returns immediately if no events are pending)
 			disruptor.shutdown();
 			
 			isRunning = false;
@@ -450,18 +555,105 @@ public class DisruptorProvider<A> implements Trackable {
 	/**
 	 * Submits an item to the disruptor. Starts the disruptor threads
 	 * if it is not running. If no handlers are connected, then this
-	 * will throw an exception.
+	 * will throw an exception. Once the disruptor is running, items may
+	 * be submitted from multiple threads without further synchronization
+	 * (if the producer type allows multiple writers).
+	 * @param item
+	 * the item to submit
+	 */
+	public void submit(A item) {
+		RingBuffer<SingleUseEvent<A>> ringBuffer = getRunningRingBuffer();
+		track(1);
+//		Log.out(this, "%s, submitting %s", Thread.currentThread(), item);
+		ringBuffer.publishEvent(Event::translate, item);
+	}
+	
+	/**
+	 * Tries to submit an item to the disruptor without waiting for free
+	 * space in the ring buffer. Starts the disruptor threads if it is not running.
 	 * @param item
 	 * the item to submit
+	 * @return
+	 * true if the item was submitted; false if the ring buffer was full
+	 */
+	public boolean trySubmit(A item) {
+		RingBuffer<SingleUseEvent<A>> ringBuffer = getRunningRingBuffer();
+		if (ringBuffer.tryPublishEvent(Event::translate, item)) {
+			track(1);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return
+	 * the number of published events that were not yet processed by
+	 * all handlers; 0 if the disruptor is not running
 	 */
-	public synchronized void submit(A item) {
-		//avoid calling synchronized method call if already running
+	public long getOccupancy() {
+		RingBuffer<SingleUseEvent<A>> ringBuffer = this.ringBuffer;
+		if (ringBuffer == null || !isRunning) {
+			return 0;
+		}
+		return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+	}
+
+	/**
+	 * @return
+	 * the size of the ring buffer
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Submits the given items to the disruptor. Claims a range of sequences
+	 * for (up to buffer size many) items at once and publishes the range in 
+	 * a single step. Starts the disruptor threads if it is not running.
+	 * @param items
+	 * the items to submit
+	 */
+	public void submitBatch(A[] items) {
+		if (items.length == 0) {
+			return;
+		}
+		RingBuffer<SingleUseEvent<A>> ringBuffer = getRunningRingBuffer();
+		track(items.length);
+		// a batch may not be larger than the ring buffer
+		int maxBatchSize = ringBuffer.getBufferSize();
+		for (int i = 0; i < items.length; i += maxBatchSize) {
+			ringBuffer.publishEvents(Event::translate, i, Math.min(maxBatchSize, items.length - i), items);
+		}
+	}
+	
+	/**
+	 * Submits the given items to the disruptor in batches.
+	 * @param items
+	 * the items to submit
+	 * @see #submitBatch(Object[])
+	 */
+	@SuppressWarnings("unchecked")
+	public void submitAll(Collection<? extends A> items) {
+		submitBatch((A[]) items.toArray());
+	}
+	
+	private RingBuffer<SingleUseEvent<A>> getRunningRingBuffer() {
+		//avoid calling synchronized method if already running
 		if (!isRunning) {
 			startIfNotRunning();
 		}
-		track();
-//		Log.out(this, "%s, submitting %s", Thread.currentThread(), item);
-		ringBuffer.publishEvent(Event::translate, item);
+		return ringBuffer;
+	}
+	
+	private void track(int count) {
+		if (isTracking()) {
+			//trackers are not thread safe
+			synchronized (this) {
+				for (int i = 0; i < count; ++i) {
+					track();
+				}
+			}
+		}
 	}
 
 	@Override
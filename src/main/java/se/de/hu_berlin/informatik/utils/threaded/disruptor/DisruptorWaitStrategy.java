@@ -0,0 +1,69 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.threaded.disruptor;
+
+import java.util.concurrent.TimeUnit;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+
+/**
+ * The strategies that event handlers of a {@link DisruptorProvider} may use
+ * to wait for new events. Blocking uses the least CPU and is suited for batch jobs.
+ * The other strategies trade CPU time for lower latency, with busy spinning being
+ * the most extreme (it occupies a whole core per handler thread).
+ * 
+ * @author Simon Heiden
+ */
+public enum DisruptorWaitStrategy {
+	/** waits on a lock and condition (default) */
+	BLOCKING,
+	/** spins, then yields, then sleeps for short periods */
+	SLEEPING,
+	/** spins, then yields the thread */
+	YIELDING,
+	/** spins constantly */
+	BUSY_SPIN,
+	/** spins and yields for a short time, then falls back to blocking */
+	PHASED_BACKOFF;
+	
+	/**
+	 * @return
+	 * a new instance of the corresponding disruptor wait strategy
+	 */
+	public WaitStrategy newInstance() {
+		switch (this) {
+		case SLEEPING:
+			return new SleepingWaitStrategy();
+		case YIELDING:
+			return new YieldingWaitStrategy();
+		case BUSY_SPIN:
+			return new BusySpinWaitStrategy();
+		case PHASED_BACKOFF:
+			return PhasedBackoffWaitStrategy.withLock(1, 1, TimeUnit.MILLISECONDS);
+		case BLOCKING:
+		default:
+			return new BlockingWaitStrategy();
+		}
+	}
+	
+	/**
+	 * Parses the given name of a strategy (case insensitive, '-' may be used 
+	 * instead of '_').
+	 * @param name
+	 * the name of a strategy, e.g. "BUSY_SPIN"
+	 * @return
+	 * the strategy
+	 * @throws IllegalArgumentException
+	 * if no strategy with the given name exists
+	 */
+	public static DisruptorWaitStrategy parse(String name) throws IllegalArgumentException {
+		return valueOf(name.trim().toUpperCase().replace('-', '_'));
+	}
+	
+}
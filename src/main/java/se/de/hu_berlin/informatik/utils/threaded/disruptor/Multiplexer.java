@@ -29,21 +29,52 @@ public interface Multiplexer<B> extends Runnable {
 	public void shutdown();
 	
 	/**
-	 * Checks for any pending items and processes each item that is valid.
-	 * @param handlers
-	 * the connected handlers
-	 */
-	default public void processPendingItems(MultiplexerInput<B>[] handlers) {
-		for (int i = 0; i < handlers.length; ++i) {
-			//check for validity
-			if (handlers[i].outputItemIsValid()) {
-				//get the output and notify the handler
-				B result = handlers[i].getValidOutputAndNotifyHandler();
-				//process valid item
-				processNewOutputItem(result);
-			}
-		}
-	}
+	 * Hands a new output item over to the multiplexer thread, which will
+	 * eventually process it with {@link #processNewOutputItem(Object)}. 
+	 * May block if too many items are waiting to be processed.
+	 * {@code null} items are ignored.
+	 * @param item
+	 * the item to submit
+	 */
+	public void submit(B item);
+	
+	/**
+	 * Hands a new output item over to the multiplexer thread that was generated
+	 * for the input with the given sequence number. In ordered mode, output items 
+	 * are processed in the order of the sequence numbers. Otherwise, this is the
+	 * same as {@link #submit(Object)}.
+	 * @param sequence
+	 * the sequence number of the corresponding input
+	 * @param item
+	 * the item to submit
+	 */
+	public void submit(long sequence, B item);
+	
+	/**
+	 * Marks the input with the given sequence number as completely processed,
+	 * i.e., no more output items will be submitted for it. Has to be called
+	 * for every input in ordered mode. Has no effect otherwise.
+	 * @param sequence
+	 * the sequence number of the processed input
+	 */
+	public void complete(long sequence);
+	
+	/**
+	 * Blocks until the input with the given sequence number lies within the
+	 * window of inputs that may be processed in parallel. Returns immediately
+	 * if not in ordered mode.
+	 * @param sequence
+	 * the sequence number of the input to be processed
+	 * @throws InterruptedException
+	 * if interrupted while waiting
+	 */
+	public void awaitWindow(long sequence) throws InterruptedException;
+	
+	/**
+	 * @return
+	 * whether output items are processed in the order of the corresponding inputs
+	 */
+	public boolean isOrdered();
 	
 	/**
 	 * Processes an item of type B. Has to be implemented by any
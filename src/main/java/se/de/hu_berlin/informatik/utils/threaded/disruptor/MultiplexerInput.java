@@ -1,8 +1,8 @@
 package se.de.hu_berlin.informatik.utils.threaded.disruptor;
 
 /**
- * Provides an interface for a multiplexer to obtain new outputs of an
- * underlying thread with all necessary access methods.
+ * Provides an interface for threads that hand their output over to a 
+ * multiplexer.
  * 
  * @author Simon
  *
@@ -11,93 +11,24 @@ package se.de.hu_berlin.informatik.utils.threaded.disruptor;
  */
 public interface MultiplexerInput<B> {
 
-	public Object getLock();
-	
-	/**
-	 * Returns the current output item. May be valid or invalid or {@code null}.
-	 * @return
-	 * the current, available output item
-	 */
-	public B getOutput();
-	
 	/**
-	 * Returns available, new output items. The output should be tested for
-	 * validity beforehand.
-	 * Invalidates the current output such that it can be replaced by newly
-	 * generated output items in the future.
-	 * @return
-	 * a new output item which shall be processed by the multiplexer
-	 */
-	default public B getValidOutputAndNotifyHandler() {
-		B temp = getOutput();
-		synchronized (getLock()) {
-			setOutputItemInvalid();
-			getLock().notify();
-		}
-		
-		return temp;
-	}
-	
-	/**
-	 * Sets a new output item. Assumes the item is not {@code null} and
-	 * that old output items have already been collected by the multiplexer.
+	 * Hands a new output item over to the associated multiplexer. May block
+	 * if the multiplexer has too many items waiting to be processed.
+	 * If the given item is {@code null}, then this method has no effect.
 	 * @param item
-	 * the item to be submitted
-	 * @return
-	 * true if successful, false otherwise
-	 */
-	public boolean setOutput(B item);
-	
-	/**
-	 * Waits for old output items to be collected by the multiplexer.
+	 * a new output item (may be {@code null})
 	 */
-	default public void waitForOldOutputToBeCollected() {
-		//only acquire lock if it's necessary
-		if (outputItemIsValid()) {
-			synchronized (getLock()) {
-				while (outputItemIsValid()) {
-					try {
-						getLock().wait();
-					} catch (InterruptedException e) {
-						// do nothing
-					}
-				}
-			}
+	default public void submitOutput(B item) {
+		if (item != null) {
+			getMultiplexer().submit(getCurrentSequence(), item);
 		}
 	}
 	
 	/**
 	 * @return
-	 * whether the output item is valid (i.e. it has not yet been
-	 * collected by the multiplexer)
-	 */
-	public boolean outputItemIsValid();
-	
-	/**
-	 * Marks the current output item as valid.
-	 */
-	public void setOutputItemValid();
-	
-	/**
-	 * Marks the current output item as invalid.
-	 */
-	public void setOutputItemInvalid();
-	
-	/**
-	 * Waits for old output items to be collected (if any). Then sets a
-	 * a new output item and validates the output if successful.
-	 * If the given item is {@code null}, then this method has no effect.
-	 * @param item
-	 * a new output item (may be {@code null})
+	 * the sequence number of the input that is currently processed
 	 */
-	default public void trySettingNewOutputAndValidate(B item) {
-		if (item != null) {
-			waitForOldOutputToBeCollected();
-			if(setOutput(item)) {
-				setOutputItemValid();
-			}
-		}
-	}
+	public long getCurrentSequence();
 	
 	/**
 	 * Sets a reference to a multiplexer.
@@ -1,7 +1,9 @@
 package se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler;
 
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.WorkHandler;
 
+import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
 import se.de.hu_berlin.informatik.utils.optionparser.OptionCarrier;
 import se.de.hu_berlin.informatik.utils.processors.BasicComponent;
 import se.de.hu_berlin.informatik.utils.threaded.ThreadLimit;
@@ -19,15 +21,21 @@ import se.de.hu_berlin.informatik.utils.tracking.Trackable;
  * is set, then access to threads will be unrestricted with practically no additional 
  * costs (no synchronization will take place). 
  * 
+ * <p> Handlers may either be connected as {@link EventHandler}s, in which case every
+ * handler sees every event and has to decide on its own whether to process it, or
+ * as {@link WorkHandler}s of a worker pool, in which case each event is handed to 
+ * exactly one handler.
+ * 
  * @author Simon Heiden
  * @param <A>
  * the type of elements that shall be processed by this handler
  * @see DisruptorProvider
  */
-public abstract class AbstractDisruptorEventHandler<A> extends BasicComponent implements EventHandler<SingleUseEvent<A>>, OptionCarrier, Trackable {
+public abstract class AbstractDisruptorEventHandler<A> extends BasicComponent implements EventHandler<SingleUseEvent<A>>, WorkHandler<SingleUseEvent<A>>, OptionCarrier, Trackable {
 
     private ThreadLimit limit = ThreadLimitDummy.getInstance();
 	private boolean singleConsumer = false;
+	private long currentSequence = -1;
     
     /**
      * Creates a {@link AbstractDisruptorEventHandler}.
@@ -55,16 +63,93 @@ public abstract class AbstractDisruptorEventHandler<A> extends BasicComponent im
     
     @Override
     public void onEvent(SingleUseEvent<A> event, long sequence, boolean endOfBatch) throws Exception {
-    	limit.acquireSlot();
 //		Log.out(this, event.get().toString() + " " + sequence);
+    	handle(event);
+	}
+    
+    /**
+     * Gets called if this handler is part of a worker pool. Every event is
+     * handed to exactly one handler of the pool, so no further checks are needed.
+     */
+    @Override
+    public void onEvent(SingleUseEvent<A> event) throws Exception {
+    	handle(event);
+    }
+    
+    private void handle(SingleUseEvent<A> event) throws Exception {
+    	long sequence = event.getSequence();
+    	currentSequence = sequence;
     	try {
-    		resetAndInit();
-    		processEvent(event.get());
+    		waitForTurn(sequence);
+    		// the event may only be read once
+    		A item = event.get();
+    		long estimatedBytes = getMemoryEstimate(item);
+    		limit.acquireSlot(estimatedBytes);
+    		try {
+    			resetAndInit();
+    			processEvent(item);
+    		} finally {
+    			limit.releaseSlot(estimatedBytes);
+    		}
     	} finally {
-    		limit.releaseSlot();
+    		eventDone(sequence);
     	}
 	}
+    
+    // a failing estimate must not prevent the item from being processed
+    private long getMemoryEstimate(A item) {
+    	try {
+    		return estimateMemoryUsage(item);
+    	} catch (RuntimeException e) {
+    		Log.err(this, e, "Could not estimate memory usage of item. Using estimate 0.");
+    		return 0;
+    	}
+    }
+    
+    /**
+     * Estimates the heap memory that processing the given item requires. The estimate
+     * is passed to the thread limit when acquiring a slot. Returns 0 (unknown) per default.
+     * @param input
+     * the item to be processed
+     * @return
+     * the estimated memory usage in bytes
+     */
+    protected long estimateMemoryUsage(A input) {
+    	return 0;
+    }
 	
+    /**
+     * Gets called before a thread slot is acquired for processing the event
+     * with the given sequence number. May be overridden to block until the 
+     * event may be processed. Does nothing per default.
+     * @param sequence
+     * the sequence number of the event
+     * @throws InterruptedException
+     * if interrupted while waiting
+     */
+    protected void waitForTurn(long sequence) throws InterruptedException {
+    	// do nothing
+    }
+    
+    /**
+     * Gets called after handling the event with the given sequence number,
+     * even if handling it failed at any point. Does nothing per default.
+     * @param sequence
+     * the sequence number of the event
+     */
+    protected void eventDone(long sequence) {
+    	// do nothing
+    }
+    
+    /**
+     * @return
+     * the sequence number of the event that is currently (or was last)
+     * processed by this handler; -1 if no event was processed yet
+     */
+    public long getCurrentSequence() {
+    	return currentSequence;
+    }
+    
     /**
      * @param isSingle
      * whether this consumer is the only one which is
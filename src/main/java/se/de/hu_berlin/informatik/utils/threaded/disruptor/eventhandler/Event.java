@@ -23,6 +23,24 @@ public interface Event<T> {
 	 * the contained element
 	 */
 	public T get();
+	
+	/**
+	 * Sets the sequence number of this event in the ring buffer. Does nothing
+	 * by default; events that are used in a ring buffer have to store it.
+	 * @param sequence
+	 * the sequence number
+	 */
+	default public void setSequence(long sequence) {
+		// not stored by default
+	}
+	
+	/**
+	 * @return
+	 * the sequence number of this event in the ring buffer, or -1 if it is not stored
+	 */
+	default public long getSequence() {
+		return -1;
+	}
 
 	/**
 	 * Translation method that sets the given event's contained element to the
@@ -38,6 +56,7 @@ public interface Event<T> {
 	 */
 	public static <T> void translate(Event<T> event, long sequence, T item) {
 		event.set(item);
+		event.setSequence(sequence);
 	}
 
 }
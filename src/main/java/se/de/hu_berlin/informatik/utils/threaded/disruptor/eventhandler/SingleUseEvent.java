@@ -10,6 +10,8 @@ package se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler;
  */
 public class SingleUseEvent<T> extends MultiUseEvent<T> {
 	
+	private long sequence = -1;
+	
 	/**
 	 * Gets the element contained in this event. Nullifies the reference to
 	 * the contained element in the process, such that the element may be 
@@ -23,5 +25,15 @@ public class SingleUseEvent<T> extends MultiUseEvent<T> {
 		super.setWithoutValidation(null);
 		return temp;
 	}
+	
+	@Override
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+	
+	@Override
+	public long getSequence() {
+		return sequence;
+	}
 
 }
@@ -0,0 +1,104 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.compression.tests;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipException;
+
+import se.de.hu_berlin.informatik.utils.compression.ziputils.ZipFileWrapper;
+import se.de.hu_berlin.informatik.utils.files.FileUtils;
+
+/**
+ * Measures the read throughput of a single {@link ZipFileWrapper} that is shared by
+ * 1 to 32 reader threads, each reading random entries with {@code uncheckedGet}.
+ * 
+ * <p> Not run as part of the test suite. Run with, e.g.,
+ * {@code java ... ZipFileWrapperContentionBenchmark [readsPerThread] [entrySize]},
+ * where the number of reads per thread defaults to 20,000 and the entry size
+ * defaults to 16 KB.
+ * 
+ * @author SimHigh
+ */
+public class ZipFileWrapperContentionBenchmark {
+
+	private static final int ENTRIES = 256;
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16, 32 };
+
+	public static void main(String[] args) throws Exception {
+		int readsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+		int entrySize = args.length > 1 ? Integer.parseInt(args[1]) : 16 * 1024;
+
+		Path zipFilePath = Paths.get("target", "benchmark", "contention.zip");
+		FileUtils.delete(zipFilePath);
+		ZipFileWrapper zipFile = ZipFileWrapper.getZipFileWrapper(zipFilePath);
+		Random random = new Random(42);
+		for (int i = 0; i < ENTRIES; ++i) {
+			byte[] data = new byte[entrySize];
+			for (int j = 0; j < data.length; ++j) {
+				// compressible, but not trivially
+				data[j] = (byte) random.nextInt(16);
+			}
+			zipFile.addArray(data, i + ".bin");
+		}
+		zipFile.close();
+
+		// warm up
+		run(zipFile, 4, readsPerThread / 4);
+
+		System.out.println("threads | total reads | time (ms) | reads/s | speedup");
+		double singleThreadThroughput = 0;
+		for (int threads : THREAD_COUNTS) {
+			long time = run(zipFile, threads, readsPerThread);
+			long reads = (long) threads * readsPerThread;
+			double throughput = reads * 1e9 / time;
+			if (threads == 1) {
+				singleThreadThroughput = throughput;
+			}
+			System.out.println(String.format("%7d | %11d | %9d | %7.0f | %6.2fx", 
+					threads, reads, time / 1_000_000, throughput, throughput / singleThreadThroughput));
+		}
+
+		zipFile.close();
+		FileUtils.delete(zipFilePath);
+	}
+
+	private static long run(ZipFileWrapper zipFile, int threads, int readsPerThread) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Long>> results = new ArrayList<>(threads);
+		for (int t = 0; t < threads; ++t) {
+			final long seed = t;
+			results.add(executor.submit(() -> {
+				Random random = new Random(seed);
+				long bytes = 0;
+				start.await();
+				for (int i = 0; i < readsPerThread; ++i) {
+					bytes += read(zipFile, random.nextInt(ENTRIES));
+				}
+				return bytes;
+			}));
+		}
+		long startTime = System.nanoTime();
+		start.countDown();
+		for (Future<Long> result : results) {
+			result.get();
+		}
+		long time = System.nanoTime() - startTime;
+		executor.shutdown();
+		return time;
+	}
+
+	private static int read(ZipFileWrapper zipFile, int index) throws ZipException {
+		return zipFile.uncheckedGet(index).length;
+	}
+
+}
@@ -0,0 +1,251 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.compression.tests;
+
+import static org.junit.Assert.*;
+
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import se.de.hu_berlin.informatik.utils.compression.ziputils.ZipFileWrapper;
+import se.de.hu_berlin.informatik.utils.files.FileUtils;
+import se.de.hu_berlin.informatik.utils.miscellaneous.TestSettings;
+
+/**
+ * @author SimHigh
+ *
+ */
+public class ZipFileWrapperTest extends TestSettings {
+
+	private Path zipFilePath;
+	private ZipFileWrapper zipFile;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		zipFilePath = Paths.get(getStdTestDir(), "wrapper.zip");
+		FileUtils.delete(zipFilePath);
+		zipFile = ZipFileWrapper.getZipFileWrapper(zipFilePath);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		zipFile.close();
+		FileUtils.delete(zipFilePath);
+	}
+
+	@Test
+	public void testInterleavedReadsAndWrites() throws Exception {
+		for (int i = 0; i < 10; ++i) {
+			zipFile.addArray(new byte[] { (byte) i, 1, 2, 3 }, i + ".bin");
+		}
+		for (int i = 9; i >= 0; --i) {
+			assertArrayEquals(new byte[] { (byte) i, 1, 2, 3 }, zipFile.get(i, true));
+		}
+		assertTrue(zipFile.exists("5.bin"));
+		assertFalse(zipFile.exists("10.bin"));
+		assertEquals(4, zipFile.getEntrySize("3.bin"));
+
+		// a write invalidates the cached entry index
+		zipFile.addArray(new byte[] { 42 }, "10.bin");
+		assertTrue(zipFile.exists("10.bin"));
+		assertArrayEquals(new byte[] { 42 }, zipFile.get(10, true));
+		assertArrayEquals(new byte[] { 2, 3 }, zipFile.uncheckedGet("7.bin", 2, 2));
+
+		zipFile.removeEntries(Collections.singletonList("5.bin"));
+		assertFalse(zipFile.exists("5.bin"));
+		assertNull(zipFile.get(5, false));
+		assertArrayEquals(new byte[] { 6, 1, 2, 3 }, zipFile.get(6, true));
+
+		List<String> headers = zipFile.getFileHeadersStartingWithString("1");
+		assertEquals(Arrays.asList("1.bin", "10.bin"), headers);
+	}
+
+	@Test
+	public void testOverwriteExistingEntry() throws Exception {
+		zipFile.addArray(new byte[] { 1 }, "a.bin");
+		assertArrayEquals(new byte[] { 1 }, zipFile.get("a.bin", true));
+		zipFile.addArray(new byte[] { 2, 2 }, "a.bin");
+		assertArrayEquals(new byte[] { 2, 2 }, zipFile.get("a.bin", true));
+	}
+	
+	@Test
+	public void testAppendKeepsExistingData() throws Exception {
+		zipFile.addArray(new byte[1000], "a.bin");
+		zipFile.close();
+		long sizeBefore = Files.size(zipFilePath);
+		
+		// reopen and append; the existing entry is not rewritten
+		zipFile.addArray(new byte[] { 1, 2, 3 }, "b.bin");
+		zipFile.close();
+		assertTrue(Files.size(zipFilePath) > sizeBefore);
+		
+		try (ZipFile zip = new ZipFile(zipFilePath.toFile())) {
+			assertEquals(2, zip.size());
+			assertEquals(1000, zip.getEntry("a.bin").getSize());
+			assertEquals(3, zip.getEntry("b.bin").getSize());
+		}
+		assertArrayEquals(new byte[] { 1, 2, 3 }, zipFile.get("b.bin", true));
+	}
+	
+	@Test
+	public void testRemoveAndCompact() throws Exception {
+		byte[] data = new byte[10000];
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = (byte) (i * 31 + i / 7);
+		}
+		for (int i = 0; i < 10; ++i) {
+			zipFile.addArray(data, i + ".bin");
+		}
+		// replace an entry and remove some others (tombstoning)
+		zipFile.addArray(new byte[] { 7 }, "3.bin");
+		zipFile.removeEntries(Arrays.asList("0.bin", "1.bin", "2.bin"));
+		zipFile.close();
+		long sizeBeforeCompaction = Files.size(zipFilePath);
+		
+		assertFalse(zipFile.exists("0.bin"));
+		assertArrayEquals(new byte[] { 7 }, zipFile.get("3.bin", true));
+		
+		zipFile.compact();
+		assertTrue(Files.size(zipFilePath) < sizeBeforeCompaction);
+		// replaced entries are appended at the end
+		assertEquals(Arrays.asList("4.bin", "5.bin", "6.bin", "7.bin", "8.bin", "9.bin", "3.bin"), 
+				zipFile.getFileHeadersContainingString(".bin"));
+		assertArrayEquals(data, zipFile.get("9.bin", true));
+		zipFile.close();
+		
+		// after compaction, removed entries are also gone from the local file headers
+		int count = 0;
+		try (ZipInputStream zin = new ZipInputStream(Files.newInputStream(zipFilePath))) {
+			for (ZipEntry entry = zin.getNextEntry(); entry != null; entry = zin.getNextEntry()) {
+				assertNotEquals("0.bin", entry.getName());
+				++count;
+			}
+		}
+		assertEquals(7, count);
+	}
+	
+	@Test
+	public void testConcurrentReaders() throws Exception {
+		for (int i = 0; i < 20; ++i) {
+			zipFile.addArray(new byte[] { (byte) i, (byte) (i + 1) }, i + ".bin");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int t = 0; t < 8; ++t) {
+				results.add(executor.submit(() -> {
+					for (int j = 0; j < 200; ++j) {
+						int i = j % 20;
+						if (!Arrays.equals(new byte[] { (byte) i, (byte) (i + 1) }, zipFile.get(i, true))
+								|| !zipFile.exists(i + ".bin")) {
+							return false;
+						}
+					}
+					return true;
+				}));
+			}
+			// a write in between forces the readers to reopen the archive
+			zipFile.addArray(new byte[] { 42 }, "extra.bin");
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertArrayEquals(new byte[] { 42 }, zipFile.get("extra.bin", true));
+	}
+	
+	@Test
+	public void testMappedStoredEntries() throws Exception {
+		byte[] data = new byte[5000];
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = (byte) (i % 251);
+		}
+		zipFile.addArray(new byte[] { 1, 2, 3 }, "compressed.bin");
+		zipFile.addArray(data, "stored.bin", false);
+		zipFile.addArray(new byte[] { 9, 8 }, "removed.bin", false);
+		zipFile.removeEntries(Collections.singletonList("removed.bin"));
+		
+		assertTrue(zipFile.isStored("stored.bin"));
+		assertFalse(zipFile.isStored("compressed.bin"));
+		assertArrayEquals(data, zipFile.get("stored.bin", true));
+		
+		MappedByteBuffer mapped = zipFile.getMappedEntry("stored.bin");
+		assertTrue(mapped.isReadOnly());
+		byte[] mappedData = new byte[mapped.remaining()];
+		mapped.get(mappedData);
+		assertArrayEquals(data, mappedData);
+		
+		// stored entries stay stored after compaction
+		zipFile.compact();
+		assertTrue(zipFile.isStored("stored.bin"));
+		assertEquals(5000, zipFile.getMappedEntry("stored.bin").remaining());
+		assertEquals(data[4321], zipFile.getMappedEntry("stored.bin").get(4321));
+	}
+
+	@Test
+	public void testOpenEntryDoesNotBlockOtherOperations() throws Exception {
+		zipFile.addArray(new byte[] { 1, 2 }, "existing.bin");
+		byte[] data = new byte[10000];
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = (byte) (i % 13);
+		}
+		ZipFileWrapper.ZipEntryOutputStream out = zipFile.openEntryOutputStream("streamed.bin", true);
+		out.write(data, 0, 5000);
+		// the writing thread may still read and write the zip file
+		assertArrayEquals(new byte[] { 1, 2 }, zipFile.get("existing.bin", true));
+		zipFile.addArray(new byte[] { 3 }, "other.bin");
+		// the entry only becomes visible after closing the stream
+		assertFalse(zipFile.exists("streamed.bin"));
+		out.write(data, 5000, 5000);
+		out.close();
+		
+		assertArrayEquals(data, zipFile.get("streamed.bin", true));
+		assertArrayEquals(new byte[] { 3 }, zipFile.get("other.bin", true));
+		// no spill files are left behind
+		try (Stream<Path> files = Files.list(zipFilePath.toAbsolutePath().getParent())) {
+			assertFalse(files.anyMatch(k -> k.getFileName().toString().endsWith(".entry.tmp")));
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.compression.ziputils;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+
+/**
+ * Tests the header encoding of {@link ZipAppender}, in particular the zip64
+ * extended information extra fields of entries that cross the 4 GB boundary.
+ *
+ * @author SimHigh
+ */
+public class ZipAppenderTest {
+
+	private static final long MAGIC = 0xFFFFFFFFL;
+	private static final long LARGE_SIZE = 5L * 1024 * 1024 * 1024;
+	private static final long LARGE_COMPRESSED_SIZE = MAGIC + 1;
+	private static final long LARGE_OFFSET = 6L * 1024 * 1024 * 1024;
+
+	private static final byte[] NAME = "large.bin".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	public void testSmallLocalHeader() throws Exception {
+		ByteBuffer header = wrap(ZipAppender.createLocalHeader(NAME, ZipEntry.DEFLATED, 0, 0x12345678L, 1000, 2000));
+
+		assertEquals(30 + NAME.length + 20, header.capacity());
+		assertEquals(20, header.getShort(4));
+		assertEquals(0x12345678, header.getInt(14));
+		assertEquals(1000, header.getInt(18));
+		assertEquals(2000, header.getInt(22));
+		assertEquals(NAME.length, header.getShort(26));
+		assertEquals(20, header.getShort(28));
+		// reserved zip64 field holds both sizes
+		int extra = 30 + NAME.length;
+		assertEquals(0x0001, header.getShort(extra));
+		assertEquals(16, header.getShort(extra + 2));
+		assertEquals(2000, header.getLong(extra + 4));
+		assertEquals(1000, header.getLong(extra + 12));
+	}
+
+	@Test
+	public void testLargeLocalHeader() throws Exception {
+		ByteBuffer header = wrap(ZipAppender.createLocalHeader(
+				NAME, ZipEntry.STORED, 0, 0, LARGE_COMPRESSED_SIZE, LARGE_SIZE));
+
+		assertEquals(45, header.getShort(4));
+		assertEquals(MAGIC, header.getInt(18) & MAGIC);
+		assertEquals(MAGIC, header.getInt(22) & MAGIC);
+		int extra = 30 + NAME.length;
+		assertEquals(0x0001, header.getShort(extra));
+		assertEquals(16, header.getShort(extra + 2));
+		assertEquals(LARGE_SIZE, header.getLong(extra + 4));
+		assertEquals(LARGE_COMPRESSED_SIZE, header.getLong(extra + 12));
+	}
+
+	@Test
+	public void testSmallCentralDirectoryRecord() throws Exception {
+		byte[] bytes = ZipAppender.createCentralDirectoryRecord(NAME, ZipEntry.STORED, 0, 0, 1000, 1000, 4711);
+		ByteBuffer record = wrap(bytes);
+
+		assertEquals(46 + NAME.length, record.capacity());
+		assertEquals(10, record.getShort(6));
+		assertEquals(1000, record.getInt(20));
+		assertEquals(1000, record.getInt(24));
+		assertEquals(0, record.getShort(30));
+		assertEquals(4711, ZipAppender.getLocalHeaderOffset(bytes));
+	}
+
+	@Test
+	public void testLargeCentralDirectoryRecord() throws Exception {
+		byte[] bytes = ZipAppender.createCentralDirectoryRecord(
+				NAME, ZipEntry.DEFLATED, 0, 0, LARGE_COMPRESSED_SIZE, LARGE_SIZE, LARGE_OFFSET);
+		ByteBuffer record = wrap(bytes);
+
+		assertEquals(45, record.getShort(6));
+		assertEquals(MAGIC, record.getInt(20) & MAGIC);
+		assertEquals(MAGIC, record.getInt(24) & MAGIC);
+		assertEquals(MAGIC, record.getInt(42) & MAGIC);
+		assertEquals(4 + 3 * 8, record.getShort(30));
+		// original size, compressed size, local header offset
+		int extra = 46 + NAME.length;
+		assertEquals(0x0001, record.getShort(extra));
+		assertEquals(3 * 8, record.getShort(extra + 2));
+		assertEquals(LARGE_SIZE, record.getLong(extra + 4));
+		assertEquals(LARGE_COMPRESSED_SIZE, record.getLong(extra + 12));
+		assertEquals(LARGE_OFFSET, record.getLong(extra + 20));
+		assertEquals(LARGE_OFFSET, ZipAppender.getLocalHeaderOffset(bytes));
+	}
+
+	@Test
+	public void testCentralDirectoryRecordWithOnlyLargeSize() throws Exception {
+		// a well compressible entry: only the original size needs zip64
+		byte[] bytes = ZipAppender.createCentralDirectoryRecord(
+				NAME, ZipEntry.DEFLATED, 0, 0, 1000, LARGE_SIZE, LARGE_OFFSET);
+		ByteBuffer record = wrap(bytes);
+
+		assertEquals(1000, record.getInt(20));
+		assertEquals(MAGIC, record.getInt(24) & MAGIC);
+		int extra = 46 + NAME.length;
+		assertEquals(2 * 8, record.getShort(extra + 2));
+		assertEquals(LARGE_SIZE, record.getLong(extra + 4));
+		assertEquals(LARGE_OFFSET, record.getLong(extra + 12));
+		assertEquals(LARGE_OFFSET, ZipAppender.getLocalHeaderOffset(bytes));
+	}
+
+	private static ByteBuffer wrap(byte[] bytes) {
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+}
@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.threaded.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+import org.junit.Test;
+
+import se.de.hu_berlin.informatik.utils.threaded.AdaptiveThreadLimit;
+
+/**
+ * @author SimHigh
+ *
+ */
+public class AdaptiveThreadLimitTest {
+
+	private static final int THREADS = 8;
+
+	@Test
+	public void testLimitIncreasesForScalingWorkLoad() throws Exception {
+		AdaptiveThreadLimit limit = new AdaptiveThreadLimit(1, THREADS)
+				.setWindow(20, TimeUnit.MILLISECONDS);
+		// the latency does not depend on the concurrency
+		int maxInFlight = run(limit, concurrency -> 2);
+		assertTrue(limit.toString(), limit.getLimit() >= THREADS - 2);
+		assertTrue(maxInFlight <= THREADS);
+	}
+
+	@Test
+	public void testLimitStaysLowForOverloadedWorkLoad() throws Exception {
+		AdaptiveThreadLimit limit = new AdaptiveThreadLimit(1, THREADS)
+				.setWindow(20, TimeUnit.MILLISECONDS);
+		// the latency grows quadratically with the concurrency, such that the throughput drops
+		int maxInFlight = run(limit, concurrency -> 2 * concurrency * concurrency);
+		assertTrue(limit.toString(), limit.getLimit() <= 3);
+		assertTrue(maxInFlight <= THREADS);
+	}
+
+	private static int run(AdaptiveThreadLimit limit, IntUnaryOperator latencyMillis) throws InterruptedException {
+		AtomicInteger concurrency = new AtomicInteger();
+		AtomicInteger maxConcurrency = new AtomicInteger();
+		// assertions in the worker threads would only terminate the respective thread
+		AtomicInteger violations = new AtomicInteger();
+		long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+		Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; ++i) {
+			threads[i] = new Thread(() -> {
+				while (System.nanoTime() < end) {
+					limit.acquireSlot();
+					try {
+						int current = concurrency.incrementAndGet();
+						maxConcurrency.accumulateAndGet(current, Math::max);
+						if (current > limit.getMaxLimit()) {
+							violations.incrementAndGet();
+						}
+						Thread.sleep(latencyMillis.applyAsInt(current));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						concurrency.decrementAndGet();
+						limit.releaseSlot();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals("executions beyond the maximal limit", 0, violations.get());
+		return maxConcurrency.get();
+	}
+
+}
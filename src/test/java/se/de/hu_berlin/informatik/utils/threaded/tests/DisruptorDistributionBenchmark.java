@@ -0,0 +1,107 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.threaded.tests;
+
+import java.util.concurrent.CountDownLatch;
+
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.DisruptorProvider;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.AbstractDisruptorEventHandler;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.DisruptorFCFSEventHandler;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.DisruptorRREventHandler;
+
+/**
+ * Compares the throughput of a {@link DisruptorProvider} with 1 to 32 handlers for
+ * the three ways of distributing events: FCFS handlers in a worker pool (each event
+ * is claimed by exactly one handler), FCFS handlers that see every event and compete
+ * for it, and round robin handlers.
+ * 
+ * <p> Not run as part of the test suite. Run with, e.g.,
+ * {@code java ... DisruptorDistributionBenchmark [events] [workPerEvent]},
+ * where the number of events defaults to 1,000,000 and the work per event
+ * (iterations of a small computation) defaults to 100.
+ * 
+ * @author SimHigh
+ */
+public class DisruptorDistributionBenchmark {
+
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16, 32 };
+	
+	private enum Mode { WORKER_POOL, FCFS_BROADCAST, ROUND_ROBIN }
+	
+	// prevents the computation from being optimized away
+	private static volatile long sink;
+
+	public static void main(String[] args) throws Exception {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int work = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		
+		// warm up
+		for (Mode mode : Mode.values()) {
+			run(mode, 4, events / 10, work);
+		}
+
+		System.out.println("mode           | threads | time (ms) | events/s");
+		for (int threads : THREAD_COUNTS) {
+			for (Mode mode : Mode.values()) {
+				long time = run(mode, threads, events, work);
+				System.out.println(String.format("%-14s | %7d | %9d | %10.0f", 
+						mode, threads, time / 1_000_000, events / (time / 1e9)));
+			}
+		}
+	}
+
+	private static long run(Mode mode, int threads, int events, int work) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(events);
+		@SuppressWarnings("unchecked")
+		AbstractDisruptorEventHandler<Integer>[] handlers = new AbstractDisruptorEventHandler[threads];
+		for (int i = 0; i < threads; ++i) {
+			if (mode == Mode.ROUND_ROBIN) {
+				handlers[i] = new DisruptorRREventHandler<Integer>(i, threads) {
+					@Override
+					public void processEvent(Integer input) throws Exception {
+						compute(input, work);
+						done.countDown();
+					}
+					@Override
+					public void resetAndInit() {
+					}
+				};
+			} else {
+				handlers[i] = new DisruptorFCFSEventHandler<Integer>() {
+					@Override
+					public void processEvent(Integer input) throws Exception {
+						compute(input, work);
+						done.countDown();
+					}
+					@Override
+					public void resetAndInit() {
+					}
+				};
+			}
+		}
+		
+		DisruptorProvider<Integer> provider = new DisruptorProvider<Integer>(1024)
+				.useWorkerPool(mode == Mode.WORKER_POOL);
+		provider.connectHandlers(handlers);
+		
+		long start = System.nanoTime();
+		for (int i = 0; i < events; ++i) {
+			provider.submit(i);
+		}
+		done.await();
+		long time = System.nanoTime() - start;
+		
+		provider.shutdown();
+		return time;
+	}
+	
+	private static void compute(int input, int work) {
+		long value = input;
+		for (int i = 0; i < work; ++i) {
+			value = value * 6364136223846793005L + 1442695040888963407L;
+		}
+		sink = value;
+	}
+
+}
@@ -0,0 +1,199 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.threaded.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import se.de.hu_berlin.informatik.utils.threaded.ThreadBackend;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.DisruptorProvider;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.AbstractDisruptorEventHandler;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.DisruptorFCFSEventHandler;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.eventhandler.DisruptorRREventHandler;
+
+/**
+ * @author SimHigh
+ *
+ */
+public class DisruptorProviderTest {
+
+	private static final int ITEMS = 10000;
+	private static final int HANDLERS = 4;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	@Test
+	public void testWorkerPoolProcessesEachItemOnce() throws Exception {
+		AtomicIntegerArray processed = new AtomicIntegerArray(ITEMS);
+		run(new DisruptorProvider<Integer>(64), createFCFSHandlers(processed));
+		assertProcessedOnce(processed);
+	}
+	
+	@Test
+	public void testBroadcastProcessesEachItemOnce() throws Exception {
+		AtomicIntegerArray processed = new AtomicIntegerArray(ITEMS);
+		run(new DisruptorProvider<Integer>(64).useWorkerPool(false), createFCFSHandlers(processed));
+		assertProcessedOnce(processed);
+	}
+	
+	@Test
+	public void testRoundRobinIgnoresWorkerPool() throws Exception {
+		AtomicIntegerArray processed = new AtomicIntegerArray(ITEMS);
+		@SuppressWarnings("unchecked")
+		AbstractDisruptorEventHandler<Integer>[] handlers = new AbstractDisruptorEventHandler[HANDLERS];
+		for (int i = 0; i < HANDLERS; ++i) {
+			final int ordinal = i;
+			handlers[i] = new DisruptorRREventHandler<Integer>(i, HANDLERS) {
+				@Override
+				public void processEvent(Integer input) throws Exception {
+					// items are submitted in order, so the item equals the sequence number
+					assertEquals(ordinal, input % HANDLERS);
+					processed.incrementAndGet(input);
+				}
+				@Override
+				public void resetAndInit() {
+				}
+			};
+		}
+		run(new DisruptorProvider<Integer>(64), handlers);
+		assertProcessedOnce(processed);
+	}
+	
+	@Test
+	public void testConcurrentBatchSubmission() throws Exception {
+		AtomicIntegerArray processed = new AtomicIntegerArray(ITEMS);
+		DisruptorProvider<Integer> provider = new DisruptorProvider<Integer>(64);
+		provider.connectHandlers(createFCFSHandlers(processed));
+		
+		// 4 producers; batches are larger than the ring buffer
+		int producers = 4;
+		int itemsPerProducer = ITEMS / producers;
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; ++p) {
+			final int offset = p * itemsPerProducer;
+			threads[p] = new Thread(() -> {
+				Integer[] batch = new Integer[itemsPerProducer / 2];
+				for (int i = 0; i < batch.length; ++i) {
+					batch[i] = offset + i;
+				}
+				provider.submitBatch(batch);
+				List<Integer> rest = new ArrayList<>();
+				for (int i = batch.length; i < itemsPerProducer; ++i) {
+					if (i % 2 == 0) {
+						provider.submit(offset + i);
+					} else {
+						rest.add(offset + i);
+					}
+				}
+				provider.submitAll(rest);
+			});
+			threads[p].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		provider.shutdown();
+		assertProcessedOnce(processed);
+	}
+	
+	@Test
+	public void testVirtualThreadBackendKeepsContextClassLoader() throws Exception {
+		ClassLoader cl = new URLClassLoader(new URL[0], getClass().getClassLoader());
+		AtomicIntegerArray processed = new AtomicIntegerArray(ITEMS);
+		AtomicInteger wrongClassLoader = new AtomicInteger();
+		@SuppressWarnings("unchecked")
+		AbstractDisruptorEventHandler<Integer>[] handlers = new AbstractDisruptorEventHandler[HANDLERS];
+		for (int i = 0; i < HANDLERS; ++i) {
+			handlers[i] = new DisruptorFCFSEventHandler<Integer>() {
+				@Override
+				public void processEvent(Integer input) throws Exception {
+					if (Thread.currentThread().getContextClassLoader() != cl) {
+						wrongClassLoader.incrementAndGet();
+					}
+					processed.incrementAndGet(input);
+				}
+				@Override
+				public void resetAndInit() {
+				}
+			};
+		}
+		// falls back to platform threads on JVMs without virtual threads
+		DisruptorProvider<Integer> provider = new DisruptorProvider<Integer>(64, cl)
+				.setThreadBackend(ThreadBackend.VIRTUAL);
+		assertEquals(ThreadBackend.VIRTUAL, provider.getThreadBackend());
+		run(provider, handlers);
+		assertProcessedOnce(processed);
+		assertEquals(0, wrongClassLoader.get());
+	}
+	
+	private static AbstractDisruptorEventHandler<Integer>[] createFCFSHandlers(AtomicIntegerArray processed) {
+		@SuppressWarnings("unchecked")
+		AbstractDisruptorEventHandler<Integer>[] handlers = new AbstractDisruptorEventHandler[HANDLERS];
+		for (int i = 0; i < HANDLERS; ++i) {
+			handlers[i] = new DisruptorFCFSEventHandler<Integer>() {
+				@Override
+				public void processEvent(Integer input) throws Exception {
+					processed.incrementAndGet(input);
+				}
+				@Override
+				public void resetAndInit() {
+				}
+			};
+		}
+		return handlers;
+	}
+	
+	private static void run(DisruptorProvider<Integer> provider, AbstractDisruptorEventHandler<Integer>[] handlers) {
+		provider.connectHandlers(handlers);
+		for (int i = 0; i < ITEMS; ++i) {
+			provider.submit(i);
+		}
+		provider.shutdown();
+	}
+	
+	private static void assertProcessedOnce(AtomicIntegerArray processed) {
+		for (int i = 0; i < ITEMS; ++i) {
+			assertEquals("item " + i, 1, processed.get(i));
+		}
+	}
+
+}
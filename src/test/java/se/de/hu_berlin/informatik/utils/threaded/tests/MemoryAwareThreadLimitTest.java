@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.threaded.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import se.de.hu_berlin.informatik.utils.processors.AbstractConsumingProcessor;
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+import se.de.hu_berlin.informatik.utils.processors.basics.ThreadedProcessor;
+import se.de.hu_berlin.informatik.utils.processors.sockets.pipe.PipeLinker;
+import se.de.hu_berlin.informatik.utils.threaded.MemoryAwareThreadLimit;
+
+/**
+ * @author SimHigh
+ *
+ */
+public class MemoryAwareThreadLimitTest {
+
+	@Test
+	public void testBlocksUntilEnoughMemoryIsAvailable() throws Exception {
+		AtomicLong freeMemory = new AtomicLong(100);
+		MemoryAwareThreadLimit limit = new MemoryAwareThreadLimit(10, 8, freeMemory::get)
+				.setProbeInterval(1, TimeUnit.MILLISECONDS);
+
+		// the first item is always admitted
+		limit.acquireSlot(60);
+		assertEquals(60, limit.getReservedBytes());
+
+		CountDownLatch admitted = new CountDownLatch(1);
+		Thread thread = new Thread(() -> {
+			limit.acquireSlot(60);
+			admitted.countDown();
+		});
+		thread.start();
+		// 100 - 60 - 60 < 10
+		assertFalse(admitted.await(50, TimeUnit.MILLISECONDS));
+
+		// memory gets available without releasing a slot (e.g., due to garbage collection)
+		freeMemory.set(200);
+		assertTrue(admitted.await(5, TimeUnit.SECONDS));
+		thread.join();
+		assertEquals(2, limit.getInFlight());
+		assertEquals(120, limit.getReservedBytes());
+		assertEquals(1, limit.getBlockedAcquisitions());
+
+		limit.releaseSlot(60);
+		limit.releaseSlot(60);
+		assertEquals(0, limit.getInFlight());
+		assertEquals(0, limit.getReservedBytes());
+	}
+
+	@Test
+	public void testThreadedProcessorPassesEstimates() throws Exception {
+		// only a single item fits into memory at a time
+		MemoryAwareThreadLimit limit = new MemoryAwareThreadLimit(0, 4, () -> 150);
+		AtomicInteger maxInFlight = new AtomicInteger();
+		AtomicInteger collected = new AtomicInteger();
+		PipeLinker linker = new PipeLinker().append(
+				new ThreadedProcessor<Integer, Integer>(4, limit, new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						maxInFlight.accumulateAndGet(limit.getInFlight(), Math::max);
+						return item;
+					}
+					@Override
+					public long estimateMemoryUsage(Integer item) {
+						return 100;
+					}
+				}),
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						collected.incrementAndGet();
+					}
+				});
+
+		for (int i = 0; i < 1000; ++i) {
+			linker.submit(i);
+		}
+		linker.shutdown();
+
+		assertEquals(1000, collected.get());
+		assertEquals(1, maxInFlight.get());
+		assertEquals(0, limit.getReservedBytes());
+	}
+
+	@Test
+	public void testFailingEstimateFallsBackToZero() throws Exception {
+		MemoryAwareThreadLimit limit = new MemoryAwareThreadLimit(0, 4, () -> 1000);
+		AtomicInteger collected = new AtomicInteger();
+		PipeLinker linker = new PipeLinker().append(
+				new ThreadedProcessor<Integer, Integer>(4, limit, new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						return item;
+					}
+					@Override
+					public long estimateMemoryUsage(Integer item) {
+						if (item % 10 == 0) {
+							throw new IllegalStateException("expected failure");
+						}
+						return 100;
+					}
+				}).preserveOrder(),
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						collected.incrementAndGet();
+					}
+				});
+
+		for (int i = 0; i < 100; ++i) {
+			linker.submit(i);
+		}
+		linker.shutdown();
+
+		// items with failing estimates are still processed, and no slots are leaked
+		assertEquals(100, collected.get());
+		assertEquals(0, limit.getInFlight());
+		assertEquals(0, limit.getReservedBytes());
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.threaded.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import se.de.hu_berlin.informatik.utils.files.AFileWalker;
+
+/**
+ * @author SimHigh
+ *
+ */
+public class ParallelFileWalkerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path root;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		root = folder.getRoot().toPath();
+		// a few levels of directories, some of them matching "**/match*"
+		for (int i = 0; i < 4; ++i) {
+			for (int j = 0; j < 5; ++j) {
+				Path dir = root.resolve("dir" + i).resolve((j % 2 == 0 ? "match" : "sub") + j);
+				Files.createDirectories(dir.resolve("match_nested"));
+				Files.createFile(dir.resolve("a.txt"));
+				Files.createFile(dir.resolve("b.log"));
+				Files.createFile(dir.resolve("match_nested").resolve("c.txt"));
+			}
+			Files.createFile(root.resolve("dir" + i).resolve("d.txt"));
+		}
+	}
+
+	@Test
+	public void testParallelTraversalFindsSameFiles() throws Exception {
+		assertSameResults(new CollectingWalker.Builder("**/*.txt").searchForFiles());
+		assertSameResults(new CollectingWalker.Builder("**/*.txt").searchForFiles().relative());
+		assertSameResults(new CollectingWalker.Builder(null).searchForFiles().searchForDirectories());
+	}
+
+	@Test
+	public void testParallelTraversalSkipsSubTreesAfterMatch() throws Exception {
+		assertSameResults(new CollectingWalker.Builder("**/match*").searchForDirectories());
+		int matches = assertSameResults(new CollectingWalker.Builder("**/match*")
+				.searchForDirectories().skipSubTreeAfterMatch());
+		// 3 "match" directories and 2 nested "match_nested" directories per "dir"
+		assertEquals(4 * 5, matches);
+		assertSameResults(new CollectingWalker.Builder("**/dir*")
+				.searchForDirectories().includeRootDir().relative());
+	}
+
+	private int assertSameResults(AFileWalker.Builder builder) throws IOException {
+		CollectingWalker sequential = (CollectingWalker) builder.traverseInParallel(1).build();
+		sequential.walk(root);
+		CollectingWalker parallel = (CollectingWalker) builder.traverseInParallel(4).build();
+		parallel.walk(root);
+
+		assertTrue(sequential.getNumberOfMatches() > 0);
+		assertEquals(sequential.getNumberOfMatches(), parallel.getNumberOfMatches());
+		assertEquals(sequential.paths, parallel.paths);
+		return parallel.getNumberOfMatches();
+	}
+
+	private static class CollectingWalker extends AFileWalker {
+
+		private final Set<Path> paths = ConcurrentHashMap.newKeySet();
+
+		private CollectingWalker(Builder builder) {
+			super(builder);
+		}
+
+		@Override
+		public void processMatchedFileOrDir(Path fileOrDir) {
+			paths.add(fileOrDir);
+		}
+
+		private static class Builder extends AFileWalker.Builder {
+
+			private Builder(String pattern) {
+				super(pattern);
+			}
+
+			@Override
+			public AFileWalker build() {
+				return new CollectingWalker(this);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.tm.modules.tests;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import se.de.hu_berlin.informatik.utils.compression.BitPacker;
+import se.de.hu_berlin.informatik.utils.compression.BufferedCompressedByteArrayToIntArrayQueueProcessor;
+import se.de.hu_berlin.informatik.utils.compression.BufferedIntArraysToCompressedByteArrayProcessor;
+import se.de.hu_berlin.informatik.utils.compression.single.BufferedCompressedByteArrayToLongQueueProcessor;
+import se.de.hu_berlin.informatik.utils.compression.single.BufferedLongsToCompressedByteArrayProcessor;
+import se.de.hu_berlin.informatik.utils.compression.ziputils.ZipFileWrapper;
+import se.de.hu_berlin.informatik.utils.miscellaneous.TestSettings;
+import se.de.hu_berlin.informatik.utils.processors.sockets.module.Module;
+
+/**
+ * @author SimHigh
+ *
+ */
+public class BufferedIntArraysToCompressedByteArrayModuleTest extends TestSettings {
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	private static List<int[]> createSequences(int count, int maxLength, int maxValue, boolean fixedLength) {
+		Random random = new Random(42);
+		List<int[]> sequences = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			int[] sequence = new int[fixedLength ? maxLength : random.nextInt(maxLength)];
+			for (int j = 0; j < sequence.length; ++j) {
+				sequence[j] = random.nextInt(maxValue + 1);
+			}
+			sequences.add(sequence);
+		}
+		return sequences;
+	}
+
+	private static void checkRoundTrip(String fileName, List<int[]> sequences,
+			int maxValue, int sequenceLength, boolean compress) throws Exception {
+		Path zipFilePath = Paths.get(getStdTestDir(), "buffered.zip");
+		Module<int[], byte[]> module = new BufferedIntArraysToCompressedByteArrayProcessor(
+				zipFilePath, fileName, false, maxValue, sequenceLength, true, compress).asModule();
+		for (int[] sequence : sequences) {
+			module.submit(sequence);
+		}
+		module.getResultFromCollectedItems();
+		// finishes the zip archive
+		ZipFileWrapper.getZipFileWrapper(zipFilePath).close();
+
+		Queue<int[]> result = new ArrayDeque<>();
+		new BufferedCompressedByteArrayToIntArrayQueueProcessor(
+				ZipFileWrapper.getZipFileWrapper(zipFilePath), sequenceLength, true, result)
+		.asModule().submit(fileName);
+
+		assertEquals(sequences.size(), result.size());
+		for (int[] sequence : sequences) {
+			assertArrayEquals(sequence, result.poll());
+		}
+	}
+
+	@Test
+	public void testDelimiterModeRoundTrip() throws Exception {
+		// big enough to exceed multiple stream buffers
+		checkRoundTrip("delimiter.bin", createSequences(500, 40, 1000, false), 1000, 0, true);
+	}
+
+	@Test
+	public void testFixedLengthModeRoundTrip() throws Exception {
+		checkRoundTrip("fixed.bin", createSequences(500, 17, 123456, true), 123456, 17, true);
+	}
+
+	@Test
+	public void testStoredEntryRoundTrip() throws Exception {
+		// decoded from the memory-mapped entry
+		checkRoundTrip("stored.bin", createSequences(500, 40, 1000, false), 1000, 0, false);
+		assertTrue(ZipFileWrapper.getZipFileWrapper(Paths.get(getStdTestDir(), "buffered.zip")).isStored("stored.bin"));
+	}
+
+	private static void checkRangeRead(String fileName, List<int[]> sequences,
+			int maxValue, int sequenceLength, boolean compress, int checkpointInterval) throws Exception {
+		Path zipFilePath = Paths.get(getStdTestDir(), "buffered.zip");
+		BufferedIntArraysToCompressedByteArrayProcessor processor = new BufferedIntArraysToCompressedByteArrayProcessor(
+				zipFilePath, fileName, false, maxValue, sequenceLength, true, compress);
+		if (checkpointInterval > 0) {
+			processor.writeIndex(checkpointInterval);
+		}
+		Module<int[], byte[]> module = processor.asModule();
+		for (int[] sequence : sequences) {
+			module.submit(sequence);
+		}
+		module.getResultFromCollectedItems();
+
+		ZipFileWrapper zipFile = ZipFileWrapper.getZipFileWrapper(zipFilePath);
+		assertEquals(checkpointInterval > 0, 
+				zipFile.exists(fileName + BufferedIntArraysToCompressedByteArrayProcessor.INDEX_SUFFIX));
+		// the whole entry can still be decoded as usual
+		Queue<int[]> all = new ArrayDeque<>();
+		new BufferedCompressedByteArrayToIntArrayQueueProcessor(
+				zipFile, sequenceLength, true, all).asModule().submit(fileName);
+		assertEquals(sequences.size(), all.size());
+		assertArrayEquals(sequences.get(sequences.size() - 1), new ArrayList<>(all).get(sequences.size() - 1));
+		
+		int[][] ranges = { { 0, 5 }, { 99, 101 }, { 100, 100 }, { 1234, 1300 }, 
+				{ sequences.size() - 3, sequences.size() + 10 } };
+		for (int[] range : ranges) {
+			Queue<int[]> result = new ArrayDeque<>();
+			new BufferedCompressedByteArrayToIntArrayQueueProcessor(
+					zipFile, sequenceLength, true, result).readSequences(fileName, range[0], range[1]);
+			int expectedCount = Math.min(range[1], sequences.size()) - range[0];
+			assertEquals(expectedCount, result.size());
+			for (int i = range[0]; i < range[0] + expectedCount; ++i) {
+				assertArrayEquals(sequences.get(i), result.poll());
+			}
+		}
+	}
+
+	@Test
+	public void testRangeReadWithIndex() throws Exception {
+		checkRangeRead("indexed-delimiter.bin", createSequences(2000, 40, 1000, false), 1000, 0, true, 100);
+		checkRangeRead("indexed-fixed.bin", createSequences(2000, 13, 77, true), 77, 13, true, 64);
+		checkRangeRead("indexed-stored.bin", createSequences(2000, 40, 1000, false), 1000, 0, false, 100);
+	}
+
+	@Test
+	public void testRangeReadWithoutIndex() throws Exception {
+		checkRangeRead("plain-delimiter.bin", createSequences(2000, 40, 1000, false), 1000, 0, true, 0);
+		checkRangeRead("plain-fixed.bin", createSequences(2000, 13, 77, true), 77, 13, true, 0);
+	}
+
+	@Test
+	public void testLongsRoundTrip() throws Exception {
+		Path zipFilePath = Paths.get(getStdTestDir(), "buffered.zip");
+		// needs 63 bits per value
+		long maxValue = Long.MAX_VALUE - 1;
+		Module<Long, byte[]> module = new BufferedLongsToCompressedByteArrayProcessor(
+				zipFilePath, "longs.bin", false, maxValue, true).asModule();
+		Random random = new Random(42);
+		List<Long> values = new ArrayList<>();
+		for (int i = 0; i < 1000; ++i) {
+			long value = random.nextLong() >>> 1;
+			values.add(value == Long.MAX_VALUE ? 0 : value);
+		}
+		for (Long value : values) {
+			module.submit(value);
+		}
+		module.getResultFromCollectedItems();
+		// finishes the zip archive
+		ZipFileWrapper.getZipFileWrapper(zipFilePath).close();
+
+		Queue<Long> result = new ArrayDeque<>();
+		new BufferedCompressedByteArrayToLongQueueProcessor(
+				ZipFileWrapper.getZipFileWrapper(zipFilePath), true, result)
+		.asModule().submit("longs.bin");
+
+		assertEquals(values, new ArrayList<>(result));
+	}
+
+	@Test
+	public void testBitPackerWordBoundaries() throws Exception {
+		BitPacker packer = new BitPacker(1);
+		packer.writeBytes((byte) 0xAB);
+		packer.write(-1L, 64);
+		packer.write(0, 3);
+		packer.write(5, 3);
+
+		byte[] expected = { (byte) 0xAB,
+				-1, -1, -1, -1, -1, -1, -1, -1,
+				(byte)Integer.parseInt("00010100", 2) };
+		assertArrayEquals(expected, packer.toByteArray());
+
+		// state is preserved after getting the byte array
+		packer.write(3, 2);
+		packer.setBytes(0, (byte) 1);
+		expected[0] = 1;
+		expected[9] = (byte)Integer.parseInt("00010111", 2);
+		assertArrayEquals(expected, packer.toByteArray());
+	}
+
+}
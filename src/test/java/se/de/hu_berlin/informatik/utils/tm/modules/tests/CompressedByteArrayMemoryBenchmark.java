@@ -0,0 +1,72 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.tm.modules.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import se.de.hu_berlin.informatik.utils.compression.IntArraysToCompressedByteArrayProcessor;
+import se.de.hu_berlin.informatik.utils.processors.sockets.module.Module;
+
+/**
+ * Compares the heap needed to collect the compressed output of the in-memory compressors
+ * in a {@code List<Byte>} (as it was done before) with the heap needed by the
+ * primitive {@link se.de.hu_berlin.informatik.utils.compression.GrowableByteArray}.
+ *
+ * <p> Not run as part of the test suite. Run with, e.g.,
+ * {@code java -Xmx8g ... CompressedByteArrayMemoryBenchmark [numberOfValues]},
+ * where the number of values defaults to 100,000,000.
+ *
+ * @author SimHigh
+ */
+public class CompressedByteArrayMemoryBenchmark {
+
+	private static final int MAX_VALUE = 1000;
+	private static final int SEQUENCE_LENGTH = 1000;
+
+	public static void main(String[] args) {
+		long numberOfValues = args.length > 0 ? Long.parseLong(args[0]) : 100_000_000L;
+		long sequences = numberOfValues / SEQUENCE_LENGTH;
+
+		int[] sequence = new int[SEQUENCE_LENGTH];
+		for (int i = 0; i < SEQUENCE_LENGTH; ++i) {
+			sequence[i] = (i * 31) % (MAX_VALUE + 1);
+		}
+
+		System.out.println("Compressing " + sequences * SEQUENCE_LENGTH + " values...");
+
+		long before = usedHeap();
+		Module<int[], byte[]> module = new IntArraysToCompressedByteArrayProcessor(
+				MAX_VALUE, SEQUENCE_LENGTH, false).asModule();
+		for (long i = 0; i < sequences; ++i) {
+			module.submit(sequence);
+		}
+		long primitiveHeap = usedHeap() - before;
+		byte[] result = module.getResultFromCollectedItems();
+		module = null;
+		System.out.println("compressed size:           " + result.length + " bytes");
+		System.out.println("GrowableByteArray heap:    " + primitiveHeap + " bytes ("
+				+ String.format("%.2f", (double) primitiveHeap / result.length) + " per output byte)");
+
+		// collect the same output in a list of bytes
+		before = usedHeap();
+		List<Byte> list = new ArrayList<>();
+		for (byte b : result) {
+			list.add(b);
+		}
+		long listHeap = usedHeap() - before;
+		System.out.println("ArrayList<Byte> heap:      " + listHeap + " bytes ("
+				+ String.format("%.2f", (double) listHeap / result.length) + " per output byte)");
+		System.out.println("list size: " + list.size());
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; ++i) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
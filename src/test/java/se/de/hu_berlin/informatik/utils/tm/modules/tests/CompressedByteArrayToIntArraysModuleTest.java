@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.tm.modules.tests;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import se.de.hu_berlin.informatik.utils.compression.CompressedByteArrayToIntArraysProcessor;
+import se.de.hu_berlin.informatik.utils.compression.IntArraysToCompressedByteArrayProcessor;
+import se.de.hu_berlin.informatik.utils.processors.sockets.module.Module;
+
+/**
+ * @author SimHigh
+ *
+ */
+public class CompressedByteArrayToIntArraysModuleTest {
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	@Test
+	public void testTenBitSeqLengthThree() throws Exception {
+		Module<int[], byte[]> module = new IntArraysToCompressedByteArrayProcessor(1000, 3, false).asModule();
+
+		int[][] expected = { { 1000, 0, 63 }, { 7, 999, 512 }, { 1, 2, 3 } };
+		for (int[] sequence : expected) {
+			module.submit(sequence);
+		}
+
+		int[][] actual = new CompressedByteArrayToIntArraysProcessor(false).asModule()
+				.submit(module.getResultFromCollectedItems()).getResult();
+
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void testDelimiterMethodWithZeroes() throws Exception {
+		Module<int[], byte[]> module = new IntArraysToCompressedByteArrayProcessor(7, true).asModule();
+
+		int[][] expected = { { 7, 0, 7, 3 }, { }, { 0 }, { 6, 5, 4, 3, 2, 1, 0 } };
+		for (int[] sequence : expected) {
+			module.submit(sequence);
+		}
+
+		int[][] actual = new CompressedByteArrayToIntArraysProcessor(true).asModule()
+				.submit(module.getResultFromCollectedItems()).getResult();
+
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void testDecodeFromDirectBuffer() throws Exception {
+		Module<int[], byte[]> module = new IntArraysToCompressedByteArrayProcessor(100000, true).asModule();
+
+		int[][] expected = new int[50][];
+		for (int i = 0; i < expected.length; ++i) {
+			expected[i] = new int[i % 7];
+			for (int j = 0; j < expected[i].length; ++j) {
+				expected[i][j] = (i * 7919 + j * 104729) % 100001;
+			}
+			module.submit(expected[i]);
+		}
+		byte[] bytes = module.getResultFromCollectedItems();
+
+		// a direct buffer has no accessible array, as a memory-mapped zip file entry
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 3);
+		buffer.put(new byte[3]).put(bytes).flip().position(3);
+
+		int[][] actual = new CompressedByteArrayToIntArraysProcessor(true).decode(buffer.asReadOnlyBuffer());
+
+		assertArrayEquals(expected, actual);
+		assertEquals(3, buffer.position());
+	}
+
+}
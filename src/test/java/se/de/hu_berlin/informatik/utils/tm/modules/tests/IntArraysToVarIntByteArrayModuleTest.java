@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.tm.modules.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import se.de.hu_berlin.informatik.utils.compression.IntArraysToVarIntByteArrayProcessor;
+import se.de.hu_berlin.informatik.utils.compression.VarIntByteArrayToIntArraysProcessor;
+import se.de.hu_berlin.informatik.utils.compression.VarIntCodec;
+import se.de.hu_berlin.informatik.utils.compression.VarIntCodec.Encoding;
+import se.de.hu_berlin.informatik.utils.miscellaneous.Abort;
+import se.de.hu_berlin.informatik.utils.processors.sockets.module.Module;
+
+/**
+ * @author SimHigh
+ *
+ */
+public class IntArraysToVarIntByteArrayModuleTest {
+
+	@Rule
+	public final ExpectedException exception = ExpectedException.none();
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	private static byte[] checkRoundTrip(int[][] expected, Encoding encoding, boolean delta, boolean signed) {
+		Module<int[], byte[]> module = new IntArraysToVarIntByteArrayProcessor(encoding, delta, signed).asModule();
+		for (int[] sequence : expected) {
+			module.submit(sequence);
+		}
+		byte[] bytes = module.getResultFromCollectedItems();
+
+		int[][] actual = new VarIntByteArrayToIntArraysProcessor().asModule().submit(bytes).getResult();
+
+		assertArrayEquals(expected, actual);
+		return bytes;
+	}
+
+	@Test
+	public void testZigzag() throws Exception {
+		assertEquals(0, VarIntCodec.zigzagEncode(0));
+		assertEquals(1, VarIntCodec.zigzagEncode(-1));
+		assertEquals(2, VarIntCodec.zigzagEncode(1));
+		assertEquals(-1, VarIntCodec.zigzagEncode(Integer.MIN_VALUE));
+		for (int value : new int[] { 0, 1, -1, 12345, -12345, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+			assertEquals(value, VarIntCodec.zigzagDecode(VarIntCodec.zigzagEncode(value)));
+		}
+	}
+
+	@Test
+	public void testAllEncodingsWithExtremeValues() throws Exception {
+		int[][] expected = { { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Integer.MIN_VALUE, -1 }, 
+				{ }, { 5 }, { -3, -2, -1, 0, 1, 2, 3 } };
+		for (Encoding encoding : Encoding.values()) {
+			checkRoundTrip(expected, encoding, false, false);
+			checkRoundTrip(expected, encoding, false, true);
+			checkRoundTrip(expected, encoding, true, false);
+			checkRoundTrip(expected, encoding, true, true);
+		}
+	}
+
+	@Test
+	public void testSortedDeltasAreSmall() throws Exception {
+		Random random = new Random(42);
+		int[][] expected = new int[100][1000];
+		for (int[] sequence : expected) {
+			int value = 1_000_000;
+			for (int i = 0; i < sequence.length; ++i) {
+				value += random.nextInt(100);
+				sequence[i] = value;
+			}
+		}
+		byte[] bytes = checkRoundTrip(expected, Encoding.LEB128, true, false);
+		// one byte per value (deltas < 128), plus the first value and the sequence lengths
+		assertTrue(bytes.length < 100 * (1000 + 10));
+		checkRoundTrip(expected, Encoding.GROUP_VARINT, true, false);
+	}
+
+	@Test
+	public void testCorruptInput() throws Exception {
+		Module<int[], byte[]> module = new IntArraysToVarIntByteArrayProcessor(Encoding.LEB128, false, false).asModule();
+		module.submit(new int[] { 1, 2, 3 });
+		module.submit(new int[] { 4 });
+		byte[] bytes = module.getResultFromCollectedItems();
+		
+		// a sequence length that exceeds the input only keeps the preceding sequences
+		byte[] corruptLength = bytes.clone();
+		// 6 bytes header, then length and values of the first sequence
+		corruptLength[6 + 4] = 100;
+		int[][] actual = new VarIntByteArrayToIntArraysProcessor().asModule().submit(corruptLength).getResult();
+		assertArrayEquals(new int[][] { { 1, 2, 3 } }, actual);
+		
+		// a number of sequences that exceeds the input aborts
+		byte[] corruptHeader = bytes.clone();
+		corruptHeader[2] = 0x7F;
+		exception.expect(Abort.class);
+		new VarIntByteArrayToIntArraysProcessor().processItem(corruptHeader);
+	}
+
+}
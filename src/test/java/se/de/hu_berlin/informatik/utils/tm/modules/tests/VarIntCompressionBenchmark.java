@@ -0,0 +1,114 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.tm.modules.tests;
+
+import java.util.Random;
+
+import se.de.hu_berlin.informatik.utils.compression.CompressedByteArrayToIntArraysProcessor;
+import se.de.hu_berlin.informatik.utils.compression.IntArraysToCompressedByteArrayProcessor;
+import se.de.hu_berlin.informatik.utils.compression.IntArraysToVarIntByteArrayProcessor;
+import se.de.hu_berlin.informatik.utils.compression.VarIntByteArrayToIntArraysProcessor;
+import se.de.hu_berlin.informatik.utils.compression.VarIntCodec.Encoding;
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+
+/**
+ * Compares the output size and the encoding/decoding throughput of the varint codecs
+ * ({@link IntArraysToVarIntByteArrayProcessor}) with the fixed-width bit packing
+ * of {@link IntArraysToCompressedByteArrayProcessor} on sorted sequences with small gaps 
+ * (e.g., trace or coverage IDs) and on the same sequences with some large outliers.
+ *
+ * <p> Not run as part of the test suite. Run with, e.g.,
+ * {@code java ... VarIntCompressionBenchmark [numberOfSequences]},
+ * where the number of sequences (of 1000 values each) defaults to 10,000.
+ *
+ * @author SimHigh
+ */
+public class VarIntCompressionBenchmark {
+
+	private static final int SEQUENCE_LENGTH = 1000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		int sequences = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+		int[][] sorted = createSortedSequences(sequences, 0);
+		int[][] outliers = createSortedSequences(sequences, 0.001);
+
+		System.out.println("data set          | codec                  |   size (bytes) | bytes/value | encode (M values/s) | decode (M values/s)");
+		run("sorted, gaps < 64", sorted);
+		run("with outliers", outliers);
+	}
+
+	private static void run(String dataSet, int[][] data) {
+		int maxValue = 0;
+		for (int[] sequence : data) {
+			for (int value : sequence) {
+				maxValue = Math.max(maxValue, value);
+			}
+		}
+		final int max = maxValue;
+		measure(dataSet, "fixed-width bits", data,
+				() -> new IntArraysToCompressedByteArrayProcessor(max, SEQUENCE_LENGTH, false),
+				bytes -> new CompressedByteArrayToIntArraysProcessor(false).processItem(bytes));
+		measure(dataSet, "delta + LEB128", data,
+				() -> new IntArraysToVarIntByteArrayProcessor(Encoding.LEB128, true, true),
+				bytes -> new VarIntByteArrayToIntArraysProcessor().processItem(bytes));
+		measure(dataSet, "delta + group varint", data,
+				() -> new IntArraysToVarIntByteArrayProcessor(Encoding.GROUP_VARINT, true, true),
+				bytes -> new VarIntByteArrayToIntArraysProcessor().processItem(bytes));
+	}
+
+	private interface Encoder {
+		AbstractProcessor<int[], byte[]> create();
+	}
+
+	private interface Decoder {
+		int[][] decode(byte[] bytes);
+	}
+
+	private static void measure(String dataSet, String codec, int[][] data, Encoder encoder, Decoder decoder) {
+		long values = (long) data.length * SEQUENCE_LENGTH;
+		byte[] bytes = null;
+		long encodeTime = Long.MAX_VALUE;
+		long decodeTime = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; ++round) {
+			long start = System.nanoTime();
+			AbstractProcessor<int[], byte[]> processor = encoder.create();
+			for (int[] sequence : data) {
+				processor.processItem(sequence);
+			}
+			bytes = processor.getResultFromCollectedItems();
+			encodeTime = Math.min(encodeTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			int[][] decoded = decoder.decode(bytes);
+			decodeTime = Math.min(decodeTime, System.nanoTime() - start);
+			if (decoded.length != data.length) {
+				throw new IllegalStateException("Decoded " + decoded.length + " sequences instead of " + data.length);
+			}
+		}
+		System.out.println(String.format("%-17s | %-22s | %14d | %11.3f | %19.1f | %19.1f",
+				dataSet, codec, bytes.length, (double) bytes.length / values,
+				values * 1e3 / encodeTime, values * 1e3 / decodeTime));
+	}
+
+	private static int[][] createSortedSequences(int count, double outlierRate) {
+		Random random = new Random(42);
+		int[][] sequences = new int[count][SEQUENCE_LENGTH];
+		for (int[] sequence : sequences) {
+			int value = random.nextInt(1_000_000);
+			for (int i = 0; i < SEQUENCE_LENGTH; ++i) {
+				if (random.nextDouble() < outlierRate) {
+					// a large ID in between
+					sequence[i] = 1_000_000_000 + random.nextInt(1_000_000);
+				} else {
+					value += random.nextInt(64);
+					sequence[i] = value;
+				}
+			}
+		}
+		return sequences;
+	}
+
+}
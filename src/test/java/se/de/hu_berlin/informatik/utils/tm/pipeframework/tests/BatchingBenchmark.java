@@ -0,0 +1,81 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.tm.pipeframework.tests;
+
+import java.util.List;
+
+import se.de.hu_berlin.informatik.utils.processors.AbstractBatchProcessor;
+import se.de.hu_berlin.informatik.utils.processors.AbstractConsumingProcessor;
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+import se.de.hu_berlin.informatik.utils.processors.sockets.pipe.PipeLinker;
+
+/**
+ * Measures the throughput of a short chain of pipes that transmits tiny items
+ * (single integers), with and without coalescing items into batches.
+ * 
+ * <p> Not run as part of the test suite. Run with, e.g.,
+ * {@code java ... BatchingBenchmark [items] [batchSize]},
+ * where the number of items defaults to 5,000,000 and the batch size
+ * defaults to 256.
+ * 
+ * @author SimHigh
+ */
+public class BatchingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int items = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+		
+		// warm up
+		run(items / 10, 1, false);
+		run(items / 10, batchSize, false);
+		run(items / 10, batchSize, true);
+
+		System.out.println("mode                         | items/s");
+		System.out.println(String.format("%-28s | %,.0f", "single items", run(items, 1, false)));
+		System.out.println(String.format("%-28s | %,.0f", "batches", run(items, batchSize, false)));
+		System.out.println(String.format("%-28s | %,.0f", "batches + batch processor", run(items, batchSize, true)));
+	}
+
+	private static double run(int items, int batchSize, boolean useBatchProcessor) {
+		final long[] sum = new long[1];
+		PipeLinker linker = new PipeLinker().setBatching(batchSize, 1000);
+		if (useBatchProcessor) {
+			linker.append(new AbstractBatchProcessor<Integer, Integer>() {
+				@Override
+				public Integer processBatch(List<Integer> batch) {
+					for (int i = 0; i < batch.size(); ++i) {
+						getSocket().produce(batch.get(i) + 1);
+					}
+					return null;
+				}
+			});
+		} else {
+			linker.append(new AbstractProcessor<Integer, Integer>() {
+				@Override
+				public Integer processItem(Integer item) {
+					return item + 1;
+				}
+			});
+		}
+		linker.append(new AbstractConsumingProcessor<Integer>() {
+			@Override
+			public void consumeItem(Integer item) {
+				sum[0] += item;
+			}
+		});
+
+		long start = System.nanoTime();
+		for (int i = 0; i < items; ++i) {
+			linker.submit(i & 1023);
+		}
+		linker.shutdown();
+		long nanos = System.nanoTime() - start;
+		if (sum[0] == 42) {
+			System.out.println();
+		}
+		return items * 1e9 / nanos;
+	}
+
+}
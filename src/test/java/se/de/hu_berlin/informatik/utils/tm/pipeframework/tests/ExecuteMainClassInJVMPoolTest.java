@@ -0,0 +1,125 @@
+/**
+ *
+ */
+package se.de.hu_berlin.informatik.utils.tm.pipeframework.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.de.hu_berlin.informatik.utils.processors.basics.ExecuteMainClassInJVMPool;
+
+/**
+ * @author SimHigh
+ *
+ */
+public class ExecuteMainClassInJVMPoolTest {
+
+	/**
+	 * Main class that is executed by the worker JVMs.
+	 */
+	public static class TestMain {
+
+		private static int runs = 0;
+
+		public static void main(String[] args) throws Exception {
+			++runs;
+			switch (args[0]) {
+			case "runs":
+				// fails if this is not the expected execution in the current worker
+				if (runs != Integer.parseInt(args[1])) {
+					System.exit(100 + runs);
+				}
+				break;
+			case "exit":
+				System.exit(Integer.parseInt(args[1]));
+				break;
+			case "fail":
+				throw new IllegalStateException("expected failure");
+			case "length":
+				// fails if the argument was not transmitted completely
+				if (args[2].codePointCount(0, args[2].length()) != Integer.parseInt(args[1])
+						|| !args[2].startsWith("\u00e4\u20ac")) {
+					System.exit(2);
+				}
+				break;
+			case "sleep":
+				Thread.sleep(60_000);
+				break;
+			case "pause":
+				Thread.sleep(Long.parseLong(args[1]));
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	@Test
+	public void testWorkersAreReusedAndRecycled() throws Exception {
+		ExecuteMainClassInJVMPool pool = new ExecuteMainClassInJVMPool(1, TestMain.class, null)
+				.setMaxRunsPerWorker(3);
+
+		// the worker JVM is reused
+		assertEquals(0, run(pool, "runs", "1"));
+		assertEquals(0, run(pool, "runs", "2"));
+		// exit codes are passed on and the worker is replaced
+		assertEquals(7, run(pool, "exit", "7"));
+		assertEquals(0, run(pool, "runs", "1"));
+		// the worker is replaced after an exception
+		assertEquals(1, run(pool, "fail"));
+		assertEquals(0, run(pool, "runs", "1"));
+		assertEquals(0, run(pool, "runs", "2"));
+		assertEquals(0, run(pool, "runs", "3"));
+		// the worker is replaced after the maximal number of runs
+		assertEquals(0, run(pool, "runs", "1"));
+
+		pool.setTimeout(500, TimeUnit.MILLISECONDS);
+		assertEquals(ExecuteMainClassInJVMPool.TIMEOUT_RESULT, run(pool, "sleep"));
+		assertEquals(0, run(pool, "runs", "1"));
+
+		pool.finalShutdown();
+	}
+
+	@Test
+	public void testLargeArguments() throws Exception {
+		ExecuteMainClassInJVMPool pool = new ExecuteMainClassInJVMPool(1, TestMain.class, null);
+		// more than 64 KB in UTF-8 (2 and 3 bytes per character)
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 30_000; ++i) {
+			builder.append("\u00e4\u20ac");
+		}
+		assertEquals(0, run(pool, "length", "60000", builder.toString()));
+		pool.finalShutdown();
+	}
+
+	@Test
+	public void testShutdownWithBusyWorker() throws Exception {
+		ExecuteMainClassInJVMPool pool = new ExecuteMainClassInJVMPool(1, TestMain.class, null);
+		
+		AtomicInteger result = new AtomicInteger(-1);
+		Thread thread = new Thread(() -> result.set(run(pool, "pause", "2000")));
+		thread.start();
+		// wait until the worker is busy
+		while (pool.getNumberOfRunningWorkers() < 1) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(200);
+		
+		pool.finalShutdown();
+		assertEquals(1, pool.getNumberOfRunningWorkers());
+		
+		// the busy worker is retired after its execution
+		thread.join();
+		assertEquals(0, result.get());
+		assertEquals(0, pool.getNumberOfRunningWorkers());
+	}
+
+	private static int run(ExecuteMainClassInJVMPool pool, String... args) {
+		return pool.processItem(args);
+	}
+
+}
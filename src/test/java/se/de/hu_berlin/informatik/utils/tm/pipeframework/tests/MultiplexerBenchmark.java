@@ -0,0 +1,91 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.tm.pipeframework.tests;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+import se.de.hu_berlin.informatik.utils.processors.AbstractConsumingProcessor;
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+import se.de.hu_berlin.informatik.utils.processors.basics.ThreadedProcessor;
+import se.de.hu_berlin.informatik.utils.processors.sockets.pipe.PipeLinker;
+
+/**
+ * Measures the CPU usage of an idle {@link ThreadedProcessor} (i.e., of its
+ * multiplexer thread while no items arrive) and the throughput of items through
+ * a {@link ThreadedProcessor} with 1 to 8 handler threads.
+ * 
+ * <p> Not run as part of the test suite. Run with, e.g.,
+ * {@code java ... MultiplexerBenchmark [items] [idleMillis]},
+ * where the number of items defaults to 1,000,000 and the idle time
+ * defaults to 2,000 milliseconds.
+ * 
+ * @author SimHigh
+ */
+public class MultiplexerBenchmark {
+
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+	public static void main(String[] args) throws Exception {
+		int items = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		long idleMillis = args.length > 1 ? Long.parseLong(args[1]) : 2_000;
+
+		// idle CPU usage
+		CountDownLatch done = new CountDownLatch(1);
+		PipeLinker linker = createLinker(4, done);
+		linker.submit(0);
+		done.await();
+		long cpuBefore = getProcessCpuTime();
+		long start = System.nanoTime();
+		Thread.sleep(idleMillis);
+		double cores = (double) (getProcessCpuTime() - cpuBefore) / (System.nanoTime() - start);
+		linker.shutdown();
+		System.out.println(String.format("idle CPU usage: %.1f%% of one core", cores * 100));
+
+		// warm up
+		run(4, items / 10);
+
+		System.out.println("threads | time (ms) | items/s");
+		for (int threads : THREAD_COUNTS) {
+			long time = run(threads, items);
+			System.out.println(String.format("%7d | %9d | %10.0f", 
+					threads, time / 1_000_000, items / (time / 1e9)));
+		}
+	}
+
+	private static long run(int threads, int items) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(items);
+		PipeLinker linker = createLinker(threads, done);
+		long start = System.nanoTime();
+		for (int i = 0; i < items; ++i) {
+			linker.submit(i);
+		}
+		done.await();
+		long time = System.nanoTime() - start;
+		linker.shutdown();
+		return time;
+	}
+	
+	private static PipeLinker createLinker(int threads, CountDownLatch done) {
+		return new PipeLinker().append(
+				new ThreadedProcessor<Integer, Integer>(threads, new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						return item;
+					}
+				}),
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						done.countDown();
+					}
+				});
+	}
+	
+	private static long getProcessCpuTime() {
+		return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+				.getProcessCpuTime();
+	}
+
+}
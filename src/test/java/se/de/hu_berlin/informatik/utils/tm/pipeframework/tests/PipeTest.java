@@ -4,8 +4,17 @@
 package se.de.hu_berlin.informatik.utils.tm.pipeframework.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -13,10 +22,20 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import se.de.hu_berlin.informatik.utils.files.FileUtils;
 import se.de.hu_berlin.informatik.utils.miscellaneous.Log;
+import se.de.hu_berlin.informatik.utils.processors.AbstractBatchProcessor;
+import se.de.hu_berlin.informatik.utils.processors.AbstractConsumingProcessor;
 import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+import se.de.hu_berlin.informatik.utils.processors.basics.CollectionSequencer;
+import se.de.hu_berlin.informatik.utils.processors.basics.ThreadedProcessor;
+import se.de.hu_berlin.informatik.utils.processors.sockets.SocketMetrics;
+import se.de.hu_berlin.informatik.utils.processors.sockets.SocketMetricsReporter;
+import se.de.hu_berlin.informatik.utils.processors.sockets.SocketStatistics;
+import se.de.hu_berlin.informatik.utils.processors.sockets.module.ModuleLinker;
 import se.de.hu_berlin.informatik.utils.processors.sockets.pipe.Pipe;
 import se.de.hu_berlin.informatik.utils.processors.sockets.pipe.PipeLinker;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.DisruptorWaitStrategy;
 
 /**
  * @author SimHigh
@@ -189,4 +208,628 @@ public class PipeTest {
 		assertEquals(15000, processedElements.get());
 	}
 	
+	@Test
+	public void testPipeLinkerWithWaitStrategies() throws Exception {
+		for (DisruptorWaitStrategy strategy : DisruptorWaitStrategy.values()) {
+			final AtomicInteger processedElements = new AtomicInteger(0);
+			PipeLinker linker = new PipeLinker().setWaitStrategy(strategy);
+
+			linker.append(
+					new AbstractProcessor<Integer, Integer>() {
+						@Override
+						public Integer processItem(Integer item) {
+							processedElements.incrementAndGet();
+							return item;
+						}
+					},
+					new AbstractProcessor<Integer, Integer>() {
+						@Override
+						public Integer processItem(Integer item) {
+							processedElements.incrementAndGet();
+							return item;
+						}
+					});
+
+			for (int i = 0; i < 1000; ++i) {
+				linker.submit(i);
+			}
+
+			linker.shutdown();
+
+			assertEquals(strategy.toString(), 2000, processedElements.get());
+		}
+	}
+	
+	@Test
+	public void testThreadedProcessorCollectsAllOutputs() throws Exception {
+		final AtomicInteger collectedElements = new AtomicInteger(0);
+		final AtomicInteger sum = new AtomicInteger(0);
+		PipeLinker linker = new PipeLinker().append(
+				new ThreadedProcessor<Integer, Integer>(4, new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						// null outputs are ignored by the multiplexer
+						return item % 2 == 0 ? item : null;
+					}
+				}),
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						collectedElements.incrementAndGet();
+						sum.addAndGet(item);
+					}
+				});
+		
+		for (int i = 0; i < 10000; ++i) {
+			linker.submit(i);
+		}
+		
+		linker.shutdown();
+		
+		assertEquals(5000, collectedElements.get());
+		assertEquals(24995000, sum.get());
+	}
+	
+	@Test
+	public void testThreadedProcessorPreservesOrder() throws Exception {
+		final List<Integer> collected = new ArrayList<>();
+		PipeLinker linker = new PipeLinker().append(
+				new ThreadedProcessor<Integer, Integer>(4, new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						if (item % 7 == 0) {
+							// some items take longer and block the head of the line
+							try {
+								Thread.sleep(2);
+							} catch (InterruptedException e) {
+								// nothing
+							}
+						}
+						// items without output must not stall the output of later items
+						return item % 5 == 0 ? null : item;
+					}
+				}).preserveOrder(8),
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						collected.add(item);
+					}
+				});
+		
+		for (int i = 0; i < 2000; ++i) {
+			linker.submit(i);
+		}
+		
+		linker.shutdown();
+		
+		assertEquals(1600, collected.size());
+		int last = -1;
+		for (int item : collected) {
+			assertTrue(item > last);
+			last = item;
+		}
+	}
+	
+	@Test
+	public void testThreadedProcessorPreservesOrderIfItemsFail() throws Exception {
+		final List<Integer> collected = new ArrayList<>();
+		PipeLinker linker = new PipeLinker().append(
+				new ThreadedProcessor<Integer, Integer>(4, new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						if (item % 10 == 0) {
+							// failed items must not stall the output of later items
+							throw new IllegalStateException("expected failure");
+						}
+						return item;
+					}
+				}).preserveOrder(8),
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						collected.add(item);
+					}
+				});
+		
+		for (int i = 0; i < 200; ++i) {
+			linker.submit(i);
+		}
+		
+		linker.shutdown();
+		
+		assertEquals(180, collected.size());
+		int last = -1;
+		for (int item : collected) {
+			assertTrue(item > last);
+			last = item;
+		}
+	}
+	
+	@Test
+	public void testReusePipeLinker() throws Exception {
+		final AtomicInteger processedElements = new AtomicInteger(0);
+		final AtomicInteger collectedElements = new AtomicInteger(0);
+		PipeLinker linker = new PipeLinker();
+		for (int i = 0; i < 5; ++i) {
+			linker.append(new AbstractProcessor<Integer, Integer>() {
+				@Override
+				public Integer processItem(Integer item) {
+					processedElements.incrementAndGet();
+					return item;
+				}
+			});
+		}
+		linker.append(
+				new ThreadedProcessor<Integer, Integer>(4, new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						return item;
+					}
+				}),
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						collectedElements.incrementAndGet();
+					}
+				});
+		
+		// the pipes keep running between the rounds
+		for (int round = 1; round <= 3; ++round) {
+			for (int i = 0; i < 1000; ++i) {
+				linker.submit(i);
+			}
+			linker.waitForCompletion();
+			assertEquals(round * 5000, processedElements.get());
+			assertEquals(round * 1000, collectedElements.get());
+		}
+		
+		linker.submitAndShutdown(42);
+		assertEquals(3001, collectedElements.get());
+	}
+	
+	@Test
+	public void testPipeLinkerMetrics() throws Exception {
+		Path outputDir = Files.createTempDirectory("metrics");
+		PipeLinker linker = new PipeLinker().append(
+				new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						return item % 2 == 0 ? item : null;
+					}
+				},
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						// slow consumer, such that producers have to wait
+						LockSupport.parkNanos(100_000);
+					}
+				});
+		SocketMetricsReporter reporter = linker.reportMetricsPeriodically(outputDir, 50, TimeUnit.MILLISECONDS);
+		
+		for (int i = 0; i < 1000; ++i) {
+			linker.submit(i);
+		}
+		linker.waitForCompletion();
+		
+		List<SocketMetrics.Snapshot> snapshots = linker.getMetricsSnapshots();
+		assertEquals(2, snapshots.size());
+		assertEquals(1000, snapshots.get(0).getItemsIn());
+		assertEquals(500, snapshots.get(0).getItemsOut());
+		assertEquals(500, snapshots.get(1).getItemsIn());
+		assertEquals(500, snapshots.get(1).getProcessedItems());
+		assertEquals(0, snapshots.get(1).getItemsOut());
+		// the processing time of the first pipe does not contain the blocked time
+		assertTrue(snapshots.get(1).getP50ProcessingNanos() >= 100_000);
+		assertTrue(snapshots.get(0).getP50ProcessingNanos() < snapshots.get(1).getP50ProcessingNanos());
+		assertTrue(snapshots.get(1).getBlockedSubmissions() > 0);
+		assertTrue(snapshots.get(1).getMaxOccupancy() <= snapshots.get(1).getCapacity());
+		
+		linker.shutdown();
+		
+		assertEquals(2, reporter.getSocketNames().size());
+		String name = reporter.getSocketNames().get(1);
+		assertTrue(reporter.getStatisticsCollector(name).getNumberOfStatistics() > 0);
+		List<String> lines = Files.readAllLines(outputDir.resolve(name + ".csv"));
+		assertEquals(SocketStatistics.values().length, lines.size());
+		assertTrue(lines.get(0).startsWith(SocketStatistics.ITEMS_IN.name()));
+		FileUtils.delete(outputDir);
+		
+		// modules collect the same metrics
+		ModuleLinker moduleLinker = new ModuleLinker().append(
+				new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						return item % 2 == 0 ? item : null;
+					}
+				});
+		SocketMetricsReporter moduleReporter = moduleLinker.reportMetricsPeriodically(null, 50, TimeUnit.MILLISECONDS);
+		// appended modules inherit the metrics setting
+		moduleLinker.append(new AbstractConsumingProcessor<Integer>() {
+			@Override
+			public void consumeItem(Integer item) {
+				// nothing to do
+			}
+		});
+		
+		for (int i = 0; i < 1000; ++i) {
+			moduleLinker.submit(i);
+		}
+		moduleReporter.stop();
+		
+		snapshots = moduleLinker.getMetricsSnapshots();
+		assertEquals(2, snapshots.size());
+		assertEquals(1000, snapshots.get(0).getItemsIn());
+		assertEquals(500, snapshots.get(0).getItemsOut());
+		assertEquals(500, snapshots.get(1).getItemsIn());
+		assertEquals(500, snapshots.get(1).getProcessedItems());
+		assertEquals(0, snapshots.get(1).getItemsOut());
+		assertEquals(2, moduleReporter.getSocketNames().size());
+		assertTrue(moduleReporter.getStatisticsCollector(
+				moduleReporter.getSocketNames().get(0)).getNumberOfStatistics() > 0);
+		
+		moduleLinker.disableMetrics();
+		assertNull(moduleLinker.getMetricsSnapshots().get(0));
+	}
+	
+	@Test
+	public void testDisabledMetrics() throws Exception {
+		Pipe<Integer, Integer> pipe = new AbstractProcessor<Integer, Integer>() {
+			@Override
+			public Integer processItem(Integer item) {
+				return item;
+			}
+		}.asPipe();
+		assertNull(pipe.getMetricsSnapshot());
+		pipe.enableMetrics();
+		pipe.submit(1);
+		pipe.waitForCompletion();
+		assertEquals(1, pipe.getMetricsSnapshot().getItemsIn());
+		pipe.disableMetrics();
+		assertNull(pipe.getMetricsSnapshot());
+		pipe.shutdown();
+	}
+	
+	@Test
+	public void testFanOutAndMerge() throws Exception {
+		final List<Integer> collected = new ArrayList<>();
+		final AtomicInteger terminalBranchItems = new AtomicInteger(0);
+		PipeLinker linker = new PipeLinker().append(
+				new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						return item;
+					}
+				})
+		.fanOut(
+				new PipeLinker().append(new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						return -item;
+					}
+				}), 
+				new PipeLinker().append(new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						// slower branch, still has to be merged completely
+						LockSupport.parkNanos(10_000);
+						return item;
+					}
+				}), 
+				new PipeLinker().append(new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						terminalBranchItems.incrementAndGet();
+					}
+				}))
+		.append(new AbstractProcessor<Integer, Integer>() {
+			private int sum = 0;
+			private int count = 0;
+			@Override
+			public Integer processItem(Integer item) {
+				sum += item;
+				++count;
+				return null;
+			}
+			@Override
+			public Integer getResultFromCollectedItems() {
+				// only produced on shutdown, which has to happen after all branches are done
+				return count == 1000 ? sum : -1;
+			}
+		}, new AbstractConsumingProcessor<Integer>() {
+			@Override
+			public void consumeItem(Integer item) {
+				collected.add(item);
+			}
+		});
+		
+		for (int i = 1; i <= 500; ++i) {
+			linker.submit(i);
+		}
+		linker.shutdown();
+		
+		assertEquals(500, terminalBranchItems.get());
+		assertEquals(1, collected.size());
+		assertEquals(0, (int) collected.get(0));
+	}
+	
+	@Test
+	public void testPartitionedBranches() throws Exception {
+		final AtomicInteger evenItems = new AtomicInteger(0);
+		final AtomicInteger oddItems = new AtomicInteger(0);
+		final List<Integer> collected = new ArrayList<>();
+		PipeLinker linker = new PipeLinker().append(
+				new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						return item;
+					}
+				})
+		.partition(item -> (Integer) item,
+				new PipeLinker().append(new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						evenItems.incrementAndGet();
+						return item;
+					}
+				}), 
+				new PipeLinker().append(new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						oddItems.incrementAndGet();
+						return item;
+					}
+				}))
+		.append(new AbstractConsumingProcessor<Integer>() {
+			@Override
+			public void consumeItem(Integer item) {
+				collected.add(item);
+			}
+		});
+		
+		// pipes keep running between rounds
+		for (int round = 1; round <= 2; ++round) {
+			for (int i = 0; i < 1000; ++i) {
+				linker.submit(i);
+			}
+			linker.waitForCompletion();
+			assertEquals(round * 500, evenItems.get());
+			assertEquals(round * 500, oddItems.get());
+			assertEquals(round * 1000, collected.size());
+		}
+		assertEquals(4, linker.getMetricsSnapshots().size());
+		linker.shutdown();
+	}
+	
+	@Test
+	public void testBatchingPipes() throws Exception {
+		final AtomicInteger batchCalls = new AtomicInteger(0);
+		final AtomicInteger batchItems = new AtomicInteger(0);
+		final List<Integer> collected = new ArrayList<>();
+		PipeLinker linker = new PipeLinker()
+				.setBatching(64, 1_000_000)
+				.append(new AbstractBatchProcessor<Integer, Integer>() {
+					@Override
+					public Integer processBatch(List<Integer> items) {
+						batchCalls.incrementAndGet();
+						batchItems.addAndGet(items.size());
+						for (int item : items) {
+							// produce each item separately
+							getSocket().produce(item);
+						}
+						return null;
+					}
+				}, 
+				// does not opt in to batching, gets items one by one
+				new AbstractProcessor<Integer, Integer>() {
+					@Override
+					public Integer processItem(Integer item) {
+						return item;
+					}
+				},
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						collected.add(item);
+					}
+				});
+		
+		for (int i = 0; i < 1000; ++i) {
+			linker.submit(i);
+		}
+		// submits the pending (incomplete) batch
+		linker.waitForCompletion();
+		
+		assertEquals(1000, batchItems.get());
+		assertEquals(16, batchCalls.get());
+		assertEquals(1000, collected.size());
+		for (int i = 0; i < 1000; ++i) {
+			assertEquals(i, (int) collected.get(i));
+		}
+		linker.shutdown();
+	}
+	
+	@Test
+	public void testBatchIsSubmittedAfterDelay() throws Exception {
+		final AtomicInteger processedItems = new AtomicInteger(0);
+		Pipe<Integer, Integer> pipe = new AbstractProcessor<Integer, Integer>() {
+			@Override
+			public Integer processItem(Integer item) {
+				processedItems.incrementAndGet();
+				return item;
+			}
+		}.asPipe().enableBatching(100, 1000);
+		
+		for (int i = 0; i < 3; ++i) {
+			pipe.submit(i);
+		}
+		// the incomplete batch is submitted after 1 ms, without waiting for completion
+		long deadline = System.currentTimeMillis() + 5000;
+		while (processedItems.get() < 3 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(3, processedItems.get());
+		pipe.shutdown();
+	}
+	
+	@Test
+	public void testDelayedBatchesKeepOrderWithFullBuffer() throws Exception {
+		final List<Integer> collected = new ArrayList<>();
+		// a small buffer and a slow consumer let delayed batches find the buffer full
+		Pipe<Integer, Integer> pipe = new AbstractProcessor<Integer, Integer>() {
+			@Override
+			public Integer processItem(Integer item) {
+				if (item % 50 == 0) {
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						// nothing
+					}
+				}
+				collected.add(item);
+				return null;
+			}
+		}.asPipe(4).enableBatching(10, 1);
+		
+		for (int i = 0; i < 2000; ++i) {
+			pipe.submit(i);
+			if (i % 7 == 0) {
+				// let the timer hand over incomplete batches
+				Thread.sleep(0, 100_000);
+			}
+		}
+		pipe.shutdown();
+		
+		assertEquals(2000, collected.size());
+		for (int i = 0; i < 2000; ++i) {
+			assertEquals(i, (int) collected.get(i));
+		}
+	}
+	
+	@Test
+	public void testFusedStages() throws Exception {
+		final List<String> threads = new ArrayList<>();
+		final List<Integer> collected = new ArrayList<>();
+		PipeLinker linker = new PipeLinker()
+				.appendFused(
+						new CollectionSequencer<Integer>(),
+						new AbstractProcessor<Integer, Integer>() {
+							@Override
+							public Integer processItem(Integer item) {
+								threads.add(Thread.currentThread().getName());
+								return item * 2;
+							}
+						},
+						new AbstractProcessor<Integer, Integer>() {
+							private int sum = 0;
+							@Override
+							public Integer processItem(Integer item) {
+								threads.add(Thread.currentThread().getName());
+								sum += item;
+								return item;
+							}
+							@Override
+							public Integer getResultFromCollectedItems() {
+								return -sum;
+							}
+						})
+				.append(new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						collected.add(item);
+					}
+				});
+		
+		linker.submit(Arrays.asList(1, 2, 3), Arrays.asList(4, 5));
+		linker.shutdown();
+		
+		// collected results are produced on shutdown
+		assertEquals(Arrays.asList(2, 4, 6, 8, 10, -30), collected);
+		// all fused stages run in the same thread
+		assertEquals(10, threads.size());
+		for (String thread : threads) {
+			assertEquals(threads.get(0), thread);
+		}
+	}
+	
+	@Test
+	public void testFusedThreadedStageCompletesBeforeFollowingStages() throws Exception {
+		final List<Integer> collected = new ArrayList<>();
+		PipeLinker linker = new PipeLinker()
+				.appendFused(
+						new ThreadedProcessor<Integer, Integer>(2, new AbstractProcessor<Integer, Integer>() {
+							@Override
+							public Integer processItem(Integer item) {
+								return item;
+							}
+						}),
+						new AbstractProcessor<Integer, Integer>() {
+							private int count = 0;
+							@Override
+							public Integer processItem(Integer item) {
+								++count;
+								return null;
+							}
+							@Override
+							public Integer getResultFromCollectedItems() {
+								return count;
+							}
+						})
+				.append(new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer item) {
+						collected.add(item);
+					}
+				});
+		
+		for (int i = 0; i < 1000; ++i) {
+			linker.submit(i);
+		}
+		linker.shutdown();
+		
+		// the counting stage collects its result only after the threaded stage is done
+		assertEquals(Arrays.asList(1000), collected);
+	}
+	
+	@Test
+	public void testLightweightStageFusion() throws Exception {
+		final AtomicInteger processedElements = new AtomicInteger(0);
+		PipeLinker linker = new PipeLinker()
+				.setStageFusion(true)
+				.append(
+						new CollectionSequencer<Integer>(),
+						new AbstractProcessor<Integer, Integer>() {
+							@Override
+							public Integer processItem(Integer item) {
+								return item + 1;
+							}
+						},
+						new AbstractProcessor<Integer, Integer>() {
+							@Override
+							public boolean isLightweight() {
+								return true;
+							}
+							@Override
+							public Integer processItem(Integer item) {
+								return item;
+							}
+						},
+						new AbstractConsumingProcessor<Integer>() {
+							@Override
+							public void consumeItem(Integer item) {
+								processedElements.incrementAndGet();
+							}
+						})
+				.enableMetrics();
+		
+		// the sequencer and both processors are fused into one pipe
+		assertEquals(2, linker.getMetricsSnapshots().size());
+		
+		List<Integer> items = new ArrayList<>();
+		for (int i = 0; i < 20; ++i) {
+			items.add(i);
+		}
+		linker.submitAndShutdown(items);
+		assertEquals(20, processedElements.get());
+	}
+	
 }
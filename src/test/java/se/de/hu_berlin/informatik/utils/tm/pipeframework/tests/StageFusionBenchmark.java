@@ -0,0 +1,105 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.tm.pipeframework.tests;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import se.de.hu_berlin.informatik.utils.files.FileUtils;
+import se.de.hu_berlin.informatik.utils.files.processors.FileToByteArrayReader;
+import se.de.hu_berlin.informatik.utils.files.processors.PathToFileConverter;
+import se.de.hu_berlin.informatik.utils.processors.AbstractConsumingProcessor;
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+import se.de.hu_berlin.informatik.utils.processors.basics.CollectionSequencer;
+import se.de.hu_berlin.informatik.utils.processors.sockets.pipe.PipeLinker;
+
+/**
+ * Measures the throughput of a 6-stage file-processing chain (sequence paths,
+ * convert to files, convert back to paths, read bytes, compute lengths, sum up)
+ * with each stage in its own pipe and with fused lightweight stages.
+ * 
+ * <p> Not run as part of the test suite. Run with, e.g.,
+ * {@code java ... StageFusionBenchmark [files] [rounds]},
+ * where the number of (small) files defaults to 2,000 and the number of 
+ * times that all files are processed defaults to 50.
+ * 
+ * @author SimHigh
+ */
+public class StageFusionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		
+		Path dir = Files.createTempDirectory("fusion");
+		List<Path> files = new ArrayList<>();
+		byte[] content = new byte[256];
+		for (int i = 0; i < fileCount; ++i) {
+			Path file = dir.resolve(i + ".bin");
+			Files.write(file, content);
+			files.add(file);
+		}
+		
+		try {
+			// warm up
+			run(files, rounds / 5, false);
+			run(files, rounds / 5, true);
+
+			System.out.println("mode                | files/s");
+			System.out.println(String.format("%-19s | %,.0f", "6 pipes", run(files, rounds, false)));
+			System.out.println(String.format("%-19s | %,.0f", "fused stages", run(files, rounds, true)));
+		} finally {
+			FileUtils.delete(dir);
+		}
+	}
+
+	private static double run(List<Path> files, int rounds, boolean fuse) {
+		final long[] sum = new long[1];
+		PipeLinker linker = new PipeLinker().setStageFusion(fuse).append(
+				new CollectionSequencer<Path>(),
+				new PathToFileConverter(),
+				new AbstractProcessor<File, Path>() {
+					@Override
+					public boolean isLightweight() {
+						return true;
+					}
+					@Override
+					public Path processItem(File file) {
+						return file.toPath();
+					}
+				},
+				new FileToByteArrayReader(),
+				new AbstractProcessor<byte[], Integer>() {
+					@Override
+					public boolean isLightweight() {
+						return true;
+					}
+					@Override
+					public Integer processItem(byte[] bytes) {
+						return bytes.length;
+					}
+				},
+				new AbstractConsumingProcessor<Integer>() {
+					@Override
+					public void consumeItem(Integer length) {
+						sum[0] += length;
+					}
+				});
+
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; ++i) {
+			linker.submit(files);
+		}
+		linker.shutdown();
+		long nanos = System.nanoTime() - start;
+		if (sum[0] != 256L * files.size() * rounds) {
+			throw new IllegalStateException("Wrong result: " + sum[0]);
+		}
+		return files.size() * rounds * 1e9 / nanos;
+	}
+
+}
@@ -0,0 +1,82 @@
+/**
+ * 
+ */
+package se.de.hu_berlin.informatik.utils.tm.pipeframework.tests;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import se.de.hu_berlin.informatik.utils.processors.AbstractConsumingProcessor;
+import se.de.hu_berlin.informatik.utils.processors.AbstractProcessor;
+import se.de.hu_berlin.informatik.utils.processors.sockets.pipe.PipeLinker;
+import se.de.hu_berlin.informatik.utils.threaded.disruptor.DisruptorWaitStrategy;
+
+/**
+ * Measures the end-to-end latency of a short chain of pipes for each 
+ * {@link DisruptorWaitStrategy}. Items are submitted with a pause in between,
+ * such that the pipes are idle (and waiting) when a new item arrives.
+ * 
+ * <p> Not run as part of the test suite. Run with, e.g.,
+ * {@code java ... WaitStrategyLatencyBenchmark [items] [pauseMicros] [stages]},
+ * where the number of items defaults to 20,000, the pause between two items 
+ * defaults to 50 microseconds and the number of pipes defaults to 3. Busy spinning
+ * needs at least one free core per pipe to give meaningful results.
+ * 
+ * @author SimHigh
+ */
+public class WaitStrategyLatencyBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int items = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+		long pauseMicros = args.length > 1 ? Long.parseLong(args[1]) : 50;
+		int stages = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		
+		// warm up
+		for (DisruptorWaitStrategy strategy : DisruptorWaitStrategy.values()) {
+			run(strategy, items / 10, pauseMicros, stages);
+		}
+
+		System.out.println("strategy       | median (us) | p99 (us) | max (us)");
+		for (DisruptorWaitStrategy strategy : DisruptorWaitStrategy.values()) {
+			long[] latencies = run(strategy, items, pauseMicros, stages);
+			Arrays.sort(latencies);
+			System.out.println(String.format("%-14s | %11.1f | %8.1f | %8.1f", strategy,
+					latencies[latencies.length / 2] / 1e3, 
+					latencies[(int) (latencies.length * 0.99)] / 1e3,
+					latencies[latencies.length - 1] / 1e3));
+		}
+	}
+
+	private static long[] run(DisruptorWaitStrategy strategy, int items, long pauseMicros, int stages) 
+			throws InterruptedException {
+		long[] latencies = new long[items];
+		CountDownLatch done = new CountDownLatch(items);
+		PipeLinker linker = new PipeLinker().setWaitStrategy(strategy);
+		for (int i = 0; i < stages - 1; ++i) {
+			linker.append(new AbstractProcessor<long[], long[]>() {
+				@Override
+				public long[] processItem(long[] item) {
+					return item;
+				}
+			});
+		}
+		linker.append(new AbstractConsumingProcessor<long[]>() {
+			@Override
+			public void consumeItem(long[] item) {
+				// item = { index, submission time }
+				latencies[(int) item[0]] = System.nanoTime() - item[1];
+				done.countDown();
+			}
+		});
+
+		for (int i = 0; i < items; ++i) {
+			linker.submit(new long[] { i, System.nanoTime() });
+			LockSupport.parkNanos(pauseMicros * 1000);
+		}
+		done.await();
+		linker.shutdown();
+		return latencies;
+	}
+
+}